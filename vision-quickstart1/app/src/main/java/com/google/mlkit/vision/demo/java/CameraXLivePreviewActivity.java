@@ -58,6 +58,8 @@ import com.google.mlkit.vision.demo.java.facedetector.FaceDetectorProcessor;
 import com.google.mlkit.vision.demo.java.facemeshdetector.FaceMeshDetectorProcessor;
 import com.google.mlkit.vision.demo.java.labeldetector.LabelDetectorProcessor;
 import com.google.mlkit.vision.demo.java.objectdetector.ObjectDetectorProcessor;
+import com.google.mlkit.vision.demo.java.posedetector.HybridDetectorScheduler;
+import com.google.mlkit.vision.demo.java.posedetector.KeyframeScheduler;
 import com.google.mlkit.vision.demo.java.posedetector.PoseDetectorProcessor;
 import com.google.mlkit.vision.demo.java.segmenter.SegmenterProcessor;
 import com.google.mlkit.vision.demo.java.textdetector.TextRecognitionProcessor;
@@ -407,6 +409,15 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
           boolean visualizeZ = PreferenceUtils.shouldPoseDetectionVisualizeZ(this);
           boolean rescaleZ = PreferenceUtils.shouldPoseDetectionRescaleZForVisualization(this);
           boolean runClassification = PreferenceUtils.shouldPoseDetectionRunClassification(this);
+          KeyframeScheduler keyframeScheduler =
+              PreferenceUtils.shouldPoseDetectionUseKeyframesLivePreview(this)
+                  ? KeyframeScheduler.adaptive(KeyframeScheduler.DEFAULT_MAX_INTERVAL)
+                  : null;
+          HybridDetectorScheduler hybridScheduler =
+              PreferenceUtils.isPoseDetectionHybridLivePreview(this)
+                  ? HybridDetectorScheduler.create(
+                      PreferenceUtils.getAccuratePoseDetectorOptionsForLivePreview(this))
+                  : null;
           imageProcessor =
               new PoseDetectorProcessor(
                   this,
@@ -415,7 +426,9 @@ public final class CameraXLivePreviewActivity extends AppCompatActivity
                   visualizeZ,
                   rescaleZ,
                   runClassification,
-                  /* isStreamMode = */ true);
+                  /* isStreamMode = */ true,
+                  keyframeScheduler,
+                  hybridScheduler);
           break;
         case SELFIE_SEGMENTATION:
           imageProcessor = new SegmenterProcessor(this);
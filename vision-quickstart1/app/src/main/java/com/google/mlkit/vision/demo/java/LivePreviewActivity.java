@@ -41,6 +41,8 @@ import com.google.mlkit.vision.demo.CameraSource;
 import com.google.mlkit.vision.demo.CameraSourcePreview;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.R;
+import com.google.mlkit.vision.demo.java.posedetector.HybridDetectorScheduler;
+import com.google.mlkit.vision.demo.java.posedetector.KeyframeScheduler;
 import com.google.mlkit.vision.demo.java.posedetector.PoseDetectorProcessor;
 
 import com.google.mlkit.vision.demo.preference.PreferenceUtils;
@@ -315,6 +317,15 @@ public final class LivePreviewActivity extends AppCompatActivity
           boolean visualizeZ = PreferenceUtils.shouldPoseDetectionVisualizeZ(this);
           boolean rescaleZ = PreferenceUtils.shouldPoseDetectionRescaleZForVisualization(this);
           boolean runClassification = PreferenceUtils.shouldPoseDetectionRunClassification(this);
+          KeyframeScheduler keyframeScheduler = null;
+          if (PreferenceUtils.shouldPoseDetectionUseKeyframesLivePreview(this)) {
+            keyframeScheduler = KeyframeScheduler.adaptive(KeyframeScheduler.DEFAULT_MAX_INTERVAL);
+          }
+          HybridDetectorScheduler hybridScheduler = null;
+          if (PreferenceUtils.isPoseDetectionHybridLivePreview(this)) {
+            hybridScheduler = HybridDetectorScheduler.create(
+                    PreferenceUtils.getAccuratePoseDetectorOptionsForLivePreview(this));
+          }
           cameraSource.setMachineLearningFrameProcessor(
                   new PoseDetectorProcessor(
                           this,
@@ -323,7 +334,9 @@ public final class LivePreviewActivity extends AppCompatActivity
                           visualizeZ,
                           rescaleZ,
                           runClassification,
-                          /* isStreamMode = */ true));
+                          /* isStreamMode = */ true,
+                          keyframeScheduler,
+                          hybridScheduler));
           PoseDetectorProcessor processor = new PoseDetectorProcessor(this,
                   poseDetectorOptions,
                   shouldShowInFrameLikelihood,
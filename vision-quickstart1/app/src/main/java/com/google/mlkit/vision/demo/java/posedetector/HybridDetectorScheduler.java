@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseEmbedding;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult;
+import com.google.mlkit.vision.demo.java.posedetector.classification.RunningStats;
+import com.google.mlkit.vision.pose.PoseDetectorOptionsBase;
+import java.util.Locale;
+
+/**
+ * Decides on which frames {@link PoseDetectorProcessor} also runs an accurate pose detector next
+ * to its fast one, fusing both results, and keeps the latency of each over the session.
+ *
+ * <p>The accurate detector runs every {@code keyframeInterval} frames, and on the frame after one
+ * where the fast detector wasn't sure the body was in frame, or where the classification was close
+ * to making an exercise or a rep counter change state. Thread safe.
+ */
+public class HybridDetectorScheduler {
+  public static final int DEFAULT_KEYFRAME_INTERVAL = 10;
+
+  // Mean in-frame likelihood of the embedded landmarks under which the fast detector is unsure.
+  private static final float MIN_IN_FRAME_LIKELIHOOD = 0.8f;
+  // See {@link PoseResult#getTransitionDistance()}.
+  private static final float MIN_TRANSITION_DISTANCE = 0.1f;
+
+  private static final int REASON_NONE = 0;
+  private static final int REASON_KEYFRAME = 1;
+  private static final int REASON_LOW_LIKELIHOOD = 2;
+  private static final int REASON_NEAR_TRANSITION = 3;
+
+  private final PoseDetectorOptionsBase accurateOptions;
+  private final int keyframeInterval;
+
+  @GuardedBy("this")
+  private int framesSinceAccurate;
+  @GuardedBy("this")
+  private boolean lastAccurate;
+  @GuardedBy("this")
+  private int nextReason = REASON_KEYFRAME;
+  // Frames the accurate detector ran on, by reason.
+  @GuardedBy("this")
+  private final long[] numAccurateFrames = new long[4];
+  @GuardedBy("this")
+  private long numFastFrames;
+  @GuardedBy("this")
+  private final RunningStats fastLatenciesMs = new RunningStats();
+  @GuardedBy("this")
+  private final RunningStats accurateLatenciesMs = new RunningStats();
+
+  /** Returns a scheduler running the accurate detector with {@code accurateOptions}. */
+  public static HybridDetectorScheduler create(PoseDetectorOptionsBase accurateOptions) {
+    return create(accurateOptions, DEFAULT_KEYFRAME_INTERVAL);
+  }
+
+  /**
+   * Returns a scheduler running the accurate detector with {@code accurateOptions} at least every
+   * {@code keyframeInterval} frames.
+   */
+  public static HybridDetectorScheduler create(
+      PoseDetectorOptionsBase accurateOptions, int keyframeInterval) {
+    return new HybridDetectorScheduler(accurateOptions, keyframeInterval);
+  }
+
+  private HybridDetectorScheduler(PoseDetectorOptionsBase accurateOptions, int keyframeInterval) {
+    Preconditions.checkArgument(keyframeInterval >= 1);
+    this.accurateOptions = accurateOptions;
+    this.keyframeInterval = keyframeInterval;
+  }
+
+  PoseDetectorOptionsBase getAccurateOptions() {
+    return accurateOptions;
+  }
+
+  /** Returns whether to run the accurate detector on the next frame, counting the frame. */
+  synchronized boolean shouldRunAccurate() {
+    framesSinceAccurate++;
+    int reason = nextReason;
+    if (reason == REASON_NONE && framesSinceAccurate >= keyframeInterval) {
+      reason = REASON_KEYFRAME;
+    }
+    nextReason = REASON_NONE;
+    lastAccurate = reason != REASON_NONE;
+    if (lastAccurate) {
+      framesSinceAccurate = 0;
+      numAccurateFrames[reason]++;
+    } else {
+      numFastFrames++;
+    }
+    return lastAccurate;
+  }
+
+  /**
+   * Schedules the accurate detector for the next frame if needed, given the landmarks and the
+   * classification of the last frame.
+   */
+  synchronized void onResult(PoseLandmarks landmarks, @Nullable PoseResult result) {
+    if (result != null
+        && result.isPoseFound()
+        && result.getTransitionDistance() < MIN_TRANSITION_DISTANCE) {
+      nextReason = REASON_NEAR_TRANSITION;
+    } else if (!lastAccurate
+        && !landmarks.isEmpty()
+        && PoseEmbedding.getEmbeddedLandmarkLikelihood(landmarks) < MIN_IN_FRAME_LIKELIHOOD) {
+      // If the accurate detector wasn't sure either the body is out of frame, and running it again
+      // wouldn't help.
+      nextReason = REASON_LOW_LIKELIHOOD;
+    }
+  }
+
+  /** Adds the time a detector took on a frame. */
+  synchronized void addLatency(boolean accurate, long latencyMs) {
+    (accurate ? accurateLatenciesMs : fastLatenciesMs).add(latencyMs);
+  }
+
+  /**
+   * Returns a summary of the session: frames per detector, why the accurate one ran, the mean
+   * latency of each and their share of the time spent detecting. Running on the same hardware,
+   * that share is also about how the detection energy splits between the two.
+   */
+  synchronized String getSummary() {
+    double fastMs = fastLatenciesMs.getMean() * fastLatenciesMs.getCount();
+    double accurateMs = accurateLatenciesMs.getMean() * accurateLatenciesMs.getCount();
+    double totalMs = fastMs + accurateMs;
+    long numAccurate = numAccurateFrames[REASON_KEYFRAME]
+        + numAccurateFrames[REASON_LOW_LIKELIHOOD]
+        + numAccurateFrames[REASON_NEAR_TRANSITION];
+    return String.format(
+        Locale.US,
+        "Fast detector only on %d frames, accurate too on %d (%d keyframes, %d low likelihood, "
+            + "%d near transition). Latency fast %.1f ms, accurate %.1f ms. Detection time fast "
+            + "%.0f%%, accurate %.0f%%.",
+        numFastFrames,
+        numAccurate,
+        numAccurateFrames[REASON_KEYFRAME],
+        numAccurateFrames[REASON_LOW_LIKELIHOOD],
+        numAccurateFrames[REASON_NEAR_TRANSITION],
+        fastLatenciesMs.getMean(),
+        accurateLatenciesMs.getMean(),
+        totalMs > 0 ? 100 * fastMs / totalMs : 0,
+        totalMs > 0 ? 100 * accurateMs / totalMs : 0);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import androidx.annotation.GuardedBy;
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides on which frames {@link PoseDetectorProcessor} runs the pose detector, the other frames
+ * getting landmarks predicted by a {@link LandmarkTracker}.
+ *
+ * <p>The detector runs every {@code interval} frames. With a fixed scheduler the interval doesn't
+ * change. With an adaptive one it grows by one after each detection while the person moves slowly,
+ * is halved when they move fast or when the prediction for the detection was off, and drops to 1
+ * while no pose is found. Thread safe.
+ */
+public class KeyframeScheduler {
+  // At 30 fps, keeps predictions well within the 250 ms that LandmarkTracker extrapolates.
+  public static final int DEFAULT_MAX_INTERVAL = 4;
+  // Speeds in torso lengths per second, see {@link LandmarkTracker#getSpeed()}.
+  private static final float SLOW_SPEED = 0.5f;
+  private static final float FAST_SPEED = 2f;
+  // Mean landmark prediction error, in torso lengths, above which predictions are too coarse.
+  private static final float MAX_PREDICTION_ERROR = 0.1f;
+
+  private final int minInterval;
+  private final int maxInterval;
+
+  @GuardedBy("this")
+  private int interval;
+  @GuardedBy("this")
+  private int framesSinceDetection;
+  @GuardedBy("this")
+  private boolean detectNext = true;
+  @GuardedBy("this")
+  private long numDetections;
+  @GuardedBy("this")
+  private long numPredictions;
+
+  /** Returns a scheduler running the detector every {@code interval} frames. */
+  public static KeyframeScheduler fixed(int interval) {
+    return new KeyframeScheduler(interval, interval);
+  }
+
+  /** Returns a scheduler adapting the interval to motion, between 1 and {@code maxInterval}. */
+  public static KeyframeScheduler adaptive(int maxInterval) {
+    return new KeyframeScheduler(1, maxInterval);
+  }
+
+  private KeyframeScheduler(int minInterval, int maxInterval) {
+    Preconditions.checkArgument(minInterval >= 1 && maxInterval >= minInterval);
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+    interval = minInterval;
+  }
+
+  /** Returns whether to run the detector on the next frame, counting the frame as scheduled. */
+  synchronized boolean shouldDetect() {
+    if (detectNext || framesSinceDetection + 1 >= interval) {
+      detectNext = false;
+      framesSinceDetection = 0;
+      numDetections++;
+      return true;
+    }
+    framesSinceDetection++;
+    numPredictions++;
+    return false;
+  }
+
+  /** Adapts the interval after a detection, given the state of the tracker updated with it. */
+  synchronized void onDetection(LandmarkTracker tracker) {
+    if (!tracker.isTracking()) {
+      // Nothing to predict from, so the next frame has to be detected whatever the interval.
+      detectNext = true;
+      interval = minInterval;
+      return;
+    }
+    float speed = tracker.getSpeed();
+    if (speed > FAST_SPEED || tracker.getLastPredictionError() > MAX_PREDICTION_ERROR) {
+      interval = Math.max(minInterval, interval / 2);
+    } else if (speed < SLOW_SPEED) {
+      interval = Math.min(maxInterval, interval + 1);
+    }
+  }
+
+  synchronized int getInterval() {
+    return interval;
+  }
+
+  synchronized long getNumDetections() {
+    return numDetections;
+  }
+
+  synchronized long getNumPredictions() {
+    return numPredictions;
+  }
+}
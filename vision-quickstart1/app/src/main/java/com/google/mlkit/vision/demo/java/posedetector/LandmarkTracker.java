@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.demo.java.posedetector.classification.RunningStats;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.Arrays;
+
+/**
+ * Predicts landmarks between detections with an alpha-beta filter per landmark coordinate.
+ * https://en.wikipedia.org/wiki/Alpha_beta_filter
+ *
+ * <p>Distances are measured in torso lengths (shoulders center to hips center) so that they don't
+ * depend on the image size or how far the person is. Not thread safe.
+ */
+class LandmarkTracker {
+  private static final int NUM_VALUES = PoseLandmarks.NUM_LANDMARKS * 3;
+  private static final float ALPHA = 0.9f;
+  private static final float BETA = 0.5f;
+  // Detections further apart than this start the tracking over.
+  private static final long MAX_GAP_MS = 500;
+  // Predictions don't extrapolate further than this past the last detection.
+  private static final long MAX_PREDICTION_MS = 250;
+
+  private final float[] positions = new float[NUM_VALUES];
+  // Per millisecond.
+  private final float[] velocities = new float[NUM_VALUES];
+  private float[] inFrameLikelihoods;
+  private boolean tracking;
+  private long lastDetectionMs;
+  private float torsoSize;
+  // Whether predictions were made since the last detection.
+  private boolean predicted;
+  private final RunningStats predictionErrors = new RunningStats();
+  private float lastPredictionError;
+
+  /** Corrects the tracked landmarks with a detection made at {@code timeMs}. */
+  void update(PoseLandmarks detected, long timeMs) {
+    lastPredictionError = 0;
+    if (detected.isEmpty()) {
+      tracking = false;
+      return;
+    }
+    long dtMs = timeMs - lastDetectionMs;
+    if (!tracking || dtMs <= 0 || dtMs > MAX_GAP_MS) {
+      for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+        positions[i * 3] = detected.getX(i);
+        positions[i * 3 + 1] = detected.getY(i);
+        positions[i * 3 + 2] = detected.getZ(i);
+      }
+      Arrays.fill(velocities, 0);
+    } else {
+      // Measured against what predict() shows for this time.
+      long predictionMs = getPredictionMs(timeMs);
+      float errorSum = 0;
+      for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+        float residualX = correct(i * 3, detected.getX(i), predictionMs, dtMs);
+        float residualY = correct(i * 3 + 1, detected.getY(i), predictionMs, dtMs);
+        correct(i * 3 + 2, detected.getZ(i), predictionMs, dtMs);
+        errorSum += (float) Math.hypot(residualX, residualY);
+      }
+      // Only predictions that were used are measured, the others were never shown.
+      if (predicted) {
+        lastPredictionError = errorSum / PoseLandmarks.NUM_LANDMARKS / torsoSize;
+        predictionErrors.add(lastPredictionError);
+      }
+    }
+    tracking = true;
+    predicted = false;
+    lastDetectionMs = timeMs;
+    inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+      inFrameLikelihoods[i] = detected.getInFrameLikelihood(i);
+    }
+    torsoSize = Math.max(getTorsoSize(detected), 1);
+  }
+
+  /**
+   * Updates one coordinate with its value measured {@code dtMs} after the last detection, and
+   * returns the residual of its prediction {@code predictionMs} ahead.
+   */
+  private float correct(int index, float measured, long predictionMs, long dtMs) {
+    float predictedValue = positions[index] + velocities[index] * predictionMs;
+    float residual = measured - predictedValue;
+    positions[index] = predictedValue + ALPHA * residual;
+    velocities[index] += BETA * residual / dtMs;
+    return residual;
+  }
+
+  /** Returns the landmarks predicted at {@code timeMs}, or empty ones if no pose is tracked. */
+  PoseLandmarks predict(long timeMs) {
+    if (!tracking) {
+      return PoseLandmarks.empty();
+    }
+    predicted = true;
+    long dtMs = getPredictionMs(timeMs);
+    float[] predictedPositions = new float[NUM_VALUES];
+    for (int i = 0; i < NUM_VALUES; i++) {
+      predictedPositions[i] = positions[i] + velocities[i] * dtMs;
+    }
+    return new PoseLandmarks(predictedPositions, inFrameLikelihoods, true);
+  }
+
+  // Returns how far past the last detection landmarks are extrapolated for {@code timeMs}.
+  private long getPredictionMs(long timeMs) {
+    return Math.min(Math.max(timeMs - lastDetectionMs, 0), MAX_PREDICTION_MS);
+  }
+
+  boolean isTracking() {
+    return tracking;
+  }
+
+  /** Returns the mean speed of the landmarks in the image plane, in torso lengths per second. */
+  float getSpeed() {
+    if (!tracking) {
+      return 0;
+    }
+    float sum = 0;
+    for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+      sum += (float) Math.hypot(velocities[i * 3], velocities[i * 3 + 1]);
+    }
+    return sum / PoseLandmarks.NUM_LANDMARKS * 1000 / torsoSize;
+  }
+
+  /**
+   * Returns the mean distance between the landmarks predicted for the last detection and the
+   * detected ones, in torso lengths, or 0 if no prediction was used since the previous detection.
+   */
+  float getLastPredictionError() {
+    return lastPredictionError;
+  }
+
+  /** Returns the statistics of {@link #getLastPredictionError()} over all measured detections. */
+  RunningStats getPredictionErrors() {
+    return predictionErrors;
+  }
+
+  private static float getTorsoSize(PoseLandmarks landmarks) {
+    // Twice the vector from the hips center to the shoulders center.
+    float dx = landmarks.getX(PoseLandmark.LEFT_SHOULDER)
+        + landmarks.getX(PoseLandmark.RIGHT_SHOULDER)
+        - landmarks.getX(PoseLandmark.LEFT_HIP)
+        - landmarks.getX(PoseLandmark.RIGHT_HIP);
+    float dy = landmarks.getY(PoseLandmark.LEFT_SHOULDER)
+        + landmarks.getY(PoseLandmark.RIGHT_SHOULDER)
+        - landmarks.getY(PoseLandmark.LEFT_HIP)
+        - landmarks.getY(PoseLandmark.RIGHT_HIP);
+    return (float) Math.hypot(dx, dy) / 2;
+  }
+}
@@ -22,10 +22,11 @@ import static java.lang.Math.min;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import com.google.mlkit.vision.common.PointF3D;
+import androidx.annotation.Nullable;
 import com.google.mlkit.vision.demo.GraphicOverlay;
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic;
-import com.google.mlkit.vision.pose.Pose;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult;
 import com.google.mlkit.vision.pose.PoseLandmark;
 import java.util.List;
 import java.util.Locale;
@@ -38,14 +39,15 @@ public class PoseGraphic extends Graphic {
   private static final float STROKE_WIDTH = 10.0f;
   private static final float POSE_CLASSIFICATION_TEXT_SIZE = 60.0f;
 
-  private final Pose pose;
+  private final PoseLandmarks pose;
   private final boolean showInFrameLikelihood;
   private final boolean visualizeZ;
   private final boolean rescaleZForVisualization;
   private float zMin = Float.MAX_VALUE;
   private float zMax = Float.MIN_VALUE;
 
-  private final List<String> poseClassification;
+  @Nullable private final PoseResult poseClassification;
+  private final PoseResultText poseClassificationText;
   private final Paint classificationTextPaint;
   private final Paint leftPaint;
   private final Paint rightPaint;
@@ -53,11 +55,12 @@ public class PoseGraphic extends Graphic {
 
   PoseGraphic(
           GraphicOverlay overlay,
-          Pose pose,
+          PoseLandmarks pose,
           boolean showInFrameLikelihood,
           boolean visualizeZ,
           boolean rescaleZForVisualization,
-          List<String> poseClassification) {
+          @Nullable PoseResult poseClassification,
+          PoseResultText poseClassificationText) {
 
     super(overlay);
     this.repCount = repCount;
@@ -67,6 +70,7 @@ public class PoseGraphic extends Graphic {
     this.rescaleZForVisualization = rescaleZForVisualization;
 
     this.poseClassification = poseClassification;
+    this.poseClassificationText = poseClassificationText;
     classificationTextPaint = new Paint();
     classificationTextPaint.setColor(Color.WHITE);
     classificationTextPaint.setTextSize(POSE_CLASSIFICATION_TEXT_SIZE);
@@ -86,12 +90,12 @@ public class PoseGraphic extends Graphic {
 
   @Override
   public void draw(Canvas canvas) {
-    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
-    if (landmarks.isEmpty()) {
+    if (pose.isEmpty()) {
       return;
     }
 
-    // Draw pose classification text.
+    // Draw pose classification text, formatted only once it is drawn.
+    List<String> poseClassification = poseClassificationText.getLines(this.poseClassification);
     float classificationX = POSE_CLASSIFICATION_TEXT_SIZE * 0.5f;
     for (int i = 0; i < poseClassification.size(); i++) {
       float classificationY =
@@ -102,49 +106,49 @@ public class PoseGraphic extends Graphic {
     }
 
     // Draw all the points
-    for (PoseLandmark landmark : landmarks) {
+    for (int landmark = 0; landmark < PoseLandmarks.NUM_LANDMARKS; landmark++) {
       drawPoint(canvas, landmark, whitePaint);
       if (visualizeZ && rescaleZForVisualization) {
-        zMin = min(zMin, landmark.getPosition3D().getZ());
-        zMax = max(zMax, landmark.getPosition3D().getZ());
+        zMin = min(zMin, pose.getZ(landmark));
+        zMax = max(zMax, pose.getZ(landmark));
       }
     }
 
-    PoseLandmark nose = pose.getPoseLandmark(PoseLandmark.NOSE);
-    PoseLandmark lefyEyeInner = pose.getPoseLandmark(PoseLandmark.LEFT_EYE_INNER);
-    PoseLandmark lefyEye = pose.getPoseLandmark(PoseLandmark.LEFT_EYE);
-    PoseLandmark leftEyeOuter = pose.getPoseLandmark(PoseLandmark.LEFT_EYE_OUTER);
-    PoseLandmark rightEyeInner = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE_INNER);
-    PoseLandmark rightEye = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE);
-    PoseLandmark rightEyeOuter = pose.getPoseLandmark(PoseLandmark.RIGHT_EYE_OUTER);
-    PoseLandmark leftEar = pose.getPoseLandmark(PoseLandmark.LEFT_EAR);
-    PoseLandmark rightEar = pose.getPoseLandmark(PoseLandmark.RIGHT_EAR);
-    PoseLandmark leftMouth = pose.getPoseLandmark(PoseLandmark.LEFT_MOUTH);
-    PoseLandmark rightMouth = pose.getPoseLandmark(PoseLandmark.RIGHT_MOUTH);
-
-    PoseLandmark leftShoulder = pose.getPoseLandmark(PoseLandmark.LEFT_SHOULDER);
-    PoseLandmark rightShoulder = pose.getPoseLandmark(PoseLandmark.RIGHT_SHOULDER);
-    PoseLandmark leftElbow = pose.getPoseLandmark(PoseLandmark.LEFT_ELBOW);
-    PoseLandmark rightElbow = pose.getPoseLandmark(PoseLandmark.RIGHT_ELBOW);
-    PoseLandmark leftWrist = pose.getPoseLandmark(PoseLandmark.LEFT_WRIST);
-    PoseLandmark rightWrist = pose.getPoseLandmark(PoseLandmark.RIGHT_WRIST);
-    PoseLandmark leftHip = pose.getPoseLandmark(PoseLandmark.LEFT_HIP);
-    PoseLandmark rightHip = pose.getPoseLandmark(PoseLandmark.RIGHT_HIP);
-    PoseLandmark leftKnee = pose.getPoseLandmark(PoseLandmark.LEFT_KNEE);
-    PoseLandmark rightKnee = pose.getPoseLandmark(PoseLandmark.RIGHT_KNEE);
-    PoseLandmark leftAnkle = pose.getPoseLandmark(PoseLandmark.LEFT_ANKLE);
-    PoseLandmark rightAnkle = pose.getPoseLandmark(PoseLandmark.RIGHT_ANKLE);
-
-    PoseLandmark leftPinky = pose.getPoseLandmark(PoseLandmark.LEFT_PINKY);
-    PoseLandmark rightPinky = pose.getPoseLandmark(PoseLandmark.RIGHT_PINKY);
-    PoseLandmark leftIndex = pose.getPoseLandmark(PoseLandmark.LEFT_INDEX);
-    PoseLandmark rightIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_INDEX);
-    PoseLandmark leftThumb = pose.getPoseLandmark(PoseLandmark.LEFT_THUMB);
-    PoseLandmark rightThumb = pose.getPoseLandmark(PoseLandmark.RIGHT_THUMB);
-    PoseLandmark leftHeel = pose.getPoseLandmark(PoseLandmark.LEFT_HEEL);
-    PoseLandmark rightHeel = pose.getPoseLandmark(PoseLandmark.RIGHT_HEEL);
-    PoseLandmark leftFootIndex = pose.getPoseLandmark(PoseLandmark.LEFT_FOOT_INDEX);
-    PoseLandmark rightFootIndex = pose.getPoseLandmark(PoseLandmark.RIGHT_FOOT_INDEX);
+    int nose = PoseLandmark.NOSE;
+    int lefyEyeInner = PoseLandmark.LEFT_EYE_INNER;
+    int lefyEye = PoseLandmark.LEFT_EYE;
+    int leftEyeOuter = PoseLandmark.LEFT_EYE_OUTER;
+    int rightEyeInner = PoseLandmark.RIGHT_EYE_INNER;
+    int rightEye = PoseLandmark.RIGHT_EYE;
+    int rightEyeOuter = PoseLandmark.RIGHT_EYE_OUTER;
+    int leftEar = PoseLandmark.LEFT_EAR;
+    int rightEar = PoseLandmark.RIGHT_EAR;
+    int leftMouth = PoseLandmark.LEFT_MOUTH;
+    int rightMouth = PoseLandmark.RIGHT_MOUTH;
+
+    int leftShoulder = PoseLandmark.LEFT_SHOULDER;
+    int rightShoulder = PoseLandmark.RIGHT_SHOULDER;
+    int leftElbow = PoseLandmark.LEFT_ELBOW;
+    int rightElbow = PoseLandmark.RIGHT_ELBOW;
+    int leftWrist = PoseLandmark.LEFT_WRIST;
+    int rightWrist = PoseLandmark.RIGHT_WRIST;
+    int leftHip = PoseLandmark.LEFT_HIP;
+    int rightHip = PoseLandmark.RIGHT_HIP;
+    int leftKnee = PoseLandmark.LEFT_KNEE;
+    int rightKnee = PoseLandmark.RIGHT_KNEE;
+    int leftAnkle = PoseLandmark.LEFT_ANKLE;
+    int rightAnkle = PoseLandmark.RIGHT_ANKLE;
+
+    int leftPinky = PoseLandmark.LEFT_PINKY;
+    int rightPinky = PoseLandmark.RIGHT_PINKY;
+    int leftIndex = PoseLandmark.LEFT_INDEX;
+    int rightIndex = PoseLandmark.RIGHT_INDEX;
+    int leftThumb = PoseLandmark.LEFT_THUMB;
+    int rightThumb = PoseLandmark.RIGHT_THUMB;
+    int leftHeel = PoseLandmark.LEFT_HEEL;
+    int rightHeel = PoseLandmark.RIGHT_HEEL;
+    int leftFootIndex = PoseLandmark.LEFT_FOOT_INDEX;
+    int rightFootIndex = PoseLandmark.RIGHT_FOOT_INDEX;
 
     // Face
     drawLine(canvas, nose, lefyEyeInner, whitePaint);
@@ -188,71 +192,34 @@ public class PoseGraphic extends Graphic {
 
     // Draw inFrameLikelihood for all points
     if (showInFrameLikelihood) {
-      for (PoseLandmark landmark : landmarks) {
+      for (int landmark = 0; landmark < PoseLandmarks.NUM_LANDMARKS; landmark++) {
         canvas.drawText(
-                String.format(Locale.US, "%.2f", landmark.getInFrameLikelihood()),
-                translateX(landmark.getPosition().x),
-                translateY(landmark.getPosition().y),
+                String.format(Locale.US, "%.2f", pose.getInFrameLikelihood(landmark)),
+                translateX(pose.getX(landmark)),
+                translateY(pose.getY(landmark)),
                 whitePaint);
       }
     }
   }
 
-  void drawPoint(Canvas canvas, PoseLandmark landmark, Paint paint) {
-    PointF3D point = landmark.getPosition3D();
+  void drawPoint(Canvas canvas, int landmark, Paint paint) {
     updatePaintColorByZValue(
-            paint, canvas, visualizeZ, rescaleZForVisualization, point.getZ(), zMin, zMax);
-    canvas.drawCircle(translateX(point.getX()), translateY(point.getY()), DOT_RADIUS, paint);
+            paint, canvas, visualizeZ, rescaleZForVisualization, pose.getZ(landmark), zMin, zMax);
+    canvas.drawCircle(
+            translateX(pose.getX(landmark)), translateY(pose.getY(landmark)), DOT_RADIUS, paint);
   }
 
-  void drawLine(Canvas canvas, PoseLandmark startLandmark, PoseLandmark endLandmark, Paint paint) {
-    PointF3D start = startLandmark.getPosition3D();
-    PointF3D end = endLandmark.getPosition3D();
-
+  void drawLine(Canvas canvas, int startLandmark, int endLandmark, Paint paint) {
     // Gets average z for the current body line
-    float avgZInImagePixel = (start.getZ() + end.getZ()) / 2;
+    float avgZInImagePixel = (pose.getZ(startLandmark) + pose.getZ(endLandmark)) / 2;
     updatePaintColorByZValue(
             paint, canvas, visualizeZ, rescaleZForVisualization, avgZInImagePixel, zMin, zMax);
 
     canvas.drawLine(
-            translateX(start.getX()),
-            translateY(start.getY()),
-            translateX(end.getX()),
-            translateY(end.getY()),
+            translateX(pose.getX(startLandmark)),
+            translateY(pose.getY(startLandmark)),
+            translateX(pose.getX(endLandmark)),
+            translateY(pose.getY(endLandmark)),
             paint);
   }
 }
-
-//代码解析: PoseGraphic 类用于绘制检测到的姿势
-//这段 Java 代码定义了一个名为 PoseGraphic 的类，它继承自 GraphicOverlay.Graphic 类，用于在预览界面上绘制检测到的人体姿势。它利用 ML Kit 的
-// Pose Detection API 提供的关键点信息，将人体骨骼结构和关键点可视化。
-//主要功能:
-//绘制姿势关键点: 将检测到的关键点绘制成圆点，并可选择显示其置信度值。
-//绘制骨骼线条: 连接相邻的关键点，形成人体骨骼结构的线条。
-//可视化 Z 轴信息 (可选): 根据关键点的 Z 轴坐标值，调整绘制的颜色，以显示深度信息。
-//显示分类结果: 将姿势分类结果绘制成文本，显示在图像上方。
-//代码解读:
-//构造函数: 接受姿势对象 (Pose)、是否显示置信度 (showInFrameLikelihood)、是否可视化 Z 轴 (visualizeZ)、是否重新缩放 Z 轴 (rescaleZForVisualization) 以及姿势分类结果 (poseClassification) 等参数。
-//draw(Canvas canvas) 方法:
-//获取所有关键点坐标。
-//绘制姿势分类结果文本。
-//遍历所有关键点，并调用 drawPoint 方法绘制关键点圆点。
-//获取特定关键点，例如鼻子、眼睛、肩膀等。
-//使用 drawLine 方法绘制连接关键点的骨骼线条，例如头部、躯干和四肢。
-//如果 showInFrameLikelihood 为 true，则在每个关键点旁边绘制其置信度值。
-//drawPoint(Canvas canvas, PoseLandmark landmark, Paint paint) 方法:
-//获取关键点的三维坐标。
-//根据 Z 轴坐标值更新绘制颜色 (如果 visualizeZ 和 rescaleZForVisualization 为 true)。
-//绘制关键点圆点。
-//drawLine(Canvas canvas, PoseLandmark startLandmark, PoseLandmark endLandmark, Paint paint) 方法:
-//获取起始关键点和结束关键点的三维坐标。
-//计算两点之间 Z 轴坐标的平均值。
-//根据平均 Z 轴坐标值更新绘制颜色 (如果 visualizeZ 和 rescaleZForVisualization 为 true)。
-//绘制连接两点的骨骼线条。
-//代码应用:
-//这个代码可以用于各种需要可视化人体姿势的应用，例如：
-//健身应用: 显示用户的健身动作，并提供实时反馈。
-//运动分析: 分析运动员的动作，并可视化关键点和骨骼结构。
-//康复训练: 帮助患者进行康复训练，并可视化其动作。
-//总结:
-//PoseGraphic 类提供了一种有效的方法，用于可视化人体姿势的关键点和骨骼结构。它可以与 ML Kit 的 Pose Detection API 结合使用，方便地将检测到的姿势显示在应用程序界面上。
\ No newline at end of file
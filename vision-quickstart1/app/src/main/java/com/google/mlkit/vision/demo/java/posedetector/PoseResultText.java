@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.demo.java.posedetector.classification.ClassNameTable;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats {@link PoseResult}s into the lines of text drawn by {@link PoseGraphic}, and by the
+ * Kotlin pose graphic. Each line is kept from the previous result and only formatted again when the
+ * value it shows has changed. Not thread safe.
+ */
+public class PoseResultText {
+  private final List<String> lines = new ArrayList<>();
+
+  private String repLine = "";
+  @Nullable private String repClassName;
+  private int repCount;
+
+  private String matchedRepLine = "";
+  @Nullable private PoseResult.MatchedRep matchedRep;
+
+  private String confidenceLine;
+  // The same class ID names another class once the table is replaced.
+  @Nullable private ClassNameTable classNames;
+  private int classId = -1;
+  // Confidence in hundredths, as shown.
+  private int confidenceHundredths = -1;
+
+  private final List<ExerciseLines> exerciseLines = new ArrayList<>();
+
+  private static class ExerciseLines {
+    private String countLine;
+    private int repCount = -1;
+    private String scoreLine;
+    private float score = Float.NaN;
+    private String durationLine;
+    private long numTimedReps = -1;
+  }
+
+  /**
+   * Returns the lines for {@code result}. The returned list is reused by the next call.
+   *
+   * <p>The lines are, in order: the last rep counted in stream mode and the last one matched if
+   * any, then if a pose was found the most confident class, and the reps, score and latest
+   * duration of each exercise.
+   */
+  public List<String> getLines(@Nullable PoseResult result) {
+    lines.clear();
+    if (result == null) {
+      return lines;
+    }
+    if (result.hasRepCounters()) {
+      lines.add(getRepLine(result));
+    }
+    if (result.getLastMatchedRep() != null) {
+      lines.add(getMatchedRepLine(result.getLastMatchedRep()));
+    }
+    if (!result.isPoseFound()) {
+      return lines;
+    }
+    lines.add(getConfidenceLine(result));
+
+    List<PoseResult.ExerciseProgress> exercises = result.getExercises();
+    if (exerciseLines.size() != exercises.size()) {
+      exerciseLines.clear();
+      for (int i = 0; i < exercises.size(); i++) {
+        exerciseLines.add(new ExerciseLines());
+      }
+    }
+    for (int i = 0; i < exercises.size(); i++) {
+      PoseResult.ExerciseProgress exercise = exercises.get(i);
+      ExerciseLines cached = exerciseLines.get(i);
+      String prefix = exercises.size() > 1 ? exercise.getName() + " " : "";
+      if (cached.repCount != exercise.getRepCount()) {
+        cached.repCount = exercise.getRepCount();
+        cached.countLine = prefix + "数量是" + cached.repCount;
+      }
+      lines.add(cached.countLine);
+      if (Float.compare(cached.score, exercise.getScore()) != 0) {
+        cached.score = exercise.getScore();
+        cached.scoreLine = prefix + "评分为" + cached.score;
+      }
+      lines.add(cached.scoreLine);
+      if (exercise.getNumTimedReps() > 0) {
+        if (cached.numTimedReps != exercise.getNumTimedReps()) {
+          cached.numTimedReps = exercise.getNumTimedReps();
+          cached.durationLine = String.format(
+              Locale.US,
+              "%s动作 %d 持续时间：%.2f 秒",
+              prefix,
+              cached.numTimedReps,
+              exercise.getLatestDurationMs() / 1000f);
+        }
+        lines.add(cached.durationLine);
+      }
+    }
+    return lines;
+  }
+
+  private String getRepLine(PoseResult result) {
+    String className = result.getLastRepClassName();
+    if (className == null) {
+      return "";
+    }
+    if (!className.equals(repClassName) || result.getLastRepCount() != repCount) {
+      repClassName = className;
+      repCount = result.getLastRepCount();
+      repLine = String.format(Locale.US, "%s : %d reps", repClassName, repCount);
+    }
+    return repLine;
+  }
+
+  private String getMatchedRepLine(PoseResult.MatchedRep rep) {
+    // Results of frames until the next rep is found share the same instance.
+    if (rep != matchedRep) {
+      matchedRep = rep;
+      matchedRepLine = String.format(
+          Locale.US,
+          "%s : %d full reps, %.2f match",
+          rep.getName(),
+          rep.getRepCount(),
+          rep.getScore());
+    }
+    return matchedRepLine;
+  }
+
+  private String getConfidenceLine(PoseResult result) {
+    int hundredths = Math.round(result.getConfidence() * 100);
+    if (result.getClassNameTable() != classNames
+        || result.getClassId() != classId
+        || hundredths != confidenceHundredths) {
+      classNames = result.getClassNameTable();
+      classId = result.getClassId();
+      confidenceHundredths = hundredths;
+      confidenceLine = String.format(
+          Locale.US, "%s : %.2f confidence", result.getClassName(), hundredths / 100f);
+    }
+    return confidenceLine;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.min;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import java.io.Reader;
+
+/**
+ * Rules telling the class of a pose from its {@link JointAngles}, for the samples of exercises
+ * whose phases a few angles tell apart, such as squats and push-ups, as read from JSON. See
+ * {@link PoseClassifierGroup} for how they stand in for a search of the samples.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * {"margin": 10, "rules": [
+ *   {"class": "squats_up", "conditions": [
+ *     {"angle": "knee", "min": 160}, {"angle": "torso_incline", "max": 30}]},
+ *   {"class": "squats_down", "conditions": [{"angle": "knee", "max": 100}]}
+ * ]}
+ * }</pre>
+ *
+ * <p>A rule fires with margin when each of its angles is within its bounds by at least the margin,
+ * in degrees. A pose within the margin of a bound of any rule is in the ambiguous band, where no
+ * rule fires.
+ */
+public class AngleRules {
+  // Rules of a sample set are in a file next to it, named after it with this extension.
+  public static final String EXTENSION = ".angles.json";
+  private static final float DEFAULT_MARGIN = 10f;
+
+  private float margin = DEFAULT_MARGIN;
+  private Rule[] rules;
+
+  private static class Rule {
+    @SerializedName("class")
+    private String className;
+    private Condition[] conditions;
+  }
+
+  private static class Condition {
+    // Name of the angle, as in {@link JointAngles#getAngle}.
+    private String angle;
+    private float min = Float.NEGATIVE_INFINITY;
+    private float max = Float.POSITIVE_INFINITY;
+    // Resolved from the name once read.
+    private transient int angleId;
+  }
+
+  /**
+   * Reads rules from a JSON document.
+   *
+   * @throws IllegalArgumentException if there are no rules, or a rule has no class, no conditions
+   *     or an unknown angle.
+   */
+  public static AngleRules parse(Reader reader) {
+    AngleRules angleRules = new Gson().fromJson(reader, AngleRules.class);
+    Preconditions.checkArgument(
+        angleRules != null && angleRules.rules != null && angleRules.rules.length > 0, "No rules");
+    Preconditions.checkArgument(angleRules.margin >= 0, "Negative margin");
+    for (Rule rule : angleRules.rules) {
+      Preconditions.checkArgument(
+          rule.className != null && rule.conditions != null && rule.conditions.length > 0,
+          "Rule without a class or conditions");
+      for (Condition condition : rule.conditions) {
+        condition.angleId = condition.angle != null ? JointAngles.getAngle(condition.angle) : -1;
+        Preconditions.checkArgument(condition.angleId >= 0, "No angle %s", condition.angle);
+      }
+    }
+    return angleRules;
+  }
+
+  public int size() {
+    return rules.length;
+  }
+
+  public String getClassName(int rule) {
+    return rules[rule].className;
+  }
+
+  /**
+   * Returns the rule firing with margin for {@code angles}, as written by
+   * {@link JointAngles#getAngles}, or -1 if none does or they are in the ambiguous band.
+   */
+  public int match(float[] angles) {
+    int match = -1;
+    for (int i = 0; i < rules.length; i++) {
+      float slack = getSlack(rules[i], angles);
+      if (slack > -margin && (slack < margin || match >= 0)) {
+        return -1;
+      }
+      if (slack >= margin) {
+        match = i;
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Returns the fraction of the confidence range a {@code rule} firing with margin for
+   * {@code angles} gives its class: half on the margin, as for an even split between two classes,
+   * growing with how far within its bounds the pose is to all of it at twice the margin.
+   */
+  public float getConfidence(int rule, float[] angles) {
+    if (margin == 0) {
+      return 1;
+    }
+    return min(1, getSlack(rules[rule], angles) / (2 * margin));
+  }
+
+  // Returns how far within its bounds the angle of the rule closest to one is, negative if out of
+  // them.
+  private static float getSlack(Rule rule, float[] angles) {
+    float slack = Float.POSITIVE_INFINITY;
+    for (Condition condition : rule.conditions) {
+      float angle = angles[condition.angleId];
+      slack = min(slack, min(angle - condition.min, condition.max - angle));
+    }
+    return slack;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.flatten;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.negateX;
+import static java.lang.Math.abs;
+import static java.lang.Math.min;
+
+import com.google.common.primitives.Ints;
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-class mean embeddings of {@link PoseSample}s, used by {@link PoseClassifier} as a coarse
+ * stage to pick which classes are worth the full two-stage top-K search.
+ */
+public class ClassCentroids {
+  private final int numSamples;
+  private final int dims;
+  private final float[] weights;
+  // Indices of the samples of each class.
+  private final List<int[]> classSamples;
+  // Class mean embeddings flattened as [class][X, Y, Z per embedding point].
+  private final float[] centroids;
+
+  public ClassCentroids(List<PoseSample> poseSamples, PointF3D axesWeights) {
+    Map<String, List<Integer>> samplesByClass = new LinkedHashMap<>();
+    for (int i = 0; i < poseSamples.size(); i++) {
+      String className = poseSamples.get(i).getClassName();
+      List<Integer> samples = samplesByClass.get(className);
+      if (samples == null) {
+        samples = new ArrayList<>();
+        samplesByClass.put(className, samples);
+      }
+      samples.add(i);
+    }
+    classSamples = new ArrayList<>();
+    for (List<Integer> samples : samplesByClass.values()) {
+      classSamples.add(Ints.toArray(samples));
+    }
+
+    numSamples = poseSamples.size();
+    dims = poseSamples.isEmpty() ? 0 : poseSamples.get(0).getEmbedding().size() * 3;
+    weights = new float[dims];
+    for (int i = 0; i < dims; i += 3) {
+      weights[i] = axesWeights.getX();
+      weights[i + 1] = axesWeights.getY();
+      weights[i + 2] = axesWeights.getZ();
+    }
+    centroids = new float[classSamples.size() * dims];
+    float[] embedding = new float[dims];
+    for (int c = 0; c < classSamples.size(); c++) {
+      int[] samples = classSamples.get(c);
+      for (int sample : samples) {
+        flatten(poseSamples.get(sample).getEmbedding(), embedding, 0);
+        for (int i = 0; i < dims; i++) {
+          centroids[c * dims + i] += embedding[i] / samples.length;
+        }
+      }
+    }
+  }
+
+  public int getNumClasses() {
+    return classSamples.size();
+  }
+
+  /**
+   * Buffers of one classifying thread, reused for every frame so that {@link #getCandidates}
+   * doesn't allocate.
+   */
+  public static class Scratch {
+    private float[] flippedQuery = new float[0];
+    private TopKSelector closestClasses = new TopKSelector(0);
+    private int[] classOrder = new int[0];
+    private float[] classDistances = new float[0];
+    private int[] candidates = new int[0];
+
+    /** Returns the indices of the candidates found by the last {@link #getCandidates} call. */
+    public int[] getCandidates() {
+      return candidates;
+    }
+  }
+
+  /**
+   * Finds the samples of the {@code numClasses} classes whose centroids are closest to either
+   * {@code embedding}, flattened as [point][X, Y, Z], or its mirror (X negated) by weighted mean
+   * distance, and returns how many there are. Their indices are the first ones of
+   * {@link Scratch#getCandidates()}, class by class from the closest. Returns -1 if the closest
+   * excluded class is within {@code fallbackMargin} (relative) of the farthest included one, in
+   * which case the caller should search all samples.
+   */
+  public int getCandidates(
+      float[] embedding, int numClasses, float fallbackMargin, Scratch scratch) {
+    int totalClasses = classSamples.size();
+    if (numClasses <= 0 || numClasses >= totalClasses) {
+      return -1;
+    }
+    // Buffers only grow on the first frames of a thread.
+    if (scratch.flippedQuery.length != dims) {
+      scratch.flippedQuery = new float[dims];
+    }
+    if (scratch.closestClasses.getCapacity() != numClasses + 1) {
+      scratch.closestClasses = new TopKSelector(numClasses + 1);
+      scratch.classOrder = new int[numClasses];
+      scratch.classDistances = new float[numClasses];
+    }
+    if (scratch.candidates.length < numSamples) {
+      scratch.candidates = new int[numSamples];
+    }
+    float[] flippedQuery = scratch.flippedQuery;
+    System.arraycopy(embedding, 0, flippedQuery, 0, dims);
+    negateX(flippedQuery);
+
+    // The closest numClasses + 1 classes: the included ones and the closest excluded one.
+    TopKSelector closestClasses = scratch.closestClasses;
+    closestClasses.clear();
+    for (int c = 0; c < totalClasses; c++) {
+      closestClasses.offer(c, min(distance(embedding, c), distance(flippedQuery, c)));
+    }
+    float firstExcluded = closestClasses.getBound();
+    int excluded = -1;
+    for (int i = 0; i < closestClasses.size(); i++) {
+      if (closestClasses.getDistance(i) == firstExcluded) {
+        excluded = i;
+        break;
+      }
+    }
+
+    // Order the included classes by distance, then class, as a stable sort would.
+    int[] classOrder = scratch.classOrder;
+    float[] classDistances = scratch.classDistances;
+    int numIncluded = 0;
+    for (int i = 0; i < closestClasses.size(); i++) {
+      if (i == excluded) {
+        continue;
+      }
+      int c = closestClasses.getIndex(i);
+      float distance = closestClasses.getDistance(i);
+      int position = numIncluded++;
+      while (position > 0
+          && (classDistances[position - 1] > distance
+              || (classDistances[position - 1] == distance && classOrder[position - 1] > c))) {
+        classOrder[position] = classOrder[position - 1];
+        classDistances[position] = classDistances[position - 1];
+        position--;
+      }
+      classOrder[position] = c;
+      classDistances[position] = distance;
+    }
+    float lastIncluded = classDistances[numClasses - 1];
+    if (firstExcluded - lastIncluded <= fallbackMargin * firstExcluded) {
+      return -1;
+    }
+
+    int[] candidates = scratch.candidates;
+    int numCandidates = 0;
+    for (int i = 0; i < numClasses; i++) {
+      int[] samples = classSamples.get(classOrder[i]);
+      System.arraycopy(samples, 0, candidates, numCandidates, samples.length);
+      numCandidates += samples.length;
+    }
+    return numCandidates;
+  }
+
+  private float distance(float[] query, int centroid) {
+    int offset = centroid * dims;
+    float sum = 0;
+    for (int i = 0; i < dims; i++) {
+      sum += abs((centroids[offset + i] - query[i]) * weights[i]);
+    }
+    return sum / dims;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Interns pose class names to dense integer IDs, in order of first appearance. Immutable, so one
+ * table can be shared by a {@link PoseClassifier} and all the {@link ClassificationResult}s it
+ * produces.
+ */
+public class ClassNameTable {
+  private static final ClassNameTable EMPTY = new ClassNameTable(ImmutableList.of());
+
+  private final ImmutableList<String> names;
+  private final ImmutableMap<String, Integer> ids;
+
+  private ClassNameTable(List<String> names) {
+    this.names = ImmutableList.copyOf(names);
+    ImmutableMap.Builder<String, Integer> ids = ImmutableMap.builder();
+    for (int i = 0; i < names.size(); i++) {
+      ids.put(names.get(i), i);
+    }
+    this.ids = ids.build();
+  }
+
+  public static ClassNameTable empty() {
+    return EMPTY;
+  }
+
+  /** Returns a table of the distinct class names of the given samples. */
+  public static ClassNameTable fromSamples(List<PoseSample> poseSamples) {
+    Set<String> names = new LinkedHashSet<>();
+    for (PoseSample poseSample : poseSamples) {
+      names.add(poseSample.getClassName());
+    }
+    return new ClassNameTable(ImmutableList.copyOf(names));
+  }
+
+  /** Returns a table of the distinct names of the given tables, in order. */
+  public static ClassNameTable union(List<ClassNameTable> tables) {
+    Set<String> names = new LinkedHashSet<>();
+    for (ClassNameTable table : tables) {
+      names.addAll(table.names);
+    }
+    return new ClassNameTable(ImmutableList.copyOf(names));
+  }
+
+  /** Returns a table with the names of this one followed by {@code name}. */
+  ClassNameTable with(String name) {
+    return new ClassNameTable(
+        ImmutableList.<String>builder().addAll(names).add(name).build());
+  }
+
+  public int size() {
+    return names.size();
+  }
+
+  public String getName(int id) {
+    return names.get(id);
+  }
+
+  /** Returns the ID of the given class name, or -1 if it isn't in the table. */
+  public int getId(String name) {
+    Integer id = ids.get(name);
+    return id != null ? id : -1;
+  }
+
+  public ImmutableList<String> getNames() {
+    return names;
+  }
+
+  public ImmutableSet<String> getNameSet() {
+    return ids.keySet();
+  }
+}
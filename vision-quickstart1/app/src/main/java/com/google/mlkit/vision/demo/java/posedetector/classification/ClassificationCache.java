@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+
+import androidx.annotation.Nullable;
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.Random;
+
+/**
+ * The last few poses a {@link PoseClassifier} classified on one thread, with their results and
+ * nearest samples, so that a pose held over consecutive frames isn't searched for again.
+ *
+ * <p>Entries are keyed by a locality-sensitive hash of the weighted embedding: its projections on
+ * a few fixed random directions, quantized to cells. A pose hashing to the key of an entry is only
+ * as close to it as the cells are wide though, so the classifier checks how far it actually moved
+ * against the gaps of the entry before reusing anything:
+ *
+ * <ul>
+ *   <li>Every max and mean distance moves at most as much as the pose did, so if that is under
+ *       half the gap between the last kept and first dropped sample of both stages, the nearest
+ *       samples and the result are the same.
+ *   <li>Otherwise the samples that could now be nearest are among the entry's candidates, the
+ *       nearest ones past the max distance top-K, as long as the top-K among them stays closer
+ *       than the farthest candidate was minus the move. Only they are searched then.
+ * </ul>
+ *
+ * Either way the result is the one a full search would give, but for ties. The classifier may
+ * also reuse the result of an entry the pose moved less than a tolerance from, which is then only
+ * close to the one of a full search. Entries are replaced least recently used first and reuse
+ * their arrays, so a hit doesn't allocate besides the copy of the result. Not thread safe.
+ */
+public class ClassificationCache {
+  private static final int NUM_PROJECTIONS = 3;
+  // Fixed, so that keys don't change across runs.
+  private static final long PROJECTIONS_SEED = 20200601L;
+
+  /** A classified pose. */
+  static class Entry {
+    // Weighted embedding, flattened as [point][X, Y, Z].
+    final float[] query;
+    // Sample indices, the ones after the classifier's samples being enrolled ones, by ascending
+    // max distance.
+    final int[] candidates;
+    int numCandidates;
+    // Max distances of the candidates, then mean distances of the kept ones, while filling in.
+    final float[] distances;
+    // Max distance of the last candidate, infinite if every sample is a candidate.
+    float candidateBound;
+    // Gaps between the last kept and first dropped max and mean distances, infinite if none were
+    // dropped.
+    float maxDistanceGap;
+    float meanDistanceGap;
+    // Number of enrolled samples searched, entries are stale once more are enrolled.
+    int numEnrolled;
+    ClassificationResult result;
+    long key;
+    long lastUse = -1;
+
+    private Entry(int dims, int numCandidates) {
+      query = new float[dims];
+      candidates = new int[numCandidates];
+      distances = new float[numCandidates];
+    }
+
+    /** Returns the weighted max distance between {@code query} and the pose of the entry. */
+    float getMaxShift(float[] query) {
+      float shift = 0;
+      for (int i = 0; i < query.length; i++) {
+        shift = max(shift, abs(query[i] - this.query[i]));
+      }
+      return shift;
+    }
+
+    /**
+     * Returns how much the mean distance of any sample can differ between {@code query} and the
+     * pose of the entry, in the units of {@link PoseClassifier}.
+     */
+    float getMeanShift(float[] query) {
+      float sum = 0;
+      for (int i = 0; i < query.length; i++) {
+        sum += abs(query[i] - this.query[i]);
+      }
+      return sum / (query.length / 3 * 2);
+    }
+  }
+
+  private final float cellSize;
+  // Unit directions as [projection][dimension].
+  private final float[] projections;
+  private final float[] weights;
+  private final Entry[] entries;
+  private final float[] query;
+  private long numUses;
+
+  /**
+   * @param size number of poses to remember.
+   * @param dims size of the flattened embedding.
+   * @param numCandidates number of nearest samples to remember per pose.
+   * @param cellSize width of the hash cells, in weighted embedding units.
+   */
+  public ClassificationCache(
+      int size, int dims, int numCandidates, float cellSize, PointF3D axesWeights) {
+    this.cellSize = cellSize;
+    entries = new Entry[size];
+    for (int i = 0; i < size; i++) {
+      entries[i] = new Entry(dims, numCandidates);
+    }
+    query = new float[dims];
+    weights = new float[] {axesWeights.getX(), axesWeights.getY(), axesWeights.getZ()};
+    projections = new float[NUM_PROJECTIONS * dims];
+    Random random = new Random(PROJECTIONS_SEED);
+    for (int p = 0; p < NUM_PROJECTIONS; p++) {
+      double norm = 0;
+      for (int i = 0; i < dims; i++) {
+        float value = (float) random.nextGaussian();
+        projections[p * dims + i] = value;
+        norm += value * value;
+      }
+      for (int i = 0; i < dims; i++) {
+        projections[p * dims + i] /= (float) Math.sqrt(norm);
+      }
+    }
+  }
+
+  /**
+   * Weighs {@code embedding}, flattened as [point][X, Y, Z], into the query buffer, which is
+   * overwritten by the next call, and returns it.
+   */
+  float[] setQuery(float[] embedding) {
+    for (int i = 0; i < query.length; i += 3) {
+      query[i] = embedding[i] * weights[0];
+      query[i + 1] = embedding[i + 1] * weights[1];
+      query[i + 2] = embedding[i + 2] * weights[2];
+    }
+    return query;
+  }
+
+  /** Returns the entry with the key of {@code query}, if any. */
+  @Nullable
+  Entry get(float[] query) {
+    long key = getKey(query);
+    for (Entry entry : entries) {
+      if (entry.lastUse >= 0 && entry.key == key) {
+        entry.lastUse = numUses++;
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns {@code stale}, or the least recently used entry if null, keyed and filled with
+   * {@code query} for the caller to fill in the rest.
+   */
+  Entry replace(float[] query, @Nullable Entry stale) {
+    Entry entry = stale != null ? stale : entries[0];
+    for (int i = 0; stale == null && i < entries.length; i++) {
+      if (entries[i].lastUse < entry.lastUse) {
+        entry = entries[i];
+      }
+    }
+    System.arraycopy(query, 0, entry.query, 0, query.length);
+    entry.key = getKey(query);
+    entry.lastUse = numUses++;
+    return entry;
+  }
+
+  private long getKey(float[] query) {
+    long key = 0;
+    for (int p = 0; p < NUM_PROJECTIONS; p++) {
+      float projection = 0;
+      for (int i = 0; i < query.length; i++) {
+        projection += projections[p * query.length + i] * query[i];
+      }
+      key = key * 31 + (long) Math.floor(projection / cellSize);
+    }
+    return key;
+  }
+}
@@ -16,72 +16,96 @@
 
 package com.google.mlkit.vision.demo.java.posedetector.classification;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Set;
 
-import static java.util.Collections.max;
-
 /**
  * Represents Pose classification result as outputted by {@link PoseClassifier}. Can be manipulated.
+ *
+ * <p>Confidences are indexed by the class IDs of a {@link ClassNameTable}. The String-keyed
+ * methods look the ID up in that table and are kept for callers that work with class names.
  */
 public class ClassificationResult {
-  // For an entry in this map, the key is the class name, and the value is how many times this class
-  // appears in the top K nearest neighbors. The value is in range [0, K] and could be a float after
-  // EMA smoothing. We use this number to represent the confidence of a pose being in this class.
-  private final Map<String, Float> classConfidences;
+  private ClassNameTable classNames;
+  // For a class ID, how many times this class appears in the top K nearest neighbors. The value is
+  // in range [0, K] and could be a float after EMA smoothing. We use this number to represent the
+  // confidence of a pose being in this class.
+  private float[] classConfidences;
 
   public ClassificationResult() {
-    classConfidences = new HashMap<>();
+    this(ClassNameTable.empty());
   }
 
+  public ClassificationResult(ClassNameTable classNames) {
+    this.classNames = classNames;
+    classConfidences = new float[classNames.size()];
+  }
+
+  public ClassNameTable getClassNames() {
+    return classNames;
+  }
+
+  /** Returns the names of all classes of the result, including ones with zero confidence. */
   public Set<String> getAllClasses() {
-    return classConfidences.keySet();
+    return classNames.getNameSet();
+  }
+
+  public float getClassConfidence(int classId) {
+    return classConfidences[classId];
   }
 
   public float getClassConfidence(String className) {
-    return classConfidences.containsKey(className) ? classConfidences.get(className) : 0;
+    int classId = classNames.getId(className);
+    return classId >= 0 ? classConfidences[classId] : 0;
   }
 
+  /**
+   * Returns the ID of the class with the highest confidence, the lowest ID on ties, or -1 if the
+   * result has no classes.
+   */
+  public int getMaxConfidenceClassId() {
+    int maxClassId = -1;
+    for (int i = 0; i < classConfidences.length; i++) {
+      if (maxClassId < 0 || classConfidences[i] > classConfidences[maxClassId]) {
+        maxClassId = i;
+      }
+    }
+    return maxClassId;
+  }
+
+  /** Returns the name of the class with the highest confidence, or null if there are no classes. */
   public String getMaxConfidenceClass() {
-    return max(
-        classConfidences.entrySet(),
-        (entry1, entry2) -> (int) (entry1.getValue() - entry2.getValue()))
-        .getKey();
+    int maxClassId = getMaxConfidenceClassId();
+    return maxClassId >= 0 ? classNames.getName(maxClassId) : null;
+  }
+
+  public void incrementClassConfidence(int classId) {
+    classConfidences[classId]++;
   }
 
   public void incrementClassConfidence(String className) {
-    classConfidences.put(className,
-        classConfidences.containsKey(className) ? classConfidences.get(className) + 1 : 1);
+    // The ID first: adding a class replaces the array, and an array access reads the array
+    // reference before evaluating the index.
+    int classId = getOrAddClassId(className);
+    classConfidences[classId]++;
+  }
+
+  public void putClassConfidence(int classId, float confidence) {
+    classConfidences[classId] = confidence;
   }
 
   public void putClassConfidence(String className, float confidence) {
-    classConfidences.put(className, confidence);
+    int classId = getOrAddClassId(className);
+    classConfidences[classId] = confidence;
   }
-}
 
-//代码解析: ClassificationResult 类用于存储和操作姿势分类结果
-//这个 Java 代码定义了一个名为 ClassificationResult 的类，其作用是存储和操作姿势分类的结果。它主要用于表示 PoseClassifier 类输出的分类结果，并提供一些方
-// 法来获取和修改分类结果的置信度。
-//主要功能：
-//存储分类结果: classConfidences 字典用于存储每个姿势类别的置信度。字典的键是类别的名称 (String 类型)，值是该类别出现的次数 (Float 类型)。
-//获取所有类别: getAllClasses() 方法返回所有已识别姿势类别的集合 (Set 类型)。
-//获取特定类别的置信度: getClassConfidence(className) 方法返回指定类别的置信度 (Float 类型)。如果没有该类别，则返回 0。
-//获取置信度最高的类别: getMaxConfidenceClass() 方法返回置信度最高的类别的名称 (String 类型)。
-//增加类别的置信度: incrementClassConfidence(className) 方法将指定类别的置信度加 1。
-//设置类别的置信度: putClassConfidence(className, confidence) 方法将指定类别的置信度设置为给定的值。
-//代码解读：
-//classConfidences：这个字典用于存储每个类别的置信度。置信度可以是整数，表示该类别在K个最近邻中出现的次数；也可以是浮点数，表示经过指数移动平均 (EMA) 平滑后的置信度。
-//getAllClasses()：这个方法返回 classConfidences 字典的所有键，即所有已识别的类别。
-//getClassConfidence(className)：这个方法返回指定类别的置信度。如果 classConfidences 字典中不存在该类别，则返回 0。
-//getMaxConfidenceClass()：这个方法使用 lambda 表达式找到 classConfidences 字典中值最大的键，即置信度最高的类别。
-//incrementClassConfidence(className)：这个方法将指定类别的置信度加 1。如果该类别不存在，则将其置信度设置为 1。
-//putClassConfidence(className, confidence)：这个方法将指定类别的置信度设置为给定的值。
-//代码应用：
-//这个代码可以用于各种姿势分类的应用，例如：
-//健身应用: 识别用户的健身动作，并给出反馈。
-//运动分析: 分析运动员的动作，判断动作是否标准。
-//人机交互: 使用姿势进行控制或交互。
-//虚拟现实: 将用户的姿势映射到虚拟角色上。
-//总结：
-//ClassificationResult 类提供了一种方便的方式来存储和操作姿势分类的结果。它提供了各种方法来获取和修改分类结果的置信度，可以方便地用于各种姿势分类的应用。
\ No newline at end of file
+  private int getOrAddClassId(String className) {
+    int classId = classNames.getId(className);
+    if (classId < 0) {
+      classId = classNames.size();
+      classNames = classNames.with(className);
+      classConfidences = Arrays.copyOf(classConfidences, classNames.size());
+    }
+    return classId;
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import android.os.SystemClock;
+
+/**
+ * Monotonic time source for the time-dependent parts of pose classification. Can be replaced to
+ * replay recorded input deterministically.
+ */
+public interface Clock {
+  /** Reads {@link SystemClock#elapsedRealtime()}. */
+  Clock SYSTEM = SystemClock::elapsedRealtime;
+
+  /** Returns milliseconds since some fixed point, never going backwards. */
+  long elapsedRealtime();
+}
@@ -16,14 +16,14 @@
 
 package com.google.mlkit.vision.demo.java.posedetector.classification;
 
-import android.os.SystemClock;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
 
 /**
  * Runs EMA smoothing over a window with given stream of pose classification results.
+ *
+ * <p>The window is a ring of confidences per class, and the weighted sums over it are updated
+ * incrementally, so a new result costs O(classes) and allocates nothing once the ring is set up.
  */
 public class EMASmoothing {
   private static final int DEFAULT_WINDOW_SIZE = 10;
@@ -32,10 +32,24 @@ public class EMASmoothing {
   private static final long RESET_THRESHOLD_MS = 100;
 
   private final int windowSize;
-  private final float alpha;
-  // This is a window of {@link ClassificationResult}s as outputted by the {@link PoseClassifier}.
-  // We run smoothing over this window of size {@link windowSize}.
-  private final Deque<ClassificationResult> window;
+  private final float decay;
+  // Sum of the weights of a window holding the given number of results.
+  private final float[] weightSums;
+  // Weight of the oldest result of a full window.
+  private final float oldestWeight;
+  private final Clock clock;
+
+  // Classes of the results in the window. The window is reset when they change.
+  private ClassNameTable classNames;
+  // This is a window of confidences as outputted by the {@link PoseClassifier}, as
+  // [result][class ID], holding the last {@link windowSize} results.
+  private float[][] window;
+  private int newest = -1;
+  private int size;
+  // Sum over the window of confidence times weight, per class. The newest result has weight 1, and
+  // each older one (1 - alpha) times the weight of the next.
+  private float[] weightedSums;
+  private ClassificationResult smoothedResult;
 
   private long lastInputMs;
 
@@ -43,78 +57,106 @@ public class EMASmoothing {
     this(DEFAULT_WINDOW_SIZE, DEFAULT_ALPHA);
   }
 
+  public EMASmoothing(Clock clock) {
+    this(DEFAULT_WINDOW_SIZE, DEFAULT_ALPHA, clock);
+  }
+
   public EMASmoothing(int windowSize, float alpha) {
+    this(windowSize, alpha, Clock.SYSTEM);
+  }
+
+  public EMASmoothing(int windowSize, float alpha, Clock clock) {
+    Preconditions.checkArgument(windowSize > 0);
     this.windowSize = windowSize;
-    this.alpha = alpha;
-    this.window = new LinkedBlockingDeque<>(windowSize);
+    this.decay = (float) (1.0 - alpha);
+    this.clock = clock;
+    weightSums = new float[windowSize + 1];
+    float weight = 1;
+    float lastWeight = 1;
+    for (int i = 0; i < windowSize; i++) {
+      weightSums[i + 1] = weightSums[i] + weight;
+      lastWeight = weight;
+      weight = (float) (weight * (1.0 - alpha));
+    }
+    oldestWeight = lastWeight;
+    setClassNames(ClassNameTable.empty());
+  }
+
+  /**
+   * Switches the window to the classes of {@code classNames}. Results already in the window are
+   * kept for the classes in both tables, and count as 0 for new classes, so that smoothing goes on
+   * across a change of classifier.
+   */
+  private void setClassNames(ClassNameTable classNames) {
+    float[][] oldWindow = window;
+    float[] oldWeightedSums = weightedSums;
+    window = new float[windowSize][classNames.size()];
+    weightedSums = new float[classNames.size()];
+    if (size > 0) {
+      for (int oldId = 0; oldId < this.classNames.size(); oldId++) {
+        int newId = classNames.getId(this.classNames.getName(oldId));
+        if (newId < 0) {
+          continue;
+        }
+        for (int i = 0; i < windowSize; i++) {
+          window[i][newId] = oldWindow[i][oldId];
+        }
+        weightedSums[newId] = oldWeightedSums[oldId];
+      }
+    }
+    this.classNames = classNames;
+    smoothedResult = new ClassificationResult(classNames);
+  }
+
+  /**
+   * Notes a frame that wasn't classified. Unlike a result without confidence, it isn't added to the
+   * window, but it keeps the window from being reset as if the input had stopped.
+   */
+  public void skipFrame() {
+    lastInputMs = clock.elapsedRealtime();
   }
 
+  /**
+   * Adds {@code classificationResult} to the window and returns the smoothed confidences.
+   *
+   * <p>The returned result is owned by the smoother and is overwritten by the next call.
+   */
   public ClassificationResult getSmoothedResult(ClassificationResult classificationResult) {
     // Resets memory if the input is too far away from the previous one in time.
-    long nowMs = SystemClock.elapsedRealtime();
+    long nowMs = clock.elapsedRealtime();
     if (nowMs - lastInputMs > RESET_THRESHOLD_MS) {
-      window.clear();
+      size = 0;
     }
     lastInputMs = nowMs;
 
-    // If we are at window size, remove the last (oldest) result.
-    if (window.size() == windowSize) {
-      window.pollLast();
+    if (classificationResult.getClassNames() != classNames) {
+      setClassNames(classificationResult.getClassNames());
     }
-    // Insert at the beginning of the window.
-    window.addFirst(classificationResult);
-
-    Set<String> allClasses = new HashSet<>();
-    for (ClassificationResult result : window) {
-      allClasses.addAll(result.getAllClasses());
+    if (size == 0) {
+      Arrays.fill(weightedSums, 0);
     }
 
-    ClassificationResult smoothedResult = new ClassificationResult();
-
-    for (String className : allClasses) {
-      float factor = 1;
-      float topSum = 0;
-      float bottomSum = 0;
-      for (ClassificationResult result : window) {
-        float value = result.getClassConfidence(className);
-
-        topSum += factor * value;
-        bottomSum += factor;
-
-        factor = (float) (factor * (1.0 - alpha));
+    // The newest result takes the slot of the oldest one, whose contribution is dropped before
+    // all weights decay by one step.
+    newest = (newest + 1) % windowSize;
+    float[] values = window[newest];
+    boolean full = size == windowSize;
+    for (int classId = 0; classId < values.length; classId++) {
+      float sum = weightedSums[classId];
+      if (full) {
+        sum -= oldestWeight * values[classId];
       }
-      smoothedResult.putClassConfidence(className, topSum / bottomSum);
+      float value = classificationResult.getClassConfidence(classId);
+      values[classId] = value;
+      weightedSums[classId] = value + decay * sum;
+    }
+    if (!full) {
+      size++;
     }
 
+    for (int classId = 0; classId < values.length; classId++) {
+      smoothedResult.putClassConfidence(classId, weightedSums[classId] / weightSums[size]);
+    }
     return smoothedResult;
   }
 }
-//代码解析：EMASmoothing 类用于对姿势分类结果进行指数移动平均平滑
-//这段 Java 代码定义了一个名为 EMASmoothing 的类，其作用是对一系列姿势分类结果进行指数移动平均 (EMA) 平滑处理。EMA 是一种常用的时间序列数据平滑方法，可
-// 以减少噪声的影响，使结果更加稳定。
-//主要功能：
-//维护一个结果窗口： window 存储了最近的 windowSize 个 ClassificationResult 对象。
-//执行 EMA 平滑： getSmoothedResult(classificationResult) 方法接受一个新的分类结果，并将其加入窗口。然后，它计算所有类别的 EMA 平滑值
-// ，并返回一个新的 ClassificationResult 对象，其中包含平滑后的置信度。
-//重置机制： 如果当前输入与上一次输入的时间间隔超过 RESET_THRESHOLD_MS，则清空窗口，重新开始平滑。
-//代码解读：
-//windowSize：窗口大小，即存储的分类结果数量。
-//alpha：EMA 平滑因子，控制平滑程度。较大的 alpha 值会使平滑结果更接近于最新数据，而较小的 alpha 值会使平滑结果更加平稳。
-//window：一个双端队列，用于存储最近的分类结果。
-//lastInputMs：上一次输入的时间戳。
-//getSmoothedResult(classificationResult)：
-//检查当前输入与上一次输入的时间间隔，如果超过阈值，则清空窗口。
-//将新的分类结果加入窗口，如果窗口已满，则移除最旧的结果。
-//遍历所有类别，计算每个类别的 EMA 平滑值：
-//factor：权重因子，随着时间的推移呈指数衰减。
-//topSum：加权置信度之和。
-//bottomSum：权重因子之和。
-//将平滑后的置信度存储到新的 ClassificationResult 分类结果 对象中，并返回。
-//代码应用：
-//这个代码可以用于各种需要平滑处理姿势分类结果的应用，例如：
-//健身应用: 减少姿势分类结果的抖动，使动作识别更稳定。
-//运动分析: 平滑运动员的动作数据，便于观察趋势和变化。
-//人机交互: 提高姿势控制的稳定性。
-//虚拟现实: 使虚拟角色的动作更流畅。
-//总结：
-//EMASmoothing EMA平滑 类提供了一种简单有效的方法，对姿势分类结果进行平滑处理，可以提高结果的稳定性和可靠性。它可以作为姿势识别和分析应用中的一个重要组件。
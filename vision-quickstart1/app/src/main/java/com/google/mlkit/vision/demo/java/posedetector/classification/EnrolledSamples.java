@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import android.util.Log;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.common.PointF3D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pose samples recorded on the device, which {@link PoseClassifier}s built with them classify
+ * against next to their own samples, without being rebuilt.
+ *
+ * <p>Samples are appended from any thread, with their features of {@link PoseEmbedding} computed
+ * once and packed into growing primitive arrays, and written to the end of a file in the CSV
+ * format of {@link PoseSample#getPoseSample} to be read back on the next start. Classifying threads
+ * read a {@link Snapshot} without locking: samples are written past the end of the last snapshot
+ * and then published with a new one, so a snapshot never changes.
+ */
+public class EnrolledSamples {
+  private static final String TAG = "EnrolledSamples";
+  private static final int NUM_DIMS = 3;
+  // Floats per sample.
+  private static final int SAMPLE_SIZE = PoseEmbedding.NUM_FEATURES * NUM_DIMS;
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The samples enrolled up to some point. Immutable. */
+  static class Snapshot {
+    private static final Snapshot EMPTY = new Snapshot(new float[0], new String[0], 0);
+
+    // All features of each sample, packed as [sample][feature][X, Y, Z].
+    final float[] features;
+    final String[] classNames;
+    final int size;
+
+    private Snapshot(float[] features, String[] classNames, int size) {
+      this.features = features;
+      this.classNames = classNames;
+      this.size = size;
+    }
+  }
+
+  @Nullable private final File file;
+  @GuardedBy("this")
+  @Nullable
+  private Writer writer;
+  // Backing arrays of the snapshots, which only grow. Entries past the snapshot are only written
+  // while holding the lock.
+  @GuardedBy("this")
+  private float[] features = new float[0];
+  @GuardedBy("this")
+  private String[] classNames = new String[0];
+  private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+  /**
+   * Returns the samples in {@code file}, to which new ones are appended. Lines that aren't valid
+   * samples, such as one cut short when the app was killed, are skipped.
+   */
+  public static EnrolledSamples open(File file) throws IOException {
+    EnrolledSamples enrolledSamples = new EnrolledSamples(file);
+    if (file.exists()) {
+      enrolledSamples.read(file);
+    }
+    return enrolledSamples;
+  }
+
+  /** Returns an empty store whose samples are only kept in memory. */
+  public static EnrolledSamples inMemory() {
+    return new EnrolledSamples(null);
+  }
+
+  private EnrolledSamples(@Nullable File file) {
+    this.file = file;
+  }
+
+  public int size() {
+    return snapshot.size;
+  }
+
+  /**
+   * Enrolls the pose given by {@code landmarks} as a sample of {@code className}, writing it to
+   * the file first. Amortized constant time besides computing its features.
+   *
+   * @throws IllegalArgumentException if no pose was found.
+   */
+  public synchronized void add(String name, String className, PoseLandmarks landmarks)
+      throws IOException {
+    Preconditions.checkArgument(!landmarks.isEmpty(), "No pose to enroll");
+    Preconditions.checkArgument(
+        !name.contains(",") && !className.contains(","), "Names can't contain commas");
+    if (file != null) {
+      if (writer == null) {
+        writer = openWriter(file);
+      }
+      StringBuilder csvLine = new StringBuilder(name).append(',').append(className);
+      for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+        csvLine.append(',').append(landmarks.getX(i))
+            .append(',').append(landmarks.getY(i))
+            .append(',').append(landmarks.getZ(i));
+      }
+      writer.write(csvLine.append('\n').toString());
+      writer.flush();
+    }
+    append(className, PoseEmbedding.getAllFeatures(landmarks.getPositions3D()));
+  }
+
+  /** Closes the file, samples can still be classified against. */
+  public synchronized void close() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Error when closing " + file + ".\n" + e);
+      }
+      writer = null;
+    }
+  }
+
+  /** Returns the samples enrolled so far. Lock-free. */
+  Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  @GuardedBy("this")
+  private void append(String className, List<PointF3D> allFeatures) {
+    int size = snapshot.size;
+    if (size == classNames.length) {
+      int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+      // Snapshots taken so far keep the old arrays, which are no longer written.
+      features = Arrays.copyOf(features, capacity * SAMPLE_SIZE);
+      classNames = Arrays.copyOf(classNames, capacity);
+    }
+    int offset = size * SAMPLE_SIZE;
+    for (PointF3D feature : allFeatures) {
+      features[offset++] = feature.getX();
+      features[offset++] = feature.getY();
+      features[offset++] = feature.getZ();
+    }
+    classNames[size] = className;
+    // Publishes the sample: whoever reads the new snapshot also sees the writes above.
+    snapshot = new Snapshot(features, classNames, size + 1);
+  }
+
+  private synchronized void read(File file) throws IOException {
+    int numInvalid = 0;
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      for (String csvLine = reader.readLine(); csvLine != null; csvLine = reader.readLine()) {
+        if (csvLine.trim().isEmpty()) {
+          continue;
+        }
+        PoseSample poseSample = PoseSample.getPoseSample(csvLine, ",");
+        if (poseSample == null) {
+          numInvalid++;
+          continue;
+        }
+        append(poseSample.getClassName(), poseSample.getAllFeatures());
+      }
+    }
+    if (numInvalid > 0) {
+      Log.w(TAG, "Skipped " + numInvalid + " invalid pose samples in " + file);
+    }
+  }
+
+  // Opens the file for appending, after ending a line cut short if there is one.
+  private static Writer openWriter(File file) throws IOException {
+    boolean endLine = false;
+    if (file.length() > 0) {
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+        randomAccessFile.seek(file.length() - 1);
+        endLine = randomAccessFile.read() != '\n';
+      }
+    } else if (file.getParentFile() != null) {
+      file.getParentFile().mkdirs();
+    }
+    Writer writer = new FileWriter(file, /* append= */ true);
+    if (endLine) {
+      writer.write('\n');
+    }
+    return writer;
+  }
+}
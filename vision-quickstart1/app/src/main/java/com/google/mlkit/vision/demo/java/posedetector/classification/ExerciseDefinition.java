@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Declarative definition of an exercise as a state machine over pose classes, as read from JSON.
+ * See {@link ExerciseStateMachine} for how it is evaluated.
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * {"exercises": [{
+ *   "name": "squats",
+ *   "states": ["UP", "DOWN"],
+ *   "initialState": "UP",
+ *   "transitions": [
+ *     {"from": "UP", "to": "DOWN", "class": "squats_down", "minConfidence": 0.6},
+ *     {"from": "DOWN", "to": "UP", "class": "squats_up", "minDwellMs": 200, "count": 1}
+ *   ]
+ * }]}
+ * }</pre>
+ */
+public class ExerciseDefinition {
+  private String name;
+  private List<String> states;
+  private String initialState;
+  private List<Transition> transitions;
+
+  /** A transition out of a state, with the actions to run when it is taken. */
+  public static class Transition {
+    private String from;
+    private String to;
+    // Class that triggers the transition when it is the most confident one. A transition without
+    // a class is taken on any class that has no transition of its own from the same state.
+    @SerializedName("class")
+    private String className;
+    // Minimum confidence of the class, in range [0, 1].
+    private float minConfidence;
+    // Minimum time spent in the current state before the transition can be taken. A frame that
+    // misses either minimum is dropped, even if the state has a transition without a class.
+    private long minDwellMs;
+    // Number of reps added.
+    private int count;
+    // Whether the confidence of the class is added to the score.
+    private boolean score;
+    // Whether to start timing the exercise, if it isn't timed yet.
+    private boolean startTimer;
+    // Whether to record the time since the timer was started.
+    private boolean recordDuration;
+
+    public String getFrom() {
+      return from;
+    }
+
+    public String getTo() {
+      return to;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public float getMinConfidence() {
+      return minConfidence;
+    }
+
+    public long getMinDwellMs() {
+      return minDwellMs;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public boolean isScored() {
+      return score;
+    }
+
+    public boolean startsTimer() {
+      return startTimer;
+    }
+
+    public boolean recordsDuration() {
+      return recordDuration;
+    }
+  }
+
+  private static class ExerciseList {
+    private ExerciseDefinition[] exercises;
+  }
+
+  /** Reads the {@code "exercises"} array of a JSON document. */
+  public static List<ExerciseDefinition> parse(Reader reader) {
+    ExerciseList list = new Gson().fromJson(reader, ExerciseList.class);
+    if (list == null || list.exercises == null) {
+      return new ArrayList<>();
+    }
+    return Arrays.asList(list.exercises);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<String> getStates() {
+    return states;
+  }
+
+  public String getInitialState() {
+    return initialState;
+  }
+
+  public List<Transition> getTransitions() {
+    return transitions;
+  }
+}
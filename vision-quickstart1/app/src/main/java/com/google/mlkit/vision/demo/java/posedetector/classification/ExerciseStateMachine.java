@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import android.util.Log;
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs an {@link ExerciseDefinition} over a stream of classified frames, counting reps, scoring
+ * them and timing them, and keeps {@link WorkoutAnalytics} of the session in constant memory.
+ *
+ * <p>The definition is compiled into a table of [state][class ID] transitions for the
+ * {@link ClassNameTable} of a classifier, so a frame is one table lookup and a few comparisons,
+ * without allocation.
+ *
+ * <p>A frame looks up one transition: the one for its class from the current state if there is
+ * one, else the state's transition without a class. If that transition's minimum confidence or
+ * minimum dwell time isn't met, the frame is dropped. A class with a transition of its own never
+ * falls back to the transition without a class, so that a frame of that class which isn't
+ * confident enough yet doesn't count as a frame of any other class.
+ */
+public class ExerciseStateMachine {
+  private static final String TAG = "ExerciseStateMachine";
+  private static final int NO_TRANSITION = -1;
+
+  private final String name;
+  private final String[] stateNames;
+  private final int initialState;
+  private final List<ExerciseDefinition.Transition> transitions;
+  private final int[] fromStates;
+  private final int[] targetStates;
+  private final float[] minConfidences;
+  private final long[] minDwellMs;
+  private final int[] counts;
+  private final boolean[] scored;
+  private final boolean[] startsTimer;
+  private final boolean[] recordsDuration;
+  private int numClasses;
+  // Transition taken from [state][class ID], as an index into the arrays above.
+  private int[] transitionTable;
+
+  private int state;
+  private boolean started;
+  private long stateEnteredMs;
+  private int repCount;
+  private float scoreSum;
+  private int scoreCount;
+  private boolean timerStarted;
+  private long timerStartMs;
+  private final WorkoutAnalytics analytics;
+
+  public ExerciseStateMachine(ExerciseDefinition definition, ClassNameTable classNames) {
+    name = definition.getName();
+    List<String> states = definition.getStates();
+    Preconditions.checkArgument(states != null && !states.isEmpty(), "%s has no states", name);
+    stateNames = states.toArray(new String[0]);
+    initialState = getState(definition.getInitialState());
+    analytics = new WorkoutAnalytics(stateNames.length);
+
+    transitions = definition.getTransitions() != null
+        ? definition.getTransitions() : Collections.emptyList();
+    int numTransitions = transitions.size();
+    fromStates = new int[numTransitions];
+    targetStates = new int[numTransitions];
+    minConfidences = new float[numTransitions];
+    minDwellMs = new long[numTransitions];
+    counts = new int[numTransitions];
+    scored = new boolean[numTransitions];
+    startsTimer = new boolean[numTransitions];
+    recordsDuration = new boolean[numTransitions];
+    for (int i = 0; i < numTransitions; i++) {
+      ExerciseDefinition.Transition transition = transitions.get(i);
+      fromStates[i] = getState(transition.getFrom());
+      targetStates[i] = getState(transition.getTo());
+      minConfidences[i] = transition.getMinConfidence();
+      minDwellMs[i] = transition.getMinDwellMs();
+      counts[i] = transition.getCount();
+      scored[i] = transition.isScored();
+      startsTimer[i] = transition.startsTimer();
+      recordsDuration[i] = transition.recordsDuration();
+    }
+    setClassNames(classNames);
+    reset();
+  }
+
+  /**
+   * Compiles the transitions for the class IDs of {@code classNames}, such as when the classifier
+   * is replaced by one with other samples. The state, reps, score and analytics are kept.
+   */
+  public void setClassNames(ClassNameTable classNames) {
+    int numClasses = classNames.size();
+    int[] transitionTable = new int[stateNames.length * numClasses];
+    Arrays.fill(transitionTable, NO_TRANSITION);
+
+    // Transitions without a class go in first, so that the ones for a specific class override
+    // them.
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < transitions.size(); i++) {
+        String className = transitions.get(i).getClassName();
+        boolean isDefault = className == null;
+        if (isDefault != (pass == 0)) {
+          continue;
+        }
+        int from = fromStates[i];
+        if (isDefault) {
+          for (int classId = 0; classId < numClasses; classId++) {
+            transitionTable[from * numClasses + classId] = i;
+          }
+        } else {
+          int classId = classNames.getId(className);
+          if (classId < 0) {
+            Log.w(TAG, name + ": no samples for class " + className);
+            continue;
+          }
+          transitionTable[from * numClasses + classId] = i;
+        }
+      }
+    }
+    this.numClasses = numClasses;
+    this.transitionTable = transitionTable;
+  }
+
+  private int getState(String stateName) {
+    for (int i = 0; i < stateNames.length; i++) {
+      if (stateNames[i].equals(stateName)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(name + " has no state " + stateName);
+  }
+
+  /** Returns to the initial state and clears reps, score and durations. */
+  public void reset() {
+    state = initialState;
+    started = false;
+    repCount = 0;
+    scoreSum = 0;
+    scoreCount = 0;
+    timerStarted = false;
+    analytics.clear();
+  }
+
+  /**
+   * Feeds the most confident class of a frame.
+   *
+   * @param classId ID of the class in the {@link ClassNameTable} the machine was built for.
+   * @param confidence confidence of the class, in range [0, 1].
+   * @param nowMs time of the frame, from a monotonic clock.
+   * @return whether a transition was taken.
+   *
+   * <p>A transition that starts the timer starts timing a new rep, and one that records a duration
+   * adds the time since then as a rep to the analytics and stops the timer.
+   */
+  public boolean update(int classId, float confidence, long nowMs) {
+    if (!started) {
+      started = true;
+      stateEnteredMs = nowMs;
+    }
+    if (classId < 0 || classId >= numClasses) {
+      return false;
+    }
+    analytics.addFrame(state, confidence);
+    int transition = transitionTable[state * numClasses + classId];
+    if (transition == NO_TRANSITION
+        || confidence < minConfidences[transition]
+        || nowMs - stateEnteredMs < minDwellMs[transition]) {
+      return false;
+    }
+
+    repCount += counts[transition];
+    if (scored[transition]) {
+      scoreSum += confidence;
+      scoreCount++;
+    }
+    if (startsTimer[transition]) {
+      timerStarted = true;
+      timerStartMs = nowMs;
+    }
+    if (recordsDuration[transition] && timerStarted) {
+      timerStarted = false;
+      analytics.addRep(nowMs - timerStartMs, nowMs);
+    }
+    if (targetStates[transition] != state) {
+      state = targetStates[transition];
+      stateEnteredMs = nowMs;
+    }
+    return true;
+  }
+
+  /**
+   * Returns how far {@code confidence} is from the minimum confidence of the transition a frame of
+   * {@code classId} would take from the current state, or {@link Float#POSITIVE_INFINITY} if it
+   * would take none.
+   */
+  public float getTransitionDistance(int classId, float confidence) {
+    if (classId < 0 || classId >= numClasses) {
+      return Float.POSITIVE_INFINITY;
+    }
+    int transition = transitionTable[state * numClasses + classId];
+    return transition == NO_TRANSITION
+        ? Float.POSITIVE_INFINITY
+        : Math.abs(confidence - minConfidences[transition]);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getStateName() {
+    return stateNames[state];
+  }
+
+  public int getRepCount() {
+    return repCount;
+  }
+
+  /** Returns the mean confidence over scored transitions, or 0 if there were none. */
+  public float getScore() {
+    return scoreCount > 0 ? scoreSum / scoreCount : 0;
+  }
+
+  /** Returns the analytics of the session, indexed by state. Live, not a copy. */
+  public WorkoutAnalytics getAnalytics() {
+    return analytics;
+  }
+}
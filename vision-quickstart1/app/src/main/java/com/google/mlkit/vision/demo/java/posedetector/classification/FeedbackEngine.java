@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import androidx.annotation.AnyThread;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays feedback for workout events off the classification thread.
+ *
+ * <p>{@link #post(int)} only sets the bit of the event in a pending mask and, if nothing was
+ * pending, schedules a single drain task. So posting never blocks nor allocates, and events
+ * posted before the player catches up are coalesced: each pending event is played once, and a rep
+ * supersedes a state change posted with it.
+ */
+public class FeedbackEngine {
+  /** A rep was counted. */
+  public static final int EVENT_REP_COUNTED = 0;
+  /** An exercise changed state. */
+  public static final int EVENT_STATE_CHANGED = 1;
+
+  private static final int NUM_EVENTS = 2;
+
+  private final FeedbackPlayer player;
+  private final Executor executor;
+  private final AtomicInteger pendingEvents = new AtomicInteger();
+  private final AtomicBoolean released = new AtomicBoolean();
+  private final Runnable drain = this::drain;
+  private final Runnable releasePlayer;
+
+  /**
+   * Creates an engine beeping on reps with a {@link TonePlayer}, on its own background priority
+   * thread. The thread ends on {@link #release()}.
+   */
+  public static FeedbackEngine create() {
+    HandlerThread thread = new HandlerThread("FeedbackEngine", Process.THREAD_PRIORITY_BACKGROUND);
+    thread.start();
+    Handler handler = new Handler(thread.getLooper());
+    return new FeedbackEngine(new TonePlayer(), handler::post, thread::quitSafely);
+  }
+
+  /** Creates an engine running {@code player} on {@code executor}, which must be sequential. */
+  public FeedbackEngine(FeedbackPlayer player, Executor executor) {
+    this(player, executor, () -> {});
+  }
+
+  private FeedbackEngine(FeedbackPlayer player, Executor executor, Runnable onReleased) {
+    this.player = player;
+    this.executor = executor;
+    releasePlayer = () -> {
+      player.release();
+      onReleased.run();
+    };
+  }
+
+  /** Queues {@code event} to be played, unless it is already queued. Returns immediately. */
+  @AnyThread
+  public void post(int event) {
+    if (released.get()) {
+      return;
+    }
+    int bit = 1 << event;
+    int pending;
+    do {
+      pending = pendingEvents.get();
+      if ((pending & bit) != 0) {
+        return;
+      }
+    } while (!pendingEvents.compareAndSet(pending, pending | bit));
+    if (pending == 0) {
+      executor.execute(drain);
+    }
+  }
+
+  /**
+   * Drops the queued events, frees the player after any event being played and stops the thread.
+   * Later events are ignored.
+   */
+  @AnyThread
+  public void release() {
+    if (released.getAndSet(true)) {
+      return;
+    }
+    pendingEvents.set(0);
+    executor.execute(releasePlayer);
+  }
+
+  private void drain() {
+    // A post racing with release() may have scheduled this after the player was released.
+    if (released.get()) {
+      return;
+    }
+    int pending = pendingEvents.getAndSet(0);
+    if ((pending & (1 << EVENT_REP_COUNTED)) != 0) {
+      pending &= ~(1 << EVENT_STATE_CHANGED);
+    }
+    for (int event = 0; event < NUM_EVENTS; event++) {
+      if ((pending & (1 << event)) != 0) {
+        player.play(event);
+      }
+    }
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+/**
+ * Plays feedback for workout events, on the thread of a {@link FeedbackEngine}. Implementations
+ * may hold native resources, which they should acquire lazily and free in {@link #release()}.
+ */
+public interface FeedbackPlayer {
+  /** Plays the given {@link FeedbackEngine} event. */
+  void play(int event);
+
+  /** Frees the resources of the player. It may be played again after, acquiring them again. */
+  void release();
+}
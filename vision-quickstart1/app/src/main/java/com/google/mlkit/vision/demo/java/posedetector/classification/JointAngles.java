@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.pose.PoseLandmark;
+
+/**
+ * Joint angles of a pose, in degrees, computed straight from its landmarks into a caller's array,
+ * so without allocation, for {@link AngleRules}.
+ *
+ * <p>A joint angle is the one between the two limb segments meeting at the joint, 180 when the
+ * limb is straight, and the unprefixed ones are the means of both sides. The torso incline is the
+ * angle of the line from the hips center to the shoulders center to the vertical of the image, 0
+ * when upright and 90 when lying. Angles are measured in the image plane, as the Z of the
+ * landmarks is the least accurate: a standing pose of the bundled samples has a median knee angle
+ * of 177 in the image plane, but 126 in 3D.
+ */
+public class JointAngles {
+  public static final int LEFT_ELBOW = 0;
+  public static final int RIGHT_ELBOW = 1;
+  public static final int LEFT_SHOULDER = 2;
+  public static final int RIGHT_SHOULDER = 3;
+  public static final int LEFT_HIP = 4;
+  public static final int RIGHT_HIP = 5;
+  public static final int LEFT_KNEE = 6;
+  public static final int RIGHT_KNEE = 7;
+  public static final int ELBOW = 8;
+  public static final int SHOULDER = 9;
+  public static final int HIP = 10;
+  public static final int KNEE = 11;
+  public static final int TORSO_INCLINE = 12;
+  public static final int NUM_ANGLES = 13;
+
+  private static final String[] NAMES = {
+    "left_elbow",
+    "right_elbow",
+    "left_shoulder",
+    "right_shoulder",
+    "left_hip",
+    "right_hip",
+    "left_knee",
+    "right_knee",
+    "elbow",
+    "shoulder",
+    "hip",
+    "knee",
+    "torso_incline"
+  };
+  // Landmarks each side angle is measured at, as [angle][end, joint, end].
+  private static final int[][] JOINTS = {
+    {PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ELBOW, PoseLandmark.LEFT_WRIST},
+    {PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ELBOW, PoseLandmark.RIGHT_WRIST},
+    {PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ELBOW},
+    {PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ELBOW},
+    {PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_KNEE},
+    {PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_KNEE},
+    {PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_KNEE, PoseLandmark.LEFT_ANKLE},
+    {PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_KNEE, PoseLandmark.RIGHT_ANKLE}
+  };
+
+  private JointAngles() {}
+
+  /** Returns the angle with the given name, such as "knee", or -1 if there is none. */
+  public static int getAngle(String name) {
+    for (int i = 0; i < NAMES.length; i++) {
+      if (NAMES[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public static String getName(int angle) {
+    return NAMES[angle];
+  }
+
+  /**
+   * Writes the {@link #NUM_ANGLES} angles of {@code landmarks}, which must not be empty, to
+   * {@code out}.
+   */
+  public static void getAngles(PoseLandmarks landmarks, float[] out) {
+    Preconditions.checkArgument(!landmarks.isEmpty(), "No pose");
+    for (int i = 0; i < JOINTS.length; i++) {
+      out[i] = measureAngle(landmarks, JOINTS[i][0], JOINTS[i][1], JOINTS[i][2]);
+    }
+    for (int i = 0; i < JOINTS.length; i += 2) {
+      out[ELBOW + i / 2] = (out[i] + out[i + 1]) / 2;
+    }
+    float dx = landmarks.getX(PoseLandmark.LEFT_SHOULDER)
+        + landmarks.getX(PoseLandmark.RIGHT_SHOULDER)
+        - landmarks.getX(PoseLandmark.LEFT_HIP)
+        - landmarks.getX(PoseLandmark.RIGHT_HIP);
+    float dy = landmarks.getY(PoseLandmark.LEFT_SHOULDER)
+        + landmarks.getY(PoseLandmark.RIGHT_SHOULDER)
+        - landmarks.getY(PoseLandmark.LEFT_HIP)
+        - landmarks.getY(PoseLandmark.RIGHT_HIP);
+    // Y grows downwards in images.
+    out[TORSO_INCLINE] = (float) Math.toDegrees(Math.atan2(Math.abs(dx), -dy));
+  }
+
+  // Returns the angle at joint between the segments to the two ends, in the image plane.
+  private static float measureAngle(PoseLandmarks landmarks, int end1, int joint, int end2) {
+    float x1 = landmarks.getX(end1) - landmarks.getX(joint);
+    float y1 = landmarks.getY(end1) - landmarks.getY(joint);
+    float x2 = landmarks.getX(end2) - landmarks.getX(joint);
+    float y2 = landmarks.getY(end2) - landmarks.getY(joint);
+    return (float) Math.toDegrees(Math.abs(Math.atan2(x1 * y2 - y1 * x2, x1 * x2 + y1 * y2)));
+  }
+}
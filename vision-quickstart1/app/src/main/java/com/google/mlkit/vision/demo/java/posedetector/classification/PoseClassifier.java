@@ -17,21 +17,28 @@
 package com.google.mlkit.vision.demo.java.posedetector.classification;
 
 import static com.google.mlkit.vision.demo.java.posedetector.classification.PoseEmbedding.getPoseEmbedding;
-import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.maxAbs;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.PoseEmbedding.select;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.add;
 import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.multiply;
-import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.multiplyAll;
 import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.subtract;
 import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.sumAbs;
+import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
-import android.util.Pair;
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
 import com.google.mlkit.vision.common.PointF3D;
 import com.google.mlkit.vision.pose.Pose;
 import com.google.mlkit.vision.pose.PoseLandmark;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Classifies {link Pose} based on given {@link PoseSample}s.
@@ -41,26 +48,212 @@ import java.util.PriorityQueue;
  */
 public class PoseClassifier {
   private static final String TAG = "PoseClassifier";
-  private static final int MAX_DISTANCE_TOP_K = 30;
-  private static final int MEAN_DISTANCE_TOP_K = 10;
-  // Note Z has a lower weight as it is generally less accurate than X & Y.
-  private static final PointF3D AXES_WEIGHTS = PointF3D.from(1, 1, 0.2f);
+  // Below this many samples a linear scan is faster than searching a {@link VpTree}.
+  private static final int MIN_SAMPLES_FOR_INDEX = 5000;
+  private static final int NUM_LANDMARKS = 33;
+  private static final int NUM_DIMS = 3;
+  // Number of frames per task when classifying a batch in parallel.
+  private static final int BATCH_CHUNK_SIZE = 64;
+  // Width of the hash cells of the result cache, in weighted embedding units where the pose size
+  // is 100. Wide enough for a held pose to stay in its cell, as hits are checked anyway.
+  private static final float RESULT_CACHE_CELL_SIZE = 10f;
 
+  // Samples with embeddings of the features below.
   private final List<PoseSample> poseSamples;
+  // Features of {@link PoseEmbedding} the embeddings are made of.
+  private final int[] features;
+  private final ClassNameTable classNames;
+  // Class ID of each sample, in classNames.
+  private final int[] sampleClassIds;
   private final int maxDistanceTopK;
   private final int meanDistanceTopK;
   private final PointF3D axesWeights;
+  // Embedding indices sorted by how much they vary across samples, so that the max distance pass
+  // crosses the top-K bound (and can stop) as early as possible.
+  private final int[] embeddingOrder;
+  // Index for the max distance stage, only built for large sample sets.
+  private final VpTree sampleIndex;
+  // Integer copy of the sample embeddings used to pre-select max distance candidates, if enabled.
+  private final QuantizedEmbeddings quantizedEmbeddings;
+  // Coarse stage that narrows the search down to the closest classes, if enabled.
+  private final ClassCentroids classCentroids;
+  private final int coarseClassCount;
+  private final float coarseFallbackMargin;
+  // Samples recorded on the device, classified against after the ones above, if any.
+  @Nullable private final EnrolledSamples enrolledSamples;
+  // Number of poses the result cache of each classifying thread keeps, 0 if disabled.
+  private final int resultCacheSize;
+  private final float resultCacheTolerance;
+  // Rules standing in for a search when sure enough, if any, see {@link PoseClassifierGroup}.
+  @Nullable private final AngleRules angleRules;
+  private final AtomicLong numCacheHits = new AtomicLong();
+  private final AtomicLong numCacheRefines = new AtomicLong();
+  private final AtomicLong numCacheMisses = new AtomicLong();
+  // Top-K selectors reused across frames, one per stage and classifying thread.
+  private final ThreadLocal<TopKSelector> maxDistanceSelector = new ThreadLocal<TopKSelector>() {
+    @Override
+    protected TopKSelector initialValue() {
+      return new TopKSelector(maxDistanceTopK);
+    }
+  };
+  private final ThreadLocal<TopKSelector> meanDistanceSelector = new ThreadLocal<TopKSelector>() {
+    @Override
+    protected TopKSelector initialValue() {
+      return new TopKSelector(meanDistanceTopK);
+    }
+  };
+  // Max distance candidates kept for the result cache, twice as many as the top-K.
+  private final ThreadLocal<TopKSelector> cacheCandidateSelector =
+      new ThreadLocal<TopKSelector>() {
+        @Override
+        protected TopKSelector initialValue() {
+          return new TopKSelector(2 * maxDistanceTopK);
+        }
+      };
+  // Embeddings flattened as [point][X, Y, Z], as the distance kernels take them, and the buffers of
+  // the batch path, reused across frames, one per classifying thread.
+  private final ThreadLocal<float[]> queryBuffer = new ThreadLocal<float[]>() {
+    @Override
+    protected float[] initialValue() {
+      return new float[features.length * NUM_DIMS];
+    }
+  };
+  private final ThreadLocal<BatchScratch> batchScratch = new ThreadLocal<BatchScratch>() {
+    @Override
+    protected BatchScratch initialValue() {
+      return new BatchScratch();
+    }
+  };
+  private final ThreadLocal<QuantizedEmbeddings.Scratch> quantizedScratch =
+      new ThreadLocal<QuantizedEmbeddings.Scratch>() {
+        @Override
+        protected QuantizedEmbeddings.Scratch initialValue() {
+          return new QuantizedEmbeddings.Scratch();
+        }
+      };
+  private final ThreadLocal<ClassCentroids.Scratch> centroidScratch =
+      new ThreadLocal<ClassCentroids.Scratch>() {
+        @Override
+        protected ClassCentroids.Scratch initialValue() {
+          return new ClassCentroids.Scratch();
+        }
+      };
+  private final ThreadLocal<ClassificationCache> resultCache =
+      new ThreadLocal<ClassificationCache>() {
+        @Override
+        protected ClassificationCache initialValue() {
+          return new ClassificationCache(
+              resultCacheSize,
+              features.length * NUM_DIMS,
+              2 * maxDistanceTopK,
+              RESULT_CACHE_CELL_SIZE,
+              axesWeights);
+        }
+      };
 
   public PoseClassifier(List<PoseSample> poseSamples) {
-    this(poseSamples, MAX_DISTANCE_TOP_K, MEAN_DISTANCE_TOP_K, AXES_WEIGHTS);
+    this(poseSamples, PoseClassifierOptions.createDefault());
   }
 
   public PoseClassifier(List<PoseSample> poseSamples, int maxDistanceTopK,
       int meanDistanceTopK, PointF3D axesWeights) {
+    this(
+        poseSamples,
+        new PoseClassifierOptions.Builder()
+            .setMaxDistanceTopK(maxDistanceTopK)
+            .setMeanDistanceTopK(meanDistanceTopK)
+            .setAxesWeights(axesWeights)
+            .build());
+  }
+
+  public PoseClassifier(List<PoseSample> poseSamples, PoseClassifierOptions options) {
+    this(poseSamples, options, null);
+  }
+
+  /**
+   * Creates a classifier that also classifies against the samples in {@code enrolledSamples} of
+   * the classes of {@code poseSamples}, including ones enrolled after it was created.
+   */
+  public PoseClassifier(
+      List<PoseSample> poseSamples,
+      PoseClassifierOptions options,
+      @Nullable EnrolledSamples enrolledSamples) {
+    int[] features = options.getFeatures();
+    if (features != null) {
+      List<PoseSample> selectedSamples = new ArrayList<>(poseSamples.size());
+      for (PoseSample poseSample : poseSamples) {
+        selectedSamples.add(poseSample.withFeatures(features));
+      }
+      poseSamples = selectedSamples;
+    } else {
+      features = PoseEmbedding.getDefaultFeatures();
+    }
     this.poseSamples = poseSamples;
-    this.maxDistanceTopK = maxDistanceTopK;
-    this.meanDistanceTopK = meanDistanceTopK;
-    this.axesWeights = axesWeights;
+    this.features = features;
+    this.classNames = ClassNameTable.fromSamples(poseSamples);
+    this.sampleClassIds = new int[poseSamples.size()];
+    for (int i = 0; i < poseSamples.size(); i++) {
+      sampleClassIds[i] = classNames.getId(poseSamples.get(i).getClassName());
+    }
+    this.maxDistanceTopK = options.getMaxDistanceTopK();
+    this.meanDistanceTopK = options.getMeanDistanceTopK();
+    this.axesWeights = options.getAxesWeights();
+    this.embeddingOrder = getEmbeddingOrder(poseSamples, axesWeights);
+    this.quantizedEmbeddings = options.shouldQuantizeEmbeddings()
+        ? new QuantizedEmbeddings(poseSamples, axesWeights) : null;
+    this.sampleIndex = quantizedEmbeddings == null && poseSamples.size() >= MIN_SAMPLES_FOR_INDEX
+        ? new VpTree(poseSamples, axesWeights) : null;
+    this.coarseClassCount = options.getCoarseClassCount();
+    this.coarseFallbackMargin = options.getCoarseFallbackMargin();
+    this.classCentroids =
+        coarseClassCount > 0 ? new ClassCentroids(poseSamples, axesWeights) : null;
+    this.enrolledSamples = enrolledSamples;
+    this.resultCacheSize = options.getResultCacheSize();
+    this.resultCacheTolerance = options.getResultCacheTolerance();
+    this.angleRules = options.getAngleRules();
+    for (int i = 0; angleRules != null && i < angleRules.size(); i++) {
+      Preconditions.checkArgument(
+          classNames.getId(angleRules.getClassName(i)) >= 0,
+          "Angle rule for unknown class %s",
+          angleRules.getClassName(i));
+    }
+  }
+
+  /**
+   * Orders embedding indices by descending weighted variance across the given samples.
+   *
+   * <p>The order doesn't change the max distance itself, it only makes large per-index differences
+   * show up first so that samples that can't make it into the top-K are dropped sooner.
+   */
+  private static int[] getEmbeddingOrder(List<PoseSample> poseSamples, PointF3D axesWeights) {
+    if (poseSamples.isEmpty()) {
+      return new int[0];
+    }
+    int size = poseSamples.get(0).getEmbedding().size();
+    float[] variances = new float[size];
+    for (int i = 0; i < size; i++) {
+      PointF3D sum = PointF3D.from(0, 0, 0);
+      PointF3D sumSquares = PointF3D.from(0, 0, 0);
+      for (PoseSample poseSample : poseSamples) {
+        PointF3D value = multiply(poseSample.getEmbedding().get(i), axesWeights);
+        sum = add(sum, value);
+        sumSquares = add(sumSquares, multiply(value, value));
+      }
+      PointF3D mean = multiply(sum, 1f / poseSamples.size());
+      PointF3D meanSquares = multiply(sumSquares, 1f / poseSamples.size());
+      variances[i] = sumAbs(subtract(multiply(mean, mean), meanSquares));
+    }
+
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i1, i2) -> Float.compare(variances[i2], variances[i1]));
+    int[] result = new int[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = order[i];
+    }
+    return result;
   }
 
   private static List<PointF3D> extractPoseLandmarks(Pose pose) {
@@ -81,24 +274,99 @@ public class PoseClassifier {
     return min(maxDistanceTopK, meanDistanceTopK);
   }
 
+  /** Returns the class names of the samples, in the order used by {@link #classifyBatch}. */
+  public List<String> getClassNames() {
+    return classNames.getNames();
+  }
+
+  /** Returns the class IDs used by the {@link ClassificationResult}s of this classifier. */
+  public ClassNameTable getClassNameTable() {
+    return classNames;
+  }
+
   public ClassificationResult classify(Pose pose) {
     return classify(extractPoseLandmarks(pose));
   }
 
   public ClassificationResult classify(List<PointF3D> landmarks) {
-    ClassificationResult result = new ClassificationResult();
     // Return early if no landmarks detected.
     if (landmarks.isEmpty()) {
-      return result;
+      return new ClassificationResult(classNames);
+    }
+    return classifyEmbedding(getPoseEmbedding(landmarks, features));
+  }
+
+  /**
+   * Classifies a pose given by all the features of its {@link PoseEmbedding}, so that they can be
+   * shared by several classifiers, see {@link PoseClassifierGroup}.
+   */
+  ClassificationResult classifyFeatures(List<PointF3D> allFeatures) {
+    return classifyEmbedding(select(allFeatures, features));
+  }
+
+  /**
+   * Returns how many classifications the result cache answered, narrowed down to its candidates or
+   * missed, or null if it's disabled.
+   */
+  @Nullable
+  public String getResultCacheSummary() {
+    if (resultCacheSize == 0) {
+      return null;
     }
+    long hits = numCacheHits.get();
+    long refines = numCacheRefines.get();
+    long misses = numCacheMisses.get();
+    long total = Math.max(1, hits + refines + misses);
+    return String.format(
+        Locale.US,
+        "Result cache: %d classifications, %.1f%% reused, %.1f%% refined, %.1f%% searched.",
+        hits + refines + misses,
+        100f * hits / total,
+        100f * refines / total,
+        100f * misses / total);
+  }
+
+  @Nullable
+  public AngleRules getAngleRules() {
+    return angleRules;
+  }
+
+  /** Returns the number of features the embedding is made of. */
+  public int getNumFeatures() {
+    return features.length;
+  }
+
+  /** Buffers of {@link #classifyBatch} for one thread. */
+  private static class BatchScratch {
+    private final float[] normalizedLandmarks = new float[NUM_LANDMARKS * NUM_DIMS];
+    private final float[] allFeatures = new float[PoseEmbedding.NUM_FEATURES * NUM_DIMS];
+  }
 
-    // We do flipping on X-axis so we are horizontal (mirror) invariant.
-    List<PointF3D> flippedLandmarks = new ArrayList<>(landmarks);
-    multiplyAll(flippedLandmarks, PointF3D.from(-1, 1, 1));
+  private ClassificationResult classifyEmbedding(List<PointF3D> embedding) {
+    float[] query = queryBuffer.get();
+    Utils.flatten(embedding, query, 0);
+    return classifyQuery(query);
+  }
 
-    List<PointF3D> embedding = getPoseEmbedding(landmarks);
-    List<PointF3D> flippedEmbedding = getPoseEmbedding(flippedLandmarks);
+  /** Classifies an embedding flattened as [point][X, Y, Z]. */
+  private ClassificationResult classifyQuery(float[] embedding) {
+    return classifyQuery(embedding, resultCacheSize > 0);
+  }
+
+  /** Same as {@link #classifyQuery(float[])}, through the result cache or not. */
+  private ClassificationResult classifyQuery(float[] embedding, boolean useCache) {
+    // Enrolled samples are few, and scanned whichever way the samples are searched. One snapshot
+    // is used for both stages, even if more samples are enrolled meanwhile.
+    EnrolledSamples.Snapshot enrolled =
+        enrolledSamples != null ? enrolledSamples.getSnapshot() : null;
+    if (useCache) {
+      return classifyCached(embedding, enrolled);
+    }
 
+    // We compare against the pose flipped on X-axis as well so we are horizontal (mirror)
+    // invariant. As the embedding is normalized around the hips center, flipping the landmarks
+    // only negates X of every embedding point, so both orientations are handled inside the
+    // distance computations below from the one embedding.
 
     // Classification is done in two stages:
     //  * First we pick top-K samples by MAX distance. It allows to remove samples that are almost
@@ -106,102 +374,331 @@ public class PoseClassifier {
     //  * Then we pick top-K samples by MEAN distance. After outliers are removed, we pick samples
     //    that are closest by average.
 
-    // Keeps max distance on top so we can pop it when top_k size is reached.
-    PriorityQueue<Pair<PoseSample, Float>> maxDistances = new PriorityQueue<>(
-        maxDistanceTopK, (o1, o2) -> -Float.compare(o1.second, o2.second));
+    // Optionally, skip samples of classes whose centroids are clearly farther away than others.
+    ClassCentroids.Scratch coarseScratch = classCentroids != null ? centroidScratch.get() : null;
+    int numCoarseCandidates = classCentroids != null
+        ? classCentroids.getCandidates(
+            embedding, coarseClassCount, coarseFallbackMargin, coarseScratch)
+        : -1;
+
     // Retrieve top K poseSamples by least distance to remove outliers.
-    for (PoseSample poseSample : poseSamples) {
-      List<PointF3D> sampleEmbedding = poseSample.getEmbedding();
-
-      float originalMax = 0;
-      float flippedMax = 0;
-      for (int i = 0; i < embedding.size(); i++) {
-        originalMax =
-            max(
-                originalMax,
-                maxAbs(multiply(subtract(embedding.get(i), sampleEmbedding.get(i)), axesWeights)));
-        flippedMax =
-            max(
-                flippedMax,
-                maxAbs(
-                    multiply(
-                        subtract(flippedEmbedding.get(i), sampleEmbedding.get(i)), axesWeights)));
+    TopKSelector maxDistances = maxDistanceSelector.get();
+    maxDistances.clear();
+    if (numCoarseCandidates >= 0) {
+      getMaxDistanceTopK(
+          coarseScratch.getCandidates(), numCoarseCandidates, embedding, maxDistances);
+    } else if (sampleIndex != null) {
+      sampleIndex.search(embedding, maxDistances);
+    } else if (quantizedEmbeddings != null) {
+      getQuantizedMaxDistanceTopK(embedding, maxDistances);
+    } else {
+      getMaxDistanceTopK(null, poseSamples.size(), embedding, maxDistances);
+    }
+    if (enrolled != null && enrolled.size > 0) {
+      getEnrolledMaxDistanceTopK(enrolled, embedding, maxDistances);
+    }
+    return getMeanDistanceResult(embedding, enrolled, maxDistances, null);
+  }
+
+  /**
+   * Classifies an embedding through the result cache of this thread, see
+   * {@link ClassificationCache}. The coarse stage is not supported, the other ways of searching
+   * the samples give the same candidates.
+   */
+  private ClassificationResult classifyCached(
+      float[] embedding, @Nullable EnrolledSamples.Snapshot enrolled) {
+    ClassificationCache cache = resultCache.get();
+    float[] query = cache.setQuery(embedding);
+    int numEnrolled = enrolled != null ? enrolled.size : 0;
+    TopKSelector maxDistances = maxDistanceSelector.get();
+    ClassificationCache.Entry entry = cache.get(query);
+    if (entry != null && entry.numEnrolled == numEnrolled) {
+      float shift = entry.getMaxShift(query);
+      if (shift <= resultCacheTolerance
+          || (2 * shift < entry.maxDistanceGap
+              && 2 * entry.getMeanShift(query) < entry.meanDistanceGap)) {
+        numCacheHits.incrementAndGet();
+        return copy(entry.result);
       }
-      // Set the max distance as min of original and flipped max distance.
-      maxDistances.add(new Pair<>(poseSample, min(originalMax, flippedMax)));
-      // We only want to retain top n so pop the highest distance.
-      if (maxDistances.size() > maxDistanceTopK) {
-        maxDistances.poll();
+      maxDistances.clear();
+      for (int j = 0; j < entry.numCandidates; j++) {
+        int sample = entry.candidates[j];
+        if (sample < poseSamples.size()) {
+          maxDistances.offer(sample, getMaxDistance(
+              poseSamples.get(sample).getEmbedding(), embedding, maxDistances.getBound()));
+        } else {
+          maxDistances.offer(sample, getEnrolledMaxDistance(
+              enrolled, sample - poseSamples.size(), embedding, maxDistances.getBound()));
+        }
+      }
+      if (entry.candidateBound == Float.POSITIVE_INFINITY
+          || maxDistances.getBound() < entry.candidateBound - shift) {
+        numCacheRefines.incrementAndGet();
+        return getMeanDistanceResult(embedding, enrolled, maxDistances, null);
       }
     }
+    numCacheMisses.incrementAndGet();
 
-    // Keeps higher mean distances on top so we can pop it when top_k size is reached.
-    PriorityQueue<Pair<PoseSample, Float>> meanDistances = new PriorityQueue<>(
-        meanDistanceTopK, (o1, o2) -> -Float.compare(o1.second, o2.second));
-    // Retrive top K poseSamples by least mean distance to remove outliers.
-    for (Pair<PoseSample, Float> sampleDistances : maxDistances) {
-      PoseSample poseSample = sampleDistances.first;
-      List<PointF3D> sampleEmbedding = poseSample.getEmbedding();
+    TopKSelector candidates = cacheCandidateSelector.get();
+    candidates.clear();
+    if (sampleIndex != null) {
+      sampleIndex.search(embedding, candidates);
+    } else if (quantizedEmbeddings != null) {
+      getQuantizedMaxDistanceTopK(embedding, candidates);
+    } else {
+      getMaxDistanceTopK(null, poseSamples.size(), embedding, candidates);
+    }
+    if (numEnrolled > 0) {
+      getEnrolledMaxDistanceTopK(enrolled, embedding, candidates);
+    }
+
+    // Sort the candidates by ascending max distance, the first K are the top-K.
+    entry = cache.replace(query, entry);
+    int numCandidates = candidates.size();
+    for (int j = 0; j < numCandidates; j++) {
+      float distance = candidates.getDistance(j);
+      int position = j;
+      while (position > 0 && entry.distances[position - 1] > distance) {
+        entry.candidates[position] = entry.candidates[position - 1];
+        entry.distances[position] = entry.distances[position - 1];
+        position--;
+      }
+      entry.candidates[position] = candidates.getIndex(j);
+      entry.distances[position] = distance;
+    }
+    int numKept = min(numCandidates, maxDistanceTopK);
+    entry.numCandidates = numCandidates;
+    entry.numEnrolled = numEnrolled;
+    entry.candidateBound = numCandidates == candidates.getCapacity()
+        ? entry.distances[numCandidates - 1] : Float.POSITIVE_INFINITY;
+    entry.maxDistanceGap = numCandidates > numKept
+        ? entry.distances[numKept] - entry.distances[numKept - 1] : Float.POSITIVE_INFINITY;
+    maxDistances.clear();
+    for (int j = 0; j < numKept; j++) {
+      maxDistances.offer(entry.candidates[j], entry.distances[j]);
+    }
+
+    ClassificationResult result =
+        getMeanDistanceResult(embedding, enrolled, maxDistances, entry.distances);
+    Arrays.sort(entry.distances, 0, numKept);
+    entry.meanDistanceGap = numKept > meanDistanceTopK
+        ? entry.distances[meanDistanceTopK] - entry.distances[meanDistanceTopK - 1]
+        : Float.POSITIVE_INFINITY;
+    entry.result = copy(result);
+    return result;
+  }
+
+  /**
+   * Returns the result of the mean distance stage over the samples in {@code maxDistances}.
+   *
+   * @param meanDistances if not null, where to write the mean distance of each sample.
+   */
+  private ClassificationResult getMeanDistanceResult(
+      float[] embedding,
+      @Nullable EnrolledSamples.Snapshot enrolled,
+      TopKSelector maxDistances,
+      @Nullable float[] meanDistancesOut) {
+    ClassificationResult result = new ClassificationResult(classNames);
 
+    // Retrive top K poseSamples by least mean distance to remove outliers.
+    TopKSelector meanDistances = meanDistanceSelector.get();
+    meanDistances.clear();
+    for (int j = 0; j < maxDistances.size(); j++) {
+      int sample = maxDistances.getIndex(j);
       float originalSum = 0;
       float flippedSum = 0;
-      for (int i = 0; i < embedding.size(); i++) {
-        originalSum += sumAbs(multiply(
-            subtract(embedding.get(i), sampleEmbedding.get(i)), axesWeights));
-        flippedSum += sumAbs(
-            multiply(subtract(flippedEmbedding.get(i), sampleEmbedding.get(i)), axesWeights));
+      if (sample < poseSamples.size()) {
+        List<PointF3D> sampleEmbedding = poseSamples.get(sample).getEmbedding();
+        for (int i = 0; i < features.length; i++) {
+          PointF3D samplePoint = sampleEmbedding.get(i);
+          float x = embedding[i * NUM_DIMS];
+          float y = abs((samplePoint.getY() - embedding[i * NUM_DIMS + 1]) * axesWeights.getY());
+          float z = abs((samplePoint.getZ() - embedding[i * NUM_DIMS + 2]) * axesWeights.getZ());
+          originalSum += abs((samplePoint.getX() - x) * axesWeights.getX()) + y + z;
+          flippedSum += abs((samplePoint.getX() + x) * axesWeights.getX()) + y + z;
+        }
+      } else {
+        int offset = (sample - poseSamples.size()) * PoseEmbedding.NUM_FEATURES;
+        for (int i = 0; i < features.length; i++) {
+          int index = (offset + features[i]) * NUM_DIMS;
+          float x = embedding[i * NUM_DIMS];
+          float y = abs(
+              (enrolled.features[index + 1] - embedding[i * NUM_DIMS + 1]) * axesWeights.getY());
+          float z = abs(
+              (enrolled.features[index + 2] - embedding[i * NUM_DIMS + 2]) * axesWeights.getZ());
+          float sampleX = enrolled.features[index];
+          originalSum += abs((sampleX - x) * axesWeights.getX()) + y + z;
+          flippedSum += abs((sampleX + x) * axesWeights.getX()) + y + z;
+        }
       }
       // Set the mean distance as min of original and flipped mean distances.
-      float meanDistance = min(originalSum, flippedSum) / (embedding.size() * 2);
-      meanDistances.add(new Pair<>(poseSample, meanDistance));
-      // We only want to retain top k so pop the highest mean distance.
-      if (meanDistances.size() > meanDistanceTopK) {
-        meanDistances.poll();
+      float meanDistance = min(originalSum, flippedSum) / (features.length * 2);
+      if (meanDistancesOut != null) {
+        meanDistancesOut[j] = meanDistance;
       }
+      // We only want to retain top k, the selector drops the highest mean distance.
+      meanDistances.offer(sample, meanDistance);
     }
 
-    for (Pair<PoseSample, Float> sampleDistances : meanDistances) {
-      String className = sampleDistances.first.getClassName();
-      result.incrementClassConfidence(className);
+    for (int j = 0; j < meanDistances.size(); j++) {
+      int sample = meanDistances.getIndex(j);
+      result.incrementClassConfidence(sample < poseSamples.size()
+          ? sampleClassIds[sample]
+          : classNames.getId(enrolled.classNames[sample - poseSamples.size()]));
     }
 
     return result;
   }
+
+  private ClassificationResult copy(ClassificationResult result) {
+    ClassificationResult copy = new ClassificationResult(classNames);
+    for (int i = 0; i < classNames.size(); i++) {
+      copy.putClassConfidence(i, result.getClassConfidence(i));
+    }
+    return copy;
+  }
+
+  /**
+   * Classifies a sequence of poses, such as a recorded workout, in chunks of frames run on
+   * {@code executor}, which the caller keeps across batches. Each frame gets the same result as
+   * {@link #classify(List)} would give it without the result cache, computed from the packed
+   * landmarks into buffers of the classifying thread rather than into lists of points.
+   *
+   * @param landmarks landmarks packed as [frame][landmark][X, Y, Z], with 33 landmarks per frame.
+   *     A frame whose first value is NaN is treated as a frame where no pose was found.
+   * @return class confidences packed as [frame][class], with classes in the order of
+   *     {@link #getClassNames()}.
+   */
+  public float[] classifyBatch(float[] landmarks, int numFrames, ExecutorService executor) {
+    Preconditions.checkArgument(landmarks.length >= numFrames * NUM_LANDMARKS * NUM_DIMS);
+    float[] confidences = new float[numFrames * classNames.size()];
+    List<Future<?>> chunks = new ArrayList<>();
+    for (int from = 0; from < numFrames; from += BATCH_CHUNK_SIZE) {
+      int chunkFrom = from;
+      int chunkTo = min(from + BATCH_CHUNK_SIZE, numFrames);
+      chunks.add(executor.submit(() -> classifyChunk(landmarks, chunkFrom, chunkTo, confidences)));
+    }
+    for (Future<?> chunk : chunks) {
+      Futures.getUnchecked(chunk);
+    }
+    return confidences;
+  }
+
+  private void classifyChunk(float[] landmarks, int from, int to, float[] confidences) {
+    int numClasses = classNames.size();
+    BatchScratch scratch = batchScratch.get();
+    float[] query = queryBuffer.get();
+    for (int frame = from; frame < to; frame++) {
+      int offset = frame * NUM_LANDMARKS * NUM_DIMS;
+      if (Float.isNaN(landmarks[offset])) {
+        // No pose, all confidences stay 0.
+        continue;
+      }
+      PoseEmbedding.getAllFeatures(
+          landmarks, offset, scratch.normalizedLandmarks, scratch.allFeatures);
+      for (int i = 0; i < features.length; i++) {
+        System.arraycopy(
+            scratch.allFeatures, features[i] * NUM_DIMS, query, i * NUM_DIMS, NUM_DIMS);
+      }
+      // Not through the result cache: frames of a chunk follow each other, but the cache of a
+      // worker thread also holds frames of the chunks and batches it ran before, so reusing them
+      // within the tolerance would make results depend on scheduling.
+      ClassificationResult result = classifyQuery(query, /* useCache= */ false);
+      for (int c = 0; c < numClasses; c++) {
+        confidences[frame * numClasses + c] = result.getClassConfidence(c);
+      }
+    }
+  }
+
+  /**
+   * Scans the samples at the first {@code numCandidates} of the {@code candidates} indices, or the
+   * first {@code numCandidates} samples if null, for the ones closest by max distance and offers
+   * them to {@code maxDistances}.
+   */
+  private void getMaxDistanceTopK(
+      @Nullable int[] candidates,
+      int numCandidates,
+      float[] embedding,
+      TopKSelector maxDistances) {
+    for (int j = 0; j < numCandidates; j++) {
+      int sample = candidates != null ? candidates[j] : j;
+      // We only want to retain top n, the selector drops the highest distance.
+      maxDistances.offer(sample, getMaxDistance(
+          poseSamples.get(sample).getEmbedding(), embedding, maxDistances.getBound()));
+    }
+  }
+
+  /**
+   * Pre-selects candidates with the quantized embeddings, with buffers of this thread, then offers
+   * the ones closest by exact max distance to {@code maxDistances}.
+   */
+  private void getQuantizedMaxDistanceTopK(float[] embedding, TopKSelector maxDistances) {
+    QuantizedEmbeddings.Scratch scratch = quantizedScratch.get();
+    int numCandidates =
+        quantizedEmbeddings.getCandidates(embedding, maxDistances.getCapacity(), scratch);
+    getMaxDistanceTopK(scratch.getCandidates(), numCandidates, embedding, maxDistances);
+  }
+
+  /**
+   * Returns the max distance between a sample and {@code embedding}, as the min of the original
+   * and flipped max distances, or any value above {@code bound} once it is known to be above.
+   */
+  private float getMaxDistance(List<PointF3D> sampleEmbedding, float[] embedding, float bound) {
+    // Once the selector is full a sample has to beat the current worst distance to get in, so
+    // we stop accumulating as soon as both partial maxes are already above that bound.
+    float originalMax = 0;
+    float flippedMax = 0;
+    for (int i : embeddingOrder) {
+      PointF3D samplePoint = sampleEmbedding.get(i);
+      float x = embedding[i * NUM_DIMS];
+      // Y and Z are the same for both orientations.
+      float yz = max(
+          abs((samplePoint.getY() - embedding[i * NUM_DIMS + 1]) * axesWeights.getY()),
+          abs((samplePoint.getZ() - embedding[i * NUM_DIMS + 2]) * axesWeights.getZ()));
+      originalMax = max(originalMax, max(abs((samplePoint.getX() - x) * axesWeights.getX()), yz));
+      flippedMax = max(flippedMax, max(abs((samplePoint.getX() + x) * axesWeights.getX()), yz));
+      if (originalMax > bound && flippedMax > bound) {
+        break;
+      }
+    }
+    return min(originalMax, flippedMax);
+  }
+
+  /**
+   * Scans the enrolled samples of classes of this classifier for the ones closest by max distance
+   * and offers them to {@code maxDistances}, indexed after the samples.
+   */
+  private void getEnrolledMaxDistanceTopK(
+      EnrolledSamples.Snapshot enrolled, float[] embedding, TopKSelector maxDistances) {
+    for (int j = 0; j < enrolled.size; j++) {
+      if (classNames.getId(enrolled.classNames[j]) < 0) {
+        continue;
+      }
+      maxDistances.offer(
+          poseSamples.size() + j,
+          getEnrolledMaxDistance(enrolled, j, embedding, maxDistances.getBound()));
+    }
+  }
+
+  /** As {@link #getMaxDistance} for the enrolled sample {@code j}. */
+  private float getEnrolledMaxDistance(
+      EnrolledSamples.Snapshot enrolled, int j, float[] embedding, float bound) {
+    int offset = j * PoseEmbedding.NUM_FEATURES;
+    float originalMax = 0;
+    float flippedMax = 0;
+    for (int i : embeddingOrder) {
+      int index = (offset + features[i]) * NUM_DIMS;
+      float x = embedding[i * NUM_DIMS];
+      float yz = max(
+          abs((enrolled.features[index + 1] - embedding[i * NUM_DIMS + 1]) * axesWeights.getY()),
+          abs((enrolled.features[index + 2] - embedding[i * NUM_DIMS + 2]) * axesWeights.getZ()));
+      float sampleX = enrolled.features[index];
+      originalMax = max(originalMax, max(abs((sampleX - x) * axesWeights.getX()), yz));
+      flippedMax = max(flippedMax, max(abs((sampleX + x) * axesWeights.getX()), yz));
+      if (originalMax > bound && flippedMax > bound) {
+        break;
+      }
+    }
+    return min(originalMax, flippedMax);
+  }
 }
-//代码解析：PoseClassifier 类用于姿势分类
-//这段 Java 代码定义了一个名为 PoseClassifier 的类，其作用是根据给定的姿势样本 (PoseSample) 对输入的姿势 (Pose) 进行
-// 分类。它采用了 K-Nearest Neighbors (KNN) 算法的思想，并结合了异常值过滤，以提高分类的准确性。
-//主要步骤：
-//提取姿势关键点： extractPoseLandmarks(pose) 方法从 Pose 对象中提取所有关键点的三维坐标，存储在一个 PointF3D 类型的列表中。
-//生成姿势嵌入： 使用 PoseEmbedding.getPoseEmbedding(landmarks) 方法将关键点坐标转换为嵌入向量，用于表示姿势特征。
-//镜像处理： 将关键点坐标沿 X 轴镜像翻转，生成一个镜像的嵌入向量。这是为了使分类结果不受人体朝向的影响。
-//KNN 分类：
-//最大距离过滤：
-//使用优先队列 maxDistances 存储距离输入姿势最近的 maxDistanceTopK 个样本及其距离。
-//对于每个样本，计算其嵌入向量与输入姿势嵌入向量以及镜像嵌入向量之间的最大距离。
-//取两者中的较小值作为该样本与输入姿势的距离。
-//如果队列大小超过 maxDistanceTopK，则移除距离最远的样本。
-//平均距离过滤：
-//使用优先队列 meanDistances 存储平均距离输入姿势最近的 meanDistanceTopK 个样本及其距离。
-//对于每个样本，计算其嵌入向量与输入姿势嵌入向量以及镜像嵌入向量之间的平均距离。
-//取两者中的较小值作为该样本与输入姿势的距离。
-//如果队列大小超过 meanDistanceTopK，则移除平均距离最远的样本。
-//置信度计算：
-//遍历 meanDistances 队列中的所有样本，将其所属的类别置信度加 1。
-//返回分类结果： 将包含所有类别及其置信度的 ClassificationResult 对象返回。
-//代码解读：
-//poseSamples：存储所有姿势样本的列表。
-//maxDistanceTopK：最大距离过滤中选择的样本数量。
-//meanDistanceTopK：平均距离过滤中选择的样本数量。
-//axesWeights：用于加权不同坐标轴的权重向量。
-//confidenceRange()：返回置信度值的范围，即 min(maxDistanceTopK, meanDistanceTopK)。
-//classify(pose)：根据输入的 Pose 对象进行分类。
-//classify(landmarks)：根据输入的关键点坐标进行分类。
-//代码应用：
-//这个代码可以用于各种需要姿势分类的应用，例如：
-//健身应用: 识别用户的健身动作，并判断动作是否标准。
-//运动分析: 分析运动员的动作，提供训练建议。
-//人机交互: 使用姿势进行控制或交互。
-//虚拟现实: 将用户的姿势映射到虚拟角色上。
-//总结：
-//PoseClassifier 类提供了一种基于 KNN 算法和异常值过滤的姿势分类方法。它能够有效地识别不同类型的姿势，并提供可靠的置信度估计，可以作为姿势识别和分析应用中的核心组件。
\ No newline at end of file
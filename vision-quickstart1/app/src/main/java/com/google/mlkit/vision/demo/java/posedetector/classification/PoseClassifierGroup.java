@@ -0,0 +1,310 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static com.google.mlkit.vision.demo.java.posedetector.classification.PoseEmbedding.getAllFeatures;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.mlkit.vision.common.PointF3D;
+import com.google.mlkit.vision.pose.Pose;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classifies a pose against several {@link PoseClassifier}s, such as one per exercise family,
+ * computing the features of its {@link PoseEmbedding} only once for all of them, each taking the
+ * ones its embedding is made of.
+ *
+ * <p>Each classifier keeps its own samples and top-K options. Their results are merged into one
+ * {@link ClassificationResult} over the union of their classes, with confidences scaled to
+ * {@link #confidenceRange()}. A class found by several classifiers gets the highest confidence.
+ * Each classifier puts its whole confidence range into its own classes, so the most confident class
+ * of a merged result may come from any of them from one frame to the next. Whatever follows the
+ * classes of one family, such as an exercise, should take the most confident class among them with
+ * {@link #getMaxConfidenceClassId(ClassificationResult, int)}.
+ *
+ * <p>In a stream of poses, a classifier with {@link AngleRules} isn't searched for a pose one of
+ * its rules fires on with margin, if the class of the rule is the most confident one of its last
+ * search, and gives that class the confidence of the rule instead, from half to all of its range
+ * depending on how far past the margin the pose is (see {@link AngleRules#getConfidence}). Classes
+ * only change on a search, so that a rule doesn't mistake a pose looking alike in joint angles,
+ * such as the up pose of push-ups seen from the front for standing.
+ *
+ * <p>{@link #classify} and {@link #classifyFeatures(List)} are thread safe.
+ * {@link #classifyFeatures(List, float[])} keeps the state of a single stream, the class each
+ * classifier last searched and the rule counts, so it must be called for one stream from one
+ * thread at a time. The executor only runs searches, which don't touch that state.
+ */
+public class PoseClassifierGroup {
+  private final ImmutableList<PoseClassifier> classifiers;
+  @Nullable private final ExecutorService executor;
+  private final ClassNameTable classNames;
+  private final int confidenceRange;
+  // ID in classNames of each class of each classifier, as [classifier][class ID].
+  private final int[][] mergedClassIds;
+  // Factor from the confidence range of each classifier to the one of the group.
+  private final float[] confidenceScales;
+  // Class ID of each angle rule of each classifier in its own table, as [classifier][rule], null
+  // for classifiers without rules.
+  private final int[][] ruleClassIds;
+  // State of the stream, only touched by classifyFeatures(List, float[]) on its calling thread.
+  // Most confident class of the last search of each classifier, -1 before the first.
+  private final int[] lastSearchedClassIds;
+  // Classifications of classifiers with rules, and how many the rules decided. Counted on the
+  // stream thread, but read from any thread by getAngleRuleSummary().
+  private final AtomicLong numRuleClassifications = new AtomicLong();
+  private final AtomicLong numRuleHits = new AtomicLong();
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch(classifiers.size());
+    }
+  };
+
+  // Per classifier state of one classification, reused by the thread running it.
+  private static class Scratch {
+    private final ClassificationResult[] results;
+    private final List<Future<ClassificationResult>> futures;
+    // Class the rules gave the pose for each classifier, in its own table, or -1 if searched.
+    private final int[] decidedClassIds;
+    // Fraction of the confidence range the rule gave that class.
+    private final float[] decidedConfidences;
+
+    private Scratch(int numClassifiers) {
+      results = new ClassificationResult[numClassifiers];
+      futures = new ArrayList<>(numClassifiers);
+      decidedClassIds = new int[numClassifiers];
+      decidedConfidences = new float[numClassifiers];
+    }
+  }
+
+  public PoseClassifierGroup(List<PoseClassifier> classifiers) {
+    this(classifiers, null);
+  }
+
+  /**
+   * @param executor if not null, runs all classifiers but the first, which runs on the calling
+   *     thread, in parallel.
+   */
+  public PoseClassifierGroup(
+      List<PoseClassifier> classifiers, @Nullable ExecutorService executor) {
+    Preconditions.checkArgument(!classifiers.isEmpty(), "No classifiers");
+    this.classifiers = ImmutableList.copyOf(classifiers);
+    this.executor = executor;
+    List<ClassNameTable> tables = new ArrayList<>();
+    int range = 0;
+    for (PoseClassifier classifier : classifiers) {
+      tables.add(classifier.getClassNameTable());
+      range = Math.max(range, classifier.confidenceRange());
+    }
+    classNames = ClassNameTable.union(tables);
+    confidenceRange = range;
+    mergedClassIds = new int[classifiers.size()][];
+    confidenceScales = new float[classifiers.size()];
+    for (int i = 0; i < classifiers.size(); i++) {
+      ClassNameTable table = tables.get(i);
+      mergedClassIds[i] = new int[table.size()];
+      for (int classId = 0; classId < table.size(); classId++) {
+        mergedClassIds[i][classId] = classNames.getId(table.getName(classId));
+      }
+      confidenceScales[i] = (float) confidenceRange / classifiers.get(i).confidenceRange();
+    }
+    ruleClassIds = new int[classifiers.size()][];
+    for (int i = 0; i < classifiers.size(); i++) {
+      AngleRules rules = classifiers.get(i).getAngleRules();
+      if (rules != null) {
+        ruleClassIds[i] = new int[rules.size()];
+        for (int rule = 0; rule < rules.size(); rule++) {
+          ruleClassIds[i][rule] = tables.get(i).getId(rules.getClassName(rule));
+        }
+      }
+    }
+    lastSearchedClassIds = new int[classifiers.size()];
+    Arrays.fill(lastSearchedClassIds, -1);
+  }
+
+  public ImmutableList<PoseClassifier> getClassifiers() {
+    return classifiers;
+  }
+
+  /** Returns the max confidence value of the merged results. */
+  public int confidenceRange() {
+    return confidenceRange;
+  }
+
+  /** Returns the class IDs used by the merged {@link ClassificationResult}s. */
+  public ClassNameTable getClassNameTable() {
+    return classNames;
+  }
+
+  /** Returns the index of the first classifier with the class {@code className}, or -1 if none. */
+  public int findClassifier(String className) {
+    for (int i = 0; i < classifiers.size(); i++) {
+      if (classifiers.get(i).getClassNameTable().getId(className) >= 0) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the ID in {@link #getClassNameTable()} of the most confident of the classes of
+   * {@code classifier} in a merged {@code result}, or -1 if it has none.
+   */
+  public int getMaxConfidenceClassId(ClassificationResult result, int classifier) {
+    int maxClassId = -1;
+    for (int classId : mergedClassIds[classifier]) {
+      if (maxClassId < 0
+          || result.getClassConfidence(classId) > result.getClassConfidence(maxClassId)) {
+        maxClassId = classId;
+      }
+    }
+    return maxClassId;
+  }
+
+  public ClassificationResult classify(Pose pose) {
+    List<PointF3D> landmarks = new ArrayList<>();
+    for (PoseLandmark poseLandmark : pose.getAllPoseLandmarks()) {
+      landmarks.add(poseLandmark.getPosition3D());
+    }
+    return classify(landmarks);
+  }
+
+  public ClassificationResult classify(List<PointF3D> landmarks) {
+    // Return early if no landmarks detected.
+    if (landmarks.isEmpty()) {
+      return new ClassificationResult(classNames);
+    }
+    return classifyFeatures(getAllFeatures(landmarks));
+  }
+
+  /**
+   * Classifies a pose given by all the features of its {@link PoseEmbedding}, such as when they
+   * are used for more than classification.
+   */
+  public ClassificationResult classifyFeatures(List<PointF3D> features) {
+    return classifyFeatures(features, null);
+  }
+
+  /**
+   * Same as {@link #classifyFeatures(List)} for a pose of a stream, with its {@link JointAngles}
+   * if not null, so that classifiers with {@link AngleRules} may not be searched. Calls with
+   * angles must be made from one thread at a time, see the class comment.
+   */
+  public ClassificationResult classifyFeatures(List<PointF3D> features, @Nullable float[] angles) {
+    Scratch scratch = this.scratch.get();
+    ClassificationResult[] results = scratch.results;
+    int[] decidedClassIds = scratch.decidedClassIds;
+    for (int i = 0; i < results.length; i++) {
+      decidedClassIds[i] = angles != null ? classifyAngles(i, angles, scratch) : -1;
+    }
+    List<Future<ClassificationResult>> futures = scratch.futures;
+    futures.clear();
+    if (executor != null) {
+      for (int i = 1; i < classifiers.size(); i++) {
+        PoseClassifier classifier = classifiers.get(i);
+        // Null for the classifiers decided by their rules.
+        futures.add(decidedClassIds[i] >= 0
+            ? null
+            : executor.submit(() -> classifier.classifyFeatures(features)));
+      }
+    }
+    for (int i = 0; i < results.length; i++) {
+      if (decidedClassIds[i] >= 0) {
+        continue;
+      }
+      results[i] = executor != null && i > 0
+          ? Futures.getUnchecked(futures.get(i - 1))
+          : classifiers.get(i).classifyFeatures(features);
+      if (angles != null) {
+        lastSearchedClassIds[i] = results[i].getMaxConfidenceClassId();
+      }
+    }
+
+    ClassificationResult result = new ClassificationResult(classNames);
+    for (int i = 0; i < results.length; i++) {
+      int[] classIds = mergedClassIds[i];
+      if (decidedClassIds[i] >= 0) {
+        // A fraction of the range of the classifier, so of the one of the group once scaled.
+        int classId = classIds[decidedClassIds[i]];
+        float confidence = scratch.decidedConfidences[i] * confidenceRange;
+        if (confidence > result.getClassConfidence(classId)) {
+          result.putClassConfidence(classId, confidence);
+        }
+        continue;
+      }
+      for (int classId = 0; classId < classIds.length; classId++) {
+        float confidence = results[i].getClassConfidence(classId) * confidenceScales[i];
+        if (confidence > result.getClassConfidence(classIds[classId])) {
+          result.putClassConfidence(classIds[classId], confidence);
+        }
+      }
+      // Not kept past the classification.
+      results[i] = null;
+    }
+    return result;
+  }
+
+  /**
+   * Returns how many classifications of a stream the angle rules decided without a search, or null
+   * if no classifier has rules.
+   */
+  @Nullable
+  public String getAngleRuleSummary() {
+    boolean hasRules = false;
+    for (int[] classIds : ruleClassIds) {
+      hasRules |= classIds != null;
+    }
+    if (!hasRules) {
+      return null;
+    }
+    // Hits first, so that they don't outnumber the classifications read after them.
+    long hits = numRuleHits.get();
+    long classifications = numRuleClassifications.get();
+    return String.format(
+        Locale.US,
+        "Angle rules: %d classifications, %.1f%% decided without a search.",
+        classifications,
+        100f * hits / Math.max(1, classifications));
+  }
+
+  // Returns the class, in its own table, the angle rules of a classifier give a pose of a stream,
+  // writing its confidence to the scratch, or -1 if the classifier must be searched.
+  private int classifyAngles(int classifier, float[] angles, Scratch scratch) {
+    if (ruleClassIds[classifier] == null) {
+      return -1;
+    }
+    numRuleClassifications.incrementAndGet();
+    AngleRules rules = classifiers.get(classifier).getAngleRules();
+    int rule = rules.match(angles);
+    int classId = lastSearchedClassIds[classifier];
+    if (rule < 0 || ruleClassIds[classifier][rule] != classId) {
+      return -1;
+    }
+    numRuleHits.incrementAndGet();
+    scratch.decidedConfidences[classifier] = rules.getConfidence(rule, angles);
+    return classId;
+  }
+}
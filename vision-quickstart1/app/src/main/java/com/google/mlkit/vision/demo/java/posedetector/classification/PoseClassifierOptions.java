@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.common.PointF3D;
+
+/**
+ * Options for {@link PoseClassifier}.
+ */
+public class PoseClassifierOptions {
+  private static final int DEFAULT_MAX_DISTANCE_TOP_K = 30;
+  private static final int DEFAULT_MEAN_DISTANCE_TOP_K = 10;
+  // Note Z has a lower weight as it is generally less accurate than X & Y.
+  private static final PointF3D DEFAULT_AXES_WEIGHTS = PointF3D.from(1, 1, 0.2f);
+  private static final float DEFAULT_COARSE_FALLBACK_MARGIN = 0.25f;
+
+  private final int maxDistanceTopK;
+  private final int meanDistanceTopK;
+  private final PointF3D axesWeights;
+  private final boolean quantizeEmbeddings;
+  private final int coarseClassCount;
+  private final float coarseFallbackMargin;
+  @Nullable private final int[] features;
+  private final int resultCacheSize;
+  private final float resultCacheTolerance;
+  @Nullable private final AngleRules angleRules;
+
+  public static PoseClassifierOptions createDefault() {
+    return new Builder().build();
+  }
+
+  private PoseClassifierOptions(Builder builder) {
+    maxDistanceTopK = builder.maxDistanceTopK;
+    meanDistanceTopK = builder.meanDistanceTopK;
+    axesWeights = builder.axesWeights;
+    quantizeEmbeddings = builder.quantizeEmbeddings;
+    coarseClassCount = builder.coarseClassCount;
+    coarseFallbackMargin = builder.coarseFallbackMargin;
+    features = builder.features;
+    resultCacheSize = builder.resultCacheSize;
+    resultCacheTolerance = builder.resultCacheTolerance;
+    angleRules = builder.angleRules;
+  }
+
+  public int getMaxDistanceTopK() {
+    return maxDistanceTopK;
+  }
+
+  public int getMeanDistanceTopK() {
+    return meanDistanceTopK;
+  }
+
+  public PointF3D getAxesWeights() {
+    return axesWeights;
+  }
+
+  public boolean shouldQuantizeEmbeddings() {
+    return quantizeEmbeddings;
+  }
+
+  public int getCoarseClassCount() {
+    return coarseClassCount;
+  }
+
+  public float getCoarseFallbackMargin() {
+    return coarseFallbackMargin;
+  }
+
+  /** Returns the features of {@link PoseEmbedding} to use, or null for the default ones. */
+  @Nullable
+  public int[] getFeatures() {
+    return features != null ? features.clone() : null;
+  }
+
+  public int getResultCacheSize() {
+    return resultCacheSize;
+  }
+
+  public float getResultCacheTolerance() {
+    return resultCacheTolerance;
+  }
+
+  @Nullable
+  public AngleRules getAngleRules() {
+    return angleRules;
+  }
+
+  public static class Builder {
+    private int maxDistanceTopK = DEFAULT_MAX_DISTANCE_TOP_K;
+    private int meanDistanceTopK = DEFAULT_MEAN_DISTANCE_TOP_K;
+    private PointF3D axesWeights = DEFAULT_AXES_WEIGHTS;
+    private boolean quantizeEmbeddings = false;
+    private int coarseClassCount = 0;
+    private float coarseFallbackMargin = DEFAULT_COARSE_FALLBACK_MARGIN;
+    @Nullable private int[] features;
+    private int resultCacheSize = 0;
+    private float resultCacheTolerance = 0;
+    @Nullable private AngleRules angleRules;
+
+    public Builder setMaxDistanceTopK(int maxDistanceTopK) {
+      this.maxDistanceTopK = maxDistanceTopK;
+      return this;
+    }
+
+    public Builder setMeanDistanceTopK(int meanDistanceTopK) {
+      this.meanDistanceTopK = meanDistanceTopK;
+      return this;
+    }
+
+    public Builder setAxesWeights(PointF3D axesWeights) {
+      this.axesWeights = axesWeights;
+      return this;
+    }
+
+    /**
+     * Runs the max distance stage over {@link QuantizedEmbeddings} and re-scores only the surviving
+     * candidates in float. Results are the same as without quantization.
+     */
+    public Builder setQuantizeEmbeddings(boolean quantizeEmbeddings) {
+      this.quantizeEmbeddings = quantizeEmbeddings;
+      return this;
+    }
+
+    /**
+     * Compares each pose against {@link ClassCentroids} first and only searches the samples of the
+     * {@code coarseClassCount} closest classes. 0 (the default) always searches all samples.
+     */
+    public Builder setCoarseClassCount(int coarseClassCount) {
+      this.coarseClassCount = coarseClassCount;
+      return this;
+    }
+
+    /**
+     * Falls back to searching all samples when the closest excluded class centroid is within this
+     * fraction of its distance from the farthest included one.
+     */
+    public Builder setCoarseFallbackMargin(float coarseFallbackMargin) {
+      this.coarseFallbackMargin = coarseFallbackMargin;
+      return this;
+    }
+
+    /**
+     * Makes the embedding of the given features of {@link PoseEmbedding}, such as the ones picked
+     * offline for the samples, rather than of the default ones. The cost of classification grows
+     * with their number.
+     */
+    public Builder setFeatures(@Nullable int[] features) {
+      if (features != null) {
+        for (int feature : features) {
+          Preconditions.checkArgument(
+              feature >= 0 && feature < PoseEmbedding.NUM_FEATURES, "No feature %s", feature);
+        }
+        Preconditions.checkArgument(features.length > 0, "No features");
+      }
+      this.features = features != null ? features.clone() : null;
+      return this;
+    }
+
+    /**
+     * Remembers the last {@code resultCacheSize} poses classified on each thread, with their
+     * nearest samples, and reuses them for poses close enough, see {@link ClassificationCache}.
+     * Results are the same as without the cache, but for ties and within
+     * {@link #setResultCacheTolerance}. 0 (the default) disables it. Can't be combined with the
+     * coarse stage. {@link PoseClassifier#classifyBatch} doesn't use it.
+     */
+    public Builder setResultCacheSize(int resultCacheSize) {
+      Preconditions.checkArgument(resultCacheSize >= 0);
+      this.resultCacheSize = resultCacheSize;
+      return this;
+    }
+
+    /**
+     * Reuses the cached result of a pose for poses within this weighted max distance of it, where
+     * the pose size is 100, even if their nearest samples might differ. 0 (the default) only
+     * reuses results that are known to be the same.
+     */
+    public Builder setResultCacheTolerance(float resultCacheTolerance) {
+      Preconditions.checkArgument(resultCacheTolerance >= 0);
+      this.resultCacheTolerance = resultCacheTolerance;
+      return this;
+    }
+
+    /**
+     * Lets {@link PoseClassifierGroup} tell the class of poses from their joint angles rather than
+     * by searching the samples, when these rules are sure enough of it. The rules must be for
+     * classes of the samples. Null (the default) always searches.
+     */
+    public Builder setAngleRules(@Nullable AngleRules angleRules) {
+      this.angleRules = angleRules;
+      return this;
+    }
+
+    public PoseClassifierOptions build() {
+      Preconditions.checkArgument(
+          resultCacheSize == 0 || coarseClassCount == 0,
+          "The result cache can't be combined with the coarse stage");
+      return new PoseClassifierOptions(this);
+    }
+  }
+}
@@ -17,110 +17,136 @@
 package com.google.mlkit.vision.demo.java.posedetector.classification;
 
 import android.content.Context;
-import android.media.AudioManager;
-import android.media.MediaRecorder;
-import android.media.ToneGenerator;
 import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.mlkit.vision.common.PointF3D;
 import com.google.mlkit.vision.pose.Pose;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.text.SimpleDateFormat;
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
 
 /**
  * Accepts a stream of {@link Pose} for classification and Rep counting.
  */
 public class PoseClassifierProcessor {
   private static final String TAG = "PoseClassifierProcessor";
-  private MediaRecorder mediaRecorder;
-  private boolean isRecording = false;
   private static final String POSE_SAMPLES_FILE = "pose/t2.csv";
+  private static final String EXERCISES_FILE = "pose/exercises.json";
+  // Sample set in app storage which, if present, replaces {@code POSE_SAMPLES_FILE} once loaded.
+  private static final String STORED_POSE_SAMPLES_FILE = "pose/samples.csv";
+  // Samples recorded on the device with {@link #enrollPose}, in app storage.
+  private static final String ENROLLED_POSE_SAMPLES_FILE = "pose/enrolled.csv";
+  // Other exercise families classified alongside the samples above, with their own classifiers.
+  private static final String[] EXTRA_POSE_SAMPLES_FILES = {"pose/fitness_pose_samples.csv"};
 
   // Specify classes for which we want rep counting.
   // These are the labels in the given {@code POSE_SAMPLES_FILE}. You can set your own class labels
   // for your pose samples.
   private static final String PUSHUPS_CLASS = "pushups_down";
   private static final String SQUATS_CLASS = "squats_down";
-  private enum PoseState {
-    DOWN,UP,T1,T2
-  }
-  private PoseState currentState = PoseState.DOWN; // 初始状态为 DOWN
-  private int repCount = 0; // 动作重复次数
-  private static final String[] POSE_CLASSES = {"down", "up", "t2", "t3"};
-  private ArrayList<Double> numbers = new ArrayList<>();
-  private ArrayList<Double> number2 = new ArrayList<>();
-  private ArrayList<Double> number3 = new ArrayList<>();
-  private ArrayList<Double> number4 = new ArrayList<>();
-  private float revie = 0; // 动作重复次数
-  private Context context;
+  private static final String[] POSE_CLASSES = {
+    "down", "up", "t2", "t3", PUSHUPS_CLASS, SQUATS_CLASS
+  };
+  // In stream mode, frames with more than MAX_EMBEDDED_LANDMARKS_OUT_OF_FRAME of the landmarks the
+  // embedding is made of under MIN_IN_FRAME_LIKELIHOOD aren't classified.
+  private static final float MIN_IN_FRAME_LIKELIHOOD = 0.5f;
+  private static final int MAX_EMBEDDED_LANDMARKS_OUT_OF_FRAME = 3;
+  // In stream mode, each classifier remembers the last RESULT_CACHE_SIZE poses, and reuses their
+  // results for poses within RESULT_CACHE_TOLERANCE of them. With 1, the most confident class
+  // stays the same for at least 99.9% of the frames of a simulated workout.
+  private static final int RESULT_CACHE_SIZE = 4;
+  private static final float RESULT_CACHE_TOLERANCE = 1f;
+  // Features of the embedding on which reps are matched, in stream mode.
+  private static final int[] REP_FEATURES = PoseEmbedding.getDefaultFeatures();
+  private static final PointF3D REP_AXES_WEIGHTS =
+      PoseClassifierOptions.createDefault().getAxesWeights();
   private final boolean isStreamMode;
 
   private EMASmoothing emaSmoothing;
   private List<RepetitionCounter> repCounters;
-  private PoseClassifier poseClassifier;
-  private String lastRepResult;
-
-
-
-  private void configureMediaRecorder() {
-    // ... existing code (setAudioSource, setVideoSource, etc.) ...
-    mediaRecorder.setOutputFile(getOutputMediaFile().toString());
-    // ... existing code (setVideoEncodingBitRate, setVideoFrameRate, etc.) ...
-
-    try {
-      mediaRecorder.prepare();
-    } catch (IOException e) {
-      Log.e(TAG, "MediaRecorder prepare failed:", e);
-    }
-  }
-
-  private File getOutputMediaFile() {
-    // 使用 Context.getExternalFilesDir() 获取应用可访问的外部存储路径
-    File mediaStorageDir = new File(context.getExternalFilesDir(null), "test");
-    if (!mediaStorageDir.exists()) {
-      if (!mediaStorageDir.mkdirs()) {
-        Log.d(TAG, "failed to create directory");
-        return null;
-      }
-    }
-    // 使用时间戳创建文件名
-    String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-    return new File(mediaStorageDir.getPath() + File.separator +
-            "VID_" + timeStamp + ".mp4");
-  }
-
-  private List<Double> actionDurations = new ArrayList<>(); // 记录每个动作的持续时间
+  private final PoseClassifierRegistry registry;
+  // Classified against by the classifiers of the registry, whichever sample set they come from.
+  private final EnrolledSamples enrolledSamples;
+  // Model the first classifier below comes from, null if the bundled samples could not be
+  // published.
+  @Nullable private PoseClassifierRegistry.Model activeModel;
+  private final List<PoseClassifier> extraClassifiers = new ArrayList<>();
+  // The classifier of the registry followed by the extra ones, sharing one embedding per frame.
+  private PoseClassifierGroup poseClassifier;
+  private long framesOnActiveModel;
+  // Loads sample sets for the registry, created on first use.
+  @Nullable private ListeningExecutorService loadExecutor;
+  // Class and count of the rep counter that counted a rep last.
+  private String lastRepClassName;
+  private int lastRepCount;
+  // Exercises tracked over the most confident class of each frame, as defined in
+  // {@code EXERCISES_FILE}.
+  private List<ExerciseStateMachine> exercises;
+  // Index in the group of the classifier whose classes each exercise is defined on. An exercise
+  // only follows the most confident of those, as other families fill their own confidence range.
+  private int[] exerciseClassifiers;
+  // Plays a beep for counted reps in stream mode, off this thread.
+  @Nullable private FeedbackEngine feedback;
+  // Result of the last classified frame, which holds over the frames that are skipped.
+  private PoseResult lastResult;
+  // In stream mode, finds full reps against reference reps made of the poses enrolled for each
+  // exercise, rebuilt when more are enrolled. Null if there are none.
+  @Nullable private RepMatcher repMatcher;
+  private int repMatcherNumEnrolled;
+  private final float[] repFeatures = new float[REP_FEATURES.length * 3];
+  @Nullable private PoseResult.MatchedRep lastMatchedRep;
+  // Joint angles of the current frame, in stream mode, for the classifiers with angle rules.
+  private final float[] jointAngles = new float[JointAngles.NUM_ANGLES];
+  private long numFrames;
+  private long numSkippedFrames;
+  private final RunningStats classificationNanos = new RunningStats();
 
-  private double startTime = 0;
-  private double lastActionTime = 0;
   @WorkerThread
   public PoseClassifierProcessor(Context context, boolean isStreamMode) {
-    this.context = context;
     Preconditions.checkState(Looper.myLooper() != Looper.getMainLooper());
     this.isStreamMode = isStreamMode;
     if (isStreamMode) {
       emaSmoothing = new EMASmoothing();
       repCounters = new ArrayList<>();
-      lastRepResult = "";
+      feedback = FeedbackEngine.create();
     }
+    enrolledSamples = openEnrolledSamples(context);
+    // Sample sets stored in its place are for the same exercises, and use the same features.
+    registry = new PoseClassifierRegistry(
+        getClassifierOptions(context, POSE_SAMPLES_FILE), Clock.SYSTEM, enrolledSamples);
     loadPoseSamples(context);
+    lastResult = PoseResult.noPose(isStreamMode);
+    File storedPoseSamples = new File(context.getFilesDir(), STORED_POSE_SAMPLES_FILE);
+    if (storedPoseSamples.exists()) {
+      reloadPoseSamples(storedPoseSamples);
+    }
   }
 
-  private void loadPoseSamples(Context context) {
+  private static List<PoseSample> readBundledPoseSamples(Context context, String file) {
     List<PoseSample> poseSamples = new ArrayList<>();
     try {
       BufferedReader reader = new BufferedReader(
-              new InputStreamReader(context.getAssets().open(POSE_SAMPLES_FILE)));
+              new InputStreamReader(context.getAssets().open(file)));
       String csvLine = reader.readLine();
       while (csvLine != null) {
         // If line is not a valid {@link PoseSample}, we'll get null and skip adding to the list.
@@ -133,215 +159,380 @@ public class PoseClassifierProcessor {
     } catch (IOException e) {
       Log.e(TAG, "Error when loading pose samples.\n" + e);
     }
-    poseClassifier = new PoseClassifier(poseSamples);
+    return poseSamples;
+  }
+
+  /**
+   * Returns the classifier options for the bundled samples in {@code file}, with the features
+   * picked for them offline and the {@link AngleRules} for their classes if there are such files
+   * next to them, and a result cache for the poses held over consecutive frames in stream mode.
+   */
+  private PoseClassifierOptions getClassifierOptions(Context context, String file) {
+    PoseClassifierOptions.Builder builder = new PoseClassifierOptions.Builder();
+    if (isStreamMode) {
+      builder
+          .setResultCacheSize(RESULT_CACHE_SIZE)
+          .setResultCacheTolerance(RESULT_CACHE_TOLERANCE);
+    }
+    String featuresFile = file.replaceFirst("\\.csv$", "") + PoseEmbedding.FEATURES_EXTENSION;
+    try (Reader reader = new InputStreamReader(context.getAssets().open(featuresFile))) {
+      builder.setFeatures(PoseEmbedding.readFeatures(reader));
+    } catch (FileNotFoundException e) {
+      // Keeps the default features.
+    } catch (IOException | IllegalArgumentException e) {
+      Log.e(TAG, "Error when loading features in " + featuresFile + ".\n" + e);
+    }
+    String rulesFile = file.replaceFirst("\\.csv$", "") + AngleRules.EXTENSION;
+    try (Reader reader = new InputStreamReader(context.getAssets().open(rulesFile))) {
+      builder.setAngleRules(AngleRules.parse(reader));
+    } catch (FileNotFoundException e) {
+      // Always searches the samples.
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, "Error when loading angle rules in " + rulesFile + ".\n" + e);
+    }
+    return builder.build();
+  }
+
+  private static EnrolledSamples openEnrolledSamples(Context context) {
+    File file = new File(context.getFilesDir(), ENROLLED_POSE_SAMPLES_FILE);
+    try {
+      return EnrolledSamples.open(file);
+    } catch (IOException e) {
+      Log.e(TAG, "Error when loading enrolled pose samples, they won't be kept.\n" + e);
+      return EnrolledSamples.inMemory();
+    }
+  }
+
+  private void loadPoseSamples(Context context) {
+    List<PoseSample> poseSamples = readBundledPoseSamples(context, POSE_SAMPLES_FILE);
+    for (String file : EXTRA_POSE_SAMPLES_FILES) {
+      extraClassifiers.add(new PoseClassifier(
+          readBundledPoseSamples(context, file), getClassifierOptions(context, file)));
+    }
+    PoseClassifier classifier;
+    try {
+      activeModel = registry.publish(POSE_SAMPLES_FILE, poseSamples);
+      classifier = activeModel.getClassifier();
+    } catch (IllegalArgumentException e) {
+      Log.e(TAG, "Invalid pose samples in " + POSE_SAMPLES_FILE + ".\n" + e);
+      classifier = new PoseClassifier(
+          poseSamples, getClassifierOptions(context, POSE_SAMPLES_FILE), enrolledSamples);
+    }
+    setPoseClassifier(classifier);
+    loadExercises(context);
     if (isStreamMode) {
       for (String className : POSE_CLASSES) {
         repCounters.add(new RepetitionCounter(className));
       }
+      addRepCounters(classifier.getClassNameTable());
+    }
+  }
+
+  private void setPoseClassifier(PoseClassifier classifier) {
+    List<PoseClassifier> classifiers = new ArrayList<>();
+    classifiers.add(classifier);
+    classifiers.addAll(extraClassifiers);
+    // Run sequentially, the other cores are busy with pose detection.
+    poseClassifier = new PoseClassifierGroup(classifiers);
+  }
+
+  /** Adds a {@link RepetitionCounter} for each class of {@code classNames} without one yet. */
+  private void addRepCounters(ClassNameTable classNames) {
+    for (String className : classNames.getNames()) {
+      boolean counted = false;
+      for (RepetitionCounter repCounter : repCounters) {
+        counted |= repCounter.getClassName().equals(className);
+      }
+      if (!counted) {
+        repCounters.add(new RepetitionCounter(className));
+      }
+    }
+  }
 
+  /**
+   * Loads the pose samples in {@code file} in the background and, if they are valid, switches to
+   * them between two frames. Smoothing, rep counts and exercise progress carry over.
+   */
+  @AnyThread
+  public synchronized ListenableFuture<PoseClassifierRegistry.Model> reloadPoseSamples(File file) {
+    if (loadExecutor == null) {
+      loadExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
     }
+    ListenableFuture<PoseClassifierRegistry.Model> model = registry.load(file, loadExecutor);
+    Futures.addCallback(
+        model,
+        new FutureCallback<PoseClassifierRegistry.Model>() {
+          @Override
+          public void onSuccess(PoseClassifierRegistry.Model model) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            Log.e(TAG, "Error when loading pose samples from " + file + ".\n" + t);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return model;
   }
 
   /**
-   * Given a new {@link Pose} input, returns a list of formatted {@link String}s with Pose
-   * classification results.
+   * Enrolls {@code landmarks}, such as those of a frame just classified, as a sample of
+   * {@code className}, one of the classes of the current sample set. It's classified against from
+   * the next frame on, without rebuilding the classifier, and kept for the next sessions.
    *
-   * <p>Currently it returns up to 2 strings as following:
-   * 0: PoseClass : X reps
-   * 1: PoseClass : [0.0-1.0] confidence
+   * @throws IllegalArgumentException if no pose was found or the class is unknown.
    */
+  @AnyThread
+  public void enrollPose(String className, PoseLandmarks landmarks) throws IOException {
+    PoseClassifierRegistry.Model model = registry.getCurrent();
+    Preconditions.checkArgument(
+        model != null && model.getClassifier().getClassNameTable().getId(className) >= 0,
+        "Unknown class %s",
+        className);
+    enrolledSamples.add("enrolled_" + System.currentTimeMillis(), className, landmarks);
+  }
+
+  /** Switches to the classifier of {@code model}, keeping the state built up over past frames. */
+  private void activate(PoseClassifierRegistry.Model model) {
+    long latencyMs = Clock.SYSTEM.elapsedRealtime() - model.getPublishedMs();
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Switched to pose samples v%d from %s (%d samples) %d ms after publishing, "
+                + "after %d frames on v%d and none dropped.",
+            model.getVersion(),
+            model.getSource(),
+            model.getNumSamples(),
+            latencyMs,
+            framesOnActiveModel,
+            activeModel != null ? activeModel.getVersion() : 0));
+    activeModel = model;
+    setPoseClassifier(model.getClassifier());
+    framesOnActiveModel = 0;
+    for (ExerciseStateMachine exercise : exercises) {
+      exercise.setClassNames(poseClassifier.getClassNameTable());
+    }
+    if (isStreamMode) {
+      addRepCounters(model.getClassifier().getClassNameTable());
+    }
+  }
 
+  private void loadExercises(Context context) {
+    exercises = new ArrayList<>();
+    List<Integer> classifiers = new ArrayList<>();
+    try (Reader reader = new InputStreamReader(context.getAssets().open(EXERCISES_FILE))) {
+      for (ExerciseDefinition definition : ExerciseDefinition.parse(reader)) {
+        exercises.add(new ExerciseStateMachine(definition, poseClassifier.getClassNameTable()));
+        classifiers.add(findClassifier(definition));
+      }
+    } catch (IOException | RuntimeException e) {
+      Log.e(TAG, "Error when loading exercises.\n" + e);
+      exercises.clear();
+      classifiers.clear();
+    }
+    exerciseClassifiers = Ints.toArray(classifiers);
+  }
+
+  /**
+   * Returns the index in the group of the classifier with the first class a transition of
+   * {@code definition} is taken on, the first classifier if none has it. The registry classifier
+   * stays first across sample set swaps, so the index holds for the whole session.
+   */
+  private int findClassifier(ExerciseDefinition definition) {
+    if (definition.getTransitions() != null) {
+      for (ExerciseDefinition.Transition transition : definition.getTransitions()) {
+        if (transition.getClassName() != null) {
+          return Math.max(0, poseClassifier.findClassifier(transition.getClassName()));
+        }
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Given a new {@link Pose} input, returns the Pose classification results: the most confident
+   * class in the current frame, the progress of each exercise and, in stream mode, the last rep
+   * counted by a {@link RepetitionCounter}.
+   */
   @WorkerThread
-  public List<String> getPoseResult(Pose pose) {
+  public PoseResult getPoseResult(Pose pose) {
+    return getPoseResult(PoseLandmarks.fromPose(pose));
+  }
+
+  /**
+   * Same as {@link #getPoseResult(Pose)} for landmarks that may have been predicted rather than
+   * detected.
+   *
+   * <p>In stream mode, a pose with several embedded landmarks likely out of frame isn't classified.
+   * The frame counts as missing for the smoothing, rather than as a vote for no class, and the
+   * result of the last classified frame is returned again.
+   */
+  @WorkerThread
+  public PoseResult getPoseResult(PoseLandmarks landmarks) {
     Preconditions.checkState(Looper.myLooper() != Looper.getMainLooper());
-    List<String> result = new ArrayList<>();
-    ClassificationResult classification = poseClassifier.classify(pose);
+    numFrames++;
+    if (isStreamMode && isMostlyOutOfFrame(landmarks)) {
+      numSkippedFrames++;
+      emaSmoothing.skipFrame();
+      return lastResult;
+    }
+    lastResult = classify(landmarks);
+    return lastResult;
+  }
+
+  /** Returns whether too many of the landmarks the embedding is made of are likely out of frame. */
+  static boolean isMostlyOutOfFrame(PoseLandmarks landmarks) {
+    return PoseEmbedding.getNumEmbeddedLandmarksOutOfFrame(landmarks, MIN_IN_FRAME_LIKELIHOOD)
+        > MAX_EMBEDDED_LANDMARKS_OUT_OF_FRAME;
+  }
+
+  private PoseResult classify(PoseLandmarks landmarks) {
+    // A newly published model is picked up here, so that it is used for a whole frame.
+    PoseClassifierRegistry.Model model = registry.getCurrent();
+    if (model != null && model != activeModel) {
+      activate(model);
+    }
+    framesOnActiveModel++;
+    long startNs = System.nanoTime();
+    // Computed once for the classifiers and the rep matcher.
+    List<PointF3D> allFeatures =
+        landmarks.isEmpty() ? null : PoseEmbedding.getAllFeatures(landmarks.getPositions3D());
+    ClassificationResult classification;
+    if (allFeatures == null) {
+      classification = poseClassifier.classify(landmarks.getPositions3D());
+    } else if (isStreamMode) {
+      JointAngles.getAngles(landmarks, jointAngles);
+      classification = poseClassifier.classifyFeatures(allFeatures, jointAngles);
+    } else {
+      classification = poseClassifier.classifyFeatures(allFeatures);
+    }
+    classificationNanos.add(System.nanoTime() - startNs);
+    long nowMs = Clock.SYSTEM.elapsedRealtime();
 
+    float transitionDistance = Float.POSITIVE_INFINITY;
     // Update {@link RepetitionCounter}s if {@code isStreamMode}.
     if (isStreamMode) {
       // Feed pose to smoothing even if no pose found.
       classification = emaSmoothing.getSmoothedResult(classification);
 
       // Return early without updating repCounter if no pose found.
-      mediaRecorder = new MediaRecorder();
       for (RepetitionCounter repCounter : repCounters) {
         int repsBefore = repCounter.getNumRepeats();
         int repsAfter = repCounter.addClassificationResult(classification);
         if (repsAfter > repsBefore) {
           // Play a fun beep when rep counter updates.
-          ToneGenerator tg = new ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100);
-          tg.startTone(ToneGenerator.TONE_PROP_BEEP);
-          lastRepResult = String.format(
-                  Locale.US, "%s : %d reps", repCounter.getClassName(), repsAfter);
+          feedback.post(FeedbackEngine.EVENT_REP_COUNTED);
+          lastRepClassName = repCounter.getClassName();
+          lastRepCount = repsAfter;
           break;
         }
       }
-      result.add(lastRepResult);
+      for (RepetitionCounter repCounter : repCounters) {
+        transitionDistance = Math.min(
+            transitionDistance,
+            repCounter.getThresholdDistance() / poseClassifier.confidenceRange());
+      }
+      if (allFeatures != null) {
+        matchReps(allFeatures, nowMs);
+      }
     }
 
+    PoseResult.Builder result = new PoseResult.Builder(isStreamMode)
+        .setLastRep(lastRepClassName, lastRepCount)
+        .setTransitionDistance(transitionDistance)
+        .setLastMatchedRep(lastMatchedRep);
     // Add maxConfidence class of current frame to result if pose is found.
-    if (!pose.getAllPoseLandmarks().isEmpty()) {
-      String predictedClass = classification.getMaxConfidenceClass();
-
-      String maxConfidenceClass = classification.getMaxConfidenceClass();
-
-      switch (currentState) {
-          case DOWN:
-            if (predictedClass.equals("up")) {
-              currentState = PoseState.UP;
-              if (startTime == 0) {
-                startTime = System.currentTimeMillis() / 1000.0;
-
-
-
-              }
-        // 判断数组内容是否超过10个
-              // 判断数组内容是否超过10个
-              if (numbers.size() < 10) {
-                // 如果没有超过10个，增加1.20这样的数据;
-                numbers.add(
-                        (double) (classification.getClassConfidence(maxConfidenceClass)
-                                                        / poseClassifier.confidenceRange())
-                );
-
-              }
-            } else {
-//              number2 =new ArrayList<>();
-//              numbers =new ArrayList<>();
-//              number3 =new ArrayList<>();
-            }
-            break;
-          case UP:
-            if (predictedClass.equals("t3")) {
-              repCount++;
-              currentState = PoseState.T1;
-//              repCount++;  // 完成一个动作序列，计数加一
-              if (number2.size() < 10) {
-                // 如果没有超过10个，增加1.20这样的数据
-                number2.add(
-                        (double) (classification.getClassConfidence(maxConfidenceClass)
-                                / poseClassifier.confidenceRange())
-                );
-
-
-                // 计算动作持续时间 (以秒为单位)
-                double duration = (System.currentTimeMillis() / 1000.0) - startTime;
-                actionDurations.add(duration);
-                lastActionTime = System.currentTimeMillis() / 1000.0; // 更新上一个动作的结束时间
-
-
-              }
-
-
-            } else {
-//              startTime = 0; // 重置起始时间
-//              actionDurations.clear(); // 清空动作持续时间
-              currentState = PoseState.DOWN; // 重置状态
-//              number2 =new ArrayList<>();
-//              numbers =new ArrayList<>();
-//              number3 =new ArrayList<>();
-            }
-            break;
-          case T1:
-            if (predictedClass.equals("t2")) {
-
-              repCount++;  // 完成一个动作序列，计数加一
-
-              currentState = PoseState.T2;
-              repCount++;  // 完成一个动作序列，计数加一
-              double duration = (System.currentTimeMillis() / 1000.0) - startTime;
-              actionDurations.add(duration);
-              lastActionTime = System.currentTimeMillis() / 1000.0; // 更新上一个动作的结束时间
-
-
-            } else {
-//              startTime = 0; // 重置起始时间
-//              actionDurations.clear(); // 清空动作持续时间
-              currentState = PoseState.DOWN; // 重置状态
-              float sum = 0;
-              for (int i = 0; i < numbers.size(); i++) {
-                sum += numbers.get(i);
-              }
-              float sum1 = 0;
-              for (int i = 0; i < number2.size(); i++) {
-                sum1 += numbers.get(i);
-              }
-              revie = (sum / numbers.size() + sum1  / number2.size())/2;
-
-            }
-            break;
-          case T2:
-            if (predictedClass.equals("down")) {
-              currentState = PoseState.DOWN;
-              repCount++;  // 完成一个动作序列，计数加一
-              // 播放提示音或进行其他操作
-            } else if (!predictedClass.equals("t1")) {
-              // 如果不是 t2 或 down，则重置状态
-              currentState = PoseState.DOWN;
-
-            }
-          break;
-
-      }
-
-
-
-      String maxConfidenceClassResult = String.format(
-              Locale.US,
-              "%s : %.2f confidence",
-              maxConfidenceClass,
-              classification.getClassConfidence(maxConfidenceClass)
-                      / poseClassifier.confidenceRange()
-              );
-      result.add(maxConfidenceClassResult);
-      result.add("数量是"+repCount);
-      result.add("评分为"+revie);
-      if (!actionDurations.isEmpty()) {
-        for (int i = 0; i < actionDurations.size(); i++) {
-          double duration = actionDurations.get(i);
-          result.add(String.format(Locale.US, "动作 %d 持续时间：%.2f 秒", i+1, duration));
+    if (landmarks.isEmpty()) {
+      return result.build();
+    }
+    // The class shown is the most confident one of the sample set of the registry, rather than of
+    // whichever family was most confident in this frame.
+    int maxConfidenceClassId = poseClassifier.getMaxConfidenceClassId(classification, 0);
+    float maxConfidence = classification.getClassConfidence(maxConfidenceClassId)
+        / poseClassifier.confidenceRange();
+    ImmutableList.Builder<PoseResult.ExerciseProgress> progress = ImmutableList.builder();
+    for (int i = 0; i < exercises.size(); i++) {
+      ExerciseStateMachine exercise = exercises.get(i);
+      int classId = poseClassifier.getMaxConfidenceClassId(classification, exerciseClassifiers[i]);
+      float confidence =
+          classification.getClassConfidence(classId) / poseClassifier.confidenceRange();
+      int repsBefore = exercise.getRepCount();
+      String stateBefore = exercise.getStateName();
+      exercise.update(classId, confidence, nowMs);
+      if (feedback != null) {
+        if (exercise.getRepCount() > repsBefore) {
+          feedback.post(FeedbackEngine.EVENT_REP_COUNTED);
+        } else if (!exercise.getStateName().equals(stateBefore)) {
+          feedback.post(FeedbackEngine.EVENT_STATE_CHANGED);
         }
       }
+      progress.add(new PoseResult.ExerciseProgress(exercise));
+      transitionDistance =
+          Math.min(transitionDistance, exercise.getTransitionDistance(classId, confidence));
     }
-
-    return result;
+    return result
+        .setPose(maxConfidenceClassId, classification.getClassNames(), maxConfidence)
+        .setExercises(progress.build())
+        .setTransitionDistance(transitionDistance)
+        .build();
   }
 
+  /** Feeds a frame to the rep matcher, first rebuilding it if more poses were enrolled. */
+  private void matchReps(List<PointF3D> allFeatures, long nowMs) {
+    EnrolledSamples.Snapshot enrolled = enrolledSamples.getSnapshot();
+    if (enrolled.size != repMatcherNumEnrolled) {
+      // Reps found so far are forgotten, but for the last one.
+      repMatcherNumEnrolled = enrolled.size;
+      List<RepMatcher.Template> templates =
+          RepMatcher.fromSamples(enrolled, REP_FEATURES, REP_AXES_WEIGHTS);
+      repMatcher = templates.isEmpty() ? null : new RepMatcher(templates);
+    }
+    if (repMatcher == null) {
+      return;
+    }
+    RepMatcher.getFeatures(allFeatures, REP_FEATURES, REP_AXES_WEIGHTS, repFeatures);
+    if (repMatcher.addFrame(repFeatures, nowMs) >= 0) {
+      lastMatchedRep = new PoseResult.MatchedRep(repMatcher);
+    }
+  }
 
+  /**
+   * Frees the audio resources and closes the enrolled samples file, logging how many frames were
+   * skipped and how the result caches and angle rules did. Results can still be computed after,
+   * but without feedback.
+   */
+  @AnyThread
+  public synchronized void close() {
+    Log.i(
+        TAG,
+        String.format(
+            Locale.US,
+            "Skipped classification of %d of %d frames with unreliable landmarks, saving about "
+                + "%.1f ms of CPU at %.0f us per classification.",
+            numSkippedFrames,
+            numFrames,
+            numSkippedFrames * classificationNanos.getMean() / 1e6,
+            classificationNanos.getMean() / 1e3));
+    if (feedback != null) {
+      feedback.release();
+    }
+    if (loadExecutor != null) {
+      loadExecutor.shutdown();
+    }
+    enrolledSamples.close();
+    for (PoseClassifier classifier : poseClassifier.getClassifiers()) {
+      String summary = classifier.getResultCacheSummary();
+      if (summary != null) {
+        Log.i(TAG, summary);
+      }
+    }
+    String angleRuleSummary = poseClassifier.getAngleRuleSummary();
+    if (angleRuleSummary != null) {
+      Log.i(TAG, angleRuleSummary);
+    }
+  }
 
   public interface RepCountListener {
     void onRepCountUpdated(int repCount);
   }
 }
-//代码解析：PoseClassifierProcessor 类用于处理姿势分类和计数
-//这段 Java 代码定义了一个名为 PoseClassifierProcessor 的类，其作用是处理输入的姿势数据，
-// 进行分类并计算重复动作次数（例如俯卧撑或深蹲的次数）。它结合了 PoseClassifier 和 RepetitionCounter 等类，实现了对连续姿势流的分析和计数。
-//主要功能：
-//加载姿势样本： 从指定的文件 (POSE_SAMPLES_FILE) 中读取姿势样本数据，并创建 PoseClassifier 对象用于分类。
-//处理姿势数据： getPoseResult(pose) 方法接受一个 Pose 对象作为输入，并返回一个包含分类结果和重复次数的字符串列表。
-//平滑处理： 如果处于流模式 (isStreamMode)，使用 EMASmoothing 类对分类结果进行指数移动平均平滑，以减少噪声的影响。
-//重复计数：
-//维护一个 currentState 变量，跟踪当前姿势状态 (例如 DOWN、UP)。
-//根据分类结果和当前状态更新状态机，判断是否完成了一个重复动作。
-//如果完成了一个重复动作，则将 repCount 加 1，并通过 RepCountListener 接口通知外界。
-//代码解读：
-//POSE_SAMPLES_FILE：存储姿势样本数据的文件路径。
-//PUSHUPS_CLASS，SQUATS_CLASS：定义了要进行计数的姿势类别。
-//PoseState：枚举类型，表示不同的姿势状态。
-//currentState：当前姿势状态。
-//repCount：重复动作次数。
-//isStreamMode：是否处于流模式，即处理连续的姿势数据。
-//emaSmoothing：用于平滑分类结果的 EMA 对象。
-//repCounters：存储每个姿势类别的 RepetitionCounter 对象的列表。
-//poseClassifier：用于分类姿势的 PoseClassifier 对象。
-//lastRepResult：上一次计数结果的字符串。
-//loadPoseSamples(context)：从文件中加载姿势样本数据，并创建 PoseClassifier 对象。
-//getPoseResult(pose)：处理输入的 Pose 对象，并返回分类结果和重复次数的字符串列表。
-//RepCountListener：用于通知外界重复次数更新的接口。
-//代码应用：
-//这个代码可以用于各种需要进行姿势分类和计数的应用，例如：
-//健身应用: 跟踪用户的健身进度，并提供实时反馈。
-//运动分析: 分析运动员的动作，计算训练量。
-//康复训练: 帮助患者进行康复训练，并监测训练效果。
-//总结：
-//PoseClassifierProcessor 类结合了姿势分类和重复计数的功能，可以有效地分析连续的姿势数据，并提供有用的信息。它可以作为构建健身、运动分析和康复训练等应用的基础。
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link PoseClassifier} and replaces it with ones built from new sample sets.
+ *
+ * <p>Each published sample set gets an increasing version. Loading, validating and building the
+ * classifier is done on the caller's thread or executor, and only the finished {@link Model} is
+ * swapped in with a single reference write. Classifying threads read {@link #getCurrent()} once per
+ * frame, so a frame is classified entirely by either the old or the new model and none is dropped.
+ * A load that finishes after a newer one is discarded.
+ */
+public class PoseClassifierRegistry {
+  /** An immutable, validated sample set and the classifier built from it. */
+  public static class Model {
+    private final long version;
+    private final String source;
+    private final PoseClassifier classifier;
+    private final int numSamples;
+    private final long publishedMs;
+
+    private Model(
+        long version, String source, PoseClassifier classifier, int numSamples, long publishedMs) {
+      this.version = version;
+      this.source = source;
+      this.classifier = classifier;
+      this.numSamples = numSamples;
+      this.publishedMs = publishedMs;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    /** Returns where the samples were loaded from, for logging. */
+    public String getSource() {
+      return source;
+    }
+
+    public PoseClassifier getClassifier() {
+      return classifier;
+    }
+
+    public int getNumSamples() {
+      return numSamples;
+    }
+
+    /** Returns when the model was swapped in, on the registry's {@link Clock}. */
+    public long getPublishedMs() {
+      return publishedMs;
+    }
+  }
+
+  private final PoseClassifierOptions options;
+  private final Clock clock;
+  // Samples recorded on the device, which every model's classifier also classifies against.
+  @Nullable private final EnrolledSamples enrolledSamples;
+  private final AtomicLong lastVersion = new AtomicLong();
+  private final AtomicReference<Model> current = new AtomicReference<>();
+
+  public PoseClassifierRegistry(PoseClassifierOptions options) {
+    this(options, Clock.SYSTEM);
+  }
+
+  public PoseClassifierRegistry(PoseClassifierOptions options, Clock clock) {
+    this(options, clock, null);
+  }
+
+  public PoseClassifierRegistry(
+      PoseClassifierOptions options, Clock clock, @Nullable EnrolledSamples enrolledSamples) {
+    this.options = options;
+    this.clock = clock;
+    this.enrolledSamples = enrolledSamples;
+  }
+
+  /** Returns the latest published model, or null if none was published yet. */
+  @Nullable
+  public Model getCurrent() {
+    return current.get();
+  }
+
+  /**
+   * Validates {@code poseSamples}, builds a classifier for them and swaps it in.
+   *
+   * @return the new model, or the current one if a newer model was published meanwhile.
+   * @throws IllegalArgumentException if the samples are not a usable sample set.
+   */
+  public Model publish(String source, List<PoseSample> poseSamples) {
+    return publish(lastVersion.incrementAndGet(), source, poseSamples);
+  }
+
+  /**
+   * Reads, validates and publishes the samples in {@code file} on {@code executor}. The future
+   * fails with an {@link IOException} or {@link IllegalArgumentException} if the file can't be
+   * read or isn't a valid sample set, in which case the current model is kept.
+   */
+  public ListenableFuture<Model> load(File file, ListeningExecutorService executor) {
+    // The version is taken now, so that loads are ordered by when they were asked for.
+    long version = lastVersion.incrementAndGet();
+    return executor.submit(
+        () -> {
+          try (Reader reader = new InputStreamReader(new FileInputStream(file))) {
+            return publish(version, file.getPath(), readSamples(reader));
+          }
+        });
+  }
+
+  private Model publish(long version, String source, List<PoseSample> poseSamples) {
+    validate(poseSamples);
+    PoseClassifier classifier = new PoseClassifier(poseSamples, options, enrolledSamples);
+    while (true) {
+      Model previous = current.get();
+      if (previous != null && previous.version > version) {
+        return previous;
+      }
+      Model model =
+          new Model(version, source, classifier, poseSamples.size(), clock.elapsedRealtime());
+      if (current.compareAndSet(previous, model)) {
+        return model;
+      }
+    }
+  }
+
+  private void validate(List<PoseSample> poseSamples) {
+    // With fewer samples than the confidence range, no class could ever reach full confidence.
+    int minSamples = Math.min(options.getMaxDistanceTopK(), options.getMeanDistanceTopK());
+    Preconditions.checkArgument(
+        poseSamples.size() >= minSamples,
+        "%s pose samples, at least %s are needed",
+        poseSamples.size(),
+        minSamples);
+    for (PoseSample poseSample : poseSamples) {
+      Preconditions.checkArgument(
+          !poseSample.getClassName().isEmpty(),
+          "Pose sample %s has no class",
+          poseSample.getName());
+    }
+  }
+
+  /**
+   * Reads pose samples in the CSV format of {@link PoseSample#getPoseSample}. Unlike the lenient
+   * loading of the bundled samples, a malformed line fails the whole set.
+   *
+   * @throws IllegalArgumentException on a malformed line.
+   */
+  public static List<PoseSample> readSamples(Reader reader) throws IOException {
+    List<PoseSample> poseSamples = new ArrayList<>();
+    BufferedReader lines = new BufferedReader(reader);
+    int lineNumber = 0;
+    for (String csvLine = lines.readLine(); csvLine != null; csvLine = lines.readLine()) {
+      lineNumber++;
+      if (csvLine.trim().isEmpty()) {
+        continue;
+      }
+      PoseSample poseSample = PoseSample.getPoseSample(csvLine, ",");
+      Preconditions.checkArgument(poseSample != null, "Invalid pose sample on line %s", lineNumber);
+      poseSamples.add(poseSample);
+    }
+    return poseSamples;
+  }
+}
@@ -22,21 +22,249 @@ import static com.google.mlkit.vision.demo.java.posedetector.classification.Util
 import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.subtract;
 import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.subtractAll;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.mlkit.vision.common.PointF3D;
 import com.google.mlkit.vision.pose.PoseLandmark;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Generates embedding for given list of Pose landmarks.
+ *
+ * <p>The embedding is a list of features, each the vector between two points of the normalized
+ * pose, out of a fixed table. The default embedding uses all of them, and a classifier can use a
+ * subset picked for its samples offline, read with {@link #readFeatures}.
  */
 public class PoseEmbedding {
   // Multiplier to apply to the torso to get minimal body size. Picked this by experimentation.
   private static final float TORSO_MULTIPLIER = 2.5f;
+  // Points features are measured between, besides landmarks.
+  private static final int HIPS_CENTER = -1;
+  private static final int SHOULDERS_CENTER = -2;
+  private static final ImmutableMap<Integer, String> POINT_NAMES =
+      new ImmutableMap.Builder<Integer, String>()
+          .put(HIPS_CENTER, "hips_center")
+          .put(SHOULDERS_CENTER, "shoulders_center")
+          .put(PoseLandmark.LEFT_SHOULDER, "left_shoulder")
+          .put(PoseLandmark.RIGHT_SHOULDER, "right_shoulder")
+          .put(PoseLandmark.LEFT_ELBOW, "left_elbow")
+          .put(PoseLandmark.RIGHT_ELBOW, "right_elbow")
+          .put(PoseLandmark.LEFT_WRIST, "left_wrist")
+          .put(PoseLandmark.RIGHT_WRIST, "right_wrist")
+          .put(PoseLandmark.LEFT_HIP, "left_hip")
+          .put(PoseLandmark.RIGHT_HIP, "right_hip")
+          .put(PoseLandmark.LEFT_KNEE, "left_knee")
+          .put(PoseLandmark.RIGHT_KNEE, "right_knee")
+          .put(PoseLandmark.LEFT_ANKLE, "left_ankle")
+          .put(PoseLandmark.RIGHT_ANKLE, "right_ankle")
+          .build();
+
+  // We use several pairwise 3D distances to form pose embedding. These were selected
+  // based on experimentation for best results with our default pose classes as captued in the
+  // pose samples csv. Feel free to play with this and add or remove for your use-cases.
+  // Each feature is the vector from the first point of its pair to the second.
+  private static final int[][] FEATURE_PAIRS = {
+    // One joint.
+    {HIPS_CENTER, SHOULDERS_CENTER},
+    {PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ELBOW},
+    {PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ELBOW},
+    {PoseLandmark.LEFT_ELBOW, PoseLandmark.LEFT_WRIST},
+    {PoseLandmark.RIGHT_ELBOW, PoseLandmark.RIGHT_WRIST},
+    {PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_KNEE},
+    {PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_KNEE},
+    {PoseLandmark.LEFT_KNEE, PoseLandmark.LEFT_ANKLE},
+    {PoseLandmark.RIGHT_KNEE, PoseLandmark.RIGHT_ANKLE},
+    // Two joints.
+    {PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_WRIST},
+    {PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_WRIST},
+    {PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_ANKLE},
+    {PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_ANKLE},
+    // Four joints.
+    {PoseLandmark.LEFT_HIP, PoseLandmark.LEFT_WRIST},
+    {PoseLandmark.RIGHT_HIP, PoseLandmark.RIGHT_WRIST},
+    // Five joints.
+    {PoseLandmark.LEFT_SHOULDER, PoseLandmark.LEFT_ANKLE},
+    {PoseLandmark.RIGHT_SHOULDER, PoseLandmark.RIGHT_ANKLE},
+    // Cross body.
+    {PoseLandmark.LEFT_ELBOW, PoseLandmark.RIGHT_ELBOW},
+    {PoseLandmark.LEFT_KNEE, PoseLandmark.RIGHT_KNEE},
+    {PoseLandmark.LEFT_WRIST, PoseLandmark.RIGHT_WRIST},
+    {PoseLandmark.LEFT_ANKLE, PoseLandmark.RIGHT_ANKLE}
+  };
+  public static final int NUM_FEATURES = FEATURE_PAIRS.length;
+  // Features picked for a sample set are in a file next to it, named after it with this extension.
+  public static final String FEATURES_EXTENSION = ".features";
+  // The embedding as it has always been made, which the bundled samples and thresholds were tuned
+  // with: the hip to wrist features are counted twice.
+  private static final int[] DEFAULT_FEATURES = {
+    0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 13, 14, 17, 18, 19, 20
+  };
+
+  // Landmarks the embedding is made of.
+  private static final int[] EMBEDDED_LANDMARKS = {
+    PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER,
+    PoseLandmark.LEFT_ELBOW, PoseLandmark.RIGHT_ELBOW,
+    PoseLandmark.LEFT_WRIST, PoseLandmark.RIGHT_WRIST,
+    PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP,
+    PoseLandmark.LEFT_KNEE, PoseLandmark.RIGHT_KNEE,
+    PoseLandmark.LEFT_ANKLE, PoseLandmark.RIGHT_ANKLE
+  };
 
   public static List<PointF3D> getPoseEmbedding(List<PointF3D> landmarks) {
+    return getPoseEmbedding(landmarks, DEFAULT_FEATURES);
+  }
+
+  /** Returns the embedding made of the given features, as indices in the feature table. */
+  public static List<PointF3D> getPoseEmbedding(List<PointF3D> landmarks, int[] features) {
+    return select(getAllFeatures(landmarks), features);
+  }
+
+  /**
+   * Returns every feature of the table, in order, from which embeddings of any features can be
+   * taken with {@link #select}.
+   */
+  public static List<PointF3D> getAllFeatures(List<PointF3D> landmarks) {
     List<PointF3D> normalizedLandmarks = normalize(landmarks);
-    return getEmbedding(normalizedLandmarks);
+    List<PointF3D> features = new ArrayList<>(NUM_FEATURES);
+    for (int[] pair : FEATURE_PAIRS) {
+      features.add(subtract(
+          getPoint(normalizedLandmarks, pair[0]), getPoint(normalizedLandmarks, pair[1])));
+    }
+    return features;
+  }
+
+  /**
+   * Same as {@link #getAllFeatures(List)} for landmarks packed as [landmark][X, Y, Z] from
+   * {@code offset}, without allocating: the features are written to {@code out} as [feature][X, Y,
+   * Z], and {@code normalized} holds the normalized landmarks. Both values and rounding are the
+   * same as with points.
+   */
+  public static void getAllFeatures(
+      float[] landmarks, int offset, float[] normalized, float[] out) {
+    int numValues = PoseLandmarks.NUM_LANDMARKS * 3;
+    System.arraycopy(landmarks, offset, normalized, 0, numValues);
+    // Normalize translation.
+    float centerX = averageCoordinate(normalized, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, 0);
+    float centerY = averageCoordinate(normalized, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, 1);
+    float centerZ = averageCoordinate(normalized, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, 2);
+    for (int i = 0; i < numValues; i += 3) {
+      normalized[i] -= centerX;
+      normalized[i + 1] -= centerY;
+      normalized[i + 2] -= centerZ;
+    }
+
+    // Normalize scale, as getPoseSize().
+    float hipsX = averageCoordinate(normalized, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, 0);
+    float hipsY = averageCoordinate(normalized, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, 1);
+    float shouldersX =
+        averageCoordinate(normalized, PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER, 0);
+    float shouldersY =
+        averageCoordinate(normalized, PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER, 1);
+    float maxDistance =
+        (float) Math.hypot(shouldersX - hipsX, shouldersY - hipsY) * TORSO_MULTIPLIER;
+    for (int i = 0; i < numValues; i += 3) {
+      float distance = (float) Math.hypot(normalized[i] - hipsX, normalized[i + 1] - hipsY);
+      if (distance > maxDistance) {
+        maxDistance = distance;
+      }
+    }
+    float scale = 1 / maxDistance;
+    for (int i = 0; i < numValues; i++) {
+      normalized[i] = normalized[i] * scale * 100;
+    }
+
+    for (int feature = 0; feature < NUM_FEATURES; feature++) {
+      for (int dim = 0; dim < 3; dim++) {
+        out[feature * 3 + dim] = getPoint(normalized, FEATURE_PAIRS[feature][1], dim)
+            - getPoint(normalized, FEATURE_PAIRS[feature][0], dim);
+      }
+    }
+  }
+
+  /** Returns the given features out of all those returned by {@link #getAllFeatures}. */
+  public static List<PointF3D> select(List<PointF3D> allFeatures, int[] features) {
+    List<PointF3D> embedding = new ArrayList<>(features.length);
+    for (int feature : features) {
+      embedding.add(allFeatures.get(feature));
+    }
+    return embedding;
+  }
+
+  /** Returns the features of the default embedding, as indices in the feature table. */
+  public static int[] getDefaultFeatures() {
+    return DEFAULT_FEATURES.clone();
+  }
+
+  /** Returns the name of a feature, such as "left_hip-left_wrist". */
+  public static String getFeatureName(int feature) {
+    int[] pair = FEATURE_PAIRS[feature];
+    return POINT_NAMES.get(pair[0]) + "-" + POINT_NAMES.get(pair[1]);
+  }
+
+  /** Returns the index of the feature named {@code name}, or -1 if there is none. */
+  public static int getFeature(String name) {
+    for (int feature = 0; feature < NUM_FEATURES; feature++) {
+      if (getFeatureName(feature).equals(name)) {
+        return feature;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads features, one name per line as given by {@link #getFeatureName}. Blank lines and lines
+   * starting with '#' are skipped.
+   *
+   * @throws IllegalArgumentException on an unknown feature, or if there are none.
+   */
+  public static int[] readFeatures(Reader reader) throws IOException {
+    List<Integer> features = new ArrayList<>();
+    BufferedReader lines = new BufferedReader(reader);
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      int feature = getFeature(line);
+      Preconditions.checkArgument(feature >= 0, "Unknown feature %s", line);
+      features.add(feature);
+    }
+    Preconditions.checkArgument(!features.isEmpty(), "No features");
+    int[] result = new int[features.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = features.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the mean in-frame likelihood of the landmarks the embedding is made of, or 0 if no
+   * pose was found.
+   */
+  public static float getEmbeddedLandmarkLikelihood(PoseLandmarks landmarks) {
+    return landmarks.getMeanInFrameLikelihood(EMBEDDED_LANDMARKS);
+  }
+
+  /**
+   * Returns the number of landmarks the embedding is made of whose in-frame likelihood is under
+   * {@code minInFrameLikelihood}, or 0 if no pose was found.
+   */
+  public static int getNumEmbeddedLandmarksOutOfFrame(
+      PoseLandmarks landmarks, float minInFrameLikelihood) {
+    if (landmarks.isEmpty()) {
+      return 0;
+    }
+    int count = 0;
+    for (int landmarkType : EMBEDDED_LANDMARKS) {
+      if (landmarks.getInFrameLikelihood(landmarkType) < minInFrameLikelihood) {
+        count++;
+      }
+    }
+    return count;
   }
 
   private static List<PointF3D> normalize(List<PointF3D> landmarks) {
@@ -78,64 +306,32 @@ public class PoseEmbedding {
     return maxDistance;
   }
 
-  private static List<PointF3D> getEmbedding(List<PointF3D> lm) {
-    List<PointF3D> embedding = new ArrayList<>();
-
-    // We use several pairwise 3D distances to form pose embedding. These were selected
-    // based on experimentation for best results with our default pose classes as captued in the
-    // pose samples csv. Feel free to play with this and add or remove for your use-cases.
-
-    // We group our distances by number of joints between the pairs.
-    // One joint.
-    embedding.add(subtract(
-        average(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.RIGHT_HIP)),
-        average(lm.get(PoseLandmark.LEFT_SHOULDER), lm.get(PoseLandmark.RIGHT_SHOULDER))
-    ));
-
-    embedding.add(subtract(
-        lm.get(PoseLandmark.LEFT_SHOULDER), lm.get(PoseLandmark.LEFT_ELBOW)));
-    embedding.add(subtract(
-        lm.get(PoseLandmark.RIGHT_SHOULDER), lm.get(PoseLandmark.RIGHT_ELBOW)));
-
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_ELBOW), lm.get(PoseLandmark.LEFT_WRIST)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_ELBOW), lm.get(PoseLandmark.RIGHT_WRIST)));
-
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.LEFT_KNEE)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_HIP), lm.get(PoseLandmark.RIGHT_KNEE)));
-
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_KNEE), lm.get(PoseLandmark.LEFT_ANKLE)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_KNEE), lm.get(PoseLandmark.RIGHT_ANKLE)));
-
-    // Two joints.
-    embedding.add(subtract(
-        lm.get(PoseLandmark.LEFT_SHOULDER), lm.get(PoseLandmark.LEFT_WRIST)));
-    embedding.add(subtract(
-        lm.get(PoseLandmark.RIGHT_SHOULDER), lm.get(PoseLandmark.RIGHT_WRIST)));
-
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.LEFT_ANKLE)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_HIP), lm.get(PoseLandmark.RIGHT_ANKLE)));
-
-    // Four joints.
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.LEFT_WRIST)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_HIP), lm.get(PoseLandmark.RIGHT_WRIST)));
-
-    // Five joints.
-    embedding.add(subtract(
-        lm.get(PoseLandmark.LEFT_SHOULDER), lm.get(PoseLandmark.LEFT_ANKLE)));
-    embedding.add(subtract(
-        lm.get(PoseLandmark.RIGHT_SHOULDER), lm.get(PoseLandmark.RIGHT_ANKLE)));
-
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.LEFT_WRIST)));
-    embedding.add(subtract(lm.get(PoseLandmark.RIGHT_HIP), lm.get(PoseLandmark.RIGHT_WRIST)));
-
-    // Cross body.
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_ELBOW), lm.get(PoseLandmark.RIGHT_ELBOW)));
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_KNEE), lm.get(PoseLandmark.RIGHT_KNEE)));
+  private static PointF3D getPoint(List<PointF3D> lm, int point) {
+    switch (point) {
+      case HIPS_CENTER:
+        return average(lm.get(PoseLandmark.LEFT_HIP), lm.get(PoseLandmark.RIGHT_HIP));
+      case SHOULDERS_CENTER:
+        return average(lm.get(PoseLandmark.LEFT_SHOULDER), lm.get(PoseLandmark.RIGHT_SHOULDER));
+      default:
+        return lm.get(point);
+    }
+  }
 
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_WRIST), lm.get(PoseLandmark.RIGHT_WRIST)));
-    embedding.add(subtract(lm.get(PoseLandmark.LEFT_ANKLE), lm.get(PoseLandmark.RIGHT_ANKLE)));
+  private static float getPoint(float[] landmarks, int point, int dim) {
+    switch (point) {
+      case HIPS_CENTER:
+        return averageCoordinate(landmarks, PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP, dim);
+      case SHOULDERS_CENTER:
+        return averageCoordinate(
+            landmarks, PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER, dim);
+      default:
+        return landmarks[point * 3 + dim];
+    }
+  }
 
-    return embedding;
+  // As Utils.average() on one dimension of packed landmarks.
+  private static float averageCoordinate(float[] landmarks, int landmark1, int landmark2, int dim) {
+    return (landmarks[landmark1 * 3 + dim] + landmarks[landmark2 * 3 + dim]) * 0.5f;
   }
 
   private PoseEmbedding() {}
@@ -151,17 +347,19 @@ public class PoseEmbedding {
 //找到所有关键点到躯干中心的距离的最大值，作为标准化尺度。
 //将所有关键点坐标除以标准化尺度，进行缩放标准化。
 //最后将所有坐标乘以100，方便调试。
-//生成嵌入向量 (getEmbedding):
+//生成嵌入向量 (getAllFeatures 和 select):
 //计算不同关键点之间的距离，例如：
 //相邻关键点之间的距离 (例如肩膀和手肘)
 //相隔多个关键点之间的距离 (例如肩膀和手腕)
 //跨身体的距离 (例如左肘和右肘)
-//将这些距离组合成一个向量，即嵌入向量。
+//这些距离由 FEATURE_PAIRS 特征表定义，getAllFeatures 按表的顺序计算全部特征。
+//select 从全部特征中选出给定的特征，组合成一个向量，即嵌入向量。
 //代码解读：
-//getPoseEmbedding(landmarks)：这个方法接受一个 PointF3D 类型的列表作为输入，代表所有关键点的坐标，并返回一个同样是 PointF3D 类型的列表，代表生成的嵌入向量。
+//getPoseEmbedding(landmarks, features)：这个方法接受一个 PointF3D 类型的列表作为输入，代表所有关键点的坐标，并返回一个同样是 PointF3D 类型的列表，代表由 features 中的特征组成的嵌入向量。不传 features 时使用默认特征。
 //normalize(landmarks)：这个方法进行关键点坐标的标准化，包括平移和缩放。
 //getPoseSize(landmarks)：这个方法计算标准化后的身体尺寸，用于缩放标准化。
-//getEmbedding(lm)：这个方法根据标准化后的关键点计算嵌入向量，包含了各种关键点之间的距离。
+//getAllFeatures(landmarks)：这个方法根据标准化后的关键点计算特征表中的全部特征，包含了各种关键点之间的距离。
+//select(allFeatures, features)：这个方法从全部特征中选出给定的特征。
 //代码目的：
 //通过将姿势关键点转换为嵌入向量，可以方便地进行后续的姿势分类、相似度比较等任务。例如，可以将嵌入向量输入到机器学习模型中，进行姿势识别或动作分析。
 //代码应用：
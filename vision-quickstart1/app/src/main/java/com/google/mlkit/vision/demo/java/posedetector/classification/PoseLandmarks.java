@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.mlkit.vision.common.PointF3D;
+import com.google.mlkit.vision.pose.Pose;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.List;
+
+/**
+ * The landmarks of one frame, indexed by {@link PoseLandmark} type, either detected or predicted
+ * from earlier detections. Unlike {@link Pose}, can be built from values, so predictions can be
+ * classified and drawn like detections. Immutable.
+ */
+public class PoseLandmarks {
+  public static final int NUM_LANDMARKS = 33;
+  private static final int NUM_DIMS = 3;
+  private static final PoseLandmarks EMPTY = new PoseLandmarks(new float[0], new float[0], false);
+
+  // Positions as [landmark][X, Y, Z], in image pixels as {@link PoseLandmark#getPosition3D()}.
+  private final float[] positions;
+  private final float[] inFrameLikelihoods;
+  private final boolean predicted;
+  // Built on first use.
+  private List<PointF3D> positions3D;
+
+  public static PoseLandmarks empty() {
+    return EMPTY;
+  }
+
+  /** Returns the landmarks of {@code pose}, or {@link #empty()} if no pose was found. */
+  public static PoseLandmarks fromPose(Pose pose) {
+    List<PoseLandmark> landmarks = pose.getAllPoseLandmarks();
+    if (landmarks.isEmpty()) {
+      return EMPTY;
+    }
+    float[] positions = new float[NUM_LANDMARKS * NUM_DIMS];
+    float[] inFrameLikelihoods = new float[NUM_LANDMARKS];
+    for (PoseLandmark landmark : landmarks) {
+      int type = landmark.getLandmarkType();
+      PointF3D position = landmark.getPosition3D();
+      positions[type * NUM_DIMS] = position.getX();
+      positions[type * NUM_DIMS + 1] = position.getY();
+      positions[type * NUM_DIMS + 2] = position.getZ();
+      inFrameLikelihoods[type] = landmark.getInFrameLikelihood();
+    }
+    return new PoseLandmarks(positions, inFrameLikelihoods, false);
+  }
+
+  /**
+   * Returns for each landmark the one of {@code preferred} or {@code other} with the highest
+   * in-frame likelihood, {@code preferred} winning ties, or either if the other is empty.
+   */
+  public static PoseLandmarks fuse(PoseLandmarks preferred, PoseLandmarks other) {
+    if (other.isEmpty()) {
+      return preferred;
+    }
+    if (preferred.isEmpty()) {
+      return other;
+    }
+    float[] positions = preferred.positions.clone();
+    float[] inFrameLikelihoods = preferred.inFrameLikelihoods.clone();
+    for (int i = 0; i < NUM_LANDMARKS; i++) {
+      if (other.inFrameLikelihoods[i] > inFrameLikelihoods[i]) {
+        System.arraycopy(other.positions, i * NUM_DIMS, positions, i * NUM_DIMS, NUM_DIMS);
+        inFrameLikelihoods[i] = other.inFrameLikelihoods[i];
+      }
+    }
+    return new PoseLandmarks(positions, inFrameLikelihoods, false);
+  }
+
+  /**
+   * Takes ownership of the given arrays.
+   *
+   * @param positions positions packed as [landmark][X, Y, Z], for all {@link #NUM_LANDMARKS}.
+   * @param predicted whether the positions were predicted rather than detected.
+   */
+  public PoseLandmarks(float[] positions, float[] inFrameLikelihoods, boolean predicted) {
+    Preconditions.checkArgument(
+        positions.length == inFrameLikelihoods.length * NUM_DIMS
+            && (positions.length == 0 || inFrameLikelihoods.length == NUM_LANDMARKS));
+    this.positions = positions;
+    this.inFrameLikelihoods = inFrameLikelihoods;
+    this.predicted = predicted;
+  }
+
+  /** Returns whether no pose was found, in which case there are no landmarks. */
+  public boolean isEmpty() {
+    return inFrameLikelihoods.length == 0;
+  }
+
+  public boolean isPredicted() {
+    return predicted;
+  }
+
+  public float getX(int landmarkType) {
+    return positions[landmarkType * NUM_DIMS];
+  }
+
+  public float getY(int landmarkType) {
+    return positions[landmarkType * NUM_DIMS + 1];
+  }
+
+  public float getZ(int landmarkType) {
+    return positions[landmarkType * NUM_DIMS + 2];
+  }
+
+  public float getInFrameLikelihood(int landmarkType) {
+    return inFrameLikelihoods[landmarkType];
+  }
+
+  /** Returns the mean in-frame likelihood of the given landmarks, or 0 if no pose was found. */
+  public float getMeanInFrameLikelihood(int[] landmarkTypes) {
+    if (isEmpty() || landmarkTypes.length == 0) {
+      return 0;
+    }
+    float sum = 0;
+    for (int landmarkType : landmarkTypes) {
+      sum += inFrameLikelihoods[landmarkType];
+    }
+    return sum / landmarkTypes.length;
+  }
+
+  /** Returns the positions in landmark type order, as classified by {@link PoseClassifier}. */
+  public List<PointF3D> getPositions3D() {
+    if (positions3D == null) {
+      ImmutableList.Builder<PointF3D> builder = ImmutableList.builder();
+      for (int i = 0; i < inFrameLikelihoods.length; i++) {
+        builder.add(PointF3D.from(getX(i), getY(i), getZ(i)));
+      }
+      positions3D = builder.build();
+    }
+    return positions3D;
+  }
+}
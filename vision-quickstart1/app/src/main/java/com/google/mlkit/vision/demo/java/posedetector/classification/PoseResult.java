@@ -0,0 +1,256 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import androidx.annotation.Nullable;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Immutable result of {@link PoseClassifierProcessor} for one frame. Holds values only, formatting
+ * them for display is left to the caller.
+ */
+public class PoseResult {
+  /** Progress of one exercise as of the frame. */
+  public static class ExerciseProgress {
+    private final String name;
+    private final int repCount;
+    private final float score;
+    private final long numTimedReps;
+    private final long latestDurationMs;
+    private final float cadencePerMinute;
+
+    ExerciseProgress(ExerciseStateMachine exercise) {
+      name = exercise.getName();
+      repCount = exercise.getRepCount();
+      score = exercise.getScore();
+      WorkoutAnalytics analytics = exercise.getAnalytics();
+      numTimedReps = analytics.getNumTimedReps();
+      latestDurationMs = analytics.getLatestDurationMs();
+      cadencePerMinute = analytics.getCadencePerMinute();
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getRepCount() {
+      return repCount;
+    }
+
+    public float getScore() {
+      return score;
+    }
+
+    /** See {@link WorkoutAnalytics#getNumTimedReps()}. */
+    public long getNumTimedReps() {
+      return numTimedReps;
+    }
+
+    /** Returns the last recorded duration, or 0 if there is none. */
+    public long getLatestDurationMs() {
+      return latestDurationMs;
+    }
+
+    /** Returns the recent reps per minute, or 0 if fewer than two were timed. */
+    public float getCadencePerMinute() {
+      return cadencePerMinute;
+    }
+  }
+
+  /** The last rep found by a {@link RepMatcher}, as of the frame. */
+  public static class MatchedRep {
+    private final String name;
+    private final int repCount;
+    private final float score;
+    private final long durationMs;
+
+    MatchedRep(RepMatcher repMatcher) {
+      int template = repMatcher.getLastRepTemplate();
+      name = repMatcher.getTemplateName(template);
+      repCount = repMatcher.getRepCount(template);
+      score = repMatcher.getLastRepScore();
+      durationMs = repMatcher.getLastRepEndMs() - repMatcher.getLastRepStartMs();
+    }
+
+    /** Returns the name of the template the rep matched, such as "squats". */
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the number of reps matched to the template, including this one. */
+    public int getRepCount() {
+      return repCount;
+    }
+
+    /** Returns how closely the rep matched the template, in range [0, 1]. */
+    public float getScore() {
+      return score;
+    }
+
+    public long getDurationMs() {
+      return durationMs;
+    }
+  }
+
+  private final boolean hasRepCounters;
+  @Nullable private final String lastRepClassName;
+  private final int lastRepCount;
+  private final boolean poseFound;
+  private final int classId;
+  @Nullable private final ClassNameTable classNames;
+  private final float confidence;
+  private final ImmutableList<ExerciseProgress> exercises;
+  private final float transitionDistance;
+  @Nullable private final MatchedRep lastMatchedRep;
+
+  /** Returns a result of a frame without a pose, before any rep was counted or matched. */
+  public static PoseResult noPose(boolean hasRepCounters) {
+    return new Builder(hasRepCounters).build();
+  }
+
+  private PoseResult(Builder builder) {
+    hasRepCounters = builder.hasRepCounters;
+    lastRepClassName = builder.lastRepClassName;
+    lastRepCount = builder.lastRepCount;
+    poseFound = builder.poseFound;
+    classId = builder.classId;
+    classNames = builder.classNames;
+    confidence = builder.confidence;
+    exercises = builder.exercises;
+    transitionDistance = builder.transitionDistance;
+    lastMatchedRep = builder.lastMatchedRep;
+  }
+
+  /** Returns whether {@link RepetitionCounter}s are run, which is the case in stream mode. */
+  public boolean hasRepCounters() {
+    return hasRepCounters;
+  }
+
+  /** Returns the class of the rep counter that counted a rep last, or null if none did yet. */
+  @Nullable
+  public String getLastRepClassName() {
+    return lastRepClassName;
+  }
+
+  public int getLastRepCount() {
+    return lastRepCount;
+  }
+
+  /** Returns whether a pose was found. The class and exercise values are only set if it was. */
+  public boolean isPoseFound() {
+    return poseFound;
+  }
+
+  /** Returns the ID of the most confident class, see {@link PoseClassifier#getClassNameTable()}. */
+  public int getClassId() {
+    return classId;
+  }
+
+  @Nullable
+  public String getClassName() {
+    return classNames != null ? classNames.getName(classId) : null;
+  }
+
+  /**
+   * Returns the table {@link #getClassId()} is an ID of. Registry swaps and enrollment can replace
+   * it, so IDs of results with different tables can't be compared.
+   */
+  @Nullable
+  public ClassNameTable getClassNameTable() {
+    return classNames;
+  }
+
+  /** Returns the confidence of the most confident class, in range [0, 1]. */
+  public float getConfidence() {
+    return confidence;
+  }
+
+  public ImmutableList<ExerciseProgress> getExercises() {
+    return exercises;
+  }
+
+  /**
+   * Returns how far, in confidence in range [0, 1], the frame was from making an exercise or a rep
+   * counter change state: the distance to the closest threshold, or {@link Float#POSITIVE_INFINITY}
+   * if there is none.
+   */
+  public float getTransitionDistance() {
+    return transitionDistance;
+  }
+
+  /**
+   * Returns the last full rep found against the reference reps of the poses enrolled for an
+   * exercise, in stream mode, or null if there was none yet.
+   */
+  @Nullable
+  public MatchedRep getLastMatchedRep() {
+    return lastMatchedRep;
+  }
+
+  /** Builds a result. Values that aren't set are those of a frame without a pose. */
+  public static class Builder {
+    private final boolean hasRepCounters;
+    @Nullable private String lastRepClassName;
+    private int lastRepCount;
+    private boolean poseFound;
+    private int classId = -1;
+    @Nullable private ClassNameTable classNames;
+    private float confidence;
+    private ImmutableList<ExerciseProgress> exercises = ImmutableList.of();
+    private float transitionDistance = Float.POSITIVE_INFINITY;
+    @Nullable private MatchedRep lastMatchedRep;
+
+    public Builder(boolean hasRepCounters) {
+      this.hasRepCounters = hasRepCounters;
+    }
+
+    /** Sets the rep counter that counted a rep last, and its count. */
+    public Builder setLastRep(@Nullable String className, int repCount) {
+      this.lastRepClassName = className;
+      this.lastRepCount = repCount;
+      return this;
+    }
+
+    /** Marks the pose as found, with its most confident class. */
+    public Builder setPose(int classId, ClassNameTable classNames, float confidence) {
+      this.poseFound = true;
+      this.classId = classId;
+      this.classNames = classNames;
+      this.confidence = confidence;
+      return this;
+    }
+
+    public Builder setExercises(ImmutableList<ExerciseProgress> exercises) {
+      this.exercises = exercises;
+      return this;
+    }
+
+    public Builder setTransitionDistance(float transitionDistance) {
+      this.transitionDistance = transitionDistance;
+      return this;
+    }
+
+    public Builder setLastMatchedRep(@Nullable MatchedRep lastMatchedRep) {
+      this.lastMatchedRep = lastMatchedRep;
+      return this;
+    }
+
+    public PoseResult build() {
+      return new PoseResult(this);
+    }
+  }
+}
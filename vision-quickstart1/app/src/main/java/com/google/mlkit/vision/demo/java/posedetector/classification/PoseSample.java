@@ -32,12 +32,30 @@ public class PoseSample {
 
   private final String name;
   private final String className;
+  // Every feature of {@link PoseEmbedding}, and the ones of the embedding.
+  private final List<PointF3D> allFeatures;
   private final List<PointF3D> embedding;
 
   public PoseSample(String name, String className, List<PointF3D> landmarks) {
     this.name = name;
     this.className = className;
-    this.embedding = PoseEmbedding.getPoseEmbedding(landmarks);
+    this.allFeatures = PoseEmbedding.getAllFeatures(landmarks);
+    this.embedding = PoseEmbedding.select(allFeatures, PoseEmbedding.getDefaultFeatures());
+  }
+
+  private PoseSample(PoseSample sample, int[] features) {
+    name = sample.name;
+    className = sample.className;
+    allFeatures = sample.allFeatures;
+    embedding = PoseEmbedding.select(allFeatures, features);
+  }
+
+  /**
+   * Returns the same sample with an embedding made of the given features of {@link PoseEmbedding},
+   * sharing the feature values.
+   */
+  public PoseSample withFeatures(int[] features) {
+    return new PoseSample(this, features);
   }
 
   public String getName() {
@@ -52,6 +70,11 @@ public class PoseSample {
     return embedding;
   }
 
+  /** Returns every feature of {@link PoseEmbedding}, of which the embedding is a selection. */
+  List<PointF3D> getAllFeatures() {
+    return allFeatures;
+  }
+
   public static PoseSample getPoseSample(String csvLine, String separator) {
     List<String> tokens = Splitter.onPattern(separator).splitToList(csvLine);
     // Format is expected to be Name,Class,X1,Y1,Z1,X2,Y2,Z2...
@@ -86,7 +109,8 @@ public class PoseSample {
 //类别 (className): 样本所属的类别，例如 "pushups" 或 "squats"。
 //嵌入向量 (embedding): 表示样本特征的嵌入向量，由 PoseEmbedding 姿势嵌入 类生成。
 //主要功能：
-//构造函数: 接受样本名称、类别和关键点坐标作为参数，并使用 PoseEmbedding 类生成嵌入向量。
+//构造函数: 接受样本名称、类别和关键点坐标作为参数，并使用 PoseEmbedding 类计算全部特征，再选出默认特征作为嵌入向量。
+//withFeatures(features): 返回同一个样本，其嵌入向量由给定的特征组成，与原样本共享特征值。
 //获取方法: 提供 getName()、getClassName() 和 getEmbedding() 方法，分别用于获取样本的名称、类别和嵌入向量。
 //静态方法 getPoseSample(csvLine, separator): 从 csv 文件的一行数据中解析出姿势样本信息，并创建一个 PoseSample 对象。
 //代码解读：
@@ -94,7 +118,8 @@ public class PoseSample {
 //NUM_DIMS：每个关键点的维度，此处为 3 (x, y, z)。
 //name：样本名称。
 //className：样本类别。
-//embedding：样本的嵌入向量。
+//allFeatures：样本的全部特征。
+//embedding：样本的嵌入向量，是 allFeatures 中选出的特征。
 //getPoseSample(csvLine, separator)：
 //使用 Splitter 类将 csv 数据行分割成多个字符串。
 //检查字符串数量是否正确，即关键点坐标数量加上名称和类别。
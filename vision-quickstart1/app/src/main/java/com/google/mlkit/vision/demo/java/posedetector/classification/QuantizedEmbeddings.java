@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.flatten;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link PoseSample} embeddings quantized to 16 bit integers in a single packed array.
+ *
+ * <p>Each embedding value is stored as {@code round((value - offset) * scale)}. Offsets are the
+ * midpoints of each dimension's range over the samples. Scales fold in the axes weights and share
+ * one step size, so that integer differences are directly comparable across dimensions and the
+ * integer max distance is the weighted max distance in units of that step.
+ *
+ * <p>Quantization error is at most one step per difference, so the integer scan is only used to
+ * find candidates: every sample that could be in the float top-K is returned, and the caller
+ * re-scores them with the exact float distance.
+ */
+public class QuantizedEmbeddings {
+  // Rounding of the sample and of the query can each be off by half a step, plus a bit of float
+  // error when quantizing the query. Two steps of slack keeps every possible top-K sample.
+  private static final int ROUNDING_SLACK = 2;
+
+  private final int numSamples;
+  private final int dims;
+  private final float[] offsets;
+  private final float[] scales;
+  // Flattened embedding index (X, Y, Z per embedding point) packed at each position.
+  private final int[] dimOrder;
+  // Quantized embeddings as [sample][dimension], with dimensions permuted by dimOrder.
+  private final short[] values;
+
+  public QuantizedEmbeddings(List<PoseSample> poseSamples, PointF3D axesWeights) {
+    numSamples = poseSamples.size();
+    dims = numSamples == 0 ? 0 : poseSamples.get(0).getEmbedding().size() * 3;
+    float[] flattened = new float[numSamples * dims];
+    for (int i = 0; i < numSamples; i++) {
+      flatten(poseSamples.get(i).getEmbedding(), flattened, i * dims);
+    }
+    float[] axesWeightsArray = {axesWeights.getX(), axesWeights.getY(), axesWeights.getZ()};
+
+    // Calibrate offsets per dimension, then pick the step so that the widest weighted range still
+    // fits into a short.
+    offsets = new float[dims];
+    float[] weightedRanges = new float[dims];
+    float maxWeightedRange = 0;
+    for (int i = 0; i < dims; i++) {
+      float minValue = Float.POSITIVE_INFINITY;
+      float maxValue = Float.NEGATIVE_INFINITY;
+      for (int j = 0; j < numSamples; j++) {
+        minValue = min(minValue, flattened[j * dims + i]);
+        maxValue = max(maxValue, flattened[j * dims + i]);
+      }
+      offsets[i] = (minValue + maxValue) / 2;
+      weightedRanges[i] = (maxValue - minValue) * axesWeightsArray[i % 3];
+      maxWeightedRange = max(maxWeightedRange, weightedRanges[i]);
+    }
+    float step = maxWeightedRange > 0 ? maxWeightedRange / (2 * (Short.MAX_VALUE - 1)) : 1;
+    scales = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      scales[i] = axesWeightsArray[i % 3] / step;
+    }
+
+    // Pack dimensions widest range first, so that bounded distances stop as early as possible.
+    Integer[] sortedDims = new Integer[dims];
+    for (int i = 0; i < dims; i++) {
+      sortedDims[i] = i;
+    }
+    Arrays.sort(sortedDims, (i1, i2) -> Float.compare(weightedRanges[i2], weightedRanges[i1]));
+    dimOrder = new int[dims];
+    for (int i = 0; i < dims; i++) {
+      dimOrder[i] = sortedDims[i];
+    }
+
+    values = new short[numSamples * dims];
+    for (int j = 0; j < numSamples; j++) {
+      for (int i = 0; i < dims; i++) {
+        values[j * dims + i] = (short) quantize(flattened[j * dims + dimOrder[i]], dimOrder[i]);
+      }
+    }
+  }
+
+  private int quantize(float value, int dim) {
+    return Math.round((value - offsets[dim]) * scales[dim]);
+  }
+
+  // Writes the quantized embedding, or its mirror, into query. Queries are kept as ints, values
+  // outside of the calibrated range would overflow a short.
+  private void quantize(float[] flattened, boolean flipped, int[] query) {
+    for (int i = 0; i < dims; i++) {
+      int dim = dimOrder[i];
+      float value = flipped && dim % 3 == 0 ? -flattened[dim] : flattened[dim];
+      query[i] = quantize(value, dim);
+    }
+  }
+
+  /** Returns the size in bytes of the packed quantized embeddings. */
+  public int getSizeInBytes() {
+    return values.length * 2;
+  }
+
+  /**
+   * Buffers of one classifying thread, reused for every frame so that {@link #getCandidates}
+   * doesn't allocate.
+   */
+  public static class Scratch {
+    private int[] query = new int[0];
+    private int[] flippedQuery = new int[0];
+    private int[] heap = new int[0];
+    private int[] candidates = new int[0];
+
+    /** Returns the indices of the candidates found by the last {@link #getCandidates} call. */
+    public int[] getCandidates() {
+      return candidates;
+    }
+  }
+
+  /**
+   * Finds all samples that may be among the {@code k} closest to either {@code embedding},
+   * flattened as [point][X, Y, Z], or its mirror (X negated) by weighted max distance, and returns
+   * how many there are. Their indices are the first ones of {@link Scratch#getCandidates()}, in
+   * ascending order.
+   */
+  public int getCandidates(float[] embedding, int k, Scratch scratch) {
+    if (k <= 0 || numSamples == 0) {
+      return 0;
+    }
+    // Buffers only grow on the first frames of a thread.
+    if (scratch.query.length != dims) {
+      scratch.query = new int[dims];
+      scratch.flippedQuery = new int[dims];
+    }
+    if (scratch.heap.length < k) {
+      scratch.heap = new int[k];
+    }
+    if (scratch.candidates.length < numSamples) {
+      scratch.candidates = new int[numSamples];
+    }
+    int[] query = scratch.query;
+    int[] flippedQuery = scratch.flippedQuery;
+    quantize(embedding, false, query);
+    quantize(embedding, true, flippedQuery);
+
+    // Max-heap of the k smallest integer distances seen so far.
+    int[] heap = scratch.heap;
+    int heapSize = 0;
+    int[] distances = scratch.candidates;
+    for (int j = 0; j < numSamples; j++) {
+      int bound = heapSize == k ? heap[0] + ROUNDING_SLACK : Integer.MAX_VALUE;
+      int distance = min(distance(query, j, bound), distance(flippedQuery, j, bound));
+      distances[j] = distance;
+      if (heapSize < k) {
+        heap[heapSize] = distance;
+        siftUp(heap, heapSize++);
+      } else if (distance < heap[0]) {
+        heap[0] = distance;
+        siftDown(heap, heapSize);
+      }
+    }
+
+    int threshold = heapSize == k ? heap[0] + ROUNDING_SLACK : Integer.MAX_VALUE;
+    // Candidate indices are compacted into the front of distances, which are no longer needed.
+    int numCandidates = 0;
+    for (int j = 0; j < numSamples; j++) {
+      if (distances[j] <= threshold) {
+        distances[numCandidates++] = j;
+      }
+    }
+    return numCandidates;
+  }
+
+  /**
+   * Returns the integer max distance between {@code query} and {@code sample}, or any value above
+   * {@code bound} as soon as the distance is known to exceed it.
+   */
+  private int distance(int[] query, int sample, int bound) {
+    int offset = sample * dims;
+    int distance = 0;
+    for (int i = 0; i < dims && distance <= bound; i++) {
+      distance = max(distance, abs(values[offset + i] - query[i]));
+    }
+    return distance;
+  }
+
+  private static void siftUp(int[] heap, int index) {
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if (heap[parent] >= heap[index]) {
+        return;
+      }
+      swap(heap, parent, index);
+      index = parent;
+    }
+  }
+
+  private static void siftDown(int[] heap, int size) {
+    int index = 0;
+    while (true) {
+      int largest = index;
+      int left = 2 * index + 1;
+      int right = left + 1;
+      if (left < size && heap[left] > heap[largest]) {
+        largest = left;
+      }
+      if (right < size && heap[right] > heap[largest]) {
+        largest = right;
+      }
+      if (largest == index) {
+        return;
+      }
+      swap(heap, index, largest);
+      index = largest;
+    }
+  }
+
+  private static void swap(int[] heap, int i, int j) {
+    int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
+  }
+}
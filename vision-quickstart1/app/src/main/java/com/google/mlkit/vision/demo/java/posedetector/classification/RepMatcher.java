@@ -0,0 +1,458 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds reps in a stream of poses by matching them against reference rep trajectories with
+ * subsequence dynamic time warping, directly on the features of {@link PoseEmbedding}, so without
+ * classifying the frames. Unlike {@link RepetitionCounter}, a rep only counts if the whole
+ * movement matches, so half reps are left out, and its start and end are known.
+ *
+ * <p>Each template is matched as in SPRING (Sakurai et al., 2007): the paths ending at the
+ * current frame are kept for each template frame, and computed from the ones of the previous
+ * frame, so every frame costs the same and only two columns per template are kept, used in turn.
+ * Paths advance one frame at a time and may stay on a template frame or skip one, and are cut once
+ * they spent more than {@code maxStretch} frames per template frame, which bounds how long a rep
+ * can take. Rather than the sum of the costs of the frames, a path costs the greatest one, the
+ * skipped template frames included, so that a match can't make up for missing part of the
+ * movement with frames it matches well, and doesn't get cheaper by being cut short. Of equally
+ * costly paths, the one starting last is kept. A match costing less than {@code maxDistance} is
+ * reported once no overlapping path may still cost less, usually a few frames after its end.
+ *
+ * <p>Costs are the mean absolute differences of the weighted features, of the pose or of its
+ * mirror, whichever is closer, as {@link PoseClassifier} does. Frames are fed from one thread
+ * without allocation.
+ */
+public class RepMatcher {
+  // Frames between two key poses of the templates built from samples.
+  private static final int DEFAULT_SEGMENT_FRAMES = 8;
+  // Reps of templates built from samples last from about half their frames to this many times
+  // them, so 9 to 136 frames, or 0.3 s to 4.5 s at 30 fps.
+  private static final float DEFAULT_MAX_STRETCH = 8f;
+  // Cost of a match over which it isn't a rep. With up and down poses 8 to 12 apart, reps of one
+  // person with a tenth to a fifth of that in noise cost 1.5 to 2.5, reps going half way down
+  // mostly over 3.
+  private static final float DEFAULT_MAX_DISTANCE = 3f;
+  private static final String UP_SUFFIX = "_up";
+  private static final String DOWN_SUFFIX = "_down";
+  private static final int NUM_DIMS = 3;
+
+  /** A reference rep trajectory. Immutable. */
+  public static class Template {
+    private final String name;
+    // Weighted features of each frame, packed as [frame][feature][X, Y, Z].
+    private final float[] frames;
+    private final int numFrames;
+
+    /**
+     * Takes ownership of {@code frames}, packed as [frame][feature][X, Y, Z] like the features
+     * given by {@link #getFeatures}.
+     */
+    public Template(String name, float[] frames, int numFrames) {
+      Preconditions.checkArgument(
+          numFrames > 0 && frames.length % numFrames == 0 && frames.length / numFrames > 0,
+          "Invalid frames for %s",
+          name);
+      this.name = name;
+      this.frames = frames;
+      this.numFrames = numFrames;
+    }
+
+    /** Returns a template going from each key pose to the next in {@code segmentFrames} frames. */
+    public static Template fromKeyPoses(String name, List<float[]> keyPoses, int segmentFrames) {
+      Preconditions.checkArgument(keyPoses.size() >= 2 && segmentFrames > 0);
+      int dims = keyPoses.get(0).length;
+      int numFrames = (keyPoses.size() - 1) * segmentFrames + 1;
+      float[] frames = new float[numFrames * dims];
+      for (int frame = 0; frame < numFrames; frame++) {
+        int segment = min(frame / segmentFrames, keyPoses.size() - 2);
+        float u = (float) (frame - segment * segmentFrames) / segmentFrames;
+        float[] from = keyPoses.get(segment);
+        float[] to = keyPoses.get(segment + 1);
+        for (int d = 0; d < dims; d++) {
+          frames[frame * dims + d] = from[d] + (to[d] - from[d]) * u;
+        }
+      }
+      return new Template(name, frames, numFrames);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getNumFrames() {
+      return numFrames;
+    }
+
+    int getDims() {
+      return frames.length / numFrames;
+    }
+  }
+
+  // Matching state of one template, as [column][template frame]. Entry 0 of a column stands for
+  // paths starting at the frame.
+  private static class State {
+    final Template template;
+    // Cost of the path ending at each template frame.
+    final float[] costs;
+    // Frame and time at which each path started.
+    final long[] startFrames;
+    final long[] startTimesMs;
+    // Best match so far that isn't reported yet, if its cost is finite.
+    float bestCost = Float.POSITIVE_INFINITY;
+    long bestEndFrame;
+    long bestStartMs;
+    long bestEndMs;
+    // Last rep found.
+    int repCount;
+    long repStartMs;
+    long repEndMs;
+    float repScore;
+
+    State(Template template) {
+      this.template = template;
+      int size = 2 * (template.numFrames + 1);
+      costs = new float[size];
+      startFrames = new long[size];
+      startTimesMs = new long[size];
+    }
+  }
+
+  private final State[] states;
+  private final int dims;
+  private final float maxStretch;
+  private final float maxDistance;
+  private long numFrames;
+  // Local cost of the current frame against each template frame, reused across templates.
+  private final float[] localCosts;
+
+  private int lastRepTemplate = -1;
+  private long lastRepStartMs;
+  private long lastRepEndMs;
+  private float lastRepScore;
+
+  /**
+   * Returns a template for each exercise with an up and a down class, named by their common
+   * prefix, such as "squats" for "squats_up" and "squats_down": from the most typical sample of up
+   * to the one of down and back.
+   *
+   * <p>Samples of several people or camera angles differ about as much as up and down do, so the
+   * samples should be of the person exercising, such as poses they enrolled.
+   */
+  public static List<Template> fromSamples(
+      List<PoseSample> poseSamples, int[] features, PointF3D axesWeights) {
+    Map<String, List<float[]>> classes = new LinkedHashMap<>();
+    for (PoseSample poseSample : poseSamples) {
+      float[] sampleFeatures = new float[features.length * NUM_DIMS];
+      getFeatures(poseSample.getAllFeatures(), features, axesWeights, sampleFeatures);
+      getClassSamples(classes, poseSample.getClassName()).add(sampleFeatures);
+    }
+    return fromClasses(classes);
+  }
+
+  /** As {@link #fromSamples(List, int[], PointF3D)} for enrolled samples. */
+  static List<Template> fromSamples(
+      EnrolledSamples.Snapshot enrolled, int[] features, PointF3D axesWeights) {
+    Map<String, List<float[]>> classes = new LinkedHashMap<>();
+    for (int j = 0; j < enrolled.size; j++) {
+      float[] sampleFeatures = new float[features.length * NUM_DIMS];
+      for (int i = 0; i < features.length; i++) {
+        int index = (j * PoseEmbedding.NUM_FEATURES + features[i]) * NUM_DIMS;
+        sampleFeatures[i * NUM_DIMS] = enrolled.features[index] * axesWeights.getX();
+        sampleFeatures[i * NUM_DIMS + 1] = enrolled.features[index + 1] * axesWeights.getY();
+        sampleFeatures[i * NUM_DIMS + 2] = enrolled.features[index + 2] * axesWeights.getZ();
+      }
+      getClassSamples(classes, enrolled.classNames[j]).add(sampleFeatures);
+    }
+    return fromClasses(classes);
+  }
+
+  private static List<float[]> getClassSamples(Map<String, List<float[]>> classes, String name) {
+    List<float[]> classSamples = classes.get(name);
+    if (classSamples == null) {
+      classSamples = new ArrayList<>();
+      classes.put(name, classSamples);
+    }
+    return classSamples;
+  }
+
+  // Returns the templates for the weighted features of the samples of each class.
+  private static List<Template> fromClasses(Map<String, List<float[]>> classes) {
+    List<Template> templates = new ArrayList<>();
+    for (String className : classes.keySet()) {
+      if (!className.endsWith(UP_SUFFIX)) {
+        continue;
+      }
+      String name = className.substring(0, className.length() - UP_SUFFIX.length());
+      List<float[]> downSamples = classes.get(name + DOWN_SUFFIX);
+      if (downSamples == null) {
+        continue;
+      }
+      float[] up = getMedoid(classes.get(className));
+      float[] down = getMedoid(downSamples);
+      // Face the same way in both, so that the frames in between are poses too.
+      if (getCost(down, 0, up, true) < getCost(down, 0, up, false)) {
+        down = down.clone();
+        for (int d = 0; d < down.length; d += NUM_DIMS) {
+          down[d] = -down[d];
+        }
+      }
+      templates.add(
+          Template.fromKeyPoses(name, Arrays.asList(up, down, up), DEFAULT_SEGMENT_FRAMES));
+    }
+    return templates;
+  }
+
+  /**
+   * Writes the given features out of all those returned by {@link PoseEmbedding#getAllFeatures},
+   * weighted by {@code axesWeights}, to {@code out} as [feature][X, Y, Z].
+   */
+  public static void getFeatures(
+      List<PointF3D> allFeatures, int[] features, PointF3D axesWeights, float[] out) {
+    for (int i = 0; i < features.length; i++) {
+      PointF3D feature = allFeatures.get(features[i]);
+      out[i * NUM_DIMS] = feature.getX() * axesWeights.getX();
+      out[i * NUM_DIMS + 1] = feature.getY() * axesWeights.getY();
+      out[i * NUM_DIMS + 2] = feature.getZ() * axesWeights.getZ();
+    }
+  }
+
+  public RepMatcher(List<Template> templates) {
+    this(templates, DEFAULT_MAX_STRETCH, DEFAULT_MAX_DISTANCE);
+  }
+
+  /**
+   * @param maxStretch most frames a rep may spend per template frame.
+   * @param maxDistance cost of a match over which it isn't a rep.
+   */
+  public RepMatcher(List<Template> templates, float maxStretch, float maxDistance) {
+    Preconditions.checkArgument(maxStretch >= 1 && maxDistance > 0);
+    this.maxStretch = maxStretch;
+    this.maxDistance = maxDistance;
+    states = new State[templates.size()];
+    int dims = templates.isEmpty() ? 0 : templates.get(0).getDims();
+    int maxFrames = 0;
+    for (int i = 0; i < states.length; i++) {
+      Template template = templates.get(i);
+      Preconditions.checkArgument(
+          template.getDims() == dims, "Template %s has other features", template.name);
+      states[i] = new State(template);
+      maxFrames = max(maxFrames, template.numFrames);
+    }
+    this.dims = dims;
+    localCosts = new float[maxFrames + 1];
+    reset();
+  }
+
+  /** Forgets the frames fed so far and the reps found in them. */
+  public void reset() {
+    for (State state : states) {
+      Arrays.fill(state.costs, Float.POSITIVE_INFINITY);
+      state.bestCost = Float.POSITIVE_INFINITY;
+      state.repCount = 0;
+    }
+    numFrames = 0;
+    lastRepTemplate = -1;
+  }
+
+  /**
+   * Feeds the features of a frame, as given by {@link #getFeatures} for the features and weights
+   * of the templates.
+   *
+   * @param timestampMs time of the frame, from a monotonic clock.
+   * @return the index of the template of which a rep was found, the one with the best score if
+   *     several were, or -1 if none was. Reps are found a few frames after they end.
+   */
+  public int addFrame(float[] features, long timestampMs) {
+    Preconditions.checkArgument(features.length == dims, "Expected %s features", dims);
+    long frame = numFrames++;
+    int repTemplate = -1;
+    for (int t = 0; t < states.length; t++) {
+      State state = states[t];
+      if (update(state, features, frame, timestampMs)
+          && (repTemplate < 0 || state.repScore > states[repTemplate].repScore)) {
+        repTemplate = t;
+      }
+    }
+    if (repTemplate >= 0) {
+      State state = states[repTemplate];
+      lastRepTemplate = repTemplate;
+      lastRepStartMs = state.repStartMs;
+      lastRepEndMs = state.repEndMs;
+      lastRepScore = state.repScore;
+    }
+    return repTemplate;
+  }
+
+  public int getNumTemplates() {
+    return states.length;
+  }
+
+  public String getTemplateName(int template) {
+    return states[template].template.name;
+  }
+
+  public int getRepCount(int template) {
+    return states[template].repCount;
+  }
+
+  /** Returns the template of the last rep found, or -1 if none was. */
+  public int getLastRepTemplate() {
+    return lastRepTemplate;
+  }
+
+  public long getLastRepStartMs() {
+    return lastRepStartMs;
+  }
+
+  public long getLastRepEndMs() {
+    return lastRepEndMs;
+  }
+
+  /**
+   * Returns how closely the last rep found matched its template, in range [0, 1], 0 being at the
+   * max distance.
+   */
+  public float getLastRepScore() {
+    return lastRepScore;
+  }
+
+  // Moves the paths of the template one frame on, returning whether a rep was found.
+  private boolean update(State state, float[] features, long frame, long timestampMs) {
+    Template template = state.template;
+    int numTemplateFrames = template.numFrames;
+    int columnSize = numTemplateFrames + 1;
+    int previous = (int) ((frame + 1) & 1) * columnSize;
+    int current = (int) (frame & 1) * columnSize;
+    for (int i = 1; i <= numTemplateFrames; i++) {
+      localCosts[i] = min(
+          getCost(template.frames, (i - 1) * dims, features, false),
+          getCost(template.frames, (i - 1) * dims, features, true));
+    }
+
+    float[] costs = state.costs;
+    long[] startFrames = state.startFrames;
+    long[] startTimesMs = state.startTimesMs;
+    costs[current] = 0;
+    startFrames[current] = frame;
+    startTimesMs[current] = timestampMs;
+    for (int i = 1; i <= numTemplateFrames; i++) {
+      // A path comes from the previous template frame, stays on this one, or skips one, and is
+      // cut if it spent too long on the template so far. Entry 0 is the path starting now.
+      float bestCost = Float.POSITIVE_INFINITY;
+      int from = -1;
+      int fromFrame = -1;
+      for (int j = i; j >= max(0, i - 2); j--) {
+        int index = j == 0 ? current : previous + j;
+        float cost = costs[index];
+        boolean better = cost < bestCost
+            || (cost == bestCost && from >= 0 && startFrames[index] > startFrames[from]);
+        if (better && frame - startFrames[index] + 1 <= maxStretch * i) {
+          bestCost = cost;
+          from = index;
+          fromFrame = j;
+        }
+      }
+      // Written after reading the previous column, entry 0 of the current one being set above.
+      int index = current + i;
+      if (from < 0) {
+        costs[index] = Float.POSITIVE_INFINITY;
+        continue;
+      }
+      float cost = max(bestCost, localCosts[i]);
+      if (fromFrame == i - 2) {
+        // The skipped template frame is aligned to this frame too.
+        cost = max(cost, localCosts[i - 1]);
+      }
+      costs[index] = cost;
+      startFrames[index] = startFrames[from];
+      startTimesMs[index] = startTimesMs[from];
+    }
+
+    boolean found = false;
+    if (state.bestCost != Float.POSITIVE_INFINITY) {
+      // Reported once every path overlapping it costs more, as paths only get costlier.
+      boolean confirmed = true;
+      for (int i = 1; i <= numTemplateFrames && confirmed; i++) {
+        confirmed = costs[current + i] >= state.bestCost
+            || startFrames[current + i] > state.bestEndFrame;
+      }
+      if (confirmed) {
+        for (int i = 1; i <= numTemplateFrames; i++) {
+          if (startFrames[current + i] <= state.bestEndFrame) {
+            costs[current + i] = Float.POSITIVE_INFINITY;
+          }
+        }
+        state.repCount++;
+        state.repStartMs = state.bestStartMs;
+        state.repEndMs = state.bestEndMs;
+        state.repScore = 1 - state.bestCost / maxDistance;
+        state.bestCost = Float.POSITIVE_INFINITY;
+        found = true;
+      }
+    }
+    int end = current + numTemplateFrames;
+    if (costs[end] < state.bestCost && costs[end] <= maxDistance) {
+      state.bestCost = costs[end];
+      state.bestEndFrame = frame;
+      state.bestStartMs = startTimesMs[end];
+      state.bestEndMs = timestampMs;
+    }
+    return found;
+  }
+
+  // Returns the mean absolute difference between the frame of a template at offset and features,
+  // mirrored on X if flipped.
+  private static float getCost(float[] frames, int offset, float[] features, boolean flipped) {
+    float sum = 0;
+    for (int d = 0; d < features.length; d += NUM_DIMS) {
+      float x = flipped ? -features[d] : features[d];
+      sum += abs(frames[offset + d] - x)
+          + abs(frames[offset + d + 1] - features[d + 1])
+          + abs(frames[offset + d + 2] - features[d + 2]);
+    }
+    return sum / features.length;
+  }
+
+  // Returns the sample with the least total cost to the others, mirrored or not.
+  private static float[] getMedoid(List<float[]> samples) {
+    float[] medoid = samples.get(0);
+    float medoidSum = Float.POSITIVE_INFINITY;
+    for (float[] sample : samples) {
+      float sum = 0;
+      for (float[] other : samples) {
+        sum += min(getCost(other, 0, sample, false), getCost(other, 0, sample, true));
+      }
+      if (sum < medoidSum) {
+        medoid = sample;
+        medoidSum = sum;
+      }
+    }
+    return medoid;
+  }
+}
@@ -31,6 +31,10 @@ public class RepetitionCounter {
 
   private int numRepeats;
   private boolean poseEntered;
+  private float lastConfidence;
+  // ID of className in the class table of the last result, looked up again when the table changes.
+  private ClassNameTable classNames;
+  private int classId;
 
   public RepetitionCounter(String className) {
     this(className, DEFAULT_ENTER_THRESHOLD, DEFAULT_EXIT_THRESHOLD);
@@ -51,7 +55,12 @@ public class RepetitionCounter {
    * @return number of reps.
    */
   public int addClassificationResult(ClassificationResult classificationResult) {
-    float poseConfidence = classificationResult.getClassConfidence(className);
+    if (classificationResult.getClassNames() != classNames) {
+      classNames = classificationResult.getClassNames();
+      classId = classNames.getId(className);
+    }
+    float poseConfidence = classId >= 0 ? classificationResult.getClassConfidence(classId) : 0;
+    lastConfidence = poseConfidence;
 
     if (!poseEntered) {
       poseEntered = poseConfidence > enterThreshold;
@@ -73,6 +82,14 @@ public class RepetitionCounter {
   public int getNumRepeats() {
     return numRepeats;
   }
+
+  /**
+   * Returns how far the confidence of the last result is from the threshold it has to cross next,
+   * in the confidence range of the results.
+   */
+  public float getThresholdDistance() {
+    return Math.abs(lastConfidence - (poseEntered ? exitThreshold : enterThreshold));
+  }
 }
 //代码解析：RepetitionCounter 类用于计算重复动作次数
 //这段 Java 代码定义了一个名为 RepetitionCounter 的类，其作用是针对给定的姿势类别 (例如俯卧撑或深蹲)，计算重复动作的次数。它通过跟踪姿势的进入和退出状态，以及置信度阈值，来判断是否完成了一个重复动作。
@@ -80,15 +97,18 @@ public class RepetitionCounter {
 //初始化： 接受姿势类别名称、进入阈值和退出阈值作为参数。
 //添加分类结果： addClassificationResult(classificationResult) 方法接受一个 ClassificationResult 对象，并根据置信度更新重复计数。
 //获取信息： 提供 getClassName() 和 getNumRepeats() 方法，分别用于获取姿势类别名称和重复次数。
+//阈值距离： getThresholdDistance() 方法返回上一次结果的置信度与下一个要越过的阈值之间的距离。
 //代码解读：
 //className：姿势类别名称，例如 "pushups" 或 "squats"。
 //enterThreshold：进入阈值，当姿势置信度超过该阈值时，认为进入了该姿势。
 //exitThreshold：退出阈值，当姿势置信度低于该阈值时，认为退出了该姿势。
 //numRepeats：重复次数。
 //poseEntered：是否已进入该姿势。
+//lastConfidence：上一次结果中该姿势类别的置信度。
+//classNames、classId：结果的类别表，以及该姿势类别在表中的 ID。类别表变化时才重新查找 ID。
 //addClassificationResult(classificationResult)
 //添加分类结果（分类结果）：
-//获取指定姿势类别的置信度。
+//按 classId 获取指定姿势类别的置信度，类别表中没有该类别时置信度为 0。
 //如果尚未进入该姿势，且置信度超过进入阈值，则将 poseEntered 姿势已输入 设置为 true。
 //如果已进入该姿势，且置信度低于退出阈值，则将 numRepeats 加 1，并将 poseEntered 设置为 false，表示完成了一个重复动作。
 //返回当前的重复次数。
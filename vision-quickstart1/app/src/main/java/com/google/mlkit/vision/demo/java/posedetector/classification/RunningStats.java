@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+/**
+ * Mean and variance of a stream of values in constant memory, using Welford's method.
+ * https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Welford's_online_algorithm
+ */
+public class RunningStats {
+  private long count;
+  private double mean;
+  // Sum of squared differences from the current mean.
+  private double m2;
+
+  public void add(double value) {
+    count++;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+  }
+
+  public void clear() {
+    count = 0;
+    mean = 0;
+    m2 = 0;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /** Returns the mean of the values, or 0 if there are none. */
+  public double getMean() {
+    return mean;
+  }
+
+  /** Returns the population variance of the values, or 0 if there are fewer than two. */
+  public double getVariance() {
+    return count > 1 ? m2 / count : 0;
+  }
+
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
+}
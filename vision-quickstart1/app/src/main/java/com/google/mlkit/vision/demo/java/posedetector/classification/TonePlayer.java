@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+/**
+ * Beeps when a rep is counted, with a single {@link ToneGenerator} created on first use and kept
+ * until {@link #release()}.
+ */
+public class TonePlayer implements FeedbackPlayer {
+  private static final String TAG = "TonePlayer";
+  private static final int VOLUME = 100;
+
+  @Nullable private ToneGenerator toneGenerator;
+
+  @Override
+  public void play(int event) {
+    if (event != FeedbackEngine.EVENT_REP_COUNTED) {
+      return;
+    }
+    if (toneGenerator == null) {
+      try {
+        toneGenerator = new ToneGenerator(AudioManager.STREAM_NOTIFICATION, VOLUME);
+      } catch (RuntimeException e) {
+        // Thrown when the audio system has no tone generator to give.
+        Log.w(TAG, "Could not create tone generator.", e);
+        return;
+      }
+    }
+    toneGenerator.startTone(ToneGenerator.TONE_PROP_BEEP);
+  }
+
+  @Override
+  public void release() {
+    if (toneGenerator != null) {
+      toneGenerator.release();
+      toneGenerator = null;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+/**
+ * Keeps the {@code capacity} smallest distances offered to it, each with the index of the sample
+ * it belongs to.
+ *
+ * <p>Entries are kept in a max-heap over parallel primitive arrays, so offering a candidate never
+ * allocates, and a candidate that isn't below the current largest distance is rejected without
+ * touching the heap. A selector can be {@link #clear() cleared} and reused for the next frame.
+ */
+public class TopKSelector {
+  private final int[] indices;
+  private final float[] distances;
+  private int size;
+
+  public TopKSelector(int capacity) {
+    indices = new int[capacity];
+    distances = new float[capacity];
+  }
+
+  public int getCapacity() {
+    return indices.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Returns the distance a candidate has to be below to be kept: the largest kept distance once
+   * the selector is full, positive infinity before that.
+   */
+  public float getBound() {
+    if (size < indices.length) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return size == 0 ? Float.NEGATIVE_INFINITY : distances[0];
+  }
+
+  /** Offers a sample, returns whether it was kept. */
+  public boolean offer(int index, float distance) {
+    if (size < indices.length) {
+      siftUp(size++, index, distance);
+      return true;
+    }
+    if (size == 0 || !(distance < distances[0])) {
+      return false;
+    }
+    siftDown(index, distance);
+    return true;
+  }
+
+  /** Returns the sample index of the given entry. Entries are in no particular order. */
+  public int getIndex(int entry) {
+    return indices[entry];
+  }
+
+  public float getDistance(int entry) {
+    return distances[entry];
+  }
+
+  private void siftUp(int position, int index, float distance) {
+    while (position > 0) {
+      int parent = (position - 1) / 2;
+      if (distances[parent] >= distance) {
+        break;
+      }
+      indices[position] = indices[parent];
+      distances[position] = distances[parent];
+      position = parent;
+    }
+    indices[position] = index;
+    distances[position] = distance;
+  }
+
+  /** Replaces the root with the given entry and restores the heap order. */
+  private void siftDown(int index, float distance) {
+    int position = 0;
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && distances[child + 1] > distances[child]) {
+        child++;
+      }
+      if (distances[child] <= distance) {
+        break;
+      }
+      indices[position] = indices[child];
+      distances[position] = distances[child];
+      position = child;
+    }
+    indices[position] = index;
+    distances[position] = distance;
+  }
+}
@@ -62,6 +62,24 @@ public class Utils {
     return Math.abs(point.getX()) + Math.abs(point.getY()) + Math.abs(point.getZ());
   }
 
+  /** Writes {@code pointsList} into {@code out} as consecutive X, Y, Z values. */
+  public static void flatten(List<PointF3D> pointsList, float[] out, int offset) {
+    // Indexed, so that no iterator is allocated on the classification path.
+    for (int i = 0; i < pointsList.size(); i++) {
+      PointF3D point = pointsList.get(i);
+      out[offset++] = point.getX();
+      out[offset++] = point.getY();
+      out[offset++] = point.getZ();
+    }
+  }
+
+  /** Negates every X value of points written by {@link #flatten}, mirroring them horizontally. */
+  public static void negateX(float[] values) {
+    for (int i = 0; i < values.length; i += 3) {
+      values[i] = -values[i];
+    }
+  }
+
   public static void addAll(List<PointF3D> pointsList, PointF3D p) {
     ListIterator<PointF3D> iterator = pointsList.listIterator();
     while (iterator.hasNext()) {
@@ -110,6 +128,8 @@ public class Utils {
 //subtractAll(p, pointsList)：从 pointsList 中的每个点减去 p。
 //multiplyAll(pointsList, multiple)：将 pointsList 中的每个点乘以一个标量。
 //multiplyAll(pointsList, multiple)：将 pointsList 中的每个点与另一个 PointF3D 对象逐元素相乘。
+//flatten(pointsList, out, offset)：将 pointsList 中的每个点依次写入 float 数组 out，每个点占 x、y、z 三个值。
+//negateX(values)：将 flatten 写出的坐标中所有 x 值取反，即水平镜像这些点。
 //代码应用：
 //Utils 类中的方法可以用于各种需要处理三维点数据的场景，例如：
 //姿势识别: 计算人体关键点之间的距离，或对关键点坐标进行归一化处理。
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.flatten;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vantage-point tree over {@link PoseSample} embeddings for exact top-K lookup by the weighted max
+ * (Chebyshev) distance used in the first stage of {@link PoseClassifier}.
+ *
+ * <p>A query is always searched together with its mirror (X negated). Each sample is scored by the
+ * min of the two distances, and a subtree is only skipped when neither orientation can reach it.
+ * https://en.wikipedia.org/wiki/Vantage-point_tree
+ */
+public class VpTree {
+  // Ranges of this size or smaller are scanned linearly instead of being split further.
+  private static final int LEAF_SIZE = 8;
+
+  private final int dims;
+  // Flattened embedding index (X, Y, Z per embedding point) stored at each position.
+  private final int[] dimOrder;
+  private final float[] weights;
+  // Sample embeddings flattened as [sample][dimension], with dimensions permuted by dimOrder.
+  private final float[] embeddings;
+  // Sample indices, permuted so that each node covers a contiguous range. The vantage point of a
+  // node is the first index of its range, followed by the inner half, then the outer half.
+  private final int[] order;
+  // Median distance from the vantage point of the node starting at the given position of order.
+  private final float[] radius;
+
+  public VpTree(List<PoseSample> poseSamples, PointF3D axesWeights) {
+    int numSamples = poseSamples.size();
+    dims = numSamples == 0 ? 0 : poseSamples.get(0).getEmbedding().size() * 3;
+    float[] flattened = new float[numSamples * dims];
+    for (int i = 0; i < numSamples; i++) {
+      flatten(poseSamples.get(i).getEmbedding(), flattened, i * dims);
+    }
+    float[] axesWeightsArray = {axesWeights.getX(), axesWeights.getY(), axesWeights.getZ()};
+
+    // Store values in order of descending weighted variance so that distances with a bound can
+    // stop as early as possible.
+    float[] variances = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      float sum = 0;
+      float sumSquares = 0;
+      for (int j = 0; j < numSamples; j++) {
+        float value = flattened[j * dims + i] * axesWeightsArray[i % 3];
+        sum += value;
+        sumSquares += value * value;
+      }
+      variances[i] = sumSquares / numSamples - (sum / numSamples) * (sum / numSamples);
+    }
+    Integer[] sortedDims = new Integer[dims];
+    for (int i = 0; i < dims; i++) {
+      sortedDims[i] = i;
+    }
+    Arrays.sort(sortedDims, (i1, i2) -> Float.compare(variances[i2], variances[i1]));
+    dimOrder = new int[dims];
+    weights = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      dimOrder[i] = sortedDims[i];
+      weights[i] = axesWeightsArray[dimOrder[i] % 3];
+    }
+    embeddings = new float[numSamples * dims];
+    for (int j = 0; j < numSamples; j++) {
+      for (int i = 0; i < dims; i++) {
+        embeddings[j * dims + i] = flattened[j * dims + dimOrder[i]];
+      }
+    }
+
+    order = new int[numSamples];
+    for (int i = 0; i < numSamples; i++) {
+      order[i] = i;
+    }
+    radius = new float[numSamples];
+    build(0, numSamples, new float[numSamples], new Random(0));
+  }
+
+  public int size() {
+    return order.length;
+  }
+
+  private void build(int from, int to, float[] distances, Random random) {
+    if (to - from <= LEAF_SIZE) {
+      return;
+    }
+    swap(from, from + random.nextInt(to - from));
+    int vantage = order[from];
+    for (int i = from + 1; i < to; i++) {
+      distances[order[i]] = distance(vantage, order[i]);
+    }
+    sortByDistance(from + 1, to, distances);
+    int median = (from + 1 + to) / 2;
+    radius[from] = distances[order[median]];
+    build(from + 1, median, distances, random);
+    build(median, to, distances, random);
+  }
+
+  private void sortByDistance(int from, int to, float[] distances) {
+    Integer[] range = new Integer[to - from];
+    for (int i = from; i < to; i++) {
+      range[i - from] = order[i];
+    }
+    Arrays.sort(range, (i1, i2) -> Float.compare(distances[i1], distances[i2]));
+    for (int i = from; i < to; i++) {
+      order[i] = range[i - from];
+    }
+  }
+
+  private void swap(int i, int j) {
+    int tmp = order[i];
+    order[i] = order[j];
+    order[j] = tmp;
+  }
+
+  /**
+   * Offers the samples closest to either {@code embedding} or its mirror (X negated) to
+   * {@code result}, each with the min of its two distances. Sample indices are positions in the
+   * list the tree was built from.
+   */
+  public void search(List<PointF3D> embedding, TopKSelector result) {
+    float[] flattened = new float[dims];
+    flatten(embedding, flattened, 0);
+    search(flattened, result);
+  }
+
+  /** As {@link #search(List, TopKSelector)}, for an embedding flattened as [point][X, Y, Z]. */
+  public void search(float[] embedding, TopKSelector result) {
+    if (result.getCapacity() == 0 || order.length == 0) {
+      return;
+    }
+    float[] query = toQuery(embedding, false);
+    float[] flippedQuery = toQuery(embedding, true);
+    search(0, order.length, query, flippedQuery, result);
+  }
+
+  private float[] toQuery(float[] embedding, boolean flipped) {
+    float[] query = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      int dim = dimOrder[i];
+      // X is every third value.
+      query[i] = flipped && dim % 3 == 0 ? -embedding[dim] : embedding[dim];
+    }
+    return query;
+  }
+
+  private void search(
+      int from, int to, float[] query, float[] flippedQuery, TopKSelector result) {
+    if (to - from <= LEAF_SIZE) {
+      for (int i = from; i < to; i++) {
+        int sample = order[i];
+        float bound = result.getBound();
+        result.offer(
+            sample, min(distance(query, sample, bound), distance(flippedQuery, sample, bound)));
+      }
+      return;
+    }
+
+    // By the triangle inequality, samples inside the radius are at least
+    // (distance to vantage - radius) away from the query, and samples outside of it are at least
+    // (radius - distance to vantage) away. Either orientation may reach a sample, so the bound for
+    // a subtree is the weaker of the two.
+    // Distances to the vantage point only need to be exact up to (worst + radius): beyond that the
+    // vantage point and the inner half are out of reach, while the outer half has to be searched
+    // anyway.
+    int vantage = order[from];
+    float mu = radius[from];
+    int median = (from + 1 + to) / 2;
+    float originalDistance = distance(query, vantage, result.getBound() + mu);
+    float flippedDistance = distance(flippedQuery, vantage, result.getBound() + mu);
+    result.offer(vantage, min(originalDistance, flippedDistance));
+
+    float insideBound = min(originalDistance, flippedDistance) - mu;
+    float outsideBound = mu - max(originalDistance, flippedDistance);
+    if (insideBound <= outsideBound) {
+      if (insideBound <= result.getBound()) {
+        search(from + 1, median, query, flippedQuery, result);
+      }
+      if (outsideBound <= result.getBound()) {
+        search(median, to, query, flippedQuery, result);
+      }
+    } else {
+      if (outsideBound <= result.getBound()) {
+        search(median, to, query, flippedQuery, result);
+      }
+      if (insideBound <= result.getBound()) {
+        search(from + 1, median, query, flippedQuery, result);
+      }
+    }
+  }
+
+  private float distance(int sample1, int sample2) {
+    int offset1 = sample1 * dims;
+    int offset2 = sample2 * dims;
+    float distance = 0;
+    for (int i = 0; i < dims; i++) {
+      distance =
+          max(distance, abs((embeddings[offset2 + i] - embeddings[offset1 + i]) * weights[i]));
+    }
+    return distance;
+  }
+
+  /**
+   * Returns the distance between {@code query} and {@code sample}, or any value above
+   * {@code bound} as soon as the distance is known to exceed it.
+   */
+  private float distance(float[] query, int sample, float bound) {
+    int offset = sample * dims;
+    float distance = 0;
+    for (int i = 0; i < dims && distance <= bound; i++) {
+      distance = max(distance, abs((embeddings[offset + i] - query[i]) * weights[i]));
+    }
+    return distance;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics of a workout in constant memory, whatever the length of the session.
+ *
+ * <p>Keeps the confidence mean and variance of the frames seen in each phase (state of an
+ * {@link ExerciseStateMachine}), and the durations and end times of the most recent reps in a
+ * ring, from which duration percentiles, tempo and cadence are computed.
+ */
+public class WorkoutAnalytics {
+  public static final int DEFAULT_RECENT_REPS = 64;
+
+  /** Immutable summary of the analytics at one point in time. */
+  public static class Snapshot {
+    private final long numTimedReps;
+    private final float meanDurationMs;
+    private final float durationStandardDeviationMs;
+    private final long medianDurationMs;
+    private final long p90DurationMs;
+    private final float cadencePerMinute;
+    private final float[] phaseConfidenceMeans;
+    private final float[] phaseConfidenceStandardDeviations;
+
+    private Snapshot(WorkoutAnalytics analytics) {
+      numTimedReps = analytics.getNumTimedReps();
+      meanDurationMs = (float) analytics.repDurations.getMean();
+      durationStandardDeviationMs = (float) analytics.repDurations.getStandardDeviation();
+      medianDurationMs = analytics.getRecentDurationPercentileMs(50);
+      p90DurationMs = analytics.getRecentDurationPercentileMs(90);
+      cadencePerMinute = analytics.getCadencePerMinute();
+      int numPhases = analytics.phaseConfidences.length;
+      phaseConfidenceMeans = new float[numPhases];
+      phaseConfidenceStandardDeviations = new float[numPhases];
+      for (int i = 0; i < numPhases; i++) {
+        phaseConfidenceMeans[i] = (float) analytics.phaseConfidences[i].getMean();
+        phaseConfidenceStandardDeviations[i] =
+            (float) analytics.phaseConfidences[i].getStandardDeviation();
+      }
+    }
+
+    /** See {@link WorkoutAnalytics#getNumTimedReps()}. */
+    public long getNumTimedReps() {
+      return numTimedReps;
+    }
+
+    /** Returns the mean rep duration over the whole session. */
+    public float getMeanDurationMs() {
+      return meanDurationMs;
+    }
+
+    public float getDurationStandardDeviationMs() {
+      return durationStandardDeviationMs;
+    }
+
+    /** Returns the median duration of the recent reps. */
+    public long getMedianDurationMs() {
+      return medianDurationMs;
+    }
+
+    /** Returns the 90th percentile duration of the recent reps. */
+    public long getP90DurationMs() {
+      return p90DurationMs;
+    }
+
+    public float getCadencePerMinute() {
+      return cadencePerMinute;
+    }
+
+    public float getPhaseConfidenceMean(int phase) {
+      return phaseConfidenceMeans[phase];
+    }
+
+    public float getPhaseConfidenceStandardDeviation(int phase) {
+      return phaseConfidenceStandardDeviations[phase];
+    }
+  }
+
+  private final RunningStats[] phaseConfidences;
+  private final RunningStats repDurations = new RunningStats();
+  // Durations and end times of the last recentReps.length reps, with the newest at recentHead.
+  private final long[] recentDurationsMs;
+  private final long[] recentEndsMs;
+  private int recentHead = -1;
+  private int recentSize;
+  private long latestDurationMs;
+  // Scratch space to sort recent durations for percentiles.
+  private final long[] sortedDurationsMs;
+
+  public WorkoutAnalytics(int numPhases) {
+    this(numPhases, DEFAULT_RECENT_REPS);
+  }
+
+  public WorkoutAnalytics(int numPhases, int recentReps) {
+    phaseConfidences = new RunningStats[numPhases];
+    for (int i = 0; i < numPhases; i++) {
+      phaseConfidences[i] = new RunningStats();
+    }
+    recentDurationsMs = new long[recentReps];
+    recentEndsMs = new long[recentReps];
+    sortedDurationsMs = new long[recentReps];
+  }
+
+  public void clear() {
+    for (RunningStats stats : phaseConfidences) {
+      stats.clear();
+    }
+    repDurations.clear();
+    recentHead = -1;
+    recentSize = 0;
+    latestDurationMs = 0;
+  }
+
+  /** Adds the confidence of a frame spent in the given phase. */
+  public void addFrame(int phase, float confidence) {
+    phaseConfidences[phase].add(confidence);
+  }
+
+  /** Adds a rep that took {@code durationMs} and ended at {@code endMs} on a monotonic clock. */
+  public void addRep(long durationMs, long endMs) {
+    repDurations.add(durationMs);
+    latestDurationMs = durationMs;
+    recentHead = (recentHead + 1) % recentDurationsMs.length;
+    recentDurationsMs[recentHead] = durationMs;
+    recentEndsMs[recentHead] = endMs;
+    recentSize = Math.min(recentSize + 1, recentDurationsMs.length);
+  }
+
+  /** Returns a summary of the current statistics, in O(phases + recent reps). */
+  public Snapshot getSnapshot() {
+    return new Snapshot(this);
+  }
+
+  /** Returns the confidence statistics of frames in the given phase. Live, not a copy. */
+  public RunningStats getPhaseConfidence(int phase) {
+    return phaseConfidences[phase];
+  }
+
+  /** Returns the duration statistics over all reps. Live, not a copy. */
+  public RunningStats getRepDurations() {
+    return repDurations;
+  }
+
+  /**
+   * Returns the number of reps whose duration was recorded, one per {@link #addRep} call. This is
+   * not the rep count of an {@link ExerciseStateMachine}, which adds the count of each transition
+   * taken, whether it records a duration or not.
+   */
+  public long getNumTimedReps() {
+    return repDurations.getCount();
+  }
+
+  /** Returns the duration of the last rep, or 0 if there is none. */
+  public long getLatestDurationMs() {
+    return latestDurationMs;
+  }
+
+  /**
+   * Returns the given percentile, in range [0, 100], of the durations of the recent reps by the
+   * nearest-rank method, or 0 if there are none.
+   */
+  public long getRecentDurationPercentileMs(float percentile) {
+    if (recentSize == 0) {
+      return 0;
+    }
+    System.arraycopy(recentDurationsMs, 0, sortedDurationsMs, 0, recentSize);
+    Arrays.sort(sortedDurationsMs, 0, recentSize);
+    int rank = (int) Math.ceil(percentile / 100 * recentSize);
+    return sortedDurationsMs[Math.max(rank - 1, 0)];
+  }
+
+  /**
+   * Returns the recent number of reps per minute, from the end times of the recent reps, or 0 if
+   * there are fewer than two.
+   */
+  public float getCadencePerMinute() {
+    if (recentSize < 2) {
+      return 0;
+    }
+    int oldest = (recentHead - recentSize + 1 + recentEndsMs.length) % recentEndsMs.length;
+    long spanMs = recentEndsMs[recentHead] - recentEndsMs[oldest];
+    return spanMs > 0 ? (recentSize - 1) * 60000f / spanMs : 0;
+  }
+
+  /**
+   * Returns the recent tempo, as the mean time in ms between the ends of consecutive reps, or 0 if
+   * there are fewer than two.
+   */
+  public float getTempoMs() {
+    float cadence = getCadencePerMinute();
+    return cadence > 0 ? 60000f / cadence : 0;
+  }
+}
@@ -36,6 +36,10 @@ import com.google.mlkit.vision.demo.CameraSource
 import com.google.mlkit.vision.demo.CameraSourcePreview
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.R
+import com.google.mlkit.vision.demo.VisionImageProcessor
+import com.google.mlkit.vision.demo.java.posedetector.HybridDetectorScheduler
+import com.google.mlkit.vision.demo.java.posedetector.KeyframeScheduler
+import com.google.mlkit.vision.demo.java.posedetector.PoseDetectorProcessor as JavaPoseDetectorProcessor
 import com.google.mlkit.vision.demo.kotlin.barcodescanner.BarcodeScannerProcessor
 import com.google.mlkit.vision.demo.kotlin.facedetector.FaceDetectorProcessor
 import com.google.mlkit.vision.demo.kotlin.facemeshdetector.FaceMeshDetectorProcessor
@@ -269,17 +273,46 @@ class LivePreviewActivity :
           val visualizeZ = PreferenceUtils.shouldPoseDetectionVisualizeZ(this)
           val rescaleZ = PreferenceUtils.shouldPoseDetectionRescaleZForVisualization(this)
           val runClassification = PreferenceUtils.shouldPoseDetectionRunClassification(this)
-          cameraSource!!.setMachineLearningFrameProcessor(
-            PoseDetectorProcessor(
-              this,
-              poseDetectorOptions,
-              shouldShowInFrameLikelihood,
-              visualizeZ,
-              rescaleZ,
-              runClassification,
-              /* isStreamMode = */ true
-            )
-          )
+          val hybridScheduler =
+            if (PreferenceUtils.isPoseDetectionHybridLivePreview(this)) {
+              HybridDetectorScheduler.create(
+                PreferenceUtils.getAccuratePoseDetectorOptionsForLivePreview(this)
+              )
+            } else {
+              null
+            }
+          val keyframeScheduler =
+            if (PreferenceUtils.shouldPoseDetectionUseKeyframesLivePreview(this)) {
+              KeyframeScheduler.adaptive(KeyframeScheduler.DEFAULT_MAX_INTERVAL)
+            } else {
+              null
+            }
+          // Only the Java processor schedules detections across frames.
+          val poseDetectorProcessor: VisionImageProcessor =
+            if (hybridScheduler != null || keyframeScheduler != null) {
+              JavaPoseDetectorProcessor(
+                this,
+                poseDetectorOptions,
+                shouldShowInFrameLikelihood,
+                visualizeZ,
+                rescaleZ,
+                runClassification,
+                /* isStreamMode = */ true,
+                keyframeScheduler,
+                hybridScheduler
+              )
+            } else {
+              PoseDetectorProcessor(
+                this,
+                poseDetectorOptions,
+                shouldShowInFrameLikelihood,
+                visualizeZ,
+                rescaleZ,
+                runClassification,
+                /* isStreamMode = */ true
+              )
+            }
+          cameraSource!!.setMachineLearningFrameProcessor(poseDetectorProcessor)
         }
         SELFIE_SEGMENTATION -> {
           cameraSource!!.setMachineLearningFrameProcessor(SegmenterProcessor(this))
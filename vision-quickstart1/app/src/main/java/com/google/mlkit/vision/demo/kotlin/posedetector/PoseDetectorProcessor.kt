@@ -22,13 +22,14 @@ import com.google.android.gms.tasks.Task
 import com.google.android.odml.image.MlImage
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.demo.GraphicOverlay
+import com.google.mlkit.vision.demo.java.posedetector.PoseResultText
 import com.google.mlkit.vision.demo.java.posedetector.classification.PoseClassifierProcessor
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult
 import com.google.mlkit.vision.demo.kotlin.VisionProcessorBase
 import com.google.mlkit.vision.pose.Pose
 import com.google.mlkit.vision.pose.PoseDetection
 import com.google.mlkit.vision.pose.PoseDetector
 import com.google.mlkit.vision.pose.PoseDetectorOptionsBase
-import java.util.ArrayList
 import java.util.concurrent.Executor
 import java.util.concurrent.Executors
 
@@ -47,9 +48,11 @@ class PoseDetectorProcessor(
   private val classificationExecutor: Executor
 
   private var poseClassifierProcessor: PoseClassifierProcessor? = null
+  // Formats the results on the main thread, keeping lines whose values didn't change.
+  private val classificationText = PoseResultText()
 
   /** Internal class to hold Pose and classification results. */
-  class PoseWithClassification(val pose: Pose, val classificationResult: List<String>)
+  class PoseWithClassification(val pose: Pose, val classificationResult: PoseResult?)
 
   init {
     detector = PoseDetection.getClient(options)
@@ -68,7 +71,7 @@ class PoseDetectorProcessor(
         classificationExecutor,
         { task ->
           val pose = task.getResult()
-          var classificationResult: List<String> = ArrayList()
+          var classificationResult: PoseResult? = null
           if (runClassification) {
             if (poseClassifierProcessor == null) {
               poseClassifierProcessor = PoseClassifierProcessor(context, isStreamMode)
@@ -87,7 +90,7 @@ class PoseDetectorProcessor(
         classificationExecutor,
         { task ->
           val pose = task.getResult()
-          var classificationResult: List<String> = ArrayList()
+          var classificationResult: PoseResult? = null
           if (runClassification) {
             if (poseClassifierProcessor == null) {
               poseClassifierProcessor = PoseClassifierProcessor(context, isStreamMode)
@@ -110,7 +113,8 @@ class PoseDetectorProcessor(
         showInFrameLikelihood,
         visualizeZ,
         rescaleZForVisualization,
-        poseWithClassification.classificationResult
+        poseWithClassification.classificationResult,
+        classificationText
       )
     )
   }
@@ -21,6 +21,8 @@ import android.graphics.Color
 import android.graphics.Paint
 import com.google.mlkit.vision.demo.GraphicOverlay
 import com.google.mlkit.vision.demo.GraphicOverlay.Graphic
+import com.google.mlkit.vision.demo.java.posedetector.PoseResultText
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult
 import com.google.mlkit.vision.pose.Pose
 import com.google.mlkit.vision.pose.PoseLandmark
 import java.lang.Math.max
@@ -35,7 +37,8 @@ internal constructor(
   private val showInFrameLikelihood: Boolean,
   private val visualizeZ: Boolean,
   private val rescaleZForVisualization: Boolean,
-  private val poseClassification: List<String>
+  private val poseResult: PoseResult?,
+  private val poseResultText: PoseResultText
 ) : Graphic(overlay) {
   private var zMin = java.lang.Float.MAX_VALUE
   private var zMax = java.lang.Float.MIN_VALUE
@@ -69,6 +72,7 @@ internal constructor(
     }
 
     // Draw pose classification text.
+    val poseClassification = poseResultText.getLines(poseResult)
     val classificationX = POSE_CLASSIFICATION_TEXT_SIZE * 0.5f
     for (i in poseClassification.indices) {
       val classificationY =
@@ -43,6 +43,7 @@ import com.google.mlkit.vision.pose.defaults.PoseDetectorOptions;
 public class  PreferenceUtils {
 
   private static final int POSE_DETECTOR_PERFORMANCE_MODE_FAST = 1;
+  private static final int POSE_DETECTOR_PERFORMANCE_MODE_HYBRID = 3;
 
   static void saveString(Context context, @StringRes int prefKeyId, @Nullable String value) {
     PreferenceManager.getDefaultSharedPreferences(context)
@@ -230,29 +231,51 @@ public class  PreferenceUtils {
     return optionsBuilder.build();
   }
 
+  /**
+   * Returns the options of the pose detector for live preview. In hybrid mode, these are the
+   * options of the fast detector, see {@link #getAccuratePoseDetectorOptionsForLivePreview}.
+   */
   public static PoseDetectorOptionsBase getPoseDetectorOptionsForLivePreview(Context context) {
-    int performanceMode =
-        getModeTypePreferenceValue(
-            context,
-            R.string.pref_key_live_preview_pose_detection_performance_mode,
-            POSE_DETECTOR_PERFORMANCE_MODE_FAST);
-    boolean preferGPU = preferGPUForPoseDetection(context);
-    if (performanceMode == POSE_DETECTOR_PERFORMANCE_MODE_FAST) {
+    int performanceMode = getLivePreviewPoseDetectorPerformanceMode(context);
+    if (performanceMode == POSE_DETECTOR_PERFORMANCE_MODE_FAST
+        || performanceMode == POSE_DETECTOR_PERFORMANCE_MODE_HYBRID) {
       PoseDetectorOptions.Builder builder =
           new PoseDetectorOptions.Builder().setDetectorMode(PoseDetectorOptions.STREAM_MODE);
-      if (preferGPU) {
+      if (preferGPUForPoseDetection(context)) {
         builder.setPreferredHardwareConfigs(PoseDetectorOptions.CPU_GPU);
       }
       return builder.build();
     } else {
-      AccuratePoseDetectorOptions.Builder builder =
-          new AccuratePoseDetectorOptions.Builder()
-              .setDetectorMode(AccuratePoseDetectorOptions.STREAM_MODE);
-      if (preferGPU) {
-        builder.setPreferredHardwareConfigs(AccuratePoseDetectorOptions.CPU_GPU);
-      }
-      return builder.build();
+      return getAccuratePoseDetectorOptionsForLivePreview(context);
+    }
+  }
+
+  public static AccuratePoseDetectorOptions getAccuratePoseDetectorOptionsForLivePreview(
+      Context context) {
+    AccuratePoseDetectorOptions.Builder builder =
+        new AccuratePoseDetectorOptions.Builder()
+            .setDetectorMode(AccuratePoseDetectorOptions.STREAM_MODE);
+    if (preferGPUForPoseDetection(context)) {
+      builder.setPreferredHardwareConfigs(AccuratePoseDetectorOptions.CPU_GPU);
     }
+    return builder.build();
+  }
+
+  /**
+   * Returns whether live preview should run the fast pose detector on every frame and the accurate
+   * one only on some, see {@link
+   * com.google.mlkit.vision.demo.java.posedetector.HybridDetectorScheduler}.
+   */
+  public static boolean isPoseDetectionHybridLivePreview(Context context) {
+    return getLivePreviewPoseDetectorPerformanceMode(context)
+        == POSE_DETECTOR_PERFORMANCE_MODE_HYBRID;
+  }
+
+  private static int getLivePreviewPoseDetectorPerformanceMode(Context context) {
+    return getModeTypePreferenceValue(
+        context,
+        R.string.pref_key_live_preview_pose_detection_performance_mode,
+        POSE_DETECTOR_PERFORMANCE_MODE_FAST);
   }
 
   public static PoseDetectorOptionsBase getPoseDetectorOptionsForStillImage(Context context) {
@@ -342,6 +365,16 @@ public class  PreferenceUtils {
     return sharedPreferences.getBoolean(prefKey, false);
   }
 
+  /**
+   * Returns whether the live preview pose detector runs on keyframes only, see {@link
+   * com.google.mlkit.vision.demo.java.posedetector.KeyframeScheduler}.
+   */
+  public static boolean shouldPoseDetectionUseKeyframesLivePreview(Context context) {
+    SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+    String prefKey = context.getString(R.string.pref_key_live_preview_pose_detector_use_keyframes);
+    return sharedPreferences.getBoolean(prefKey, false);
+  }
+
   public static boolean shouldSegmentationEnableRawSizeMask(Context context) {
     SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
     String prefKey = context.getString(R.string.pref_key_segmentation_raw_size_mask);
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.demo.java.posedetector.classification.ClassificationResult;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Checks on which frames {@link HybridDetectorScheduler} runs the accurate detector, and why. */
+public class HybridDetectorSchedulerTest {
+  private static final int KEYFRAME_INTERVAL = 5;
+
+  @Test
+  public void shouldRunAccurate_onFirstFrameAndEveryKeyframe() {
+    HybridDetectorScheduler scheduler = newScheduler();
+    for (int frame = 0; frame < 4 * KEYFRAME_INTERVAL; frame++) {
+      assertEquals("frame " + frame, frame % KEYFRAME_INTERVAL == 0,
+          scheduler.shouldRunAccurate());
+      scheduler.onResult(landmarks(1f), null);
+    }
+  }
+
+  @Test
+  public void onResult_lowLikelihoodOfFastDetectionSchedulesAccurate() {
+    HybridDetectorScheduler scheduler = newScheduler();
+    assertTrue(scheduler.shouldRunAccurate());
+    // Unsure after the accurate detector as well: the body is likely out of frame.
+    scheduler.onResult(landmarks(0.5f), null);
+    assertFalse(scheduler.shouldRunAccurate());
+    scheduler.onResult(landmarks(0.5f), null);
+    assertTrue(scheduler.shouldRunAccurate());
+    // Sure enough, and no pose at all.
+    scheduler.onResult(landmarks(0.9f), null);
+    assertFalse(scheduler.shouldRunAccurate());
+    scheduler.onResult(PoseLandmarks.empty(), null);
+    assertFalse(scheduler.shouldRunAccurate());
+  }
+
+  @Test
+  public void onResult_nearTransitionSchedulesAccurate() {
+    HybridDetectorScheduler scheduler = newScheduler();
+    assertTrue(scheduler.shouldRunAccurate());
+    scheduler.onResult(landmarks(1f), result(true, 0.05f));
+    // Even right after the accurate detector ran.
+    assertTrue(scheduler.shouldRunAccurate());
+    scheduler.onResult(landmarks(1f), result(true, 0.2f));
+    assertFalse(scheduler.shouldRunAccurate());
+    // Without a pose, the distance is that of the rep counters, which stay where they were.
+    scheduler.onResult(landmarks(1f), result(false, 0.05f));
+    assertFalse(scheduler.shouldRunAccurate());
+  }
+
+  @Test
+  public void getSummary_countsFramesByReason() {
+    HybridDetectorScheduler scheduler = newScheduler();
+    // Keyframe, near transition, low likelihood, then fast until the next keyframe.
+    scheduler.shouldRunAccurate();
+    scheduler.onResult(landmarks(1f), result(true, 0f));
+    scheduler.shouldRunAccurate();
+    scheduler.onResult(landmarks(1f), null);
+    scheduler.shouldRunAccurate();
+    scheduler.onResult(landmarks(0.5f), null);
+    scheduler.shouldRunAccurate();
+    for (int frame = 0; frame < KEYFRAME_INTERVAL; frame++) {
+      scheduler.onResult(landmarks(1f), null);
+      scheduler.shouldRunAccurate();
+    }
+    scheduler.addLatency(false, 10);
+    scheduler.addLatency(false, 20);
+    scheduler.addLatency(true, 60);
+
+    assertEquals(
+        "Fast detector only on 5 frames, accurate too on 4 (2 keyframes, 1 low likelihood, "
+            + "1 near transition). Latency fast 15.0 ms, accurate 60.0 ms. Detection time fast "
+            + "33%, accurate 67%.",
+        scheduler.getSummary());
+  }
+
+  private static HybridDetectorScheduler newScheduler() {
+    // The options are only handed to the detector, which isn't created here.
+    return HybridDetectorScheduler.create(/* accurateOptions= */ null, KEYFRAME_INTERVAL);
+  }
+
+  /** Returns landmarks with the same in-frame likelihood for all. */
+  private static PoseLandmarks landmarks(float inFrameLikelihood) {
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, inFrameLikelihood);
+    return new PoseLandmarks(
+        new float[PoseLandmarks.NUM_LANDMARKS * 3], inFrameLikelihoods, false);
+  }
+
+  private static PoseResult result(boolean poseFound, float transitionDistance) {
+    PoseResult.Builder result =
+        new PoseResult.Builder(true).setTransitionDistance(transitionDistance);
+    if (poseFound) {
+      result.setPose(0, new ClassificationResult().getClassNames(), 1f);
+    }
+    return result.build();
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LandmarkTrackerTest {
+  private static final int NUM_VALUES = PoseLandmarks.NUM_LANDMARKS * 3;
+  // Shoulders to hips, see pose().
+  private static final float TORSO_SIZE = 100;
+
+  @Test
+  public void getLastPredictionError_measuresCappedPredictionShown() {
+    LandmarkTracker tracker = new LandmarkTracker();
+    // Moving right at 1 px/ms.
+    tracker.update(pose(0), 0);
+    tracker.update(pose(100), 100);
+    tracker.update(pose(200), 200);
+
+    // Past the prediction horizon, the same landmarks are shown as at the horizon.
+    PoseLandmarks shown = tracker.predict(600);
+    assertEquals(shown.getX(0), tracker.predict(450).getX(0), 0f);
+    PoseLandmarks detected = pose(450);
+    tracker.update(detected, 600);
+
+    // The error is the distance to what was shown, in torso lengths.
+    float expected = Math.abs(detected.getX(0) - shown.getX(0)) / TORSO_SIZE;
+    assertEquals(expected, tracker.getLastPredictionError(), 1e-4f);
+  }
+
+  /** Returns a pose with the shoulders 100 px above all other landmarks, at {@code x}. */
+  private static PoseLandmarks pose(float x) {
+    float[] positions = new float[NUM_VALUES];
+    for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+      positions[i * 3] = x;
+      positions[i * 3 + 1] = 100;
+    }
+    positions[PoseLandmark.LEFT_SHOULDER * 3 + 1] = 0;
+    positions[PoseLandmark.RIGHT_SHOULDER * 3 + 1] = 0;
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, 1);
+    return new PoseLandmarks(positions, inFrameLikelihoods, false);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.mlkit.vision.common.PointF3D;
+import com.google.mlkit.vision.demo.java.posedetector.classification.ClassNameTable;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseLandmarks;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseResult;
+import com.google.mlkit.vision.demo.java.posedetector.classification.PoseSample;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/** Checks which lines {@link PoseResultText} reuses from the previous result. */
+public class PoseResultTextTest {
+  private static final ClassNameTable CLASS_NAMES = tableOf("up", "down");
+
+  @Test
+  public void getLines_reusesLinesOfUnchangedValues() {
+    PoseResultText text = new PoseResultText();
+    List<String> lines = text.getLines(result(CLASS_NAMES, 0, 0.801f, "up", 3));
+    assertEquals(ImmutableList.of("up : 3 reps", "up : 0.80 confidence"), lines);
+    String repLine = lines.get(0);
+    String confidenceLine = lines.get(1);
+
+    // Same shown hundredths, same rep count.
+    lines = text.getLines(result(CLASS_NAMES, 0, 0.799f, "up", 3));
+    assertSame(repLine, lines.get(0));
+    assertSame(confidenceLine, lines.get(1));
+
+    lines = text.getLines(result(CLASS_NAMES, 0, 0.81f, "up", 4));
+    assertEquals(ImmutableList.of("up : 4 reps", "up : 0.81 confidence"), lines);
+    assertNotSame(repLine, lines.get(0));
+    assertNotSame(confidenceLine, lines.get(1));
+  }
+
+  @Test
+  public void getLines_formatsAgainWhenTheClassNameTableChanges() {
+    PoseResultText text = new PoseResultText();
+    String confidenceLine = text.getLines(result(CLASS_NAMES, 1, 0.5f, null, 0)).get(1);
+    assertEquals("down : 0.50 confidence", confidenceLine);
+
+    // Another sample set where ID 1 is another class, with the same confidence.
+    ClassNameTable swapped = tableOf("down", "t2");
+    assertEquals("t2 : 0.50 confidence", text.getLines(result(swapped, 1, 0.5f, null, 0)).get(1));
+
+    // A new table of the same classes formats the line again, with the same text.
+    ClassNameTable reloaded = tableOf("up", "down");
+    String reloadedLine = text.getLines(result(reloaded, 1, 0.5f, null, 0)).get(1);
+    assertEquals(confidenceLine, reloadedLine);
+    assertNotSame(confidenceLine, reloadedLine);
+  }
+
+  @Test
+  public void getLines_onlyRepLineWithoutPose() {
+    PoseResultText text = new PoseResultText();
+    assertEquals(ImmutableList.of(""), text.getLines(PoseResult.noPose(true)));
+    assertTrue(text.getLines(PoseResult.noPose(false)).isEmpty());
+    assertTrue(text.getLines(null).isEmpty());
+  }
+
+  private static PoseResult result(ClassNameTable classNames, int classId, float confidence,
+      String lastRepClassName, int lastRepCount) {
+    return new PoseResult.Builder(true)
+        .setLastRep(lastRepClassName, lastRepCount)
+        .setPose(classId, classNames, confidence)
+        .build();
+  }
+
+  /** Returns a new table of the given classes, each given one sample of an arbitrary pose. */
+  private static ClassNameTable tableOf(String... classNames) {
+    List<PointF3D> landmarks = new ArrayList<>();
+    for (int i = 0; i < PoseLandmarks.NUM_LANDMARKS; i++) {
+      landmarks.add(PointF3D.from(i, 2 * i, 0));
+    }
+    List<PoseSample> samples = new ArrayList<>();
+    for (String className : classNames) {
+      samples.add(new PoseSample(className, className, landmarks));
+    }
+    return ClassNameTable.fromSamples(samples);
+  }
+}
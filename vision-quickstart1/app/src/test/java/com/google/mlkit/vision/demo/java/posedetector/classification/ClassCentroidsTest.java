@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.primitives.Ints;
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the coarse stage of {@link ClassCentroids} against a plain sort of the classes, and that
+ * with the fallback margin it keeps the classes the exhaustive search decides for.
+ */
+public class ClassCentroidsTest {
+  private static final PointF3D AXES_WEIGHTS =
+      PoseClassifierOptions.createDefault().getAxesWeights();
+  private static final float[] MARGINS = {0f, 0.1f, 0.25f};
+
+  // Both bundled sample sets together, so that there are eight classes to pick from.
+  private static List<PoseSample> samples;
+  private static List<float[]> queries;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    samples = new ArrayList<>(TestPoses.readSamples("t2.csv"));
+    samples.addAll(TestPoses.readSamples("fitness_pose_samples.csv"));
+    List<float[]> landmarks = new ArrayList<>(TestPoses.readLandmarks("t2.csv"));
+    landmarks.addAll(TestPoses.readLandmarks("fitness_pose_samples.csv"));
+    Random random = new Random(29);
+    queries = new ArrayList<>();
+    for (float[] pose : landmarks) {
+      queries.add(TestPoses.addNoise(pose, 10f, random));
+    }
+  }
+
+  @Test
+  public void getCandidates_matchesSortedClasses() {
+    ClassCentroids centroids = new ClassCentroids(samples, AXES_WEIGHTS);
+    // One scratch for every call, as one classifying thread would reuse it.
+    ClassCentroids.Scratch scratch = new ClassCentroids.Scratch();
+    for (int q = 0; q < queries.size(); q++) {
+      float[] embedding = embed(queries.get(q));
+      for (int numClasses = 0; numClasses <= centroids.getNumClasses(); numClasses++) {
+        for (float margin : MARGINS) {
+          String message = "query " + q + " classes " + numClasses + " margin " + margin;
+          int[] expected = getSortedCandidates(embedding, numClasses, margin);
+          int numCandidates = centroids.getCandidates(embedding, numClasses, margin, scratch);
+          if (expected == null) {
+            assertEquals(message, -1, numCandidates);
+          } else {
+            assertArrayEquals(
+                message, expected, Arrays.copyOf(scratch.getCandidates(), numCandidates));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void classify_keepsMostConfidentClass() {
+    PoseClassifier exhaustive = new PoseClassifier(samples);
+    for (int numClasses = 3; numClasses <= 4; numClasses++) {
+      PoseClassifier coarse = new PoseClassifier(
+          samples, new PoseClassifierOptions.Builder().setCoarseClassCount(numClasses).build());
+      for (int q = 0; q < queries.size(); q++) {
+        List<PointF3D> pose = TestPoses.toPoints(queries.get(q));
+        assertEquals("query " + q + " classes " + numClasses,
+            exhaustive.classify(pose).getMaxConfidenceClassId(),
+            coarse.classify(pose).getMaxConfidenceClassId());
+      }
+    }
+  }
+
+  /**
+   * Returns the candidates by sorting every class by its centroid distance, or null to fall back,
+   * as {@link ClassCentroids#getCandidates} is specified.
+   */
+  private static int[] getSortedCandidates(float[] embedding, int numClasses, float margin) {
+    List<String> classNames = new ArrayList<>();
+    List<List<Integer>> classSamples = new ArrayList<>();
+    for (int i = 0; i < samples.size(); i++) {
+      String className = samples.get(i).getClassName();
+      if (!classNames.contains(className)) {
+        classNames.add(className);
+        classSamples.add(new ArrayList<>());
+      }
+      classSamples.get(classNames.indexOf(className)).add(i);
+    }
+    if (numClasses <= 0 || numClasses >= classNames.size()) {
+      return null;
+    }
+    float[] flipped = embedding.clone();
+    Utils.negateX(flipped);
+    float[] distances = new float[classNames.size()];
+    Integer[] classOrder = new Integer[classNames.size()];
+    for (int c = 0; c < classNames.size(); c++) {
+      float[] centroid = getCentroid(classSamples.get(c), embedding.length);
+      distances[c] = min(distance(centroid, embedding), distance(centroid, flipped));
+      classOrder[c] = c;
+    }
+    Arrays.sort(classOrder, (c1, c2) -> Float.compare(distances[c1], distances[c2]));
+    float lastIncluded = distances[classOrder[numClasses - 1]];
+    float firstExcluded = distances[classOrder[numClasses]];
+    if (firstExcluded - lastIncluded <= margin * firstExcluded) {
+      return null;
+    }
+    List<Integer> candidates = new ArrayList<>();
+    for (int i = 0; i < numClasses; i++) {
+      candidates.addAll(classSamples.get(classOrder[i]));
+    }
+    return Ints.toArray(candidates);
+  }
+
+  private static float[] getCentroid(List<Integer> classSamples, int dims) {
+    float[] centroid = new float[dims];
+    float[] embedding = new float[dims];
+    for (int sample : classSamples) {
+      Utils.flatten(samples.get(sample).getEmbedding(), embedding, 0);
+      for (int i = 0; i < dims; i++) {
+        centroid[i] += embedding[i] / classSamples.size();
+      }
+    }
+    return centroid;
+  }
+
+  private static float distance(float[] centroid, float[] query) {
+    float[] weights = {AXES_WEIGHTS.getX(), AXES_WEIGHTS.getY(), AXES_WEIGHTS.getZ()};
+    float sum = 0;
+    for (int i = 0; i < query.length; i++) {
+      sum += abs((centroid[i] - query[i]) * weights[i % 3]);
+    }
+    return sum / query.length;
+  }
+
+  private static float[] embed(float[] landmarks) {
+    List<PointF3D> embedding = PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(landmarks));
+    float[] flattened = new float[embedding.size() * 3];
+    Utils.flatten(embedding, flattened, 0);
+    return flattened;
+  }
+}
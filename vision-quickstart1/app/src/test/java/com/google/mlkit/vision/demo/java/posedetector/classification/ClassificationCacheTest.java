@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/**
+ * Checks that classifying a pose stream through the result cache of {@link PoseClassifier} gives
+ * the results of a full search, or close to them within the tolerance.
+ */
+public class ClassificationCacheTest {
+  private static final String SAMPLES_FILE = "fitness_pose_samples.csv";
+  private static final int CACHE_SIZE = 4;
+  private static final int NUM_REPS = 10;
+  private static final int REP_FRAMES = 30;
+  private static final int HOLD_FRAMES = 15;
+  // Jitter of the detector, in pixels.
+  private static final float NOISE = 0.5f;
+
+  @Test
+  public void classify_withoutToleranceMatchesFullSearch() throws IOException {
+    List<PoseSample> samples = TestPoses.readSamples(SAMPLES_FILE);
+    PoseClassifier classifier = new PoseClassifier(samples, PoseClassifierOptions.createDefault());
+    PoseClassifier cachedClassifier = new PoseClassifier(samples, cacheOptions(0f));
+
+    for (float[] frame : recordWorkout()) {
+      ClassificationResult expected = classifier.classify(TestPoses.toPoints(frame));
+      ClassificationResult result = cachedClassifier.classify(TestPoses.toPoints(frame));
+      for (String className : expected.getAllClasses()) {
+        assertEquals(
+            className,
+            expected.getClassConfidence(className),
+            result.getClassConfidence(className),
+            0f);
+      }
+    }
+    // Most frames are only searched among the candidates of a cached pose.
+    assertTrue(getPercent(cachedClassifier, "searched") < 50);
+  }
+
+  @Test
+  public void classify_withToleranceDriftsLittleFromFullSearch() throws IOException {
+    List<PoseSample> samples = TestPoses.readSamples(SAMPLES_FILE);
+    PoseClassifier classifier = new PoseClassifier(samples, PoseClassifierOptions.createDefault());
+    PoseClassifier cachedClassifier = new PoseClassifier(samples, cacheOptions(1f));
+    PoseClassifier exactCachedClassifier = new PoseClassifier(samples, cacheOptions(0f));
+
+    List<float[]> frames = recordWorkout();
+    int numSameClass = 0;
+    float maxDrift = 0;
+    for (float[] frame : frames) {
+      ClassificationResult expected = classifier.classify(TestPoses.toPoints(frame));
+      ClassificationResult result = cachedClassifier.classify(TestPoses.toPoints(frame));
+      exactCachedClassifier.classify(TestPoses.toPoints(frame));
+      float drift = 0;
+      for (String className : expected.getAllClasses()) {
+        drift = Math.max(drift, Math.abs(
+            expected.getClassConfidence(className) - result.getClassConfidence(className)));
+      }
+      maxDrift = Math.max(maxDrift, drift);
+      String maxConfidenceClass = expected.getMaxConfidenceClass();
+      if (maxConfidenceClass.equals(result.getMaxConfidenceClass())) {
+        numSameClass++;
+      } else {
+        // Only near ties of the full search flip.
+        assertTrue(expected.getClassConfidence(maxConfidenceClass)
+            - expected.getClassConfidence(result.getMaxConfidenceClass()) <= 2 * drift);
+      }
+    }
+
+    // A sample or two swapped among the nearest ones, out of confidenceRange().
+    assertTrue("drift " + maxDrift, maxDrift <= 2);
+    assertTrue(numSameClass + " of " + frames.size(), numSameClass >= 0.99f * frames.size());
+    // The tolerance is what lets the cache reuse results.
+    assertTrue(
+        getPercent(cachedClassifier, "reused") > getPercent(exactCachedClassifier, "reused"));
+  }
+
+  private static PoseClassifierOptions cacheOptions(float tolerance) {
+    return new PoseClassifierOptions.Builder()
+        .setResultCacheSize(CACHE_SIZE)
+        .setResultCacheTolerance(tolerance)
+        .build();
+  }
+
+  /**
+   * Returns the frames of push-ups then squats, each rep going from the first sample of the up
+   * class to the first of the down class and back, then held up, all with jitter.
+   */
+  private static List<float[]> recordWorkout() throws IOException {
+    List<float[]> landmarks = TestPoses.readLandmarks(SAMPLES_FILE);
+    List<String> classNames = TestPoses.readClassNames(SAMPLES_FILE);
+    Random random = new Random(47);
+    List<float[]> frames = new ArrayList<>();
+    for (String exercise : new String[] {"pushups", "squats"}) {
+      float[] up = landmarks.get(classNames.indexOf(exercise + "_up"));
+      float[] down = landmarks.get(classNames.indexOf(exercise + "_down"));
+      for (int rep = 0; rep < NUM_REPS; rep++) {
+        for (int f = -HOLD_FRAMES; f < REP_FRAMES; f++) {
+          float depth =
+              f < 0 ? 0 : (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * f / REP_FRAMES));
+          frames.add(TestPoses.addNoise(TestPoses.interpolate(up, down, depth), NOISE, random));
+        }
+      }
+    }
+    return frames;
+  }
+
+  // Returns the percentage of classifications the result cache reused, refined or searched.
+  private static float getPercent(PoseClassifier classifier, String outcome) {
+    Matcher matcher =
+        Pattern.compile("([0-9.]+)% " + outcome).matcher(classifier.getResultCacheSummary());
+    assertTrue(matcher.find());
+    return Float.parseFloat(matcher.group(1));
+  }
+}
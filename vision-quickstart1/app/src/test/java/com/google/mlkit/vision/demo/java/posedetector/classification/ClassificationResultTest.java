@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import org.junit.Test;
+
+/** Checks that class IDs of {@link ClassificationResult} and its names agree. */
+public class ClassificationResultTest {
+
+  @Test
+  public void fromSamples_internsClassesInOrderOfFirstAppearance() throws Exception {
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    ClassNameTable classNames = ClassNameTable.fromSamples(samples);
+    assertEquals(
+        ImmutableList.of("pushups_up", "squats_up", "squats_down", "pushups_down"),
+        classNames.getNames());
+    for (int i = 0; i < classNames.size(); i++) {
+      assertEquals(i, classNames.getId(classNames.getName(i)));
+    }
+    assertEquals(-1, classNames.getId("lunges_down"));
+  }
+
+  @Test
+  public void classConfidence_sameByIdAndByName() {
+    ClassNameTable classNames = tableOf("down", "up", "t2");
+    ClassificationResult result = new ClassificationResult(classNames);
+    result.incrementClassConfidence(0);
+    result.incrementClassConfidence("t2");
+    result.incrementClassConfidence("t2");
+    result.putClassConfidence("up", 1.5f);
+
+    assertSame(classNames, result.getClassNames());
+    assertEquals(ImmutableSet.of("down", "up", "t2"), result.getAllClasses());
+    assertEquals(1f, result.getClassConfidence("down"), 0f);
+    assertEquals(1.5f, result.getClassConfidence(1), 0f);
+    assertEquals(2f, result.getClassConfidence(2), 0f);
+    assertEquals(0f, result.getClassConfidence("t3"), 0f);
+    assertEquals(2, result.getMaxConfidenceClassId());
+    assertEquals("t2", result.getMaxConfidenceClass());
+  }
+
+  @Test
+  public void unknownClassByName_isAddedToANewTable() {
+    ClassNameTable classNames = tableOf("down", "up");
+    ClassificationResult result = new ClassificationResult(classNames);
+    result.putClassConfidence("up", 3f);
+    result.incrementClassConfidence("t2");
+
+    // The shared table is immutable, the result gets a table of its own.
+    assertEquals(2, classNames.size());
+    assertEquals(ImmutableList.of("down", "up", "t2"), result.getClassNames().getNames());
+    assertEquals(3f, result.getClassConfidence("up"), 0f);
+    assertEquals(1f, result.getClassConfidence(2), 0f);
+  }
+
+  @Test
+  public void maxConfidenceClass_lowestIdOnTies() {
+    ClassificationResult result = new ClassificationResult(tableOf("down", "up", "t2"));
+    result.putClassConfidence(1, 4f);
+    result.putClassConfidence(2, 4f);
+    assertEquals(1, result.getMaxConfidenceClassId());
+
+    ClassificationResult empty = new ClassificationResult();
+    assertEquals(-1, empty.getMaxConfidenceClassId());
+    assertNull(empty.getMaxConfidenceClass());
+  }
+
+  private static ClassNameTable tableOf(String... names) {
+    ClassNameTable table = ClassNameTable.empty();
+    for (String name : names) {
+      table = table.with(name);
+    }
+    return table;
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures the throughput of {@link PoseClassifier#classifyBatch} on noisy copies of the bundled
+ * fitness samples. Run from the module directory:
+ *
+ * <pre>java ... ClassifyBatchBenchmark [numFrames] [numThreads]</pre>
+ */
+public final class ClassifyBatchBenchmark {
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int numFrames = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int numThreads =
+        args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    List<float[]> samples = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    PoseClassifier classifier =
+        new PoseClassifier(TestPoses.readSamples("fitness_pose_samples.csv"));
+    Random random = new Random(30);
+    float[] landmarks = new float[numFrames * TestPoses.NUM_VALUES];
+    for (int frame = 0; frame < numFrames; frame++) {
+      float[] pose = TestPoses.addNoise(samples.get(random.nextInt(samples.size())), 10f, random);
+      System.arraycopy(pose, 0, landmarks, frame * TestPoses.NUM_VALUES, TestPoses.NUM_VALUES);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      // Warm up the JIT and the buffers of the pool threads.
+      classifier.classifyBatch(landmarks, numFrames, executor);
+      for (int round = 0; round < ROUNDS; round++) {
+        long start = System.nanoTime();
+        classifier.classifyBatch(landmarks, numFrames, executor);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.US, "%d frames on %d threads: %.0f frames/s",
+            numFrames, numThreads, numFrames / seconds));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private ClassifyBatchBenchmark() {}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks the running sums of {@link EMASmoothing} against the smoothed confidences recomputed from
+ * the whole window, on a {@link Clock} driven by the test.
+ */
+public class EMASmoothingTest {
+  private static final ClassNameTable CLASS_NAMES =
+      ClassNameTable.empty().with("down").with("up").with("t2");
+  private static final int NUM_FRAMES = 20000;
+  private static final long FRAME_MS = 33;
+  // Longer than the smoother's reset threshold.
+  private static final long PAUSE_MS = 150;
+  // Confidences go up to the mean distance top-K, relative error is what float sums keep.
+  private static final float TOLERANCE = 1e-4f;
+
+  private long nowMs;
+  private final Clock clock = () -> nowMs;
+
+  @Test
+  public void getSmoothedResult_matchesRecomputedWindow() {
+    for (int windowSize : new int[] {1, 3, 10}) {
+      for (float alpha : new float[] {0.2f, 0.5f}) {
+        Random random = new Random(34);
+        EMASmoothing smoothing = new EMASmoothing(windowSize, alpha, clock);
+        Deque<float[]> window = new ArrayDeque<>();
+        nowMs = 0;
+        for (int frame = 0; frame < NUM_FRAMES; frame++) {
+          // Now and then the input stops for a while, which starts a new window.
+          if (random.nextInt(500) == 0) {
+            nowMs += PAUSE_MS;
+            window.clear();
+          }
+          nowMs += FRAME_MS;
+          float[] confidences = randomConfidences(random);
+          window.addFirst(confidences);
+          if (window.size() > windowSize) {
+            window.removeLast();
+          }
+          assertSmoothed("window " + windowSize + " alpha " + alpha + " frame " + frame,
+              recompute(window, alpha), smoothing.getSmoothedResult(resultOf(confidences)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void skipFrame_keepsWindowWithoutAddingToIt() {
+    Random random = new Random(35);
+    EMASmoothing smoothing = new EMASmoothing(10, 0.2f, clock);
+    Deque<float[]> window = new ArrayDeque<>();
+    nowMs = 0;
+    for (int frame = 0; frame < 100; frame++) {
+      // Runs of skipped frames span longer than the reset threshold, but no gap between frames
+      // does.
+      if (frame % 20 == 10) {
+        for (int skipped = 0; skipped < 10; skipped++) {
+          nowMs += FRAME_MS;
+          smoothing.skipFrame();
+        }
+      }
+      nowMs += FRAME_MS;
+      float[] confidences = randomConfidences(random);
+      window.addFirst(confidences);
+      if (window.size() > 10) {
+        window.removeLast();
+      }
+      assertSmoothed("frame " + frame,
+          recompute(window, 0.2f), smoothing.getSmoothedResult(resultOf(confidences)));
+    }
+  }
+
+  @Test
+  public void gapWithoutSkippedFrames_resetsWindow() {
+    EMASmoothing smoothing = new EMASmoothing(10, 0.2f, clock);
+    nowMs = 0;
+    for (int frame = 0; frame < 5; frame++) {
+      nowMs += FRAME_MS;
+      smoothing.getSmoothedResult(resultOf(new float[] {10, 0, 0}));
+    }
+    nowMs += PAUSE_MS;
+    assertSmoothed("after the gap", new float[] {0, 10, 0},
+        smoothing.getSmoothedResult(resultOf(new float[] {0, 10, 0})));
+  }
+
+  @Test
+  public void classNamesChange_keepsWindowOfSharedClasses() {
+    EMASmoothing smoothing = new EMASmoothing(10, 0.5f, clock);
+    nowMs = 0;
+    for (int frame = 0; frame < 3; frame++) {
+      nowMs += FRAME_MS;
+      smoothing.getSmoothedResult(resultOf(new float[] {10, 4, 0}));
+    }
+    // A classifier of other classes, in another order: "up" carries on, "t3" had 0 so far.
+    ClassNameTable classNames = ClassNameTable.empty().with("t3").with("up");
+    ClassificationResult result = new ClassificationResult(classNames);
+    result.putClassConfidence(0, 8f);
+    result.putClassConfidence(1, 8f);
+    nowMs += FRAME_MS;
+    ClassificationResult smoothed = smoothing.getSmoothedResult(result);
+
+    float weightSum = 1 + 0.5f + 0.25f + 0.125f;
+    assertEquals(classNames, smoothed.getClassNames());
+    assertEquals(8 / weightSum, smoothed.getClassConfidence("t3"), TOLERANCE);
+    assertEquals((8 + 4 * (0.5f + 0.25f + 0.125f)) / weightSum,
+        smoothed.getClassConfidence("up"), TOLERANCE);
+  }
+
+  /** Returns the smoothed confidences of a window, newest result first. */
+  private static float[] recompute(Deque<float[]> window, float alpha) {
+    double[] topSums = new double[CLASS_NAMES.size()];
+    double bottomSum = 0;
+    double factor = 1;
+    for (Iterator<float[]> iterator = window.iterator(); iterator.hasNext(); ) {
+      float[] confidences = iterator.next();
+      for (int c = 0; c < topSums.length; c++) {
+        topSums[c] += factor * confidences[c];
+      }
+      bottomSum += factor;
+      factor *= 1.0 - alpha;
+    }
+    float[] smoothed = new float[topSums.length];
+    for (int c = 0; c < topSums.length; c++) {
+      smoothed[c] = (float) (topSums[c] / bottomSum);
+    }
+    return smoothed;
+  }
+
+  private static float[] randomConfidences(Random random) {
+    float[] confidences = new float[CLASS_NAMES.size()];
+    for (int c = 0; c < confidences.length; c++) {
+      confidences[c] = random.nextInt(11);
+    }
+    return confidences;
+  }
+
+  private static ClassificationResult resultOf(float[] confidences) {
+    ClassificationResult result = new ClassificationResult(CLASS_NAMES);
+    for (int c = 0; c < confidences.length; c++) {
+      result.putClassConfidence(c, confidences[c]);
+    }
+    return result;
+  }
+
+  private static void assertSmoothed(
+      String message, float[] expected, ClassificationResult smoothed) {
+    for (int c = 0; c < expected.length; c++) {
+      assertEquals(message + " " + CLASS_NAMES.getName(c),
+          expected[c], smoothed.getClassConfidence(c), TOLERANCE * Math.max(1, expected[c]));
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Checks that {@link EnrolledSamples} snapshots don't change as samples are appended. */
+public class EnrolledSamplesTest {
+  private static final int SAMPLE_SIZE = PoseEmbedding.NUM_FEATURES * 3;
+  private static final int NUM_SAMPLES = 1000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void getSnapshot_keepsItsSamplesWhileArraysGrow() throws IOException {
+    List<float[]> landmarks = TestPoses.readLandmarks("t2.csv");
+    EnrolledSamples enrolledSamples = EnrolledSamples.inMemory();
+    List<EnrolledSamples.Snapshot> snapshots = new ArrayList<>();
+    List<float[]> snapshotFeatures = new ArrayList<>();
+    List<String[]> snapshotClassNames = new ArrayList<>();
+    for (int i = 0; i < NUM_SAMPLES; i++) {
+      EnrolledSamples.Snapshot snapshot = enrolledSamples.getSnapshot();
+      snapshots.add(snapshot);
+      snapshotFeatures.add(Arrays.copyOf(snapshot.features, snapshot.size * SAMPLE_SIZE));
+      snapshotClassNames.add(Arrays.copyOf(snapshot.classNames, snapshot.size));
+      enrolledSamples.add("sample" + i, className(i), poseLandmarks(landmarks, i));
+    }
+
+    assertEquals(NUM_SAMPLES, enrolledSamples.size());
+    for (int i = 0; i < snapshots.size(); i++) {
+      EnrolledSamples.Snapshot snapshot = snapshots.get(i);
+      assertEquals(i, snapshot.size);
+      assertArrayEquals(
+          snapshotFeatures.get(i),
+          Arrays.copyOf(snapshot.features, snapshot.size * SAMPLE_SIZE),
+          0f);
+      assertArrayEquals(
+          snapshotClassNames.get(i), Arrays.copyOf(snapshot.classNames, snapshot.size));
+    }
+    EnrolledSamples.Snapshot last = enrolledSamples.getSnapshot();
+    for (int i = 0; i < NUM_SAMPLES; i++) {
+      assertSample(last, i, landmarks);
+    }
+  }
+
+  @Test
+  public void getSnapshot_seesWholeSamplesWhileAnotherThreadAppends() throws Exception {
+    List<float[]> landmarks = TestPoses.readLandmarks("t2.csv");
+    EnrolledSamples enrolledSamples = EnrolledSamples.inMemory();
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<?> appending = executor.submit(() -> {
+      try {
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+          enrolledSamples.add("sample" + i, className(i), poseLandmarks(landmarks, i));
+        }
+      } finally {
+        done.set(true);
+      }
+      return null;
+    });
+
+    int numSnapshots = 0;
+    while (!done.get()) {
+      EnrolledSamples.Snapshot snapshot = enrolledSamples.getSnapshot();
+      if (snapshot.size > 0) {
+        // The sample just published, and the first one, whose array may have been replaced.
+        assertSample(snapshot, snapshot.size - 1, landmarks);
+        assertSample(snapshot, 0, landmarks);
+        numSnapshots++;
+      }
+    }
+    appending.get();
+    executor.shutdown();
+    assertTrue(numSnapshots > 0);
+    assertEquals(NUM_SAMPLES, enrolledSamples.size());
+  }
+
+  @Test
+  public void open_readsBackSamplesAfterLineCutShort() throws IOException {
+    List<float[]> landmarks = TestPoses.readLandmarks("t2.csv");
+    File file = new File(folder.getRoot(), "pose/enrolled.csv");
+    EnrolledSamples enrolledSamples = EnrolledSamples.open(file);
+    for (int i = 0; i < 3; i++) {
+      enrolledSamples.add("sample" + i, className(i), poseLandmarks(landmarks, i));
+    }
+    enrolledSamples.close();
+    // As if the app was killed while writing a sample.
+    try (Writer writer = new FileWriter(file, /* append= */ true)) {
+      writer.write("sample3,class3,1.0,2.0");
+    }
+
+    enrolledSamples = EnrolledSamples.open(file);
+    assertEquals(3, enrolledSamples.size());
+    enrolledSamples.add("sample3", className(3), poseLandmarks(landmarks, 3));
+    enrolledSamples.close();
+
+    EnrolledSamples reopened = EnrolledSamples.open(file);
+    assertEquals(4, reopened.size());
+    EnrolledSamples.Snapshot snapshot = reopened.getSnapshot();
+    for (int i = 0; i < 4; i++) {
+      // Features are recomputed from the landmarks as written in the file.
+      assertEquals(className(i), snapshot.classNames[i]);
+      assertArrayEquals(
+          expectedFeatures(landmarks, i),
+          Arrays.copyOfRange(snapshot.features, i * SAMPLE_SIZE, (i + 1) * SAMPLE_SIZE),
+          1e-4f);
+    }
+  }
+
+  private static void assertSample(
+      EnrolledSamples.Snapshot snapshot, int i, List<float[]> landmarks) {
+    assertEquals(className(i), snapshot.classNames[i]);
+    assertArrayEquals(
+        "sample " + i,
+        expectedFeatures(landmarks, i),
+        Arrays.copyOfRange(snapshot.features, i * SAMPLE_SIZE, (i + 1) * SAMPLE_SIZE),
+        0f);
+  }
+
+  private static String className(int i) {
+    return "class" + i % 4;
+  }
+
+  // Sample i enrolls the landmarks of sample i of t2.csv, cycling through them.
+  private static PoseLandmarks poseLandmarks(List<float[]> landmarks, int i) {
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, 1f);
+    return new PoseLandmarks(landmarks.get(i % landmarks.size()), inFrameLikelihoods, false);
+  }
+
+  private static float[] expectedFeatures(List<float[]> landmarks, int i) {
+    float[] features = new float[SAMPLE_SIZE];
+    Utils.flatten(
+        PoseEmbedding.getAllFeatures(
+            TestPoses.toPoints(landmarks.get(i % landmarks.size()))),
+        features,
+        0);
+    return features;
+  }
+}
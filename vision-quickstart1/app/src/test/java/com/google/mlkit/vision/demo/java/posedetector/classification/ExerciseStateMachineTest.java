@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+import org.junit.Test;
+
+public class ExerciseStateMachineTest {
+  private static final long FRAME_MS = 33;
+  // 30 fps.
+  private static final int FRAMES_PER_HOUR = 108000;
+  // Class of each frame of a rep. The t2 definition leaves a state on any other class, including
+  // the one that entered it, so each class lasts one frame.
+  private static final String[] REP_CLASSES = {"up", "t3", "t2", "down"};
+  // Tolerance for heap measurements, well below what keeping anything per rep would add over the
+  // 20 hours measured.
+  private static final long HEAP_SLACK_BYTES = 256 * 1024;
+
+  @Test
+  public void update_countsRepsAndTimesThem() throws Exception {
+    Session session = new Session(0);
+    for (int frame = 0; frame < 100 * REP_CLASSES.length; frame++) {
+      session.nextFrame();
+    }
+    // Each rep counts up->t3, t3->t2 and t2->down, and is timed from up to t2.
+    assertEquals(400, session.exercise.getRepCount());
+    WorkoutAnalytics.Snapshot analytics = session.exercise.getAnalytics().getSnapshot();
+    assertEquals(100, analytics.getNumTimedReps());
+    assertEquals(2 * FRAME_MS, analytics.getMedianDurationMs());
+  }
+
+  @Test
+  public void update_dropsFramesThatMissTheGatesOfTheirClass() {
+    ExerciseDefinition definition = ExerciseDefinition.parse(new StringReader(
+        "{\"exercises\": [{\"name\": \"squats\", \"states\": [\"UP\", \"DOWN\"],"
+            + " \"initialState\": \"UP\", \"transitions\": ["
+            + " {\"from\": \"UP\", \"to\": \"DOWN\", \"class\": \"squats_down\","
+            + " \"minConfidence\": 0.6, \"minDwellMs\": 200},"
+            + " {\"from\": \"DOWN\", \"to\": \"UP\", \"class\": \"squats_up\","
+            + " \"count\": 1},"
+            + " {\"from\": \"UP\", \"to\": \"DOWN\", \"count\": 10}"
+            + "]}]}")).get(0);
+    ClassNameTable classNames =
+        ClassNameTable.empty().with("squats_up").with("squats_down").with("pushups_down");
+    ExerciseStateMachine exercise = new ExerciseStateMachine(definition, classNames);
+    int up = classNames.getId("squats_up");
+    int down = classNames.getId("squats_down");
+
+    // Confident, but too soon after starting in UP at 0 ms.
+    assertFalse(exercise.update(down, 0.9f, 0));
+    assertFalse(exercise.update(down, 0.9f, 100));
+    // Long enough in UP, but not confident enough.
+    assertFalse(exercise.update(down, 0.5f, 300));
+    // Neither frame fell back to the transition without a class, which adds 10 reps.
+    assertEquals("UP", exercise.getStateName());
+    assertEquals(0, exercise.getRepCount());
+
+    assertTrue(exercise.update(down, 0.6f, 400));
+    assertEquals("DOWN", exercise.getStateName());
+    assertTrue(exercise.update(up, 0.1f, 433));
+    assertEquals(1, exercise.getRepCount());
+
+    // A class without a transition of its own takes the one without a class, ungated.
+    assertTrue(exercise.update(classNames.getId("pushups_down"), 0.1f, 466));
+    assertEquals("DOWN", exercise.getStateName());
+    assertEquals(11, exercise.getRepCount());
+  }
+
+  @Test
+  public void longSession_keepsHeapFlat() throws Exception {
+    // Some frames get another class, as misclassified frames do.
+    Session session = new Session(0.05f);
+    // The first 2 hours, after which nothing should grow anymore.
+    for (int frame = 0; frame < 2 * FRAMES_PER_HOUR; frame++) {
+      session.nextFrame();
+    }
+    long heapAfter2Hours = getUsedHeapAfterGc();
+    for (int frame = 0; frame < 20 * FRAMES_PER_HOUR; frame++) {
+      session.nextFrame();
+    }
+    long heapAfter22Hours = getUsedHeapAfterGc();
+
+    WorkoutAnalytics.Snapshot analytics = session.exercise.getAnalytics().getSnapshot();
+    assertTrue(analytics.getNumTimedReps() > 10000);
+    assertTrue(
+        "heap grew by " + (heapAfter22Hours - heapAfter2Hours) + " bytes",
+        heapAfter22Hours - heapAfter2Hours < HEAP_SLACK_BYTES);
+  }
+
+  /** A t2 exercise fed with the classes of repeated reps, on a fake clock. */
+  private static class Session {
+    private final ExerciseStateMachine exercise;
+    private final int[] repClassIds = new int[REP_CLASSES.length];
+    private final int numClasses;
+    private final float noise;
+    private final Random random = new Random(37);
+    private long frame;
+
+    Session(float noise) throws IOException {
+      ClassNameTable classNames = ClassNameTable.fromSamples(TestPoses.readSamples("t2.csv"));
+      ExerciseDefinition definition;
+      try (Reader reader = new FileReader(TestPoses.ASSETS_DIR + "exercises.json")) {
+        definition = ExerciseDefinition.parse(reader).get(0);
+      }
+      exercise = new ExerciseStateMachine(definition, classNames);
+      for (int i = 0; i < REP_CLASSES.length; i++) {
+        repClassIds[i] = classNames.getId(REP_CLASSES[i]);
+      }
+      numClasses = classNames.size();
+      this.noise = noise;
+    }
+
+    void nextFrame() {
+      int phase = (int) (frame % REP_CLASSES.length);
+      int classId = random.nextFloat() < noise ? random.nextInt(numClasses) : repClassIds[phase];
+      exercise.update(classId, 0.8f + 0.2f * random.nextFloat(), frame * FRAME_MS);
+      frame++;
+    }
+  }
+
+  private static long getUsedHeapAfterGc() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    // The lowest of a few collections, as one may leave garbage behind.
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(50);
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.common.PointF3D;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the features of {@link PoseEmbedding} that tell the classes of a sample set apart, so that
+ * its classifier compares fewer of them per sample.
+ *
+ * <p>Features are ranked by their Fisher ratio over the samples, the spread of the class means
+ * over the spread within classes, and the fewest top ranked ones whose cross-validated accuracy is
+ * within a tolerance of the default embedding are kept.
+ *
+ * <p>Runs offline on the JVM, with the test classes of the app and its dependencies on the class
+ * path, next to the samples:
+ *
+ * <pre>
+ *   java FeatureSelector pose/t2.csv [tolerance]
+ * </pre>
+ *
+ * which writes {@code pose/t2.features}, read by {@link PoseClassifierProcessor} along with the
+ * samples.
+ */
+public class FeatureSelector {
+  // Accuracy that may be given up for fewer features, by default.
+  private static final float DEFAULT_TOLERANCE = 0.01f;
+  private static final int NUM_FOLDS = 5;
+  private static final int NUM_TIMING_ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException {
+    Preconditions.checkArgument(
+        args.length == 1 || args.length == 2, "Usage: FeatureSelector <samples.csv> [tolerance]");
+    List<PoseSample> poseSamples;
+    try (Reader reader = new FileReader(args[0])) {
+      poseSamples = PoseClassifierRegistry.readSamples(reader);
+    }
+    float tolerance = args.length == 2 ? Float.parseFloat(args[1]) : DEFAULT_TOLERANCE;
+    PoseClassifierOptions options = PoseClassifierOptions.createDefault();
+
+    int[] defaultFeatures = PoseEmbedding.getDefaultFeatures();
+    float defaultAccuracy = crossValidate(poseSamples, defaultFeatures, options);
+    int[] features = selectFeatures(poseSamples, tolerance, defaultAccuracy, options);
+    float accuracy = crossValidate(poseSamples, features, options);
+
+    String file = args[0].replaceFirst("\\.csv$", "") + PoseEmbedding.FEATURES_EXTENSION;
+    try (Writer writer = new FileWriter(file)) {
+      writer.write(String.format(
+          Locale.US,
+          "# Features of PoseEmbedding for %s, picked by FeatureSelector.\n"
+              + "# Cross-validated accuracy %.4f with these %d, %.4f with the %d default ones.\n",
+          args[0].replaceFirst(".*/", ""),
+          accuracy,
+          features.length,
+          defaultAccuracy,
+          defaultFeatures.length));
+      writeFeatures(features, writer);
+    }
+    System.out.println(String.format(
+        Locale.US,
+        "%d samples: %d features, accuracy %.4f (%+.4f), %.1f us per classification against "
+            + "%.1f us with the %d default ones. Wrote %s.",
+        poseSamples.size(),
+        features.length,
+        accuracy,
+        accuracy - defaultAccuracy,
+        getClassificationMicros(poseSamples, features, options),
+        getClassificationMicros(poseSamples, defaultFeatures, options),
+        defaultFeatures.length,
+        file));
+  }
+
+  /**
+   * Returns the fewest top ranked features whose cross-validated accuracy is at most
+   * {@code tolerance} under {@code targetAccuracy}, or all of them if none are.
+   */
+  public static int[] selectFeatures(
+      List<PoseSample> poseSamples,
+      float tolerance,
+      float targetAccuracy,
+      PoseClassifierOptions options) {
+    int[] ranking = rankFeatures(poseSamples, options.getAxesWeights());
+    for (int count = 1; count < ranking.length; count++) {
+      int[] features = Arrays.copyOf(ranking, count);
+      if (crossValidate(poseSamples, features, options) >= targetAccuracy - tolerance) {
+        return features;
+      }
+    }
+    return ranking;
+  }
+
+  /** Returns all features of {@link PoseEmbedding}, by descending Fisher ratio over the samples. */
+  public static int[] rankFeatures(List<PoseSample> poseSamples, PointF3D axesWeights) {
+    Map<String, List<PoseSample>> classes = new HashMap<>();
+    for (PoseSample poseSample : poseSamples) {
+      List<PoseSample> classSamples = classes.get(poseSample.getClassName());
+      if (classSamples == null) {
+        classSamples = new ArrayList<>();
+        classes.put(poseSample.getClassName(), classSamples);
+      }
+      classSamples.add(poseSample);
+    }
+    float[] weights = {axesWeights.getX(), axesWeights.getY(), axesWeights.getZ()};
+
+    double[] ratios = new double[PoseEmbedding.NUM_FEATURES];
+    for (int feature = 0; feature < PoseEmbedding.NUM_FEATURES; feature++) {
+      double between = 0;
+      double within = 0;
+      for (int axis = 0; axis < weights.length; axis++) {
+        double mean = getMean(poseSamples, feature, axis);
+        for (List<PoseSample> classSamples : classes.values()) {
+          double classMean = getMean(classSamples, feature, axis);
+          between += weights[axis] * weights[axis]
+              * classSamples.size() * (classMean - mean) * (classMean - mean);
+          for (PoseSample poseSample : classSamples) {
+            double value = getValue(poseSample, feature, axis);
+            within += weights[axis] * weights[axis] * (value - classMean) * (value - classMean);
+          }
+        }
+      }
+      // Guard against features that don't vary within classes.
+      ratios[feature] = between / (within + 1e-6);
+    }
+
+    Integer[] order = new Integer[PoseEmbedding.NUM_FEATURES];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (f1, f2) -> Double.compare(ratios[f2], ratios[f1]));
+    int[] ranking = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      ranking[i] = order[i];
+    }
+    return ranking;
+  }
+
+  /**
+   * Returns the fraction of samples whose class is the most confident one when classified
+   * against the others, over {@code NUM_FOLDS} folds, with an embedding of {@code features}.
+   */
+  public static float crossValidate(
+      List<PoseSample> poseSamples, int[] features, PoseClassifierOptions options) {
+    PoseClassifierOptions foldOptions = withFeatures(options, features);
+    int numCorrect = 0;
+    for (int fold = 0; fold < NUM_FOLDS; fold++) {
+      // Samples are grouped by class, so taking every NUM_FOLDS-th one keeps folds balanced.
+      List<PoseSample> training = new ArrayList<>();
+      List<PoseSample> validation = new ArrayList<>();
+      for (int i = 0; i < poseSamples.size(); i++) {
+        (i % NUM_FOLDS == fold ? validation : training).add(poseSamples.get(i));
+      }
+      PoseClassifier classifier = new PoseClassifier(training, foldOptions);
+      for (PoseSample poseSample : validation) {
+        ClassificationResult result = classifier.classifyFeatures(poseSample.getAllFeatures());
+        if (poseSample.getClassName().equals(result.getMaxConfidenceClass())) {
+          numCorrect++;
+        }
+      }
+    }
+    return poseSamples.isEmpty() ? 0 : (float) numCorrect / poseSamples.size();
+  }
+
+  /** Writes features as read by {@link PoseEmbedding#readFeatures}, one name per line. */
+  public static void writeFeatures(int[] features, Writer writer) throws IOException {
+    for (int feature : features) {
+      writer.write(PoseEmbedding.getFeatureName(feature));
+      writer.write('\n');
+    }
+  }
+
+  // Returns the best mean time to classify every sample against all of them, in microseconds.
+  private static double getClassificationMicros(
+      List<PoseSample> poseSamples, int[] features, PoseClassifierOptions options) {
+    PoseClassifier classifier = new PoseClassifier(poseSamples, withFeatures(options, features));
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < NUM_TIMING_ROUNDS; round++) {
+      long startNanos = System.nanoTime();
+      for (PoseSample poseSample : poseSamples) {
+        classifier.classifyFeatures(poseSample.getAllFeatures());
+      }
+      bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+    }
+    return bestNanos / 1e3 / Math.max(1, poseSamples.size());
+  }
+
+  private static PoseClassifierOptions withFeatures(PoseClassifierOptions options, int[] features) {
+    return new PoseClassifierOptions.Builder()
+        .setMaxDistanceTopK(options.getMaxDistanceTopK())
+        .setMeanDistanceTopK(options.getMeanDistanceTopK())
+        .setAxesWeights(options.getAxesWeights())
+        .setQuantizeEmbeddings(options.shouldQuantizeEmbeddings())
+        .setCoarseClassCount(options.getCoarseClassCount())
+        .setCoarseFallbackMargin(options.getCoarseFallbackMargin())
+        .setFeatures(features)
+        .build();
+  }
+
+  private static double getMean(List<PoseSample> poseSamples, int feature, int axis) {
+    double sum = 0;
+    for (PoseSample poseSample : poseSamples) {
+      sum += getValue(poseSample, feature, axis);
+    }
+    return sum / poseSamples.size();
+  }
+
+  private static double getValue(PoseSample poseSample, int feature, int axis) {
+    PointF3D value = poseSample.getAllFeatures().get(feature);
+    return axis == 0 ? value.getX() : axis == 1 ? value.getY() : value.getZ();
+  }
+
+  private FeatureSelector() {}
+}
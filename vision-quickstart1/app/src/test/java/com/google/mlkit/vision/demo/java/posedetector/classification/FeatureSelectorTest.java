@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests of {@link FeatureSelector} and of reading the features it writes. */
+public class FeatureSelectorTest {
+  @Test
+  public void readFeatures_readsWhatWriteFeaturesWrote() throws IOException {
+    int[] features = new int[PoseEmbedding.NUM_FEATURES];
+    for (int i = 0; i < features.length; i++) {
+      features[i] = features.length - 1 - i;
+    }
+    StringWriter writer = new StringWriter();
+    writer.write("# Comment\n\n");
+    FeatureSelector.writeFeatures(features, writer);
+    writer.write("  \n");
+
+    assertArrayEquals(features, PoseEmbedding.readFeatures(new StringReader(writer.toString())));
+  }
+
+  @Test
+  public void readFeatures_rejectsUnknownOrNoFeatures() throws IOException {
+    String[] invalidFiles = {"left_hip-left_wrist\nleft_hip-nose\n", "# Comment\n\n"};
+    for (String invalidFile : invalidFiles) {
+      try {
+        PoseEmbedding.readFeatures(new StringReader(invalidFile));
+        fail("Read " + invalidFile);
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  @Test
+  public void rankFeatures_ranksEveryFeatureOnce() throws IOException {
+    int[] ranking = FeatureSelector.rankFeatures(
+        TestPoses.readSamples("t2.csv"), PoseClassifierOptions.createDefault().getAxesWeights());
+
+    int[] sorted = ranking.clone();
+    Arrays.sort(sorted);
+    for (int feature = 0; feature < PoseEmbedding.NUM_FEATURES; feature++) {
+      assertEquals(feature, sorted[feature]);
+    }
+  }
+
+  @Test
+  public void selectFeatures_keepsFewestTopRankedWithinTolerance() throws IOException {
+    List<PoseSample> poseSamples = TestPoses.readSamples("t2.csv");
+    PoseClassifierOptions options = PoseClassifierOptions.createDefault();
+    int[] ranking = FeatureSelector.rankFeatures(poseSamples, options.getAxesWeights());
+    float defaultAccuracy =
+        FeatureSelector.crossValidate(poseSamples, PoseEmbedding.getDefaultFeatures(), options);
+
+    int[] features = FeatureSelector.selectFeatures(poseSamples, 0.05f, defaultAccuracy, options);
+
+    assertArrayEquals(Arrays.copyOf(ranking, features.length), features);
+    assertTrue(
+        FeatureSelector.crossValidate(poseSamples, features, options) >= defaultAccuracy - 0.05f);
+    if (features.length > 1) {
+      int[] fewer = Arrays.copyOf(features, features.length - 1);
+      assertTrue(FeatureSelector.crossValidate(poseSamples, fewer, options)
+          < defaultAccuracy - 0.05f);
+    }
+  }
+
+  @Test
+  public void bundledFeatures_keepAccuracyOfDefaultEmbedding() throws IOException {
+    List<PoseSample> poseSamples = TestPoses.readSamples("fitness_pose_samples.csv");
+    PoseClassifierOptions options = PoseClassifierOptions.createDefault();
+    int[] features;
+    try (Reader reader =
+        new FileReader(TestPoses.ASSETS_DIR + "fitness_pose_samples.features")) {
+      features = PoseEmbedding.readFeatures(reader);
+    }
+
+    // As picked by FeatureSelector with its default tolerance.
+    assertTrue(FeatureSelector.crossValidate(poseSamples, features, options)
+        >= FeatureSelector.crossValidate(poseSamples, PoseEmbedding.getDefaultFeatures(), options)
+            - 0.01f);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+
+public class FeedbackEngineTest {
+
+  @Test
+  public void post_coalescesEventsUntilPlayed() {
+    FakePlayer player = new FakePlayer();
+    QueueExecutor executor = new QueueExecutor();
+    FeedbackEngine engine = new FeedbackEngine(player, executor);
+
+    engine.post(FeedbackEngine.EVENT_STATE_CHANGED);
+    engine.post(FeedbackEngine.EVENT_STATE_CHANGED);
+    assertEquals(1, executor.tasks.size());
+    executor.runAll();
+    assertEquals(1, player.played.size());
+
+    // A rep supersedes a state change posted with it.
+    engine.post(FeedbackEngine.EVENT_STATE_CHANGED);
+    engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+    engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+    assertEquals(1, executor.tasks.size());
+    executor.runAll();
+    assertEquals(2, player.played.size());
+    assertEquals(FeedbackEngine.EVENT_REP_COUNTED, (int) player.played.get(1));
+  }
+
+  @Test
+  public void release_freesPlayerAndIgnoresLaterEvents() {
+    FakePlayer player = new FakePlayer();
+    QueueExecutor executor = new QueueExecutor();
+    FeedbackEngine engine = new FeedbackEngine(player, executor);
+    engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+    executor.runAll();
+    assertEquals(1, player.liveResources);
+
+    // Queued events are dropped by the release.
+    engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+    engine.release();
+    engine.release();
+    engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+    executor.runAll();
+    assertEquals(1, player.played.size());
+    assertEquals(1, player.numReleases);
+    assertEquals(0, player.liveResources);
+  }
+
+  @Test
+  public void workout_keepsOnePlayerResource() throws Exception {
+    ClassNameTable classNames = ClassNameTable.fromSamples(TestPoses.readSamples("t2.csv"));
+    ExerciseStateMachine exercise;
+    try (Reader reader = new FileReader(TestPoses.ASSETS_DIR + "exercises.json")) {
+      exercise = new ExerciseStateMachine(ExerciseDefinition.parse(reader).get(0), classNames);
+    }
+    FakePlayer player = new FakePlayer();
+    QueueExecutor executor = new QueueExecutor();
+    FeedbackEngine engine = new FeedbackEngine(player, executor);
+    Random random = new Random(38);
+    int numPosts = 0;
+    for (int frame = 0; frame < 10000; frame++) {
+      // Posts as the processor does for an exercise.
+      int repsBefore = exercise.getRepCount();
+      String stateBefore = exercise.getStateName();
+      exercise.update(random.nextInt(classNames.size()), 1, frame * 33L);
+      if (exercise.getRepCount() > repsBefore) {
+        engine.post(FeedbackEngine.EVENT_REP_COUNTED);
+        numPosts++;
+      } else if (!exercise.getStateName().equals(stateBefore)) {
+        engine.post(FeedbackEngine.EVENT_STATE_CHANGED);
+        numPosts++;
+      }
+      // The player thread falls behind now and then.
+      if (random.nextInt(4) == 0) {
+        executor.runAll();
+      }
+      assertTrue(player.liveResources <= 1);
+    }
+    executor.runAll();
+    engine.release();
+    executor.runAll();
+
+    assertTrue(exercise.getRepCount() > 0);
+    assertTrue(player.played.size() > 0 && player.played.size() <= numPosts);
+    assertEquals(1, player.numAcquires);
+    assertEquals(0, player.liveResources);
+  }
+
+  /**
+   * Stands in for {@link TonePlayer}, acquiring a counted resource on first play as it does a
+   * tone generator.
+   */
+  private static class FakePlayer implements FeedbackPlayer {
+    private final List<Integer> played = new ArrayList<>();
+    private int liveResources;
+    private int numAcquires;
+    private int numReleases;
+
+    @Override
+    public void play(int event) {
+      if (liveResources == 0) {
+        liveResources++;
+        numAcquires++;
+      }
+      played.add(event);
+    }
+
+    @Override
+    public void release() {
+      numReleases++;
+      liveResources = 0;
+    }
+  }
+
+  /** Runs tasks when told to, in order, as the sequential player thread would. */
+  private static class QueueExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        tasks.poll().run();
+      }
+    }
+  }
+}
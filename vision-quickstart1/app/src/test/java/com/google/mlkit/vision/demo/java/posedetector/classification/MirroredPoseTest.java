@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.maxAbs;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.multiply;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.multiplyAll;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.subtract;
+import static com.google.mlkit.vision.demo.java.posedetector.classification.Utils.sumAbs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that handling the mirrored pose inside the distance kernels gives the results of
+ * embedding the mirrored landmarks separately, as the classifier used to, on all bundled samples.
+ */
+public class MirroredPoseTest {
+  private static final String[] SAMPLE_FILES = {"t2.csv", "fitness_pose_samples.csv"};
+  private static final PointF3D AXES_WEIGHTS =
+      PoseClassifierOptions.createDefault().getAxesWeights();
+  private static final int MAX_DISTANCE_TOP_K = 30;
+  private static final int MEAN_DISTANCE_TOP_K = 10;
+
+  @Test
+  public void mirroredEmbedding_isEmbeddingWithNegatedX() throws Exception {
+    for (String file : SAMPLE_FILES) {
+      for (float[] landmarks : TestPoses.readLandmarks(file)) {
+        List<PointF3D> points = TestPoses.toPoints(landmarks);
+        List<PointF3D> mirroredPoints = new ArrayList<>(points);
+        multiplyAll(mirroredPoints, PointF3D.from(-1, 1, 1));
+
+        float[] embedding = flatten(PoseEmbedding.getPoseEmbedding(points));
+        float[] mirroredEmbedding = flatten(PoseEmbedding.getPoseEmbedding(mirroredPoints));
+        Utils.negateX(embedding);
+        assertEquals(file, Arrays.toString(mirroredEmbedding), Arrays.toString(embedding));
+      }
+    }
+  }
+
+  @Test
+  public void classify_matchesTwoEmbeddingClassification() throws Exception {
+    Random random = new Random(31);
+    for (String file : SAMPLE_FILES) {
+      List<PoseSample> samples = TestPoses.readSamples(file);
+      PoseClassifier classifier = new PoseClassifier(samples);
+      ClassNameTable classNames = classifier.getClassNameTable();
+      List<float[]> landmarks = TestPoses.readLandmarks(file);
+      for (int q = 0; q < landmarks.size(); q++) {
+        // Each sample as is, which ties with itself, and with noise.
+        float[] query = q % 2 == 0
+            ? landmarks.get(q)
+            : TestPoses.addNoise(landmarks.get(q), 10f, random);
+        ClassificationResult result = classifier.classify(TestPoses.toPoints(query));
+        int[] expected = classifyWithMirroredEmbedding(samples, TestPoses.toPoints(query));
+        for (int c = 0; c < classNames.size(); c++) {
+          assertEquals(file + " query " + q + " " + classNames.getName(c),
+              expected[c], result.getClassConfidence(c), 0f);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the votes of each class as the classifier computed them before mirroring moved into
+   * the kernels: both orientations embedded separately, then two plain top-K passes.
+   */
+  private static int[] classifyWithMirroredEmbedding(
+      List<PoseSample> samples, List<PointF3D> landmarks) {
+    List<PointF3D> mirroredLandmarks = new ArrayList<>(landmarks);
+    multiplyAll(mirroredLandmarks, PointF3D.from(-1, 1, 1));
+    List<PointF3D> embedding = PoseEmbedding.getPoseEmbedding(landmarks);
+    List<PointF3D> mirroredEmbedding = PoseEmbedding.getPoseEmbedding(mirroredLandmarks);
+
+    // Highest distance on top, as [sample, distance] pairs.
+    PriorityQueue<float[]> maxDistances =
+        new PriorityQueue<>(MAX_DISTANCE_TOP_K, (o1, o2) -> -Float.compare(o1[1], o2[1]));
+    for (int j = 0; j < samples.size(); j++) {
+      List<PointF3D> sampleEmbedding = samples.get(j).getEmbedding();
+      float originalMax = 0;
+      float mirroredMax = 0;
+      for (int i = 0; i < embedding.size(); i++) {
+        originalMax = max(originalMax, maxAbs(
+            multiply(subtract(embedding.get(i), sampleEmbedding.get(i)), AXES_WEIGHTS)));
+        mirroredMax = max(mirroredMax, maxAbs(
+            multiply(subtract(mirroredEmbedding.get(i), sampleEmbedding.get(i)), AXES_WEIGHTS)));
+      }
+      maxDistances.add(new float[] {j, min(originalMax, mirroredMax)});
+      if (maxDistances.size() > MAX_DISTANCE_TOP_K) {
+        maxDistances.poll();
+      }
+    }
+
+    PriorityQueue<float[]> meanDistances =
+        new PriorityQueue<>(MEAN_DISTANCE_TOP_K, (o1, o2) -> -Float.compare(o1[1], o2[1]));
+    for (float[] maxDistance : maxDistances) {
+      List<PointF3D> sampleEmbedding = samples.get((int) maxDistance[0]).getEmbedding();
+      float originalSum = 0;
+      float mirroredSum = 0;
+      for (int i = 0; i < embedding.size(); i++) {
+        originalSum += sumAbs(
+            multiply(subtract(embedding.get(i), sampleEmbedding.get(i)), AXES_WEIGHTS));
+        mirroredSum += sumAbs(
+            multiply(subtract(mirroredEmbedding.get(i), sampleEmbedding.get(i)), AXES_WEIGHTS));
+      }
+      meanDistances.add(
+          new float[] {maxDistance[0], min(originalSum, mirroredSum) / (embedding.size() * 2)});
+      if (meanDistances.size() > MEAN_DISTANCE_TOP_K) {
+        meanDistances.poll();
+      }
+    }
+
+    List<String> classNames = new ArrayList<>();
+    for (PoseSample sample : samples) {
+      if (!classNames.contains(sample.getClassName())) {
+        classNames.add(sample.getClassName());
+      }
+    }
+    int[] votes = new int[classNames.size()];
+    for (float[] meanDistance : meanDistances) {
+      votes[classNames.indexOf(samples.get((int) meanDistance[0]).getClassName())]++;
+    }
+    return votes;
+  }
+
+  private static float[] flatten(List<PointF3D> points) {
+    float[] values = new float[points.size() * 3];
+    Utils.flatten(points, values, 0);
+    return values;
+  }
+}
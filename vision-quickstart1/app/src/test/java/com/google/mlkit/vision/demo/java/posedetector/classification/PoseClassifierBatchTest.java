@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+public class PoseClassifierBatchTest {
+
+  @Test
+  public void getAllFeatures_packedMatchesPoints() throws Exception {
+    float[] normalized = new float[TestPoses.NUM_VALUES];
+    float[] features = new float[PoseEmbedding.NUM_FEATURES * 3];
+    Random random = new Random(30);
+    for (float[] landmarks : TestPoses.readLandmarks("fitness_pose_samples.csv")) {
+      float[] noisy = TestPoses.addNoise(landmarks, 5f, random);
+      // Packed at an offset, as frames of a batch are.
+      float[] packed = new float[TestPoses.NUM_VALUES * 2];
+      System.arraycopy(noisy, 0, packed, TestPoses.NUM_VALUES, TestPoses.NUM_VALUES);
+      PoseEmbedding.getAllFeatures(packed, TestPoses.NUM_VALUES, normalized, features);
+
+      List<PointF3D> expected = PoseEmbedding.getAllFeatures(TestPoses.toPoints(noisy));
+      float[] expectedFeatures = new float[features.length];
+      Utils.flatten(expected, expectedFeatures, 0);
+      // Same operations in the same order, so the values are the same to the bit.
+      assertEquals(Arrays.toString(expectedFeatures), Arrays.toString(features));
+    }
+  }
+
+  @Test
+  public void classifyBatch_matchesClassify() throws Exception {
+    List<float[]> samples = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    PoseClassifier classifier =
+        new PoseClassifier(TestPoses.readSamples("fitness_pose_samples.csv"));
+    int numClasses = classifier.getClassNames().size();
+    Random random = new Random(31);
+    int numFrames = 500;
+    float[] landmarks = new float[numFrames * TestPoses.NUM_VALUES];
+    List<float[]> frames = new ArrayList<>();
+    for (int frame = 0; frame < numFrames; frame++) {
+      float[] pose = frame % 50 == 0
+          ? null
+          : TestPoses.addNoise(samples.get(random.nextInt(samples.size())), 10f, random);
+      frames.add(pose);
+      if (pose == null) {
+        Arrays.fill(landmarks, frame * TestPoses.NUM_VALUES, (frame + 1) * TestPoses.NUM_VALUES,
+            Float.NaN);
+      } else {
+        System.arraycopy(pose, 0, landmarks, frame * TestPoses.NUM_VALUES, TestPoses.NUM_VALUES);
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    float[] confidences;
+    try {
+      // Twice, so the second batch runs on threads whose buffers are already in use.
+      classifier.classifyBatch(landmarks, numFrames, executor);
+      confidences = classifier.classifyBatch(landmarks, numFrames, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    for (int frame = 0; frame < numFrames; frame++) {
+      ClassificationResult expected = frames.get(frame) == null
+          ? classifier.classify(new ArrayList<>())
+          : classifier.classify(TestPoses.toPoints(frames.get(frame)));
+      for (int c = 0; c < numClasses; c++) {
+        assertEquals("frame " + frame, expected.getClassConfidence(c),
+            confidences[frame * numClasses + c], 0f);
+      }
+    }
+  }
+
+  @Test
+  public void classifyBatch_bypassesResultCache() throws Exception {
+    List<float[]> samples = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    List<PoseSample> poseSamples = TestPoses.readSamples("fitness_pose_samples.csv");
+    PoseClassifier classifier = new PoseClassifier(poseSamples);
+    PoseClassifier cachedClassifier = new PoseClassifier(poseSamples,
+        new PoseClassifierOptions.Builder()
+            .setResultCacheSize(4)
+            .setResultCacheTolerance(1f)
+            .build());
+    // Poses held for a while with jitter, which the cache would reuse results for.
+    Random random = new Random(47);
+    int numFrames = 1000;
+    float[] landmarks = new float[numFrames * TestPoses.NUM_VALUES];
+    float[] pose = null;
+    for (int frame = 0; frame < numFrames; frame++) {
+      if (frame % 20 == 0) {
+        pose = samples.get(random.nextInt(samples.size()));
+      }
+      System.arraycopy(TestPoses.addNoise(pose, 0.5f, random), 0,
+          landmarks, frame * TestPoses.NUM_VALUES, TestPoses.NUM_VALUES);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    float[] expected;
+    float[] confidences;
+    try {
+      expected = classifier.classifyBatch(landmarks, numFrames, executor);
+      confidences = cachedClassifier.classifyBatch(landmarks, numFrames, executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertArrayEquals(expected, confidences, 0f);
+    assertTrue(cachedClassifier.getResultCacheSummary().startsWith("Result cache: 0 "));
+  }
+}
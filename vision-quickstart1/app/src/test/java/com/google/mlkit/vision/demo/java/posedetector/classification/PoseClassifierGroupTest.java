@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.mlkit.vision.common.PointF3D;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PoseClassifierGroupTest {
+  private static final String[] REP_CLASSES = {"up", "t3", "t2", "down"};
+  private static final int FRAMES_PER_PHASE = 8;
+  private static final long FRAME_MS = 33;
+
+  @Test
+  public void getMaxConfidenceClassId_onlyLooksAtClassesOfClassifier() throws Exception {
+    PoseClassifierGroup group = new PoseClassifierGroup(ImmutableList.of(
+        new PoseClassifier(TestPoses.readSamples("t2.csv")),
+        new PoseClassifier(TestPoses.readSamples("fitness_pose_samples.csv"))));
+    ClassNameTable classNames = group.getClassNameTable();
+    assertEquals(0, group.findClassifier("t3"));
+    assertEquals(1, group.findClassifier("squats_down"));
+    assertEquals(-1, group.findClassifier("lunges"));
+
+    ClassificationResult result = new ClassificationResult(classNames);
+    result.putClassConfidence(classNames.getId("t3"), 4);
+    result.putClassConfidence(classNames.getId("up"), 6);
+    result.putClassConfidence(classNames.getId("squats_down"), 10);
+    assertEquals(classNames.getId("up"), group.getMaxConfidenceClassId(result, 0));
+    assertEquals(classNames.getId("squats_down"), group.getMaxConfidenceClassId(result, 1));
+  }
+
+  @Test
+  public void t2Reps_areTheSameWithFitnessClassifierInGroup() throws Exception {
+    PoseClassifier t2Classifier = new PoseClassifier(TestPoses.readSamples("t2.csv"));
+    PoseClassifierGroup group = new PoseClassifierGroup(ImmutableList.of(
+        t2Classifier, new PoseClassifier(TestPoses.readSamples("fitness_pose_samples.csv"))));
+    ExerciseDefinition definition;
+    try (Reader reader = new FileReader(TestPoses.ASSETS_DIR + "exercises.json")) {
+      definition = ExerciseDefinition.parse(reader).get(0);
+    }
+    ClassNameTable t2Classes = t2Classifier.getClassNameTable();
+
+    Session alone = new Session(definition, t2Classes);
+    Session grouped = new Session(definition, group.getClassNameTable());
+    for (List<PointF3D> frame : getT2Stream()) {
+      ClassificationResult result = alone.smooth(t2Classifier.classify(frame));
+      alone.update(result, result.getMaxConfidenceClassId(), t2Classifier.confidenceRange());
+
+      ClassificationResult groupResult = grouped.smooth(group.classify(frame));
+      grouped.update(
+          groupResult,
+          group.getMaxConfidenceClassId(groupResult, group.findClassifier("up")),
+          group.confidenceRange());
+    }
+
+    assertTrue(alone.exercise.getRepCount() > 0);
+    assertEquals(alone.exercise.getRepCount(), grouped.exercise.getRepCount());
+    assertEquals(alone.exercise.getScore(), grouped.exercise.getScore(), 0f);
+    for (int i = 0; i < REP_CLASSES.length; i++) {
+      assertEquals(REP_CLASSES[i],
+          alone.repCounters.get(i).getNumRepeats(), grouped.repCounters.get(i).getNumRepeats());
+    }
+  }
+
+  @Test
+  public void classifyFeatures_scalesRuleConfidenceByMargin() throws Exception {
+    AngleRules rules = AngleRules.parse(new StringReader(
+        "{\"margin\": 10, \"rules\": [{\"class\": \"squats_down\", "
+            + "\"conditions\": [{\"angle\": \"knee\", \"max\": 100}]}]}"));
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    PoseClassifier classifier = new PoseClassifier(
+        samples, new PoseClassifierOptions.Builder().setAngleRules(rules).build());
+    PoseClassifierGroup group = new PoseClassifierGroup(ImmutableList.of(
+        new PoseClassifier(TestPoses.readSamples("t2.csv")), classifier));
+    ClassNameTable classNames = group.getClassNameTable();
+    int squatsDown = classNames.getId("squats_down");
+    List<PointF3D> features = null;
+    for (PoseSample poseSample : samples) {
+      if (poseSample.getClassName().equals("squats_down")
+          && classifier.classifyFeatures(poseSample.getAllFeatures()).getMaxConfidenceClass()
+              .equals("squats_down")) {
+        features = poseSample.getAllFeatures();
+        break;
+      }
+    }
+    float[] angles = new float[JointAngles.NUM_ANGLES];
+
+    // Searched while no rule fires, then decided by the rule of the class searched.
+    angles[JointAngles.KNEE] = 150;
+    ClassificationResult searched = group.classifyFeatures(features, angles);
+    assertEquals(squatsDown, group.getMaxConfidenceClassId(searched, 1));
+    float[] kneeAngles = {90, 85, 80, 60};
+    float[] fractions = {0.5f, 0.75f, 1f, 1f};
+    for (int i = 0; i < kneeAngles.length; i++) {
+      angles[JointAngles.KNEE] = kneeAngles[i];
+      ClassificationResult result = group.classifyFeatures(features, angles);
+      assertEquals(fractions[i] * group.confidenceRange(),
+          result.getClassConfidence(squatsDown), 1e-4f);
+      for (int classId = 0; classId < classNames.size(); classId++) {
+        if (group.findClassifier(classNames.getName(classId)) == 1 && classId != squatsDown) {
+          assertEquals(0f, result.getClassConfidence(classId), 0f);
+        }
+      }
+    }
+    assertEquals(
+        "Angle rules: 5 classifications, 80.0% decided without a search.",
+        group.getAngleRuleSummary());
+  }
+
+  /** Noisy t2 reps, made of frames moving from a sample of each class of a rep to the next. */
+  private static List<List<PointF3D>> getT2Stream() throws Exception {
+    List<float[]> samples = TestPoses.readLandmarks("t2.csv");
+    List<String> sampleClasses = TestPoses.readClassNames("t2.csv");
+    Random random = new Random(40);
+    List<List<PointF3D>> frames = new ArrayList<>();
+    float[] previous = samples.get(sampleClasses.indexOf("down"));
+    for (int rep = 0; rep < 40; rep++) {
+      for (String className : REP_CLASSES) {
+        float[] next;
+        do {
+          next = samples.get(random.nextInt(samples.size()));
+        } while (!sampleClasses.get(samples.indexOf(next)).equals(className));
+        for (int i = 1; i <= FRAMES_PER_PHASE; i++) {
+          float[] pose = TestPoses.interpolate(previous, next, (float) i / FRAMES_PER_PHASE);
+          frames.add(TestPoses.toPoints(TestPoses.addNoise(pose, 5f, random)));
+        }
+        previous = next;
+      }
+    }
+    return frames;
+  }
+
+  /** The stream mode state of the processor for the t2 classes, on a fake clock. */
+  private static class Session {
+    private final ExerciseStateMachine exercise;
+    private final EMASmoothing smoothing;
+    private final List<RepetitionCounter> repCounters = new ArrayList<>();
+    private long nowMs;
+
+    Session(ExerciseDefinition definition, ClassNameTable classNames) {
+      exercise = new ExerciseStateMachine(definition, classNames);
+      smoothing = new EMASmoothing(() -> nowMs);
+      for (String className : REP_CLASSES) {
+        repCounters.add(new RepetitionCounter(className));
+      }
+    }
+
+    ClassificationResult smooth(ClassificationResult result) {
+      nowMs += FRAME_MS;
+      return smoothing.getSmoothedResult(result);
+    }
+
+    void update(ClassificationResult result, int classId, int confidenceRange) {
+      for (RepetitionCounter repCounter : repCounters) {
+        repCounter.addClassificationResult(result);
+      }
+      exercise.update(classId, result.getClassConfidence(classId) / confidenceRange, nowMs);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.pose.PoseLandmark;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Checks on which frames {@link PoseClassifierProcessor} skips as out of frame. */
+public class PoseClassifierProcessorTest {
+  private static final int[] EMBEDDED_LANDMARKS = {
+    PoseLandmark.LEFT_SHOULDER, PoseLandmark.RIGHT_SHOULDER,
+    PoseLandmark.LEFT_ELBOW, PoseLandmark.RIGHT_ELBOW,
+    PoseLandmark.LEFT_WRIST, PoseLandmark.RIGHT_WRIST,
+    PoseLandmark.LEFT_HIP, PoseLandmark.RIGHT_HIP,
+    PoseLandmark.LEFT_KNEE, PoseLandmark.RIGHT_KNEE,
+    PoseLandmark.LEFT_ANKLE, PoseLandmark.RIGHT_ANKLE
+  };
+
+  @Test
+  public void getNumEmbeddedLandmarksOutOfFrame_countsOnlyEmbeddedLandmarks() {
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, 1f);
+    // The face and the hands aren't embedded.
+    inFrameLikelihoods[PoseLandmark.NOSE] = 0f;
+    inFrameLikelihoods[PoseLandmark.LEFT_INDEX] = 0f;
+    assertEquals(0, PoseEmbedding.getNumEmbeddedLandmarksOutOfFrame(
+        landmarks(inFrameLikelihoods), 0.5f));
+
+    inFrameLikelihoods[PoseLandmark.LEFT_ANKLE] = 0.4f;
+    inFrameLikelihoods[PoseLandmark.RIGHT_ANKLE] = 0.5f;
+    assertEquals(1, PoseEmbedding.getNumEmbeddedLandmarksOutOfFrame(
+        landmarks(inFrameLikelihoods), 0.5f));
+    assertEquals(2, PoseEmbedding.getNumEmbeddedLandmarksOutOfFrame(
+        landmarks(inFrameLikelihoods), 0.6f));
+    assertEquals(
+        (10 + 0.4f + 0.5f) / EMBEDDED_LANDMARKS.length,
+        PoseEmbedding.getEmbeddedLandmarkLikelihood(landmarks(inFrameLikelihoods)),
+        1e-6f);
+  }
+
+  @Test
+  public void getNumEmbeddedLandmarksOutOfFrame_isZeroWithoutPose() {
+    assertEquals(0, PoseEmbedding.getNumEmbeddedLandmarksOutOfFrame(PoseLandmarks.empty(), 1f));
+    assertEquals(0f, PoseEmbedding.getEmbeddedLandmarkLikelihood(PoseLandmarks.empty()), 0f);
+  }
+
+  @Test
+  public void isMostlyOutOfFrame_skipsFramesWithMoreThanThreeEmbeddedLandmarksOut() {
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, 1f);
+    for (int i = 0; i < EMBEDDED_LANDMARKS.length; i++) {
+      assertEquals(
+          "out of frame: " + i,
+          i > 3,
+          PoseClassifierProcessor.isMostlyOutOfFrame(landmarks(inFrameLikelihoods)));
+      inFrameLikelihoods[EMBEDDED_LANDMARKS[i]] = 0.49f;
+    }
+    assertTrue(PoseClassifierProcessor.isMostlyOutOfFrame(landmarks(inFrameLikelihoods)));
+    // Frames without a pose still reach the smoothing, as no-pose votes.
+    assertFalse(PoseClassifierProcessor.isMostlyOutOfFrame(PoseLandmarks.empty()));
+  }
+
+  private static PoseLandmarks landmarks(float[] inFrameLikelihoods) {
+    return new PoseLandmarks(
+        new float[PoseLandmarks.NUM_LANDMARKS * 3], inFrameLikelihoods.clone(), false);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Checks how {@link PoseClassifierRegistry} orders and swaps published models. */
+public class PoseClassifierRegistryTest {
+  private static final PoseClassifierOptions OPTIONS = PoseClassifierOptions.createDefault();
+  private static final int NUM_THREADS = 4;
+  private static final int PUBLISHES_PER_THREAD = 2000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private long nowMs;
+  private final Clock clock = () -> nowMs;
+
+  @Test
+  public void publish_rejectsFewerSamplesThanTheConfidenceRange() throws Exception {
+    List<PoseSample> samples = TestPoses.readSamples("t2.csv");
+    PoseClassifierRegistry registry = new PoseClassifierRegistry(OPTIONS, clock);
+    int confidenceRange = new PoseClassifier(samples, OPTIONS).confidenceRange();
+    try {
+      registry.publish("too few", samples.subList(0, confidenceRange - 1));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    assertNull(registry.getCurrent());
+
+    nowMs = 1000;
+    PoseClassifierRegistry.Model model =
+        registry.publish("enough", samples.subList(0, confidenceRange));
+    assertSame(model, registry.getCurrent());
+    assertEquals(confidenceRange, model.getNumSamples());
+    assertEquals(1000, model.getPublishedMs());
+    // The rejected set still took a version.
+    assertEquals(2, model.getVersion());
+  }
+
+  @Test
+  public void load_keepsCurrentModelOnInvalidFile() throws Exception {
+    PoseClassifierRegistry registry = new PoseClassifierRegistry(OPTIONS, clock);
+    PoseClassifierRegistry.Model model =
+        registry.publish("bundled", TestPoses.readSamples("t2.csv"));
+    File file = folder.newFile("bad.csv");
+    try (Writer writer = new FileWriter(file)) {
+      writer.write("sample,t2,1,2\n");
+    }
+    ListeningExecutorService executor = MoreExecutors.newDirectExecutorService();
+    try {
+      registry.load(file, executor).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    assertSame(model, registry.getCurrent());
+  }
+
+  @Test
+  public void load_discardsOlderLoadFinishingLast() throws Exception {
+    PoseClassifierRegistry registry = new PoseClassifierRegistry(OPTIONS, clock);
+    File older = writeSamples("older.csv", "t2.csv");
+    File newer = writeSamples("newer.csv", "fitness_pose_samples.csv");
+    CountDownLatch release = new CountDownLatch(1);
+    ListeningExecutorService slowExecutor =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    try {
+      // The older load is asked for first, but waits until the newer one is done.
+      slowExecutor.submit(() -> {
+        release.await();
+        return null;
+      });
+      ListenableFuture<PoseClassifierRegistry.Model> olderLoad =
+          registry.load(older, slowExecutor);
+      PoseClassifierRegistry.Model newerModel = registry.load(newer, executor).get();
+      assertEquals(2, newerModel.getVersion());
+      assertEquals(newer.getPath(), newerModel.getSource());
+      release.countDown();
+
+      assertSame(newerModel, olderLoad.get());
+      assertSame(newerModel, registry.getCurrent());
+    } finally {
+      slowExecutor.shutdown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void publish_concurrentlyEndsOnNewestVersion() throws Exception {
+    // Few samples, so that building classifiers doesn't keep the publishers from racing.
+    List<PoseSample> samples =
+        TestPoses.readSamples("t2.csv").subList(0, OPTIONS.getMaxDistanceTopK());
+    PoseClassifierRegistry registry = new PoseClassifierRegistry(OPTIONS, clock);
+    registry.publish("first", samples);
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS + 1);
+    AtomicBoolean publishing = new AtomicBoolean(true);
+    try {
+      // A reader, as a classifying thread reads the current model once per frame.
+      Future<Long> reader = executor.submit(() -> {
+        long lastVersion = 0;
+        while (publishing.get()) {
+          long version = registry.getCurrent().getVersion();
+          assertTrue(version + " after " + lastVersion, version >= lastVersion);
+          lastVersion = version;
+        }
+        return lastVersion;
+      });
+      List<Future<List<PoseClassifierRegistry.Model>>> publishers = new ArrayList<>();
+      for (int t = 0; t < NUM_THREADS; t++) {
+        String source = "thread" + t;
+        publishers.add(executor.submit(() -> {
+          List<PoseClassifierRegistry.Model> models = new ArrayList<>();
+          for (int i = 0; i < PUBLISHES_PER_THREAD; i++) {
+            models.add(registry.publish(source, samples));
+          }
+          return models;
+        }));
+      }
+
+      long lastVersion = 1;
+      for (Future<List<PoseClassifierRegistry.Model>> publisher : publishers) {
+        long threadVersion = 0;
+        for (PoseClassifierRegistry.Model model : publisher.get()) {
+          // Each publish returns its own model or a newer one, never an older one.
+          assertTrue(model.getVersion() > threadVersion);
+          threadVersion = model.getVersion();
+        }
+        lastVersion = Math.max(lastVersion, threadVersion);
+      }
+      publishing.set(false);
+      reader.get();
+      assertEquals(1 + NUM_THREADS * PUBLISHES_PER_THREAD, lastVersion);
+      assertEquals(lastVersion, registry.getCurrent().getVersion());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private File writeSamples(String name, String bundledFile) throws IOException {
+    File file = folder.newFile(name);
+    Files.copy(Paths.get(TestPoses.ASSETS_DIR + bundledFile), file.toPath(), REPLACE_EXISTING);
+    return file;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that the max distance stage, which stops accumulating a sample's distance once it can't
+ * make the top-K, selects what an exhaustive two-stage top-K selects, on all bundled samples.
+ */
+public class PoseClassifierTest {
+  private static final String[] SAMPLE_FILES = {"t2.csv", "fitness_pose_samples.csv"};
+  // The default K, and a small one under which most samples are abandoned early.
+  private static final int[][] TOP_KS = {{30, 10}, {5, 3}};
+  private static final int NUM_DIMS = 3;
+
+  @Test
+  public void classify_matchesExhaustiveTopK() throws Exception {
+    Random random = new Random(26);
+    for (String file : SAMPLE_FILES) {
+      List<PoseSample> samples = TestPoses.readSamples(file);
+      List<float[]> landmarks = TestPoses.readLandmarks(file);
+      for (int[] topK : TOP_KS) {
+        PoseClassifierOptions options = new PoseClassifierOptions.Builder()
+            .setMaxDistanceTopK(topK[0])
+            .setMeanDistanceTopK(topK[1])
+            .build();
+        PoseClassifier classifier = new PoseClassifier(samples, options);
+        for (int q = 0; q < landmarks.size(); q++) {
+          // Each sample as is, which ties with itself, and with noise.
+          float[] query = q % 2 == 0
+              ? landmarks.get(q)
+              : TestPoses.addNoise(landmarks.get(q), 10f, random);
+          String message = file + " top " + topK[0] + "/" + topK[1] + " query " + q;
+          assertVotes(message, samples, options, classifier, query);
+          assertVotes(message + " mirrored", samples, options, classifier, mirror(query));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void classify_mirroredPoseGetsSameVotes() throws Exception {
+    Random random = new Random(31);
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    PoseClassifier classifier = new PoseClassifier(samples);
+    ClassNameTable classNames = classifier.getClassNameTable();
+    for (float[] landmarks : TestPoses.readLandmarks("fitness_pose_samples.csv")) {
+      float[] query = TestPoses.addNoise(landmarks, 10f, random);
+      ClassificationResult result = classifier.classify(TestPoses.toPoints(query));
+      ClassificationResult mirrored = classifier.classify(TestPoses.toPoints(mirror(query)));
+      for (int c = 0; c < classNames.size(); c++) {
+        assertEquals(classNames.getName(c),
+            result.getClassConfidence(c), mirrored.getClassConfidence(c), 0f);
+      }
+    }
+  }
+
+  private static void assertVotes(String message, List<PoseSample> samples,
+      PoseClassifierOptions options, PoseClassifier classifier, float[] query) {
+    ClassificationResult result = classifier.classify(TestPoses.toPoints(query));
+    ClassNameTable classNames = classifier.getClassNameTable();
+    int[] expected = classifyExhaustively(samples, options, classNames, query);
+    for (int c = 0; c < classNames.size(); c++) {
+      assertEquals(message + " " + classNames.getName(c),
+          expected[c], result.getClassConfidence(c), 0f);
+    }
+  }
+
+  /**
+   * Returns the votes of each class from the full max and mean distances of every sample, each
+   * stage keeping the K smallest after a stable sort.
+   */
+  private static int[] classifyExhaustively(List<PoseSample> samples,
+      PoseClassifierOptions options, ClassNameTable classNames, float[] landmarks) {
+    PointF3D weights = options.getAxesWeights();
+    List<PointF3D> embedding = PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(landmarks));
+    float[] query = new float[embedding.size() * NUM_DIMS];
+    Utils.flatten(embedding, query, 0);
+
+    List<float[]> maxDistances = new ArrayList<>();
+    for (int j = 0; j < samples.size(); j++) {
+      List<PointF3D> sample = samples.get(j).getEmbedding();
+      float originalMax = 0;
+      float flippedMax = 0;
+      for (int i = 0; i < sample.size(); i++) {
+        PointF3D point = sample.get(i);
+        float x = query[i * NUM_DIMS];
+        float yz = max(
+            abs((point.getY() - query[i * NUM_DIMS + 1]) * weights.getY()),
+            abs((point.getZ() - query[i * NUM_DIMS + 2]) * weights.getZ()));
+        originalMax = max(originalMax, max(abs((point.getX() - x) * weights.getX()), yz));
+        flippedMax = max(flippedMax, max(abs((point.getX() + x) * weights.getX()), yz));
+      }
+      maxDistances.add(new float[] {j, min(originalMax, flippedMax)});
+    }
+    Collections.sort(maxDistances, (o1, o2) -> Float.compare(o1[1], o2[1]));
+
+    List<float[]> meanDistances = new ArrayList<>();
+    for (float[] maxDistance : maxDistances.subList(0, options.getMaxDistanceTopK())) {
+      List<PointF3D> sample = samples.get((int) maxDistance[0]).getEmbedding();
+      float originalSum = 0;
+      float flippedSum = 0;
+      for (int i = 0; i < sample.size(); i++) {
+        PointF3D point = sample.get(i);
+        float x = query[i * NUM_DIMS];
+        float y = abs((point.getY() - query[i * NUM_DIMS + 1]) * weights.getY());
+        float z = abs((point.getZ() - query[i * NUM_DIMS + 2]) * weights.getZ());
+        originalSum += abs((point.getX() - x) * weights.getX()) + y + z;
+        flippedSum += abs((point.getX() + x) * weights.getX()) + y + z;
+      }
+      meanDistances.add(
+          new float[] {maxDistance[0], min(originalSum, flippedSum) / (sample.size() * 2)});
+    }
+    Collections.sort(meanDistances, (o1, o2) -> Float.compare(o1[1], o2[1]));
+
+    int[] votes = new int[classNames.size()];
+    for (float[] meanDistance : meanDistances.subList(0, options.getMeanDistanceTopK())) {
+      votes[classNames.getId(samples.get((int) meanDistance[0]).getClassName())]++;
+    }
+    return votes;
+  }
+
+  /** Returns the landmarks flipped on the X axis. */
+  private static float[] mirror(float[] landmarks) {
+    float[] mirrored = landmarks.clone();
+    for (int i = 0; i < mirrored.length; i += NUM_DIMS) {
+      mirrored[i] = -mirrored[i];
+    }
+    return mirrored;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/** Checks that {@link QuantizedEmbeddings} keeps the exact top-K among its candidates. */
+public class QuantizedEmbeddingsTest {
+  private static final PointF3D AXES_WEIGHTS =
+      PoseClassifierOptions.createDefault().getAxesWeights();
+  private static final int K = 30;
+
+  @Test
+  public void getCandidates_includesExactTopK() throws Exception {
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    List<float[]> landmarks = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    QuantizedEmbeddings quantized = new QuantizedEmbeddings(samples, AXES_WEIGHTS);
+    VpTree exact = new VpTree(samples, AXES_WEIGHTS);
+    // One scratch for every query, as a classifying thread uses it.
+    QuantizedEmbeddings.Scratch scratch = new QuantizedEmbeddings.Scratch();
+    Random random = new Random(28);
+    for (int q = 0; q < 300; q++) {
+      List<PointF3D> query = PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(
+          TestPoses.addNoise(landmarks.get(random.nextInt(landmarks.size())), 10f, random)));
+      float[] flattened = new float[query.size() * 3];
+      Utils.flatten(query, flattened, 0);
+      int numCandidates = quantized.getCandidates(flattened, K, scratch);
+      assertTrue(numCandidates >= K);
+      Set<Integer> candidates = new HashSet<>();
+      for (int i = 0; i < numCandidates; i++) {
+        candidates.add(scratch.getCandidates()[i]);
+      }
+      TopKSelector topK = new TopKSelector(K);
+      exact.search(query, topK);
+      for (int i = 0; i < topK.size(); i++) {
+        // Ties at the K-th distance may be broken either way.
+        if (topK.getDistance(i) < topK.getBound()) {
+          assertTrue("query " + q, candidates.contains(topK.getIndex(i)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void classify_matchesFloatEmbeddings() throws Exception {
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    List<float[]> landmarks = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    PoseClassifier classifier = new PoseClassifier(samples);
+    PoseClassifier quantizedClassifier = new PoseClassifier(
+        samples, new PoseClassifierOptions.Builder().setQuantizeEmbeddings(true).build());
+    Random random = new Random(29);
+    for (int q = 0; q < 300; q++) {
+      List<PointF3D> pose = TestPoses.toPoints(
+          TestPoses.addNoise(landmarks.get(random.nextInt(landmarks.size())), 10f, random));
+      ClassificationResult expected = classifier.classify(pose);
+      ClassificationResult actual = quantizedClassifier.classify(pose);
+      for (int c = 0; c < classifier.getClassNameTable().size(); c++) {
+        assertEquals(expected.getClassConfidence(c), actual.getClassConfidence(c), 0f);
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.mlkit.vision.common.PointF3D;
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link RepMatcher} with the classification, smoothing and {@link RepetitionCounter}
+ * pipeline on simulated sessions, one per person: they enroll three up and three down poses of an
+ * exercise, a bundled up sample and the closest down one with landmark noise, then do reps of
+ * random pace with rests in between, one in four only half way down. Reports the full and half
+ * reps each counted, how far each session's count is from its full reps, summed, and the time
+ * and allocations per frame of the last of several rounds.
+ *
+ * <pre>
+ *   java RepMatcherBenchmark [noise]
+ * </pre>
+ *
+ * where noise is the deviation of the landmarks in each frame, in pixels, 2 by default.
+ */
+public final class RepMatcherBenchmark {
+  private static final String SAMPLES_FILE = "fitness_pose_samples.csv";
+  private static final String[] EXERCISES = {"pushups", "squats"};
+  private static final int NUM_SESSIONS = 12;
+  private static final int REPS_PER_SESSION = 15;
+  private static final int NUM_ENROLLED = 3;
+  private static final long FRAME_MS = 33;
+  private static final int WARM_UP_ROUNDS = 3;
+  private static final int ROUNDS = 3;
+
+  // Keeps results alive so that the JIT can't drop the work.
+  private static float sink;
+
+  /** The frames of a session and the reps done in them. */
+  private static class Session {
+    final String exercise;
+    final RepMatcher matcher;
+    final List<List<PointF3D>> allFeatures = new ArrayList<>();
+    final List<float[]> matcherFeatures = new ArrayList<>();
+    int numFullReps;
+    int numHalfReps;
+
+    Session(String exercise, RepMatcher matcher) {
+      this.exercise = exercise;
+      this.matcher = matcher;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    float noise = args.length > 0 ? Float.parseFloat(args[0]) : 2f;
+    List<PoseSample> samples = TestPoses.readSamples(SAMPLES_FILE);
+    List<float[]> landmarks = TestPoses.readLandmarks(SAMPLES_FILE);
+    PoseClassifier classifier = new PoseClassifier(samples);
+    Random random = new Random(48);
+
+    List<Session> sessions = new ArrayList<>();
+    int numFrames = 0;
+    for (int i = 0; i < NUM_SESSIONS; i++) {
+      Session session = makeSession(EXERCISES[i % EXERCISES.length], samples, landmarks, noise,
+          random);
+      sessions.add(session);
+      numFrames += session.allFeatures.size();
+    }
+
+    ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+      int fullReps = 0;
+      int halfReps = 0;
+      int matcherReps = 0;
+      int matcherErrors = 0;
+      int counterReps = 0;
+      int counterErrors = 0;
+      long matcherNanos = 0;
+      long matcherBytes = 0;
+      long counterNanos = 0;
+      for (Session session : sessions) {
+        fullReps += session.numFullReps;
+        halfReps += session.numHalfReps;
+
+        RepMatcher matcher = session.matcher;
+        matcher.reset();
+        long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int f = 0; f < session.matcherFeatures.size(); f++) {
+          matcher.addFrame(session.matcherFeatures.get(f), f * FRAME_MS);
+        }
+        matcherNanos += System.nanoTime() - start;
+        matcherBytes += threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+        matcherReps += matcher.getRepCount(0);
+        matcherErrors += Math.abs(matcher.getRepCount(0) - session.numFullReps);
+
+        long[] nowMs = {0};
+        EMASmoothing smoothing = new EMASmoothing(() -> nowMs[0]);
+        RepetitionCounter counter = new RepetitionCounter(session.exercise + "_down");
+        start = System.nanoTime();
+        for (int f = 0; f < session.allFeatures.size(); f++) {
+          nowMs[0] = f * FRAME_MS;
+          counter.addClassificationResult(smoothing.getSmoothedResult(
+              classifier.classifyFeatures(session.allFeatures.get(f))));
+        }
+        counterNanos += System.nanoTime() - start;
+        counterReps += counter.getNumRepeats();
+        counterErrors += Math.abs(counter.getNumRepeats() - session.numFullReps);
+      }
+      sink += matcherReps + counterReps;
+      if (round >= WARM_UP_ROUNDS) {
+        System.out.println(String.format(Locale.US,
+            "%d frames, %d full and %d half reps: RepMatcher counted %d (%d off), %.2f us/frame, "
+                + "%.1f bytes/frame; classification and RepetitionCounter counted %d (%d off), "
+                + "%.1f us/frame",
+            numFrames, fullReps, halfReps,
+            matcherReps, matcherErrors, matcherNanos / 1e3 / numFrames,
+            (double) matcherBytes / numFrames,
+            counterReps, counterErrors, counterNanos / 1e3 / numFrames));
+      }
+    }
+    System.out.println(sink);
+  }
+
+  private static Session makeSession(
+      String exercise,
+      List<PoseSample> samples,
+      List<float[]> landmarks,
+      float noise,
+      Random random) {
+    List<Integer> ups = new ArrayList<>();
+    for (int i = 0; i < samples.size(); i++) {
+      if (samples.get(i).getClassName().equals(exercise + "_up")) {
+        ups.add(i);
+      }
+    }
+    int up = ups.get(random.nextInt(ups.size()));
+    int down = getClosest(samples, up, exercise + "_down");
+    List<PoseSample> enrolled = new ArrayList<>();
+    for (int i = 0; i < NUM_ENROLLED; i++) {
+      enrolled.add(new PoseSample("enrolled", exercise + "_up",
+          TestPoses.toPoints(TestPoses.addNoise(landmarks.get(up), noise, random))));
+      enrolled.add(new PoseSample("enrolled", exercise + "_down",
+          TestPoses.toPoints(TestPoses.addNoise(landmarks.get(down), noise, random))));
+    }
+    int[] features = PoseEmbedding.getDefaultFeatures();
+    PointF3D axesWeights = PoseClassifierOptions.createDefault().getAxesWeights();
+    Session session = new Session(
+        exercise, new RepMatcher(RepMatcher.fromSamples(enrolled, features, axesWeights)));
+
+    for (int rep = 0; rep < REPS_PER_SESSION; rep++) {
+      boolean full = random.nextInt(4) != 0;
+      if (full) {
+        session.numFullReps++;
+      } else {
+        session.numHalfReps++;
+      }
+      int restFrames = 5 + random.nextInt(40);
+      int repFrames = 30 + random.nextInt(60);
+      for (int f = -restFrames; f <= repFrames; f++) {
+        float depth = f < 0 ? 0 : (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * f / repFrames));
+        float[] pose = TestPoses.interpolate(
+            landmarks.get(up), landmarks.get(down), full ? depth : depth / 2);
+        List<PointF3D> allFeatures = PoseEmbedding.getAllFeatures(
+            TestPoses.toPoints(TestPoses.addNoise(pose, noise, random)));
+        float[] matcherFeatures = new float[features.length * 3];
+        RepMatcher.getFeatures(allFeatures, features, axesWeights, matcherFeatures);
+        session.allFeatures.add(allFeatures);
+        session.matcherFeatures.add(matcherFeatures);
+      }
+    }
+    // Rests long enough for the last rep to be reported.
+    for (int f = 0; f < 60; f++) {
+      session.allFeatures.add(session.allFeatures.get(session.allFeatures.size() - 1));
+      session.matcherFeatures.add(session.matcherFeatures.get(session.matcherFeatures.size() - 1));
+    }
+    return session;
+  }
+
+  // Returns the sample of the class whose default features are the closest to those of sample.
+  private static int getClosest(List<PoseSample> samples, int sample, String className) {
+    List<PointF3D> features = samples.get(sample).getAllFeatures();
+    int closest = -1;
+    float closestCost = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < samples.size(); i++) {
+      if (!samples.get(i).getClassName().equals(className)) {
+        continue;
+      }
+      List<PointF3D> otherFeatures = samples.get(i).getAllFeatures();
+      float cost = 0;
+      for (int feature : PoseEmbedding.getDefaultFeatures()) {
+        cost += Math.abs(features.get(feature).getX() - otherFeatures.get(feature).getX())
+            + Math.abs(features.get(feature).getY() - otherFeatures.get(feature).getY());
+      }
+      if (cost < closestCost) {
+        closest = i;
+        closestCost = cost;
+      }
+    }
+    return closest;
+  }
+
+  private RepMatcherBenchmark() {}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class RepMatcherTest {
+  private static final long FRAME_MS = 33;
+  // Frames at rest after a rep, long enough for it to be reported.
+  private static final int REST_FRAMES = 40;
+  // Templates of a single feature moving 30 away on one axis and back, in 17 frames.
+  private static final float PEAK = 30;
+  private static final RepMatcher.Template X_TEMPLATE =
+      RepMatcher.Template.fromKeyPoses(
+          "x", ImmutableList.of(point(0, 0), point(PEAK, 0), point(0, 0)), 8);
+  private static final RepMatcher.Template Y_TEMPLATE =
+      RepMatcher.Template.fromKeyPoses(
+          "y", ImmutableList.of(point(0, 0), point(0, PEAK), point(0, 0)), 8);
+
+  @Test
+  public void addFrame_findsFullRepsOfAnyPace() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    // From half the template frames to 6 times them, maxStretch being 8.
+    int[] repFrames = {9, 17, 30, 60, 100};
+    for (int frames : repFrames) {
+      int start = feed.frame;
+      feed.rep(PEAK, 0, frames);
+      int end = feed.frame - 1;
+      feed.rest(REST_FRAMES);
+
+      assertEquals(1, feed.reps.size());
+      Rep rep = feed.reps.remove(0);
+      assertEquals(0, rep.template);
+      // The slower the rep, the longer it barely moves at either end, like the rest frames.
+      int tolerance = 2 + frames / 10;
+      assertTrue("start " + rep.startFrame + " of " + start,
+          Math.abs(rep.startFrame - start) <= tolerance);
+      assertTrue("end " + rep.endFrame + " of " + end, Math.abs(rep.endFrame - end) <= tolerance);
+      assertTrue("found " + rep.foundFrame, rep.foundFrame > rep.endFrame);
+      assertTrue(rep.score > 0.5f && rep.score <= 1);
+    }
+    assertEquals(repFrames.length, matcher.getRepCount(0));
+  }
+
+  @Test
+  public void addFrame_skipsPartialReps() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    // Half way, then two thirds of the way.
+    feed.rep(PEAK / 2, 0, 30);
+    feed.rest(REST_FRAMES);
+    feed.rep(PEAK * 2 / 3, 0, 30);
+    feed.rest(REST_FRAMES);
+
+    assertEquals(0, matcher.getRepCount(0));
+    assertEquals(-1, matcher.getLastRepTemplate());
+  }
+
+  @Test
+  public void addFrame_skipsRepsSlowerThanMaxStretch() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    // 17 template frames for at most 8 frames each.
+    feed.rep(PEAK, 0, 200);
+    feed.rest(REST_FRAMES);
+
+    assertEquals(0, matcher.getRepCount(0));
+  }
+
+  @Test
+  public void addFrame_matchesMirroredPoses() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    feed.rep(-PEAK, 0, 30);
+    feed.rest(REST_FRAMES);
+
+    assertEquals(1, matcher.getRepCount(0));
+    assertEquals(1f, matcher.getLastRepScore(), 0.5f);
+  }
+
+  @Test
+  public void addFrame_findsRepsOfTheirTemplateOnly() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE, Y_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    for (int i = 0; i < 3; i++) {
+      feed.rep(0, PEAK, 25);
+      feed.rest(REST_FRAMES);
+    }
+    feed.rep(PEAK, 0, 25);
+    feed.rest(REST_FRAMES);
+
+    assertEquals(1, matcher.getRepCount(0));
+    assertEquals(3, matcher.getRepCount(1));
+    assertEquals(4, feed.reps.size());
+    assertEquals(0, matcher.getLastRepTemplate());
+    assertEquals(feed.reps.get(3).startFrame * FRAME_MS, matcher.getLastRepStartMs());
+    assertEquals(feed.reps.get(3).endFrame * FRAME_MS, matcher.getLastRepEndMs());
+  }
+
+  @Test
+  public void reset_forgetsFramesAndReps() {
+    RepMatcher matcher = new RepMatcher(ImmutableList.of(X_TEMPLATE));
+    Feed feed = new Feed(matcher);
+    feed.rest(REST_FRAMES);
+    feed.rep(PEAK, 0, 30);
+    feed.rest(REST_FRAMES);
+    assertEquals(1, matcher.getRepCount(0));
+    // Half a rep, whose other half comes after the reset.
+    feed.rep(PEAK, 0, 30, 0, 15);
+
+    matcher.reset();
+    assertEquals(0, matcher.getRepCount(0));
+    assertEquals(-1, matcher.getLastRepTemplate());
+    feed.rep(PEAK, 0, 30, 15, 31);
+    feed.rest(REST_FRAMES);
+    assertEquals(0, matcher.getRepCount(0));
+  }
+
+  @Test
+  public void fromSamples_findsRepsOfEnrolledPerson() throws Exception {
+    List<PoseSample> samples = TestPoses.readSamples("fitness_pose_samples.csv");
+    List<float[]> landmarks = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    List<String> classNames = TestPoses.readClassNames("fitness_pose_samples.csv");
+    int[] features = PoseEmbedding.getDefaultFeatures();
+    PointF3D axesWeights = PoseClassifierOptions.createDefault().getAxesWeights();
+    Random random = new Random(1);
+
+    // The person enrolls an up pose and the closest down one, as the same person would have.
+    int up = classNames.indexOf("squats_up");
+    int down = -1;
+    float downCost = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < samples.size(); i++) {
+      float cost = getCost(samples.get(up), samples.get(i));
+      if (classNames.get(i).equals("squats_down") && cost < downCost) {
+        down = i;
+        downCost = cost;
+      }
+    }
+    List<PoseSample> enrolled = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      enrolled.add(new PoseSample("enrolled", "squats_up", noisyPoints(landmarks.get(up), random)));
+      enrolled.add(
+          new PoseSample("enrolled", "squats_down", noisyPoints(landmarks.get(down), random)));
+    }
+    List<RepMatcher.Template> templates =
+        RepMatcher.fromSamples(enrolled, features, axesWeights);
+    assertEquals(1, templates.size());
+    assertEquals("squats", templates.get(0).getName());
+
+    RepMatcher matcher = new RepMatcher(templates);
+    float[] frameFeatures = new float[features.length * 3];
+    int frame = 0;
+    int numFullReps = 0;
+    for (int rep = 0; rep < 12; rep++) {
+      // One rep in three only goes half way down.
+      boolean full = rep % 3 != 0;
+      numFullReps += full ? 1 : 0;
+      int repFrames = 30 + random.nextInt(60);
+      for (int f = -REST_FRAMES; f <= repFrames; f++) {
+        float depth = f < 0 ? 0 : (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * f / repFrames));
+        float[] pose = TestPoses.interpolate(
+            landmarks.get(up), landmarks.get(down), full ? depth : depth / 2);
+        RepMatcher.getFeatures(
+            PoseEmbedding.getAllFeatures(noisyPoints(pose, random)),
+            features,
+            axesWeights,
+            frameFeatures);
+        matcher.addFrame(frameFeatures, frame++ * FRAME_MS);
+      }
+    }
+    for (int f = 0; f < REST_FRAMES; f++) {
+      matcher.addFrame(frameFeatures, frame++ * FRAME_MS);
+    }
+
+    assertEquals(numFullReps, matcher.getRepCount(0));
+  }
+
+  /** Feeds frames of a single feature to a matcher, recording the reps it finds. */
+  private static class Feed {
+    final RepMatcher matcher;
+    final List<Rep> reps = new ArrayList<>();
+    int frame;
+
+    Feed(RepMatcher matcher) {
+      this.matcher = matcher;
+    }
+
+    void rest(int frames) {
+      for (int f = 0; f < frames; f++) {
+        add(0, 0);
+      }
+    }
+
+    /** Feeds a rep going to ({@code x}, {@code y}) and back in {@code frames} frames. */
+    void rep(float x, float y, int frames) {
+      rep(x, y, frames, 0, frames + 1);
+    }
+
+    /** Feeds frames {@code from} to {@code to} (exclusive) of a rep. */
+    void rep(float x, float y, int frames, int from, int to) {
+      for (int f = from; f < to; f++) {
+        float u = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * f / frames));
+        add(x * u, y * u);
+      }
+    }
+
+    private void add(float x, float y) {
+      int template = matcher.addFrame(point(x, y), frame * FRAME_MS);
+      if (template >= 0) {
+        reps.add(new Rep(
+            template,
+            matcher.getLastRepStartMs() / FRAME_MS,
+            matcher.getLastRepEndMs() / FRAME_MS,
+            frame,
+            matcher.getLastRepScore()));
+      }
+      frame++;
+    }
+  }
+
+  private static class Rep {
+    final int template;
+    final long startFrame;
+    final long endFrame;
+    final long foundFrame;
+    final float score;
+
+    Rep(int template, long startFrame, long endFrame, long foundFrame, float score) {
+      this.template = template;
+      this.startFrame = startFrame;
+      this.endFrame = endFrame;
+      this.foundFrame = foundFrame;
+      this.score = score;
+    }
+  }
+
+  private static float[] point(float x, float y) {
+    return new float[] {x, y, 0};
+  }
+
+  private static List<PointF3D> noisyPoints(float[] landmarks, Random random) {
+    return TestPoses.toPoints(TestPoses.addNoise(landmarks, 2, random));
+  }
+
+  // Returns the summed absolute difference of the X and Y of the default features of two samples.
+  private static float getCost(PoseSample sample, PoseSample other) {
+    List<PointF3D> features = sample.getAllFeatures();
+    List<PointF3D> otherFeatures = other.getAllFeatures();
+    float sum = 0;
+    for (int feature : PoseEmbedding.getDefaultFeatures()) {
+      sum += Math.abs(features.get(feature).getX() - otherFeatures.get(feature).getX())
+          + Math.abs(features.get(feature).getY() - otherFeatures.get(feature).getY());
+    }
+    return sum;
+  }
+}
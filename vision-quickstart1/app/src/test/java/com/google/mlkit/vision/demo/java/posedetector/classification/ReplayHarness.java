@@ -0,0 +1,408 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import androidx.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import com.google.mlkit.vision.common.PointF3D;
+import com.sun.management.ThreadMXBean;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Replays recorded pose landmarks through the stream mode pipeline of
+ * {@link PoseClassifierProcessor}: embedding, classification, smoothing, rep counting and the
+ * exercise state machines, on the clock of the recording rather than the system one, so that a
+ * recording always gives the same results. Reports the frame rate, the latency percentiles of
+ * each stage, the allocations and the final rep counts, and checks them against expected ones.
+ *
+ * <p>Runs offline on the JVM, with the test classes of the app and its dependencies on the class
+ * path:
+ *
+ * <pre>
+ *   java ReplayHarness recording.csv pose/exercises.json pose/t2.csv [pose/samples.csv...]
+ *       [--rounds N] [--exercise name=reps]... [--reps class=reps]... [--digest hex]
+ * </pre>
+ *
+ * <p>Each line of the recording is a frame: its timestamp in milliseconds, then the X, Y and Z of
+ * the 33 landmarks as in the pose samples, or nothing else if no pose was found. The first sample
+ * set is the one of the primary classifier, and each is classified with the features and angle
+ * rules in the files next to it. The digest is a hash of the most confident class of the primary
+ * classifier and the rep counts of every frame. The exit status is 1 if a count or the digest
+ * isn't the expected one, or if the rounds don't all give the same results, and the timings are
+ * those of the last round, after the others warmed up the JIT.
+ *
+ * <p>Unlike the processor, there are no enrolled samples, rep matching or feedback, and since the
+ * recording has no in-frame likelihoods every frame is classified.
+ */
+public class ReplayHarness {
+  private static final int DEFAULT_NUM_ROUNDS = 5;
+  private static final int NUM_DIMS = 3;
+  // As PoseClassifierProcessor in stream mode.
+  private static final int RESULT_CACHE_SIZE = 4;
+  private static final float RESULT_CACHE_TOLERANCE = 1f;
+
+  private static final String[] STAGES = {
+    "embedding", "classification", "smoothing", "rep counting", "exercises"
+  };
+  private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+  /** The recording, as parsed. */
+  static class Recording {
+    final List<PoseLandmarks> frames = new ArrayList<>();
+    final List<Long> timestampsMs = new ArrayList<>();
+  }
+
+  /** The stream mode pipeline, built anew for each round so that rounds start from scratch. */
+  static class Pipeline {
+    private final PoseClassifierGroup classifier;
+    private final EMASmoothing emaSmoothing;
+    private final List<RepetitionCounter> repCounters = new ArrayList<>();
+    private final List<ExerciseStateMachine> exercises = new ArrayList<>();
+    // Index in the group of the classifier whose classes each exercise follows, as the processor.
+    private final int[] exerciseClassifiers;
+    private final float[] jointAngles = new float[JointAngles.NUM_ANGLES];
+    // Nanoseconds taken by each stage for each frame, as [stage][frame].
+    private final long[][] stageNanos;
+    private long nowMs;
+    private int digest = 1;
+
+    Pipeline(
+        List<List<PoseSample>> sampleSets,
+        List<PoseClassifierOptions> options,
+        List<ExerciseDefinition> definitions,
+        int numFrames) {
+      List<PoseClassifier> classifiers = new ArrayList<>();
+      for (int i = 0; i < sampleSets.size(); i++) {
+        classifiers.add(new PoseClassifier(sampleSets.get(i), options.get(i)));
+      }
+      classifier = new PoseClassifierGroup(classifiers);
+      emaSmoothing = new EMASmoothing(() -> nowMs);
+      // The processor also counts a few classes of its own first, unknown to these samples.
+      for (String className : classifier.getClassNameTable().getNames()) {
+        repCounters.add(new RepetitionCounter(className));
+      }
+      exerciseClassifiers = new int[definitions.size()];
+      for (int i = 0; i < definitions.size(); i++) {
+        exercises.add(new ExerciseStateMachine(definitions.get(i), classifier.getClassNameTable()));
+        exerciseClassifiers[i] = findClassifier(definitions.get(i));
+      }
+      stageNanos = new long[STAGES.length][numFrames];
+    }
+
+    void process(int frame, PoseLandmarks landmarks, long timestampMs) {
+      nowMs = timestampMs;
+      long startNs = System.nanoTime();
+      List<PointF3D> allFeatures =
+          landmarks.isEmpty() ? null : PoseEmbedding.getAllFeatures(landmarks.getPositions3D());
+      long embeddedNs = System.nanoTime();
+      ClassificationResult classification;
+      if (allFeatures == null) {
+        classification = classifier.classify(landmarks.getPositions3D());
+      } else {
+        JointAngles.getAngles(landmarks, jointAngles);
+        classification = classifier.classifyFeatures(allFeatures, jointAngles);
+      }
+      long classifiedNs = System.nanoTime();
+      classification = emaSmoothing.getSmoothedResult(classification);
+      long smoothedNs = System.nanoTime();
+      for (RepetitionCounter repCounter : repCounters) {
+        int repsBefore = repCounter.getNumRepeats();
+        if (repCounter.addClassificationResult(classification) > repsBefore) {
+          // Like the processor, which reports one rep per frame.
+          break;
+        }
+      }
+      long countedNs = System.nanoTime();
+      int maxConfidenceClassId = -1;
+      if (!landmarks.isEmpty()) {
+        // The class the processor shows, of the primary classifier.
+        maxConfidenceClassId = classifier.getMaxConfidenceClassId(classification, 0);
+        for (int i = 0; i < exercises.size(); i++) {
+          int classId = classifier.getMaxConfidenceClassId(classification, exerciseClassifiers[i]);
+          float confidence =
+              classification.getClassConfidence(classId) / classifier.confidenceRange();
+          exercises.get(i).update(classId, confidence, nowMs);
+        }
+      }
+      long updatedNs = System.nanoTime();
+      stageNanos[0][frame] = embeddedNs - startNs;
+      stageNanos[1][frame] = classifiedNs - embeddedNs;
+      stageNanos[2][frame] = smoothedNs - classifiedNs;
+      stageNanos[3][frame] = countedNs - smoothedNs;
+      stageNanos[4][frame] = updatedNs - countedNs;
+
+      digest = 31 * digest + maxConfidenceClassId;
+      for (RepetitionCounter repCounter : repCounters) {
+        digest = 31 * digest + repCounter.getNumRepeats();
+      }
+      for (ExerciseStateMachine exercise : exercises) {
+        digest = 31 * digest + exercise.getRepCount();
+      }
+    }
+
+    // Returns the classifier with the first class a transition of the definition is taken on, as
+    // PoseClassifierProcessor does.
+    private int findClassifier(ExerciseDefinition definition) {
+      if (definition.getTransitions() != null) {
+        for (ExerciseDefinition.Transition transition : definition.getTransitions()) {
+          if (transition.getClassName() != null) {
+            return Math.max(0, classifier.findClassifier(transition.getClassName()));
+          }
+        }
+      }
+      return 0;
+    }
+
+    // Returns the final rep counts, with keys telling exercises from rep counter classes.
+    Map<String, Integer> getRepCounts() {
+      Map<String, Integer> repCounts = new LinkedHashMap<>();
+      for (ExerciseStateMachine exercise : exercises) {
+        repCounts.put("--exercise " + exercise.getName(), exercise.getRepCount());
+      }
+      for (RepetitionCounter repCounter : repCounters) {
+        repCounts.put("--reps " + repCounter.getClassName(), repCounter.getNumRepeats());
+      }
+      return repCounts;
+    }
+
+    String getDigest() {
+      return String.format(Locale.US, "%08x", digest);
+    }
+  }
+
+  /** Bytes allocated by the current thread, as told by the management beans of the JVM. */
+  private static class AllocationMeter {
+    @Nullable private final ThreadMXBean threadBean;
+
+    AllocationMeter() {
+      Object bean = ManagementFactory.getThreadMXBean();
+      // Only some JVMs count allocations.
+      threadBean = bean instanceof ThreadMXBean ? (ThreadMXBean) bean : null;
+    }
+
+    /** Returns the bytes allocated so far, or -1 if unknown. */
+    long read() {
+      return threadBean != null
+          ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+          : -1;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    String usage = "Usage: ReplayHarness <recording.csv> <exercises.json> <samples.csv>..."
+        + " [--rounds N] [--exercise name=reps]... [--reps class=reps]... [--digest hex]";
+    List<String> files = new ArrayList<>();
+    Map<String, Integer> expectedRepCounts = new LinkedHashMap<>();
+    String expectedDigest = null;
+    int numRounds = DEFAULT_NUM_ROUNDS;
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--")) {
+        files.add(args[i]);
+        continue;
+      }
+      Preconditions.checkArgument(i + 1 < args.length, usage);
+      String flag = args[i];
+      String value = args[++i];
+      if (flag.equals("--rounds")) {
+        numRounds = Integer.parseInt(value);
+        Preconditions.checkArgument(numRounds > 0, usage);
+      } else if (flag.equals("--digest")) {
+        expectedDigest = value;
+      } else {
+        Preconditions.checkArgument(
+            (flag.equals("--exercise") || flag.equals("--reps")) && value.contains("="), usage);
+        int split = value.lastIndexOf('=');
+        expectedRepCounts.put(
+            flag + " " + value.substring(0, split), Integer.parseInt(value.substring(split + 1)));
+      }
+    }
+    Preconditions.checkArgument(files.size() >= 3, usage);
+
+    Recording recording = readRecording(files.get(0));
+    Preconditions.checkArgument(!recording.frames.isEmpty(), "No frames in %s", files.get(0));
+    List<ExerciseDefinition> definitions;
+    try (Reader reader = new FileReader(files.get(1))) {
+      definitions = ExerciseDefinition.parse(reader);
+    }
+    List<List<PoseSample>> sampleSets = new ArrayList<>();
+    List<PoseClassifierOptions> options = new ArrayList<>();
+    for (String samplesFile : files.subList(2, files.size())) {
+      try (Reader reader = new FileReader(samplesFile)) {
+        sampleSets.add(PoseClassifierRegistry.readSamples(reader));
+      }
+      options.add(getOptions(samplesFile));
+    }
+
+    int numFrames = recording.frames.size();
+    AllocationMeter allocationMeter = new AllocationMeter();
+    Pipeline firstPipeline = null;
+    Pipeline pipeline = null;
+    long allocatedBytes = -1;
+    boolean deterministic = true;
+    for (int round = 0; round < numRounds; round++) {
+      pipeline = new Pipeline(sampleSets, options, definitions, numFrames);
+      long startBytes = allocationMeter.read();
+      for (int i = 0; i < numFrames; i++) {
+        pipeline.process(i, recording.frames.get(i), recording.timestampsMs.get(i));
+      }
+      long endBytes = allocationMeter.read();
+      allocatedBytes = startBytes >= 0 && endBytes >= 0 ? endBytes - startBytes : -1;
+      if (firstPipeline == null) {
+        firstPipeline = pipeline;
+      } else if (!pipeline.getDigest().equals(firstPipeline.getDigest())
+          || !pipeline.getRepCounts().equals(firstPipeline.getRepCounts())) {
+        deterministic = false;
+      }
+    }
+
+    long totalNanos = 0;
+    for (long[] nanos : pipeline.stageNanos) {
+      for (long frameNanos : nanos) {
+        totalNanos += frameNanos;
+      }
+    }
+    long durationMs =
+        recording.timestampsMs.get(numFrames - 1) - recording.timestampsMs.get(0);
+    System.out.println(String.format(
+        Locale.US,
+        "Replayed %d frames (%.1f s recorded) in %d rounds: %.0f frames/s, %.0fx real time, %s.",
+        numFrames,
+        durationMs / 1e3,
+        numRounds,
+        numFrames / (totalNanos / 1e9),
+        durationMs / (totalNanos / 1e6),
+        allocatedBytes >= 0
+            ? String.format(
+                Locale.US, "%.0f bytes allocated per frame", 1.0 * allocatedBytes / numFrames)
+            : "allocations unknown"));
+    System.out.println(String.format(
+        Locale.US, "%-16s %9s %9s %9s %9s", "Stage (us)", "p50", "p90", "p99", "max"));
+    for (int stage = 0; stage < STAGES.length; stage++) {
+      long[] nanos = pipeline.stageNanos[stage].clone();
+      Arrays.sort(nanos);
+      StringBuilder line = new StringBuilder(String.format(Locale.US, "%-16s", STAGES[stage]));
+      for (double percentile : PERCENTILES) {
+        line.append(String.format(Locale.US, " %9.1f", getPercentile(nanos, percentile) / 1e3));
+      }
+      System.out.println(line);
+    }
+
+    boolean passed = deterministic;
+    if (!deterministic) {
+      System.out.println("Rounds gave different results.");
+    }
+    Map<String, Integer> repCounts = pipeline.getRepCounts();
+    for (Map.Entry<String, Integer> repCount : repCounts.entrySet()) {
+      Integer expected = expectedRepCounts.get(repCount.getKey());
+      boolean matches = expected == null || expected.equals(repCount.getValue());
+      passed &= matches;
+      System.out.println(String.format(
+          Locale.US,
+          "%s=%d%s",
+          repCount.getKey(),
+          repCount.getValue(),
+          matches ? "" : ", expected " + expected));
+    }
+    for (String expected : expectedRepCounts.keySet()) {
+      if (!repCounts.containsKey(expected)) {
+        passed = false;
+        System.out.println("No " + expected);
+      }
+    }
+    boolean digestMatches = expectedDigest == null || expectedDigest.equals(pipeline.getDigest());
+    passed &= digestMatches;
+    System.out.println("--digest " + pipeline.getDigest()
+        + (digestMatches ? "" : ", expected " + expectedDigest));
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  static Recording readRecording(String file) throws IOException {
+    Recording recording = new Recording();
+    float[] inFrameLikelihoods = new float[PoseLandmarks.NUM_LANDMARKS];
+    Arrays.fill(inFrameLikelihoods, 1f);
+    long lastTimestampMs = Long.MIN_VALUE;
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      for (String csvLine = reader.readLine(); csvLine != null; csvLine = reader.readLine()) {
+        if (csvLine.trim().isEmpty()) {
+          continue;
+        }
+        String[] tokens = csvLine.split(",");
+        Preconditions.checkArgument(
+            tokens.length == 1 || tokens.length == 1 + PoseLandmarks.NUM_LANDMARKS * NUM_DIMS,
+            "Invalid frame %s",
+            csvLine);
+        long timestampMs = Long.parseLong(tokens[0].trim());
+        Preconditions.checkArgument(
+            timestampMs >= lastTimestampMs, "Timestamp going backwards at %s", timestampMs);
+        lastTimestampMs = timestampMs;
+        PoseLandmarks landmarks = PoseLandmarks.empty();
+        if (tokens.length > 1) {
+          float[] positions = new float[tokens.length - 1];
+          for (int i = 0; i < positions.length; i++) {
+            positions[i] = Float.parseFloat(tokens[i + 1]);
+          }
+          landmarks = new PoseLandmarks(positions, inFrameLikelihoods, false);
+        }
+        recording.frames.add(landmarks);
+        recording.timestampsMs.add(timestampMs);
+      }
+    }
+    return recording;
+  }
+
+  /**
+   * Returns the stream mode options for the samples in {@code samplesFile}, with the features and
+   * angle rules in the files next to it if there are.
+   */
+  static PoseClassifierOptions getOptions(String samplesFile) throws IOException {
+    PoseClassifierOptions.Builder builder = new PoseClassifierOptions.Builder()
+        .setResultCacheSize(RESULT_CACHE_SIZE)
+        .setResultCacheTolerance(RESULT_CACHE_TOLERANCE);
+    String baseName = samplesFile.replaceFirst("\\.csv$", "");
+    try (Reader reader = new FileReader(baseName + PoseEmbedding.FEATURES_EXTENSION)) {
+      builder.setFeatures(PoseEmbedding.readFeatures(reader));
+    } catch (FileNotFoundException e) {
+      // Keeps the default features.
+    }
+    try (Reader reader = new FileReader(baseName + AngleRules.EXTENSION)) {
+      builder.setAngleRules(AngleRules.parse(reader));
+    } catch (FileNotFoundException e) {
+      // Always searches the samples.
+    }
+    return builder.build();
+  }
+
+  // Returns the value at the given percentile of sorted values, by the nearest-rank method.
+  private static long getPercentile(long[] sortedValues, double percentile) {
+    int rank = (int) Math.ceil(percentile / 100 * sortedValues.length);
+    return sortedValues[Math.max(0, rank - 1)];
+  }
+
+  private ReplayHarness() {}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Checks that {@link ReplayHarness} gives the same results for the same recording. */
+public class ReplayHarnessTest {
+  private static final String[] SAMPLES_FILES = {"t2.csv", "fitness_pose_samples.csv"};
+  private static final long FRAME_MS = 33;
+  private static final int REP_FRAMES = 30;
+  private static final int REST_FRAMES = 15;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replay_givesSameResultsEveryTime() throws IOException {
+    ReplayHarness.Recording recording = ReplayHarness.readRecording(
+        writeRecording(new Random(50), /* numPushups= */ 5, /* numSquats= */ 4));
+    ReplayHarness.Recording otherRecording = ReplayHarness.readRecording(
+        writeRecording(new Random(51), /* numPushups= */ 2, /* numSquats= */ 3));
+
+    ReplayHarness.Pipeline first = replay(recording);
+    // Another recording in between, in case any state outlives a pipeline.
+    ReplayHarness.Pipeline other = replay(otherRecording);
+    ReplayHarness.Pipeline second = replay(recording);
+
+    assertEquals(first.getDigest(), second.getDigest());
+    assertEquals(first.getRepCounts(), second.getRepCounts());
+    assertNotEquals(first.getDigest(), other.getDigest());
+  }
+
+  @Test
+  public void replay_countsRepsOfRecording() throws IOException {
+    ReplayHarness.Recording recording = ReplayHarness.readRecording(
+        writeRecording(new Random(50), /* numPushups= */ 5, /* numSquats= */ 4));
+
+    Map<String, Integer> repCounts = replay(recording).getRepCounts();
+
+    assertEquals(5, (int) repCounts.get("--reps pushups_down"));
+    assertEquals(4, (int) repCounts.get("--reps squats_down"));
+    assertEquals(0, (int) repCounts.get("--exercise t2"));
+  }
+
+  @Test
+  public void readRecording_rejectsInvalidFrames() throws IOException {
+    String[] invalidRecordings = {"0\n1,2.0,3.0\n", "100\n99\n"};
+    for (String invalidRecording : invalidRecordings) {
+      File file = folder.newFile();
+      try (Writer writer = new FileWriter(file)) {
+        writer.write(invalidRecording);
+      }
+      try {
+        ReplayHarness.readRecording(file.getPath());
+        fail("Read " + invalidRecording);
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  private static ReplayHarness.Pipeline replay(ReplayHarness.Recording recording)
+      throws IOException {
+    List<List<PoseSample>> sampleSets = new ArrayList<>();
+    List<PoseClassifierOptions> options = new ArrayList<>();
+    for (String samplesFile : SAMPLES_FILES) {
+      sampleSets.add(TestPoses.readSamples(samplesFile));
+      options.add(ReplayHarness.getOptions(TestPoses.ASSETS_DIR + samplesFile));
+    }
+    List<ExerciseDefinition> definitions;
+    try (Reader reader = new FileReader(TestPoses.ASSETS_DIR + "exercises.json")) {
+      definitions = ExerciseDefinition.parse(reader);
+    }
+    int numFrames = recording.frames.size();
+    ReplayHarness.Pipeline pipeline =
+        new ReplayHarness.Pipeline(sampleSets, options, definitions, numFrames);
+    for (int i = 0; i < numFrames; i++) {
+      pipeline.process(i, recording.frames.get(i), recording.timestampsMs.get(i));
+    }
+    return pipeline;
+  }
+
+  /**
+   * Writes a recording of push-ups then squats, between the first samples of the up and down
+   * classes with jitter, with a few frames where no pose was found, and returns its path.
+   */
+  private String writeRecording(Random random, int numPushups, int numSquats)
+      throws IOException {
+    List<float[]> landmarks = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    List<String> classNames = TestPoses.readClassNames("fitness_pose_samples.csv");
+    File file = folder.newFile();
+    long timestampMs = 0;
+    try (Writer writer = new FileWriter(file)) {
+      for (String exercise : new String[] {"pushups", "squats"}) {
+        float[] up = landmarks.get(classNames.indexOf(exercise + "_up"));
+        float[] down = landmarks.get(classNames.indexOf(exercise + "_down"));
+        int numReps = exercise.equals("pushups") ? numPushups : numSquats;
+        for (int rep = 0; rep < numReps; rep++) {
+          for (int f = -REST_FRAMES; f < REP_FRAMES; f++) {
+            writer.write(Long.toString(timestampMs));
+            timestampMs += FRAME_MS;
+            if (f == -REST_FRAMES) {
+              // No pose.
+              writer.write('\n');
+              continue;
+            }
+            float depth =
+                f < 0 ? 0 : (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * f / REP_FRAMES));
+            float[] pose =
+                TestPoses.addNoise(TestPoses.interpolate(up, down, depth), 0.5f, random);
+            for (float value : pose) {
+              writer.write(',');
+              writer.write(Float.toString(value));
+            }
+            writer.write('\n');
+          }
+        }
+      }
+    }
+    return file.getPath();
+  }
+}
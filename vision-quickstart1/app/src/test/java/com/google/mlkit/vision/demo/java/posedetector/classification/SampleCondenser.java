@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Prunes the pose samples a {@link PoseClassifier} doesn't need to classify like with all of
+ * them, since its cost grows with their number.
+ *
+ * <p>Samples are first edited, dropping the ones the others classify as another class (Wilson's
+ * edited nearest neighbors), then condensed, keeping only the ones the kept samples don't already
+ * classify as their class with some confidence (Hart's condensed nearest neighbors). Both use the
+ * classifier itself, so its weighted distances and two top-K stages. The lowest confidence whose
+ * condensed samples agree with all of them on held-out samples at the required rate is used,
+ * trying without editing if it drops too many, and keeping all samples if none does.
+ *
+ * <p>Runs offline on the JVM, with the test classes of the app and its dependencies on the class
+ * path:
+ *
+ * <pre>
+ *   java SampleCondenser pose/samples.csv pose/condensed.csv [agreement]
+ * </pre>
+ *
+ * using the features picked by {@link FeatureSelector} if there is a features file next to the
+ * samples. The condensed samples are written in the same CSV format.
+ */
+public class SampleCondenser {
+  // Rate at which condensed samples should classify held-out samples like all of them, by default.
+  private static final float DEFAULT_AGREEMENT = 0.98f;
+  // Confidences, as fractions of the confidence range, tried from the lowest.
+  private static final float[] MIN_CONFIDENCES = {0f, 0.2f, 0.4f, 0.6f, 0.8f, 1f};
+  private static final int NUM_FOLDS = 5;
+  private static final int NUM_TIMING_ROUNDS = 5;
+
+  public static void main(String[] args) throws IOException {
+    Preconditions.checkArgument(
+        args.length == 2 || args.length == 3,
+        "Usage: SampleCondenser <samples.csv> <condensed.csv> [agreement]");
+    // Kept along with the samples, to write the condensed ones out as they were read.
+    List<String> csvLines = new ArrayList<>();
+    List<PoseSample> poseSamples = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
+      for (String csvLine = reader.readLine(); csvLine != null; csvLine = reader.readLine()) {
+        if (csvLine.trim().isEmpty()) {
+          continue;
+        }
+        PoseSample poseSample = PoseSample.getPoseSample(csvLine, ",");
+        Preconditions.checkArgument(poseSample != null, "Invalid pose sample %s", csvLine);
+        csvLines.add(csvLine);
+        poseSamples.add(poseSample);
+      }
+    }
+    float agreement = args.length == 3 ? Float.parseFloat(args[2]) : DEFAULT_AGREEMENT;
+    PoseClassifierOptions options = getOptions(args[0]);
+
+    List<Integer> kept = null;
+    String settings = "none met the agreement, kept all";
+    for (int pass = 0; pass < 2 && kept == null; pass++) {
+      boolean edit = pass == 0;
+      for (int i = 0; i < MIN_CONFIDENCES.length && kept == null; i++) {
+        float minConfidence = MIN_CONFIDENCES[i];
+        float heldOutAgreement = crossValidate(poseSamples, minConfidence, edit, options);
+        if (heldOutAgreement >= agreement) {
+          kept = condense(poseSamples, minConfidence, edit, options);
+          settings = String.format(
+              Locale.US,
+              "min confidence %.1f%s, held-out agreement %.4f",
+              minConfidence,
+              edit ? " after editing" : "",
+              heldOutAgreement);
+        }
+      }
+    }
+    if (kept == null) {
+      kept = new ArrayList<>();
+      for (int i = 0; i < poseSamples.size(); i++) {
+        kept.add(i);
+      }
+    }
+    List<PoseSample> condensedSamples = new ArrayList<>();
+    try (Writer writer = new FileWriter(args[1])) {
+      for (int i : kept) {
+        condensedSamples.add(poseSamples.get(i));
+        writer.write(csvLines.get(i));
+        writer.write('\n');
+      }
+    }
+    System.out.println(String.format(
+        Locale.US,
+        "Kept %d of %d samples (%.1f%%), %s. "
+            + "%.1f us per classification against %.1f us with all samples. Wrote %s.",
+        kept.size(),
+        poseSamples.size(),
+        100f * kept.size() / poseSamples.size(),
+        settings,
+        getClassificationMicros(condensedSamples, poseSamples, options),
+        getClassificationMicros(poseSamples, poseSamples, options),
+        args[1]));
+  }
+
+  /**
+   * Returns the indices of the samples kept by condensing {@code poseSamples}, in their order.
+   *
+   * @param minConfidence fraction of the confidence range with which the kept samples must
+   *     classify each dropped sample as its class.
+   * @param edit whether to first drop the samples the others classify as another class.
+   */
+  public static List<Integer> condense(
+      List<PoseSample> poseSamples,
+      float minConfidence,
+      boolean edit,
+      PoseClassifierOptions options) {
+    List<Integer> edited = new ArrayList<>();
+    for (int i = 0; i < poseSamples.size(); i++) {
+      if (!edit || isClassifiedByOthers(poseSamples, i, options)) {
+        edited.add(i);
+      }
+    }
+
+    // Start from the first sample of each class.
+    List<Integer> kept = new ArrayList<>();
+    Set<String> keptClasses = new HashSet<>();
+    for (int i : edited) {
+      if (keptClasses.add(poseSamples.get(i).getClassName())) {
+        kept.add(i);
+      }
+    }
+    PoseClassifier classifier = new PoseClassifier(select(poseSamples, kept), options);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i : edited) {
+        if (kept.contains(i)) {
+          continue;
+        }
+        PoseSample poseSample = poseSamples.get(i);
+        ClassificationResult result = classifier.classifyFeatures(poseSample.getAllFeatures());
+        if (!poseSample.getClassName().equals(result.getMaxConfidenceClass())
+            || result.getClassConfidence(poseSample.getClassName())
+                < minConfidence * classifier.confidenceRange()) {
+          kept.add(i);
+          classifier = new PoseClassifier(select(poseSamples, kept), options);
+          changed = true;
+        }
+      }
+    }
+    Collections.sort(kept);
+    return kept;
+  }
+
+  /**
+   * Returns the fraction of samples classified as the same class by the condensed samples as by
+   * all of them, held out of both, over {@code NUM_FOLDS} folds.
+   */
+  public static float crossValidate(
+      List<PoseSample> poseSamples,
+      float minConfidence,
+      boolean edit,
+      PoseClassifierOptions options) {
+    int numAgreeing = 0;
+    for (int fold = 0; fold < NUM_FOLDS; fold++) {
+      // Samples are grouped by class, so taking every NUM_FOLDS-th one keeps folds balanced.
+      List<PoseSample> training = new ArrayList<>();
+      List<PoseSample> validation = new ArrayList<>();
+      for (int i = 0; i < poseSamples.size(); i++) {
+        (i % NUM_FOLDS == fold ? validation : training).add(poseSamples.get(i));
+      }
+      PoseClassifier classifier = new PoseClassifier(training, options);
+      PoseClassifier condensedClassifier = new PoseClassifier(
+          select(training, condense(training, minConfidence, edit, options)), options);
+      for (PoseSample poseSample : validation) {
+        String className =
+            classifier.classifyFeatures(poseSample.getAllFeatures()).getMaxConfidenceClass();
+        String condensedClassName = condensedClassifier
+            .classifyFeatures(poseSample.getAllFeatures())
+            .getMaxConfidenceClass();
+        if (className.equals(condensedClassName)) {
+          numAgreeing++;
+        }
+      }
+    }
+    return poseSamples.isEmpty() ? 1 : (float) numAgreeing / poseSamples.size();
+  }
+
+  // Returns whether all the other samples classify sample i as its own class.
+  private static boolean isClassifiedByOthers(
+      List<PoseSample> poseSamples, int i, PoseClassifierOptions options) {
+    List<PoseSample> others = new ArrayList<>(poseSamples);
+    PoseSample poseSample = others.remove(i);
+    ClassificationResult result =
+        new PoseClassifier(others, options).classifyFeatures(poseSample.getAllFeatures());
+    return poseSample.getClassName().equals(result.getMaxConfidenceClass());
+  }
+
+  private static List<PoseSample> select(List<PoseSample> poseSamples, List<Integer> indices) {
+    List<PoseSample> selected = new ArrayList<>(indices.size());
+    for (int i : indices) {
+      selected.add(poseSamples.get(i));
+    }
+    return selected;
+  }
+
+  // Returns the default options, with the features picked for the samples if there are any.
+  private static PoseClassifierOptions getOptions(String samplesFile) throws IOException {
+    String featuresFile =
+        samplesFile.replaceFirst("\\.csv$", "") + PoseEmbedding.FEATURES_EXTENSION;
+    try (Reader reader = new FileReader(featuresFile)) {
+      return new PoseClassifierOptions.Builder()
+          .setFeatures(PoseEmbedding.readFeatures(reader))
+          .build();
+    } catch (FileNotFoundException e) {
+      return PoseClassifierOptions.createDefault();
+    }
+  }
+
+  // Returns the best mean time to classify each query against the samples, in microseconds.
+  private static double getClassificationMicros(
+      List<PoseSample> poseSamples, List<PoseSample> queries, PoseClassifierOptions options) {
+    PoseClassifier classifier = new PoseClassifier(poseSamples, options);
+    long bestNanos = Long.MAX_VALUE;
+    for (int round = 0; round < NUM_TIMING_ROUNDS; round++) {
+      long startNanos = System.nanoTime();
+      for (PoseSample query : queries) {
+        classifier.classifyFeatures(query.getAllFeatures());
+      }
+      bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+    }
+    return bestNanos / 1e3 / Math.max(1, queries.size());
+  }
+
+  private SampleCondenser() {}
+}
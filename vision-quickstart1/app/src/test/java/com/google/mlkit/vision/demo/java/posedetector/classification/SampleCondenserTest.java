@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/** Tests of {@link SampleCondenser}. */
+public class SampleCondenserTest {
+  private static final PoseClassifierOptions OPTIONS = PoseClassifierOptions.createDefault();
+
+  @Test
+  public void condense_keptSamplesClassifyDroppedOnesAsTheirClass() throws IOException {
+    List<PoseSample> poseSamples = TestPoses.readSamples("t2.csv");
+    for (float minConfidence : new float[] {0f, 0.6f}) {
+      List<Integer> kept = SampleCondenser.condense(poseSamples, minConfidence, false, OPTIONS);
+
+      assertSortedAndFirstOfEachClassKept(poseSamples, kept);
+      assertTrue(kept.size() < poseSamples.size());
+      PoseClassifier classifier = new PoseClassifier(select(poseSamples, kept), OPTIONS);
+      for (int i = 0; i < poseSamples.size(); i++) {
+        if (kept.contains(i)) {
+          continue;
+        }
+        PoseSample poseSample = poseSamples.get(i);
+        ClassificationResult result = classifier.classifyFeatures(poseSample.getAllFeatures());
+        assertEquals(poseSample.getClassName(), result.getMaxConfidenceClass());
+        assertTrue(result.getClassConfidence(poseSample.getClassName())
+            >= minConfidence * classifier.confidenceRange());
+      }
+    }
+  }
+
+  @Test
+  public void condense_editingDropsSamplesTheOthersClassifyAsAnotherClass() throws IOException {
+    List<PoseSample> poseSamples = TestPoses.readSamples("t2.csv");
+    // A copy of a "down" sample labeled "up", last so that it isn't the first of its class.
+    int down = TestPoses.readClassNames("t2.csv").indexOf("down");
+    List<PoseSample> mislabeled = new ArrayList<>(poseSamples);
+    mislabeled.add(new PoseSample("mislabeled", "up",
+        TestPoses.toPoints(TestPoses.readLandmarks("t2.csv").get(down))));
+    int copy = mislabeled.size() - 1;
+
+    List<Integer> edited = SampleCondenser.condense(mislabeled, 1f, true, OPTIONS);
+    List<Integer> unedited = SampleCondenser.condense(mislabeled, 1f, false, OPTIONS);
+
+    assertSortedAndFirstOfEachClassKept(mislabeled, unedited);
+    assertTrue(unedited.contains(copy));
+    assertFalse(edited.contains(copy));
+  }
+
+  @Test
+  public void crossValidate_agreesFullyWhenKeepingAllSamples() throws IOException {
+    List<PoseSample> poseSamples = TestPoses.readSamples("t2.csv");
+    // No sample is classified with more than the whole confidence range, so none is dropped.
+    assertEquals(
+        poseSamples.size(),
+        SampleCondenser.condense(poseSamples, 1.01f, false, OPTIONS).size());
+    assertEquals(1f, SampleCondenser.crossValidate(poseSamples, 1.01f, false, OPTIONS), 0f);
+
+    float agreement = SampleCondenser.crossValidate(poseSamples, 0f, false, OPTIONS);
+    assertTrue(agreement > 0.9f && agreement <= 1f);
+  }
+
+  private static void assertSortedAndFirstOfEachClassKept(
+      List<PoseSample> poseSamples, List<Integer> kept) {
+    for (int i = 1; i < kept.size(); i++) {
+      assertTrue(kept.get(i - 1) < kept.get(i));
+    }
+    Set<String> classNames = new HashSet<>();
+    for (int i = 0; i < poseSamples.size(); i++) {
+      if (classNames.add(poseSamples.get(i).getClassName())) {
+        assertTrue("first of its class: " + i, kept.contains(i));
+      }
+    }
+  }
+
+  private static List<PoseSample> select(List<PoseSample> poseSamples, List<Integer> indices) {
+    List<PoseSample> selected = new ArrayList<>();
+    for (int i : indices) {
+      selected.add(poseSamples.get(i));
+    }
+    return selected;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bundled pose samples and noisy poses made from them, for tests. Unit tests run from the module
+ * directory, so the assets are read from the source tree.
+ */
+final class TestPoses {
+  static final String ASSETS_DIR = "src/main/assets/pose/";
+  static final int NUM_VALUES = PoseLandmarks.NUM_LANDMARKS * 3;
+
+  /** Returns the samples of a bundled file, such as "t2.csv". */
+  static List<PoseSample> readSamples(String file) throws IOException {
+    try (Reader reader = new FileReader(ASSETS_DIR + file)) {
+      return PoseClassifierRegistry.readSamples(reader);
+    }
+  }
+
+  /** Returns the landmarks of each sample of a bundled file, as [sample][landmark][X, Y, Z]. */
+  static List<float[]> readLandmarks(String file) throws IOException {
+    List<float[]> landmarks = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(ASSETS_DIR + file))) {
+      for (String csvLine = reader.readLine(); csvLine != null; csvLine = reader.readLine()) {
+        String[] tokens = csvLine.split(",");
+        if (tokens.length != NUM_VALUES + 2) {
+          continue;
+        }
+        float[] values = new float[NUM_VALUES];
+        for (int i = 0; i < NUM_VALUES; i++) {
+          values[i] = Float.parseFloat(tokens[i + 2]);
+        }
+        landmarks.add(values);
+      }
+    }
+    return landmarks;
+  }
+
+  /** Returns the class of each sample of a bundled file, in the order of {@link #readLandmarks}. */
+  static List<String> readClassNames(String file) throws IOException {
+    List<String> classNames = new ArrayList<>();
+    for (PoseSample poseSample : readSamples(file)) {
+      classNames.add(poseSample.getClassName());
+    }
+    return classNames;
+  }
+
+  /** Returns {@code landmarks} with gaussian noise of the given deviation, in pixels, added. */
+  static float[] addNoise(float[] landmarks, float noise, Random random) {
+    float[] noisy = new float[landmarks.length];
+    for (int i = 0; i < landmarks.length; i++) {
+      noisy[i] = landmarks[i] + (float) random.nextGaussian() * noise;
+    }
+    return noisy;
+  }
+
+  /** Returns the pose a fraction {@code t} of the way from {@code from} to {@code to}. */
+  static float[] interpolate(float[] from, float[] to, float t) {
+    float[] pose = new float[from.length];
+    for (int i = 0; i < from.length; i++) {
+      pose[i] = from[i] + (to[i] - from[i]) * t;
+    }
+    return pose;
+  }
+
+  static List<PointF3D> toPoints(float[] landmarks) {
+    List<PointF3D> points = new ArrayList<>(PoseLandmarks.NUM_LANDMARKS);
+    for (int i = 0; i < landmarks.length; i += 3) {
+      points.add(PointF3D.from(landmarks[i], landmarks[i + 1], landmarks[i + 2]));
+    }
+    return points;
+  }
+
+  private TestPoses() {}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import androidx.core.util.Pair;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Compares {@link TopKSelector} with the {@code PriorityQueue<Pair<Integer, Float>>} it replaced,
+ * selecting the K smallest of as many distances as there are fitness samples. Each case is timed
+ * over several rounds after a warm-up, the way a JMH benchmark would run it.
+ */
+public final class TopKSelectorBenchmark {
+  private static final int NUM_CANDIDATES = 2500;
+  private static final int NUM_QUERIES = 2000;
+  private static final int WARM_UP_ROUNDS = 5;
+  private static final int ROUNDS = 5;
+
+  // Keeps results alive so that the JIT can't drop the work.
+  private static float sink;
+
+  public static void main(String[] args) {
+    Random random = new Random(32);
+    float[][] queries = new float[NUM_QUERIES][NUM_CANDIDATES];
+    for (float[] distances : queries) {
+      for (int i = 0; i < NUM_CANDIDATES; i++) {
+        distances[i] = random.nextFloat() * 100;
+      }
+    }
+    for (int k : new int[] {10, 30, 100}) {
+      for (int round = 0; round < WARM_UP_ROUNDS + ROUNDS; round++) {
+        long start = System.nanoTime();
+        runPriorityQueue(queries, k);
+        long queueNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        runSelector(queries, k);
+        long selectorNanos = System.nanoTime() - start;
+        if (round >= WARM_UP_ROUNDS) {
+          System.out.println(String.format(Locale.US,
+              "K=%d: PriorityQueue %.1f us/query, TopKSelector %.1f us/query",
+              k, queueNanos / 1e3 / NUM_QUERIES, selectorNanos / 1e3 / NUM_QUERIES));
+        }
+      }
+    }
+    System.out.println(sink);
+  }
+
+  private static void runPriorityQueue(float[][] queries, int k) {
+    for (float[] distances : queries) {
+      PriorityQueue<Pair<Integer, Float>> queue =
+          new PriorityQueue<>(k, (o1, o2) -> -Float.compare(o1.second, o2.second));
+      for (int i = 0; i < distances.length; i++) {
+        queue.add(new Pair<>(i, distances[i]));
+        if (queue.size() > k) {
+          queue.poll();
+        }
+      }
+      sink += queue.peek().second;
+    }
+  }
+
+  private static void runSelector(float[][] queries, int k) {
+    TopKSelector selector = new TopKSelector(k);
+    for (float[] distances : queries) {
+      selector.clear();
+      for (int i = 0; i < distances.length; i++) {
+        selector.offer(i, distances[i]);
+      }
+      sink += selector.getBound();
+    }
+  }
+
+  private TopKSelectorBenchmark() {}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class TopKSelectorTest {
+
+  @Test
+  public void offer_keepsSmallestDistances() {
+    Random random = new Random(32);
+    for (int k : new int[] {1, 10, 30, 100}) {
+      // Reused across rounds, as the classifier reuses one per thread.
+      TopKSelector selector = new TopKSelector(k);
+      for (int round = 0; round < 50; round++) {
+        selector.clear();
+        int numCandidates = random.nextInt(3 * k + 1);
+        float[] candidates = new float[numCandidates];
+        for (int i = 0; i < numCandidates; i++) {
+          // Few distinct values, so there are ties.
+          candidates[i] = random.nextInt(20) / 4f;
+          selector.offer(i, candidates[i]);
+        }
+
+        float[] expected = candidates.clone();
+        Arrays.sort(expected);
+        expected = Arrays.copyOf(expected, Math.min(k, numCandidates));
+        float[] kept = new float[selector.size()];
+        for (int i = 0; i < selector.size(); i++) {
+          kept[i] = selector.getDistance(i);
+          assertEquals(candidates[selector.getIndex(i)], kept[i], 0f);
+        }
+        Arrays.sort(kept);
+        assertEquals(Arrays.toString(expected), Arrays.toString(kept));
+      }
+    }
+  }
+
+  @Test
+  public void getBound_isInfiniteUntilFull() {
+    TopKSelector selector = new TopKSelector(2);
+    assertEquals(Float.POSITIVE_INFINITY, selector.getBound(), 0f);
+    selector.offer(0, 3f);
+    assertEquals(Float.POSITIVE_INFINITY, selector.getBound(), 0f);
+    selector.offer(1, 1f);
+    assertEquals(3f, selector.getBound(), 0f);
+    selector.offer(2, 2f);
+    assertEquals(2f, selector.getBound(), 0f);
+  }
+
+  @Test
+  public void offer_rejectsDistanceNotBelowBound() {
+    TopKSelector selector = new TopKSelector(2);
+    assertTrue(selector.offer(0, 1f));
+    assertTrue(selector.offer(1, 2f));
+    assertFalse(selector.offer(2, 2f));
+    assertFalse(selector.offer(3, 5f));
+    assertTrue(selector.offer(4, 1.5f));
+    assertEquals(2, selector.size());
+  }
+
+  @Test
+  public void offer_zeroCapacityKeepsNothing() {
+    TopKSelector selector = new TopKSelector(0);
+    assertFalse(selector.offer(0, 1f));
+    assertEquals(0, selector.size());
+  }
+}
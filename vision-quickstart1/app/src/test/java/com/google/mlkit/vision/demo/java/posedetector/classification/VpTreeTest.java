@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 Google LLC. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.mlkit.vision.demo.java.posedetector.classification;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.mlkit.vision.common.PointF3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Checks {@link VpTree} against a linear scan of the same samples. */
+public class VpTreeTest {
+  private static final PointF3D AXES_WEIGHTS =
+      PoseClassifierOptions.createDefault().getAxesWeights();
+  private static final int NUM_SAMPLES = 3000;
+  private static final int NUM_QUERIES = 200;
+  private static final int K = 30;
+
+  private static List<PoseSample> samples;
+  private static List<float[]> landmarks;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    landmarks = TestPoses.readLandmarks("fitness_pose_samples.csv");
+    List<String> classNames = TestPoses.readClassNames("fitness_pose_samples.csv");
+    // Noisy copies, so that the tree is several levels deep and distances rarely tie.
+    Random random = new Random(27);
+    samples = new ArrayList<>();
+    for (int i = 0; i < NUM_SAMPLES; i++) {
+      int source = i % landmarks.size();
+      samples.add(new PoseSample(
+          "sample" + i,
+          classNames.get(source),
+          TestPoses.toPoints(TestPoses.addNoise(landmarks.get(source), 25f, random))));
+    }
+  }
+
+  @Test
+  public void search_findsSameDistancesAsLinearScan() {
+    VpTree tree = new VpTree(samples, AXES_WEIGHTS);
+    assertEquals(NUM_SAMPLES, tree.size());
+    Random random = new Random(1);
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      List<PointF3D> query = PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(
+          TestPoses.addNoise(landmarks.get(random.nextInt(landmarks.size())), 25f, random)));
+      assertArrayEquals(
+          "query " + q, getLinearTopK(query, K), getTreeTopK(tree, query, K), 0f);
+    }
+  }
+
+  @Test
+  public void search_matchesMirroredQueries() {
+    VpTree tree = new VpTree(samples, AXES_WEIGHTS);
+    Random random = new Random(2);
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      float[] pose =
+          TestPoses.addNoise(landmarks.get(random.nextInt(landmarks.size())), 25f, random);
+      float[] mirrored = pose.clone();
+      for (int i = 0; i < mirrored.length; i += 3) {
+        mirrored[i] = -mirrored[i];
+      }
+      assertArrayEquals(
+          "query " + q,
+          getTreeTopK(tree, PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(pose)), K),
+          getTreeTopK(tree, PoseEmbedding.getPoseEmbedding(TestPoses.toPoints(mirrored)), K),
+          0f);
+    }
+  }
+
+  @Test
+  public void search_keepsAllSamplesWhenFewerThanK() {
+    VpTree tree = new VpTree(samples.subList(0, 5), AXES_WEIGHTS);
+    TopKSelector result = new TopKSelector(K);
+    tree.search(samples.get(0).getEmbedding(), result);
+    assertEquals(5, result.size());
+  }
+
+  // Returns the K smallest distances found by the tree, ascending.
+  private static float[] getTreeTopK(VpTree tree, List<PointF3D> query, int k) {
+    TopKSelector result = new TopKSelector(k);
+    tree.search(query, result);
+    float[] distances = new float[result.size()];
+    for (int i = 0; i < distances.length; i++) {
+      distances[i] = result.getDistance(i);
+    }
+    Arrays.sort(distances);
+    return distances;
+  }
+
+  // Returns the K smallest weighted max distances to the query or its mirror, ascending.
+  private static float[] getLinearTopK(List<PointF3D> query, int k) {
+    float[] distances = new float[samples.size()];
+    for (int j = 0; j < samples.size(); j++) {
+      List<PointF3D> embedding = samples.get(j).getEmbedding();
+      float original = 0;
+      float flipped = 0;
+      for (int i = 0; i < query.size(); i++) {
+        PointF3D s = embedding.get(i);
+        PointF3D p = query.get(i);
+        float yz = max(
+            abs((s.getY() - p.getY()) * AXES_WEIGHTS.getY()),
+            abs((s.getZ() - p.getZ()) * AXES_WEIGHTS.getZ()));
+        original = max(original, max(abs((s.getX() - p.getX()) * AXES_WEIGHTS.getX()), yz));
+        flipped = max(flipped, max(abs((s.getX() + p.getX()) * AXES_WEIGHTS.getX()), yz));
+      }
+      distances[j] = min(original, flipped);
+    }
+    Arrays.sort(distances);
+    return Arrays.copyOf(distances, k);
+  }
+}